@@ -0,0 +1,465 @@
+package FloodIt;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import tester.Tester;
+
+// Receives each game's result as soon as it finishes. Called from worker
+// threads in no particular order, so implementations must be thread-safe.
+interface GameListener {
+  // cellsPerMove holds the cells each move absorbed and is only valid during the call.
+  void gameFinished(long game, long seed, boolean won, IntList cellsPerMove);
+}
+
+// Writes one line per game: game, seed, won, moves, then the cells each
+// move absorbed.
+class CsvListener implements GameListener {
+  PrintStream out;
+
+  CsvListener(PrintStream out) {
+    this.out = out;
+  }
+
+  // Formats the game as a line and writes it in one piece.
+  public void gameFinished(long game, long seed, boolean won, IntList cellsPerMove) {
+    StringBuilder line = new StringBuilder();
+    line.append(game).append(',').append(seed).append(',').append(won)
+        .append(',').append(cellsPerMove.size());
+    for (int i = 0; i < cellsPerMove.size(); i++) {
+      line.append(',').append(cellsPerMove.get(i));
+    }
+    synchronized (this.out) {
+      this.out.println(line);
+    }
+  }
+}
+
+// Plays a batch of seeded games with one strategy across many threads.
+// Game i is played on the board FloodItWorld would build from
+// new Random(gameSeed(masterSeed, i)), so every game, and therefore every
+// total, is the same whatever the thread count or scheduling.
+class BatchSimulator {
+  // Games each task plays before it stops splitting.
+  static int CHUNK = 256;
+
+  int boardSize;
+  int numColors;
+  long masterSeed;
+  Strategy strategy;
+  // May be null.
+  GameListener listener;
+  int threads;
+  // Runs chunks on virtual threads when the JVM has them.
+  boolean virtualThreads;
+  // Reusable buffers for each fork/join worker thread.
+  ThreadLocal<BatchWorker> workers;
+  // Reused by every run with the same thread count; null until the first run.
+  ForkJoinPool pool;
+
+  BatchSimulator(int boardSize, int numColors, long masterSeed, Strategy strategy) {
+    FloodGame.checkValidBoardSize(boardSize);
+    FloodGame.checkValidNumColors(numColors);
+
+    this.boardSize = boardSize;
+    this.numColors = numColors;
+    this.masterSeed = masterSeed;
+    this.strategy = strategy;
+    this.threads = Runtime.getRuntime().availableProcessors();
+    this.virtualThreads = false;
+    this.workers = new ThreadLocal<BatchWorker>();
+    this.pool = null;
+  }
+
+  // Returns the board seed of the given game. Each game gets its own
+  // SplittableRandom, so seeds depend only on the game number.
+  public static long gameSeed(long masterSeed, long game) {
+    return new SplittableRandom(masterSeed + (game * 0x9E3779B97F4A7C15L)).nextLong();
+  }
+
+  // Plays games 0 until games and returns {games, wins, moves}.
+  public long[] run(long games) {
+    if (this.virtualThreads) {
+      ExecutorService executor = BatchSimulator.newVirtualThreadExecutor();
+      if (executor != null) {
+        try {
+          return this.runChunks(executor, games);
+        } finally {
+          executor.shutdown();
+        }
+      }
+    }
+    return this.pool().invoke(new BatchTask(this, 0, games));
+  }
+
+  // Returns the fork/join pool for the current thread count, replacing the
+  // previous one if threads has changed since it was made.
+  public ForkJoinPool pool() {
+    if (this.pool == null || this.pool.getParallelism() != this.threads) {
+      this.close();
+      this.pool = new ForkJoinPool(this.threads);
+    }
+    return this.pool;
+  }
+
+  // Shuts down the fork/join pool. A later run starts a new one.
+  public void close() {
+    if (this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+  }
+
+  // Submits one task per chunk of games to the executor and adds up the
+  // totals. Each task has its own worker, since virtual threads are not reused.
+  public long[] runChunks(ExecutorService executor, long games) {
+    ArrayList<Future<long[]>> chunks = new ArrayList<Future<long[]>>();
+    for (long from = 0; from < games; from += BatchSimulator.CHUNK) {
+      chunks.add(executor.submit(
+          new BatchChunk(this, from, Math.min(games, from + BatchSimulator.CHUNK))));
+    }
+    long[] totals = new long[3];
+    try {
+      for (Future<long[]> chunk : chunks) {
+        BatchSimulator.addTotals(totals, chunk.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for games.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A game failed.", e.getCause());
+    }
+    return totals;
+  }
+
+  // Returns an executor that starts a virtual thread per task, or null if
+  // this JVM has no virtual threads.
+  public static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  // Returns the calling thread's worker, creating it on first use.
+  public BatchWorker worker() {
+    BatchWorker worker = this.workers.get();
+    if (worker == null) {
+      worker = new BatchWorker(this.boardSize, this.numColors);
+      this.workers.set(worker);
+    }
+    return worker;
+  }
+
+  // Adds the totals in more to totals.
+  public static void addTotals(long[] totals, long[] more) {
+    for (int i = 0; i < totals.length; i++) {
+      totals[i] += more[i];
+    }
+  }
+
+  // Plays games and reports throughput at 1, 2, 4, ... threads up to every
+  // core, then on virtual threads if the JVM has them.
+  // Run with: java FloodIt.BatchSimulator [games] [size] [colors] [random|greedy] [csv file]
+  public static void main(String[] args) throws FileNotFoundException {
+    long games = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+    int size = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+    int colors = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+    Strategy strategy = args.length > 3 && args[3].equals("random")
+        ? new RandomStrategy() : new GreedyStrategy();
+    BatchSimulator sim = new BatchSimulator(size, colors, 1, strategy);
+    if (args.length > 4) {
+      sim.listener = new CsvListener(new PrintStream(args[4]));
+    }
+    int cores = Runtime.getRuntime().availableProcessors();
+
+    // Warm up before timing.
+    sim.threads = cores;
+    sim.run(Math.min(games, 20000));
+
+    System.out.println("threads        games     wins   mean moves      games/s   speedup");
+    double single = 0;
+    for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+      sim.threads = threads;
+      double rate = BatchSimulator.report(sim, games, Integer.toString(threads), single);
+      single = single == 0 ? rate : single;
+      if (threads == cores) {
+        break;
+      }
+    }
+    if (BatchSimulator.newVirtualThreadExecutor() != null) {
+      sim.virtualThreads = true;
+      BatchSimulator.report(sim, games, "virtual", single);
+    }
+    sim.close();
+  }
+
+  // Runs the batch once, prints a row of the report and returns games/s.
+  static double report(BatchSimulator sim, long games, String label, double single) {
+    long start = System.nanoTime();
+    long[] totals = sim.run(games);
+    double rate = totals[0] / ((System.nanoTime() - start) / 1e9);
+    System.out.printf("%-8s %12d %8d %12.2f %12.0f %9.2f%n", label, totals[0], totals[1],
+        (double) totals[2] / totals[0], rate, single == 0 ? 1.0 : rate / single);
+    return rate;
+  }
+}
+
+// One thread's reusable game, Randoms and move list.
+class BatchWorker {
+  FloodGame game;
+  Random boardRand;
+  Random moveRand;
+  IntList cellsPerMove;
+
+  BatchWorker(int boardSize, int numColors) {
+    this.boardRand = new Random();
+    this.moveRand = new Random();
+    this.game = new FloodGame(boardSize, numColors, this.boardRand);
+    this.cellsPerMove = new IntList();
+  }
+
+  // Plays games from until to, adding {games, wins, moves} to totals.
+  public void playRange(BatchSimulator sim, long from, long to, long[] totals) {
+    for (long i = from; i < to; i++) {
+      long seed = BatchSimulator.gameSeed(sim.masterSeed, i);
+      boolean won = this.play(sim.strategy, seed);
+      totals[0]++;
+      totals[1] += won ? 1 : 0;
+      totals[2] += this.cellsPerMove.size();
+      if (sim.listener != null) {
+        sim.listener.gameFinished(i, seed, won, this.cellsPerMove);
+      }
+    }
+  }
+
+  // Plays the game with the given seed until the board is flooded, recording
+  // the cells each move absorbed. Returns true if it was won within the
+  // allowed tries.
+  public boolean play(Strategy strategy, long seed) {
+    this.boardRand.setSeed(seed);
+    this.moveRand.setSeed(~seed);
+    this.game.restart(this.boardRand);
+    this.cellsPerMove.clear();
+    // Every useful move floods a cell, so this only stops strategies that
+    // keep replaying the flood color.
+    int limit = this.game.board.cellCount();
+    while (!this.game.isWon() && this.cellsPerMove.size() < limit) {
+      this.cellsPerMove.add(Math.max(0,
+          this.game.applyMove(strategy.nextMove(this.game, this.moveRand))));
+    }
+    return this.game.isWon() && this.game.currentTries <= this.game.remainingTries;
+  }
+}
+
+// Splits a range of games in half until it is one chunk, then plays it on
+// the current fork/join worker.
+class BatchTask extends RecursiveTask<long[]> {
+  static final long serialVersionUID = 1L;
+
+  BatchSimulator sim;
+  long from;
+  long to;
+
+  BatchTask(BatchSimulator sim, long from, long to) {
+    this.sim = sim;
+    this.from = from;
+    this.to = to;
+  }
+
+  // Returns the {games, wins, moves} totals for this range.
+  protected long[] compute() {
+    if (this.to - this.from <= BatchSimulator.CHUNK) {
+      long[] totals = new long[3];
+      this.sim.worker().playRange(this.sim, this.from, this.to, totals);
+      return totals;
+    }
+    long mid = (this.from + this.to) >>> 1;
+    BatchTask left = new BatchTask(this.sim, this.from, mid);
+    left.fork();
+    long[] totals = new BatchTask(this.sim, mid, this.to).compute();
+    BatchSimulator.addTotals(totals, left.join());
+    return totals;
+  }
+}
+
+// Plays one chunk of games with a worker of its own.
+class BatchChunk implements Callable<long[]> {
+  BatchSimulator sim;
+  long from;
+  long to;
+
+  BatchChunk(BatchSimulator sim, long from, long to) {
+    this.sim = sim;
+    this.from = from;
+    this.to = to;
+  }
+
+  // Returns the {games, wins, moves} totals for this chunk.
+  public long[] call() {
+    long[] totals = new long[3];
+    new BatchWorker(this.sim.boardSize, this.sim.numColors)
+        .playRange(this.sim, this.from, this.to, totals);
+    return totals;
+  }
+}
+
+// Records every game's move count, win and cells flooded, by game number.
+class RecordingListener implements GameListener {
+  int[] moves;
+  boolean[] won;
+  int[] cells;
+
+  RecordingListener(int games) {
+    this.moves = new int[games];
+    this.won = new boolean[games];
+    this.cells = new int[games];
+  }
+
+  // Stores the game's result; games never share a slot, so no locking is needed.
+  public void gameFinished(long game, long seed, boolean won, IntList cellsPerMove) {
+    int i = (int) game;
+    this.moves[i] = cellsPerMove.size();
+    this.won[i] = won;
+    for (int m = 0; m < cellsPerMove.size(); m++) {
+      this.cells[i] += cellsPerMove.get(m);
+    }
+  }
+}
+
+class ExamplesBatchSimulator {
+  // Tests gameSeed method for BatchSimulator.
+  void testGameSeed(Tester t) {
+    t.checkExpect(BatchSimulator.gameSeed(1, 5), BatchSimulator.gameSeed(1, 5));
+    t.checkExpect(BatchSimulator.gameSeed(1, 5) == BatchSimulator.gameSeed(1, 6), false);
+    t.checkExpect(BatchSimulator.gameSeed(1, 5) == BatchSimulator.gameSeed(2, 5), false);
+  }
+
+  // Tests that results are the same whatever the thread count.
+  void testDeterministic(Tester t) {
+    BatchSimulator sim = new BatchSimulator(10, 4, 7, new RandomStrategy());
+    RecordingListener one = new RecordingListener(2000);
+    sim.listener = one;
+    sim.threads = 1;
+    long[] oneTotals = sim.run(2000);
+
+    RecordingListener four = new RecordingListener(2000);
+    sim.listener = four;
+    sim.threads = 4;
+    long[] fourTotals = sim.run(2000);
+
+    t.checkExpect(oneTotals, fourTotals);
+    t.checkExpect(oneTotals[0], 2000L);
+    t.checkExpect(one.moves, four.moves);
+    t.checkExpect(one.won, four.won);
+    t.checkExpect(one.cells, four.cells);
+  }
+
+  // Tests that runs share one pool until the thread count changes, and that
+  // close shuts it down.
+  void testPool(Tester t) {
+    BatchSimulator sim = new BatchSimulator(8, 3, 5, new GreedyStrategy());
+    sim.threads = 2;
+    long[] first = sim.run(300);
+    ForkJoinPool pool = sim.pool;
+    t.checkExpect(pool.getParallelism(), 2);
+    t.checkExpect(sim.run(300), first);
+    t.checkExpect(sim.pool == pool, true);
+
+    sim.threads = 3;
+    t.checkExpect(sim.run(300), first);
+    t.checkExpect(sim.pool == pool, false);
+    t.checkExpect(pool.isShutdown(), true);
+    t.checkExpect(sim.pool.getParallelism(), 3);
+
+    pool = sim.pool;
+    sim.close();
+    t.checkExpect(sim.pool, null);
+    t.checkExpect(pool.isShutdown(), true);
+  }
+
+  // Tests that asking for virtual threads gives the same totals, whether or
+  // not the JVM has them.
+  void testVirtualThreads(Tester t) {
+    BatchSimulator sim = new BatchSimulator(10, 4, 7, new GreedyStrategy());
+    sim.threads = 2;
+    long[] forkJoin = sim.run(1000);
+    sim.virtualThreads = true;
+
+    t.checkExpect(sim.run(1000), forkJoin);
+  }
+
+  // Tests that each game is played on the board FloodGame builds from its
+  // seed, and that every cell is counted once.
+  void testPerGameResults(Tester t) {
+    BatchSimulator sim = new BatchSimulator(8, 3, 11, new GreedyStrategy());
+    RecordingListener results = new RecordingListener(50);
+    sim.listener = results;
+    sim.run(50);
+
+    for (int i = 0; i < 50; i++) {
+      FloodGame game = FloodGame.newGame(8, 3, BatchSimulator.gameSeed(11, i));
+      int initial = game.floodedCells.size();
+      int moves = 0;
+      while (!game.isWon()) {
+        game.applyMove(new GreedyStrategy().nextMove(game, null));
+        moves++;
+      }
+
+      t.checkExpect(results.moves[i], moves);
+      t.checkExpect(results.cells[i], 64 - initial);
+      t.checkExpect(results.won[i], moves <= game.remainingTries);
+    }
+  }
+
+  // Tests play method for BatchWorker.
+  void testPlay(Tester t) {
+    BatchWorker worker = new BatchWorker(2, 2);
+
+    // Random(100) gives the board 1 1 / 0 1, won in one move.
+    t.checkExpect(worker.play(new GreedyStrategy(), 100), true);
+    t.checkExpect(worker.cellsPerMove.toArray(), new int[] {1});
+  }
+
+  // Tests nextMove methods for the strategies.
+  void testStrategies(Tester t) {
+    // 0 1 1
+    // 2 1 1
+    // 2 2 2
+    Board board = new Board(3, 3);
+    byte[] colors = {0, 1, 1, 2, 1, 1, 2, 2, 2};
+    for (int i = 0; i < colors.length; i++) {
+      board.setColor(i, colors[i]);
+    }
+    FloodGame game = new FloodGame(board);
+
+    t.checkExpect(new GreedyStrategy().nextMove(game, null), 1);
+
+    int move = new RandomStrategy().nextMove(game, new Random(3));
+    t.checkExpect(move == 1 || move == 2, true);
+  }
+
+  // Tests gameFinished method for CsvListener.
+  void testCsvListener(Tester t) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CsvListener csv = new CsvListener(new PrintStream(bytes));
+    IntList cells = new IntList();
+    cells.add(3);
+    cells.add(5);
+    csv.gameFinished(4, 99, true, cells);
+
+    t.checkExpect(bytes.toString().trim(), "4,99,true,2,3,5");
+  }
+}
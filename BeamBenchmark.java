@@ -0,0 +1,83 @@
+package FloodIt;
+
+// Solves a fixed set of seeded boards with BeamSolver under several time
+// limits and reports solution length against time: for each board and
+// limit, the moves found, the passes run and the time the best was found,
+// then the mean over the boards next to the greedy solution and, on boards
+// small enough for FloodSolver, the optimum.
+// Run with: java FloodIt.BeamBenchmark [size] [colors] [boards] [threads] [limits in ms, comma separated]
+class BeamBenchmark {
+  // Largest board FloodSolver is asked to solve exactly.
+  static int EXACT_MAX_SIZE = 14;
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int colors = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    int boards = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+    String[] limitArgs = (args.length > 4 ? args[4] : "10,100,1000,5000").split(",");
+    long[] limits = new long[limitArgs.length];
+    for (int i = 0; i < limits.length; i++) {
+      limits[i] = Long.parseLong(limitArgs[i]);
+    }
+    boolean exact = size <= BeamBenchmark.EXACT_MAX_SIZE;
+
+    // Warm up before timing.
+    BeamSolver warmup = new BeamSolver(FloodGame.newGame(size, colors, 1000));
+    warmup.threads = threads;
+    warmup.solve();
+    warmup.close();
+
+    System.out.print("seed   greedy");
+    if (exact) {
+      System.out.print("  optimum");
+    }
+    for (long limit : limits) {
+      System.out.printf("  %7d ms: moves passes   best at", limit);
+    }
+    System.out.println();
+    long greedyTotal = 0;
+    long optimumTotal = 0;
+    long[] movesTotal = new long[limits.length];
+    long[] optimalCount = new long[limits.length];
+    for (long seed = 0; seed < boards; seed++) {
+      FloodGame game = FloodGame.newGame(size, colors, seed);
+      StringBuilder line = new StringBuilder();
+      int greedy = -1;
+      for (int i = 0; i < limits.length; i++) {
+        BeamSolver solver = new BeamSolver(game);
+        solver.threads = threads;
+        solver.timeLimitNanos = limits[i] * 1000000L;
+        int moves = solver.solve().length;
+        solver.close();
+        greedy = solver.greedyLength;
+        movesTotal[i] += moves;
+        if (solver.optimal) {
+          optimalCount[i]++;
+        }
+        line.append(String.format("  %18d %6d %7.1f ms", moves, solver.passes,
+            solver.bestNanos / 1e6));
+      }
+      greedyTotal += greedy;
+      System.out.printf("%-6d %-7d", seed, greedy);
+      if (exact) {
+        int optimum = new FloodSolver(game).solve().length;
+        optimumTotal += optimum;
+        System.out.printf("  %-7d", optimum);
+      }
+      System.out.println(line);
+    }
+
+    System.out.printf("%dx%d, %d colors, %d threads: greedy mean %.2f moves",
+        size, size, colors, threads, (double) greedyTotal / boards);
+    if (exact) {
+      System.out.printf(", optimum mean %.2f", (double) optimumTotal / boards);
+    }
+    System.out.println();
+    for (int i = 0; i < limits.length; i++) {
+      System.out.printf("  %d ms: mean %.2f moves, %.1f%% fewer than greedy, %d of %d proved optimal%n",
+          limits[i], (double) movesTotal[i] / boards,
+          100.0 * (greedyTotal - movesTotal[i]) / greedyTotal, optimalCount[i], boards);
+    }
+  }
+}
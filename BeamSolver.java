@@ -0,0 +1,520 @@
+package FloodIt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import tester.Tester;
+
+// A state in a BeamSolver's search: the move that reached it from its
+// parent, and what the flood looks like after it.
+class BeamNode {
+  BeamNode parent;
+  int color;
+  int depth;
+  int flooded;
+  // Unflooded cells of each color, and the number of colors with any.
+  int[] remaining;
+  int colorsLeft;
+  // Zobrist hash of the flood, as FloodGame.floodHash.
+  long hash;
+  long score;
+
+  BeamNode(BeamNode parent, int color, int depth, int flooded, int[] remaining,
+      int colorsLeft, long hash, long score) {
+    this.parent = parent;
+    this.color = color;
+    this.depth = depth;
+    this.flooded = flooded;
+    this.remaining = remaining;
+    this.colorsLeft = colorsLeft;
+    this.hash = hash;
+    this.score = score;
+  }
+
+  // Returns the colors played from the root to this state.
+  public int[] path() {
+    int[] moves = new int[this.depth];
+    for (BeamNode n = this; n.parent != null; n = n.parent) {
+      moves[n.depth - 1] = n.color;
+    }
+    return moves;
+  }
+}
+
+// Finds a short, though not always shortest, sequence of moves that floods
+// the board, for boards far too big for FloodSolver. It starts from the
+// greedy solution and improves on it with beam searches until a deadline.
+//
+// Each pass of the beam search keeps, at every depth, the width best states
+// by score: cells flooded, plus eliminationWeight for every color no longer
+// left outside the flood. States with the same flood are kept once, and a
+// state is dropped once the colors it has left, each needing a move, mean it
+// cannot beat the best solution so far. Each pass doubles the width of the
+// last, up to maxWidth; a pass that never had to drop a state for want of
+// width has searched every state and proves its solution optimal.
+//
+// States are expanded through FloodGame's flood and undo, one game per
+// thread, each moved between states by undoing back to their common
+// ancestor. The beam is split between threads in order and merged back in
+// the same order, so the result depends on the time limit but never on the
+// thread count.
+class BeamSolver {
+  // Width of the first pass.
+  static int WIDTH = 16;
+  static long TIME_LIMIT_NANOS = 1000000000L;
+
+  FloodGame game;
+  int width;
+  int maxWidth;
+  long timeLimitNanos;
+  int threads;
+  long eliminationWeight;
+
+  // Results of the last solve.
+  int[] best;
+  int greedyLength;
+  boolean optimal;
+  int passes;
+  int lastWidth;
+  long nodes;
+  // Time from the start of the solve to the best solution.
+  long bestNanos;
+
+  // Pool for the threads, kept from one solve to the next.
+  ExecutorService executor;
+  int executorThreads;
+
+  BeamSolver(FloodGame game) {
+    this.game = game;
+    this.width = BeamSolver.WIDTH;
+    this.maxWidth = Integer.MAX_VALUE;
+    this.timeLimitNanos = BeamSolver.TIME_LIMIT_NANOS;
+    this.threads = 1;
+    // An eliminated color is worth as many cells as an average color has.
+    this.eliminationWeight = game.board.cellCount() / game.numColors;
+  }
+
+  // Returns the shortest sequence of colors found that wins the game from
+  // its current state. Always returns a solution, however short the time
+  // limit: at worst the greedy one.
+  public int[] solve() {
+    long start = System.nanoTime();
+    long deadline = start + this.timeLimitNanos;
+    this.optimal = false;
+    this.passes = 0;
+    this.lastWidth = 0;
+    this.nodes = 0;
+
+    BeamWorker[] workers = new BeamWorker[this.threads];
+    for (int i = 0; i < this.threads; i++) {
+      workers[i] = new BeamWorker(this);
+    }
+    BeamNode root = workers[0].root();
+    for (BeamWorker worker : workers) {
+      worker.at = root;
+    }
+    this.best = workers[0].greedy();
+    this.greedyLength = this.best.length;
+    this.bestNanos = System.nanoTime() - start;
+    if (this.best.length == 0) {
+      this.optimal = true;
+      return this.best;
+    }
+
+    ExecutorService executor = this.threads > 1 ? this.executor() : null;
+    for (int w = this.width; w <= this.maxWidth && System.nanoTime() < deadline; w *= 2) {
+      this.lastWidth = w;
+      this.passes++;
+      if (this.pass(root, w, deadline, start, workers, executor)) {
+        this.optimal = true;
+        break;
+      }
+      if (w > this.maxWidth / 2) {
+        break;
+      }
+    }
+    for (BeamWorker worker : workers) {
+      this.nodes += worker.nodes;
+    }
+    return Arrays.copyOf(this.best, this.best.length);
+  }
+
+  // Returns the pool that expands the beam, replacing it if threads has
+  // changed since it was made. Its threads are daemons, so an unclosed
+  // solver never keeps the JVM running.
+  public synchronized ExecutorService executor() {
+    if (this.executor == null || this.executorThreads != this.threads) {
+      if (this.executor != null) {
+        this.executor.shutdown();
+      }
+      this.executor = Executors.newFixedThreadPool(this.threads, BeamSolver::daemon);
+      this.executorThreads = this.threads;
+    }
+    return this.executor;
+  }
+
+  // Returns a new daemon thread that runs the given task.
+  public static Thread daemon(Runnable task) {
+    Thread thread = new Thread(task, "floodit-beam");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  // Shuts down the pool. A later solve starts a new one.
+  public synchronized void close() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+  }
+
+  // Runs one beam search of the given width from root, keeping any better
+  // solution it finds. Returns true if it ran to the end without dropping a
+  // state for want of width; false if it had to, or ran out of time.
+  public boolean pass(BeamNode root, int w, long deadline, long start, BeamWorker[] workers,
+      ExecutorService executor) {
+    ArrayList<BeamNode> beam = new ArrayList<BeamNode>();
+    beam.add(root);
+    boolean complete = true;
+    while (!beam.isEmpty()) {
+      if (System.nanoTime() >= deadline) {
+        return false;
+      }
+      ArrayList<BeamNode> children = this.expand(beam, workers, executor);
+      for (BeamWorker worker : workers) {
+        if (worker.won != null && worker.won.depth < this.best.length) {
+          this.best = worker.won.path();
+          this.bestNanos = System.nanoTime() - start;
+        }
+        worker.won = null;
+      }
+
+      // Stable, so ties keep the order they were generated in.
+      children.sort((a, b) -> Long.compare(b.score, a.score));
+      HashSet<Long> seen = new HashSet<Long>();
+      beam = new ArrayList<BeamNode>();
+      for (BeamNode child : children) {
+        if (seen.add(child.hash)) {
+          if (beam.size() < w) {
+            beam.add(child);
+          } else {
+            complete = false;
+          }
+        }
+      }
+    }
+    return complete;
+  }
+
+  // Returns the children of every state in the beam that could still beat
+  // the best solution, in beam order then color order. Shares the beam out
+  // in order between the workers.
+  public ArrayList<BeamNode> expand(ArrayList<BeamNode> beam, BeamWorker[] workers,
+      ExecutorService executor) {
+    int bestLength = this.best.length;
+    int parts = Math.min(workers.length, beam.size());
+    ArrayList<BeamNode> children = new ArrayList<BeamNode>();
+    if (executor == null || parts == 1) {
+      workers[0].expand(beam, 0, beam.size(), bestLength);
+      children.addAll(workers[0].children);
+      return children;
+    }
+    ArrayList<Future<BeamWorker>> results = new ArrayList<Future<BeamWorker>>();
+    for (int p = 0; p < parts; p++) {
+      BeamWorker worker = workers[p];
+      int from = (int) ((long) beam.size() * p / parts);
+      int to = (int) ((long) beam.size() * (p + 1) / parts);
+      results.add(executor.submit(() -> worker.expand(beam, from, to, bestLength)));
+    }
+    try {
+      for (Future<BeamWorker> result : results) {
+        children.addAll(result.get().children);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while searching.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A search thread failed.", e.getCause());
+    }
+    return children;
+  }
+}
+
+// One thread's share of a BeamSolver: its own copy of the game, moved from
+// state to state as it expands them.
+class BeamWorker {
+  BeamSolver solver;
+  FloodGame game;
+  // The state the game is in.
+  BeamNode at;
+  int cellCount;
+  // Per color scratch: cells and Zobrist keys the color would absorb.
+  int[] growth;
+  long[] absorbedHash;
+
+  // Results of the last expand.
+  ArrayList<BeamNode> children;
+  // A winning child, or null.
+  BeamNode won;
+  long nodes;
+
+  BeamWorker(BeamSolver solver) {
+    this.solver = solver;
+    this.game = solver.game.copy();
+    this.cellCount = this.game.board.cellCount();
+    this.growth = new int[this.game.numColors];
+    this.absorbedHash = new long[this.game.numColors];
+    this.children = new ArrayList<BeamNode>();
+  }
+
+  // Returns a node for the state the game is in now, and makes it the
+  // state this worker is at.
+  public BeamNode root() {
+    RegionGraph g = this.game.regions;
+    int[] remaining = new int[this.game.numColors];
+    for (int r = 0; r < g.regionCount; r++) {
+      if (!this.game.isRegionFlooded(r)) {
+        remaining[g.regionColor[r]] += g.regionSize[r];
+      }
+    }
+    int colorsLeft = 0;
+    for (int cells : remaining) {
+      if (cells > 0) {
+        colorsLeft++;
+      }
+    }
+    this.at = new BeamNode(null, this.game.floodColor, 0, this.game.floodedCells.size(),
+        remaining, colorsLeft, this.game.floodHash, 0);
+    return this.at;
+  }
+
+  // Returns the moves GreedyStrategy plays from the root, leaving the game
+  // back at the root.
+  public int[] greedy() {
+    int before = this.game.moveCount();
+    GreedyStrategy greedy = new GreedyStrategy();
+    while (!this.game.isWon()) {
+      this.game.flood(greedy.nextMove(this.game, null));
+    }
+    int[] moves = new int[this.game.moveCount() - before];
+    for (int i = moves.length - 1; i >= 0; i--) {
+      moves[i] = this.game.moves.get(before + i);
+      this.game.undo();
+    }
+    return moves;
+  }
+
+  // Collects in children the children of beam states from until to that
+  // could still lead to a solution shorter than bestLength, and in won the
+  // first child that floods the board.
+  public BeamWorker expand(ArrayList<BeamNode> beam, int from, int to, int bestLength) {
+    this.children.clear();
+    RegionGraph g = this.game.regions;
+    int numColors = this.game.numColors;
+    for (int i = from; i < to; i++) {
+      BeamNode node = beam.get(i);
+      this.moveTo(node);
+      this.nodes++;
+      Arrays.fill(this.growth, 0);
+      Arrays.fill(this.absorbedHash, 0L);
+      // A move absorbs exactly the bordering regions of its color.
+      for (int k = 0; k < this.game.border.size(); k++) {
+        int r = this.game.border.get(k);
+        int c = g.regionColor[r];
+        this.growth[c] += g.regionSize[r];
+        this.absorbedHash[c] ^= g.regionHash[r];
+      }
+      for (int c = 0; c < numColors; c++) {
+        if (this.growth[c] == 0) {
+          continue;
+        }
+        int colorsLeft = node.colorsLeft;
+        if (node.remaining[c] == this.growth[c]) {
+          colorsLeft--;
+        }
+        // Every color left needs a move of its own.
+        if (node.depth + 1 + colorsLeft >= bestLength) {
+          continue;
+        }
+        int[] remaining = Arrays.copyOf(node.remaining, numColors);
+        remaining[c] -= this.growth[c];
+        int flooded = node.flooded + this.growth[c];
+        long score = flooded + (this.solver.eliminationWeight * (numColors - colorsLeft));
+        BeamNode child = new BeamNode(node, c, node.depth + 1, flooded, remaining, colorsLeft,
+            node.hash ^ this.absorbedHash[c], score);
+        if (flooded == this.cellCount) {
+          if (this.won == null) {
+            this.won = child;
+          }
+        } else {
+          this.children.add(child);
+        }
+      }
+    }
+    return this;
+  }
+
+  // Brings the game to the given state, undoing moves back to where the two
+  // states' lines of play split and replaying the given state's from there.
+  public void moveTo(BeamNode node) {
+    BeamNode here = this.at;
+    BeamNode there = node;
+    while (here.depth > there.depth) {
+      here = here.parent;
+    }
+    while (there.depth > here.depth) {
+      there = there.parent;
+    }
+    while (here != there) {
+      here = here.parent;
+      there = there.parent;
+    }
+    for (int d = this.at.depth; d > here.depth; d--) {
+      this.game.undo();
+    }
+    int[] path = new int[node.depth - here.depth];
+    for (BeamNode n = node; n != here; n = n.parent) {
+      path[n.depth - here.depth - 1] = n.color;
+    }
+    for (int color : path) {
+      this.game.flood(color);
+    }
+    this.at = node;
+  }
+}
+
+class ExamplesBeamSolver {
+  // Returns true if playing the given colors wins the given game from its
+  // current state, leaving the game as it was.
+  boolean wins(FloodGame game, int[] moves) {
+    for (int move : moves) {
+      game.flood(move);
+    }
+    boolean won = game.isWon();
+    for (int i = 0; i < moves.length; i++) {
+      game.undo();
+    }
+    return won;
+  }
+
+  // Tests that with no time the solver returns the greedy solution.
+  void testGreedyStart(Tester t) {
+    FloodGame game = FloodGame.newGame(30, 6, 4);
+    BeamSolver solver = new BeamSolver(game);
+    solver.timeLimitNanos = 0;
+    int[] moves = solver.solve();
+    FloodGame greedy = FloodGame.newGame(30, 6, 4);
+    while (!greedy.isWon()) {
+      greedy.applyMove(new GreedyStrategy().nextMove(greedy, null));
+    }
+
+    t.checkExpect(moves.length, solver.greedyLength);
+    t.checkExpect(moves.length, greedy.moveCount());
+    t.checkExpect(solver.passes, 0);
+    t.checkExpect(this.wins(game, moves), true);
+    t.checkExpect(game.moveCount(), 0);
+  }
+
+  // Tests that the beam search improves on the greedy solution.
+  void testImproves(Tester t) {
+    FloodGame game = FloodGame.newGame(24, 6, 2);
+    BeamSolver solver = new BeamSolver(game);
+    solver.maxWidth = 64;
+    solver.timeLimitNanos = Long.MAX_VALUE / 2;
+    int[] moves = solver.solve();
+
+    t.checkExpect(this.wins(game, moves), true);
+    t.checkExpect(moves.length < solver.greedyLength, true);
+    t.checkExpect(solver.lastWidth, 64);
+    t.checkExpect(solver.passes, 3);
+    t.checkExpect(solver.nodes > 0, true);
+  }
+
+  // Tests that a pass wide enough to keep every state finds the optimum,
+  // and says so.
+  void testOptimal(Tester t) {
+    int mismatches = 0;
+    for (long seed = 0; seed < 10; seed++) {
+      FloodGame game = FloodGame.newGame(7, 4, seed);
+      BeamSolver solver = new BeamSolver(game);
+      solver.timeLimitNanos = Long.MAX_VALUE / 2;
+      int[] moves = solver.solve();
+      int optimum = new FloodSolver(game).solve().length;
+      if (!solver.optimal || moves.length != optimum || !this.wins(game, moves)) {
+        mismatches++;
+      }
+    }
+
+    t.checkExpect(mismatches, 0);
+  }
+
+  // Tests that the solution does not depend on the number of threads.
+  void testThreads(Tester t) {
+    FloodGame game = FloodGame.newGame(20, 5, 6);
+    BeamSolver one = new BeamSolver(game);
+    one.maxWidth = 32;
+    one.timeLimitNanos = Long.MAX_VALUE / 2;
+    BeamSolver three = new BeamSolver(game);
+    three.maxWidth = 32;
+    three.timeLimitNanos = Long.MAX_VALUE / 2;
+    three.threads = 3;
+
+    t.checkExpect(three.solve(), one.solve());
+    t.checkExpect(three.nodes, one.nodes);
+    t.checkExpect(one.executor, null);
+  }
+
+  // Tests that the solver keeps its pool from one solve to the next until
+  // it is closed.
+  void testPool(Tester t) {
+    BeamSolver solver = new BeamSolver(FloodGame.newGame(12, 4, 3));
+    solver.maxWidth = 16;
+    solver.threads = 2;
+    int[] moves = solver.solve();
+    ExecutorService executor = solver.executor;
+
+    t.checkExpect(solver.solve(), moves);
+    t.checkExpect(solver.executor == executor, true);
+
+    solver.close();
+
+    t.checkExpect(executor.isShutdown(), true);
+    t.checkExpect(solver.executor, null);
+    t.checkExpect(solver.solve(), moves);
+
+    solver.close();
+  }
+
+  // Tests solving from partway through a game, and a game already won.
+  void testMidGame(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 4, 3);
+    game.applyMove(game.firstFrontierColor());
+    game.applyMove(game.firstFrontierColor());
+    BeamSolver solver = new BeamSolver(game);
+    solver.maxWidth = 16;
+    int[] moves = solver.solve();
+
+    t.checkExpect(this.wins(game, moves), true);
+    t.checkExpect(game.moveCount(), 2);
+
+    FloodGame won = FloodGame.newGame(2, 2, 100);
+    won.applyMove(0);
+    BeamSolver done = new BeamSolver(won);
+
+    t.checkExpect(done.solve(), new int[0]);
+    t.checkExpect(done.optimal, true);
+  }
+
+  // Tests path method for BeamNode.
+  void testPath(Tester t) {
+    BeamNode root = new BeamNode(null, 0, 0, 1, new int[2], 0, 0, 0);
+    BeamNode a = new BeamNode(root, 1, 1, 2, new int[2], 0, 0, 0);
+    BeamNode b = new BeamNode(a, 0, 2, 3, new int[2], 0, 0, 0);
+
+    t.checkExpect(root.path(), new int[0]);
+    t.checkExpect(b.path(), new int[] {1, 0});
+  }
+}
@@ -0,0 +1,85 @@
+package FloodIt;
+import java.util.Random;
+
+// Compares BitboardGame with FloodGame's region flood on the same boards and
+// move sequences: the time to set up a game, and to set it up and play it out.
+// Run with: java FloodIt.BitboardBenchmark [games at 14x14]
+class BitboardBenchmark {
+  static int[] SIZES = {14, 22, 64, 100, 200};
+  static int NUM_COLORS = 6;
+
+  public static void main(String[] args) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+    System.out.println("size   moves/game   region us/game   bitboard us/game"
+        + "   region us/setup   bitboard us/setup");
+    for (int size : BitboardBenchmark.SIZES) {
+      int n = Math.max(10, games * 14 * 14 / (size * size));
+      int[][] moves = BitboardBenchmark.moveSequences(size, n);
+      Board[] boards = new Board[n];
+      long total = 0;
+      for (int g = 0; g < n; g++) {
+        boards[g] = FloodGame.randomBoard(size, BitboardBenchmark.NUM_COLORS, new Random(g));
+        total += moves[g].length;
+      }
+
+      double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+      // The first rounds warm up; keep the best of each measurement.
+      for (int round = 0; round < 5; round++) {
+        for (int engine = 0; engine < 2; engine++) {
+          double setup = BitboardBenchmark.run(engine, boards, moves, false);
+          double played = BitboardBenchmark.run(engine, boards, moves, true);
+          best[engine] = Math.min(best[engine], played / n / 1000);
+          best[engine + 2] = Math.min(best[engine + 2], setup / n / 1000);
+        }
+      }
+      System.out.printf("%-6d %10.1f %16.1f %18.1f %17.1f %19.1f%n",
+          size, (double) total / n, best[0], best[1], best[2], best[3]);
+    }
+  }
+
+  // Returns, for games 0 until n, the colors a random player chose that
+  // each grew the flood.
+  static int[][] moveSequences(int size, int n) {
+    int[][] moves = new int[n][];
+    Random rand = new Random(1);
+    for (int g = 0; g < n; g++) {
+      FloodGame game = FloodGame.newGame(size, BitboardBenchmark.NUM_COLORS, g);
+      IntList played = new IntList();
+      while (!game.isWon()) {
+        int color = game.regions.regionColor[game.border.get(rand.nextInt(game.border.size()))];
+        game.applyMove(color);
+        played.add(color);
+      }
+      moves[g] = played.toArray();
+    }
+    return moves;
+  }
+
+  // Sets up every game on FloodGame (engine 0) or BitboardGame (engine 1),
+  // and plays its moves if play is true. Returns the nanoseconds taken.
+  static double run(int engine, Board[] boards, int[][] moves, boolean play) {
+    long check = 0;
+    long start = System.nanoTime();
+    for (int g = 0; g < boards.length; g++) {
+      if (engine == 0) {
+        FloodGame game = new FloodGame(boards[g]);
+        for (int i = 0; play && i < moves[g].length; i++) {
+          game.applyMove(moves[g][i]);
+        }
+        check += game.floodedCells.size();
+      } else {
+        BitboardGame game = new BitboardGame(boards[g]);
+        for (int i = 0; play && i < moves[g].length; i++) {
+          game.applyMove(moves[g][i]);
+        }
+        check += game.floodedCount;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    if (play && check != (long) boards.length * boards[0].cellCount()) {
+      throw new IllegalStateException("A game did not end flooded.");
+    }
+    return elapsed;
+  }
+}
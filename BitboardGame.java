@@ -0,0 +1,388 @@
+package FloodIt;
+import java.util.Random;
+import tester.Tester;
+
+// The rules of Flood-It on bitboards: one bit plane per palette color and a
+// plane of flooded cells, each stored row by row in 64-bit words. A move
+// grows the flood a row at a time, 64 cells per word: it takes in the
+// matching cells below and above the flood, spreads along the row with
+// shifts, and revisits the neighbors of every row that grew.
+class BitboardGame {
+  int size;
+  int numColors;
+  // Words per row; boards wider than 64 columns use several.
+  int words;
+  // Valid columns of the last word of every row.
+  long lastWordMask;
+  // Cells of each color: bit j of word w of row r is column 64 * w + j.
+  long[][] planes;
+  long[] flooded;
+  int floodColor;
+  int floodedCount;
+  // Lowest row holding a flooded cell.
+  int floodBottom;
+  // Rows to grow again because a neighboring row grew.
+  IntQueue rowQueue;
+  boolean[] rowQueued;
+  // Number of rows the last flood examined.
+  int floodWork;
+  int remainingTries;
+  int currentTries;
+
+  BitboardGame(Board board) {
+    this.size = board.size;
+    this.numColors = board.numColors;
+    this.words = (this.size + 63) >>> 6;
+    int lastBits = this.size - ((this.words - 1) << 6);
+    this.lastWordMask = lastBits == 64 ? -1L : (1L << lastBits) - 1;
+    this.planes = new long[this.numColors][this.size * this.words];
+    for (int i = 0; i < board.cellCount(); i++) {
+      int row = board.rowOf(i);
+      int col = board.colOf(i);
+      this.planes[board.colorAt(i)][(row * this.words) + (col >>> 6)] |= 1L << col;
+    }
+    this.flooded = new long[this.size * this.words];
+    this.flooded[0] = 1L;
+    this.floodedCount = 1;
+    this.floodBottom = 0;
+    this.rowQueue = new IntQueue();
+    this.rowQueued = new boolean[this.size];
+    this.floodColor = board.colorAt(0);
+    this.flood(this.floodColor);
+    this.remainingTries = FloodGame.allowedTries(this.size, this.numColors);
+    this.currentTries = 0;
+  }
+
+  // Starts a game on the board FloodGame.newGame would build from the seed.
+  public static BitboardGame newGame(int boardSize, int numColors, long seed) {
+    return new BitboardGame(FloodGame.randomBoard(boardSize, numColors, new Random(seed)));
+  }
+
+  // Plays the given color, spending a try. Returns the number of cells the
+  // flood absorbed, or -1 if the color is already the flood color.
+  public int applyMove(int colorIndex) {
+    if (colorIndex < 0 || colorIndex >= this.numColors) {
+      throw new IllegalArgumentException(
+          "Color index must be between 0 and " + (this.numColors - 1) + " inclusive.");
+    }
+    if (colorIndex == this.floodColor) {
+      return -1;
+    }
+    this.currentTries++;
+    return this.flood(colorIndex);
+  }
+
+  // Changes the flood color and absorbs every cell of that color connected to
+  // the flood, without spending a try. Returns the number of cells absorbed.
+  public int flood(int color) {
+    this.floodColor = color;
+    long[] plane = this.planes[color];
+    int before = this.floodedCount;
+    this.floodWork = 0;
+
+    // Rows more than one below the flood cannot change. Every row that grows
+    // puts the rows above and below it back on the queue.
+    int last = Math.min(this.size - 1, this.floodBottom + 1);
+    for (int r = 0; r <= last; r++) {
+      if (this.growRow(plane, r)) {
+        this.queueNeighbors(r);
+      }
+    }
+    while (!this.rowQueue.isEmpty()) {
+      int r = this.rowQueue.removeFirst();
+      this.rowQueued[r] = false;
+      if (this.growRow(plane, r)) {
+        this.queueNeighbors(r);
+      }
+    }
+    return this.floodedCount - before;
+  }
+
+  // Queues the rows above and below row r that are not queued already.
+  public void queueNeighbors(int r) {
+    this.floodBottom = Math.max(this.floodBottom, r);
+    if (r > 0 && !this.rowQueued[r - 1]) {
+      this.rowQueued[r - 1] = true;
+      this.rowQueue.add(r - 1);
+    }
+    if (r < this.size - 1 && !this.rowQueued[r + 1]) {
+      this.rowQueued[r + 1] = true;
+      this.rowQueue.add(r + 1);
+    }
+  }
+
+  // Floods the cells of row r that match the plane and touch the flood in
+  // the rows above and below or elsewhere in row r. Returns true if the row
+  // changed.
+  public boolean growRow(long[] plane, int r) {
+    long[] f = this.flooded;
+    int w = this.words;
+    int start = r * w;
+    boolean changed = false;
+    this.floodWork++;
+
+    // Most rows have nothing to take in; check that before filling.
+    long touching = 0;
+    for (int k = 0; k < w; k++) {
+      int i = start + k;
+      long around = (f[i] << 1) | (f[i] >>> 1);
+      if (r > 0) {
+        around |= f[i - w];
+      }
+      if (r < this.size - 1) {
+        around |= f[i + w];
+      }
+      if (k > 0) {
+        around |= f[i - 1] >>> 63;
+      }
+      if (k < w - 1) {
+        around |= f[i + 1] << 63;
+      }
+      touching |= around & plane[i] & ~f[i];
+    }
+    if (touching == 0) {
+      return false;
+    }
+
+    // Spread along the row: up the words, carrying into the next word's
+    // lowest column, then back down carrying into the highest.
+    for (int k = 0; k < w; k++) {
+      int i = start + k;
+      long incoming = 0;
+      if (r > 0) {
+        incoming |= f[i - w];
+      }
+      if (r < this.size - 1) {
+        incoming |= f[i + w];
+      }
+      if (k > 0) {
+        incoming |= f[i - 1] >>> 63;
+      }
+      long x = BitboardGame.fillRuns(f[i] | (incoming & plane[i]), f[i] | plane[i]);
+      if (x != f[i]) {
+        this.floodedCount += Long.bitCount(x & ~f[i]);
+        f[i] = x;
+        changed = true;
+      }
+    }
+    for (int k = w - 2; k >= 0; k--) {
+      int i = start + k;
+      long x = BitboardGame.fillRuns(f[i] | ((f[i + 1] << 63) & plane[i]), f[i] | plane[i]);
+      if (x != f[i]) {
+        this.floodedCount += Long.bitCount(x & ~f[i]);
+        f[i] = x;
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  // Returns every bit of mask in a run of consecutive mask bits that contains
+  // a bit of seeds. seeds must be a subset of mask.
+  public static long fillRuns(long seeds, long mask) {
+    // Occluded fill: each step doubles how far the seeds spread, and p keeps
+    // only the positions with an unbroken run of mask bits behind them.
+    long g = seeds;
+    long p = mask;
+    g |= p & (g << 1);
+    p &= p << 1;
+    g |= p & (g << 2);
+    p &= p << 2;
+    g |= p & (g << 4);
+    p &= p << 4;
+    g |= p & (g << 8);
+    p &= p << 8;
+    g |= p & (g << 16);
+    p &= p << 16;
+    g |= p & (g << 32);
+
+    p = mask;
+    g |= p & (g >>> 1);
+    p &= p >>> 1;
+    g |= p & (g >>> 2);
+    p &= p >>> 2;
+    g |= p & (g >>> 4);
+    p &= p >>> 4;
+    g |= p & (g >>> 8);
+    p &= p >>> 8;
+    g |= p & (g >>> 16);
+    p &= p >>> 16;
+    g |= p & (g >>> 32);
+    return g;
+  }
+
+  // Returns a bitmask of the colors of the unflooded cells next to the flood.
+  public int touchingColors() {
+    long[] f = this.flooded;
+    int w = this.words;
+    int colors = 0;
+    for (int r = 0; r < this.size; r++) {
+      for (int k = 0; k < w; k++) {
+        int i = (r * w) + k;
+        long around = (f[i] << 1) | (f[i] >>> 1);
+        if (k > 0) {
+          around |= f[i - 1] >>> 63;
+        }
+        if (k < w - 1) {
+          around |= f[i + 1] << 63;
+        }
+        if (r > 0) {
+          around |= f[i - w];
+        }
+        if (r < this.size - 1) {
+          around |= f[i + w];
+        }
+        around &= ~f[i];
+        if (k == w - 1) {
+          around &= this.lastWordMask;
+        }
+        if (around != 0) {
+          for (int c = 0; c < this.numColors; c++) {
+            if ((this.planes[c][i] & around) != 0) {
+              colors |= 1 << c;
+            }
+          }
+        }
+      }
+    }
+    return colors;
+  }
+
+  // Returns true if the cell at the given index of a Board of this size is flooded.
+  public boolean isFlooded(int index) {
+    int row = index / this.size;
+    int col = index % this.size;
+    return (this.flooded[(row * this.words) + (col >>> 6)] & (1L << col)) != 0;
+  }
+
+  // Returns true if every cell has been flooded.
+  public boolean isWon() {
+    return this.floodedCount == this.size * this.size;
+  }
+}
+
+class ExamplesBitboardGame {
+  // Plays the same random moves on a FloodGame and a BitboardGame and checks
+  // after every move that they flood exactly the same cells.
+  void checkSameFloods(Tester t, int size, int colors, long seed) {
+    FloodGame game = FloodGame.newGame(size, colors, seed);
+    BitboardGame bits = BitboardGame.newGame(size, colors, seed);
+    Random moves = new Random(seed);
+    int mismatches = this.countMismatches(game, bits);
+
+    while (!game.isWon()) {
+      int color = moves.nextInt(colors);
+      int absorbed = game.applyMove(color);
+
+      t.checkExpect(bits.applyMove(color), absorbed);
+      mismatches += this.countMismatches(game, bits);
+    }
+    t.checkExpect(bits.isWon(), true);
+    t.checkExpect(bits.currentTries, game.currentTries);
+    t.checkExpect(mismatches, 0);
+  }
+
+  // Returns the number of cells flooded in one game but not the other.
+  int countMismatches(FloodGame game, BitboardGame bits) {
+    int mismatches = 0;
+    for (int i = 0; i < game.board.cellCount(); i++) {
+      if (game.board.isFlooded(i) != bits.isFlooded(i)) {
+        mismatches++;
+      }
+    }
+    return mismatches + Math.abs(game.floodedCells.size() - bits.floodedCount);
+  }
+
+  // Tests that BitboardGame floods the same cells as FloodGame on one-word rows.
+  void testSameFloodsNarrow(Tester t) {
+    for (long seed = 0; seed < 20; seed++) {
+      this.checkSameFloods(t, 2 + (int) (seed * 3), 2 + (int) (seed % 7), seed);
+    }
+    this.checkSameFloods(t, 64, 6, 1);
+  }
+
+  // Tests that BitboardGame floods the same cells as FloodGame when rows
+  // span several words.
+  void testSameFloodsWide(Tester t) {
+    this.checkSameFloods(t, 65, 3, 2);
+    this.checkSameFloods(t, 100, 6, 3);
+    this.checkSameFloods(t, 130, 2, 4);
+    this.checkSameFloods(t, 200, 8, 5);
+  }
+
+  // Tests that a flood can wind back up the board and across words.
+  void testWindingFlood(Tester t) {
+    // Color 1 forms a path that goes down column 0 from under the corner,
+    // across the bottom row, then up column 69 to the top: 69 + 68 + 70 cells.
+    Board board = new Board(70, 2);
+    for (int i = 0; i < board.cellCount(); i++) {
+      board.setColor(i, 0);
+    }
+    for (int r = 0; r < 70; r++) {
+      board.setColor(board.index(r, 69), 1);
+      board.setColor(board.index(r, 0), 1);
+    }
+    for (int c = 0; c < 70; c++) {
+      board.setColor(board.index(69, c), 1);
+    }
+    board.setColor(0, 0);
+    BitboardGame bits = new BitboardGame(board);
+
+    t.checkExpect(bits.floodedCount, 70 * 70 - 207);
+    t.checkExpect(bits.applyMove(1), 207);
+    t.checkExpect(bits.floodWork < 4 * 70, true);
+    t.checkExpect(bits.isWon(), true);
+  }
+
+  // Tests fillRuns method for BitboardGame.
+  void testFillRuns(Tester t) {
+    t.checkExpect(BitboardGame.fillRuns(0b0000100L, 0b1110111L), 0b0000111L);
+    t.checkExpect(BitboardGame.fillRuns(0b0010000L, 0b1110111L), 0b1110000L);
+    t.checkExpect(BitboardGame.fillRuns(0b1000100L, 0b1110111L), 0b1110111L);
+    t.checkExpect(BitboardGame.fillRuns(1L, -1L), -1L);
+    t.checkExpect(BitboardGame.fillRuns(1L << 63, -1L), -1L);
+    t.checkExpect(BitboardGame.fillRuns(1L << 40, ~(1L << 20)), -1L << 21);
+    t.checkExpect(BitboardGame.fillRuns(0L, -1L), 0L);
+  }
+
+  // Tests touchingColors method for BitboardGame.
+  void testTouchingColors(Tester t) {
+    // 0 1 1
+    // 2 1 1
+    // 2 2 2
+    Board board = new Board(3, 3);
+    byte[] colors = {0, 1, 1, 2, 1, 1, 2, 2, 2};
+    for (int i = 0; i < colors.length; i++) {
+      board.setColor(i, colors[i]);
+    }
+    BitboardGame bits = new BitboardGame(board);
+
+    t.checkExpect(bits.touchingColors(), 0b110);
+
+    bits.applyMove(1);
+
+    t.checkExpect(bits.touchingColors(), 0b100);
+
+    bits.applyMove(2);
+
+    t.checkExpect(bits.touchingColors(), 0);
+  }
+
+  // Tests the BitboardGame constructor and applyMove errors.
+  void testConstructor(Tester t) {
+    // Random(100) gives the board 1 1 / 0 1.
+    BitboardGame bits = new BitboardGame(FloodGame.randomBoard(2, 2, new Random(100)));
+
+    t.checkExpect(bits.words, 1);
+    t.checkExpect(bits.lastWordMask, 0b11L);
+    t.checkExpect(bits.planes[1], new long[] {0b11L, 0b10L});
+    t.checkExpect(bits.flooded, new long[] {0b11L, 0b10L});
+    t.checkExpect(bits.floodedCount, 3);
+    t.checkExpect(bits.applyMove(1), -1);
+    t.checkException(
+        new IllegalArgumentException("Color index must be between 0 and 1 inclusive."),
+        bits, "applyMove", 2);
+    t.checkExpect(new BitboardGame(new Board(65, 2)).lastWordMask, 1L);
+    t.checkExpect(new BitboardGame(new Board(128, 2)).lastWordMask, -1L);
+  }
+}
@@ -0,0 +1,218 @@
+package FloodIt;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Represents the game area as a flat row-major array of palette indices,
+// plus a bitset marking which cells have been flooded.
+class Board {
+  int size;
+  int numColors;
+  // Palette index of every cell; the cell at (row, col) lives at row * size + col.
+  byte[] colors;
+  // One bit per cell, set once the cell belongs to the flood.
+  long[] flooded;
+
+  Board(int size, int numColors) {
+    this.size = size;
+    this.numColors = numColors;
+    this.colors = new byte[size * size];
+    this.flooded = new long[((size * size) + 63) >>> 6];
+  }
+
+  // Fills every cell with a random palette index, row by row, and clears the flood.
+  public void fill(Random rand) {
+    for (int i = 0; i < this.colors.length; i++) {
+      this.colors[i] = (byte) rand.nextInt(this.numColors);
+    }
+    Arrays.fill(this.flooded, 0L);
+  }
+
+  // Returns the number of cells on the board.
+  public int cellCount() {
+    return this.colors.length;
+  }
+
+  // Returns the index of the cell at the given row and column.
+  public int index(int row, int col) {
+    return (row * this.size) + col;
+  }
+
+  // Returns the row of the cell at the given index.
+  public int rowOf(int index) {
+    return index / this.size;
+  }
+
+  // Returns the column of the cell at the given index.
+  public int colOf(int index) {
+    return index % this.size;
+  }
+
+  // Returns the palette index of the cell at the given index.
+  public int colorAt(int index) {
+    return this.colors[index];
+  }
+
+  // Sets the palette index of the cell at the given index.
+  public void setColor(int index, int color) {
+    this.colors[index] = (byte) color;
+  }
+
+  // Returns true if the cell at the given index has been flooded.
+  public boolean isFlooded(int index) {
+    return (this.flooded[index >>> 6] & (1L << index)) != 0;
+  }
+
+  // Marks the cell at the given index as flooded.
+  public void setFlooded(int index) {
+    this.flooded[index >>> 6] |= 1L << index;
+  }
+
+  // Marks the cell at the given index as not flooded.
+  public void clearFlooded(int index) {
+    this.flooded[index >>> 6] &= ~(1L << index);
+  }
+
+  // Returns the index of the cell to the left, or -1 if there is none.
+  public int left(int index) {
+    return index % this.size == 0 ? -1 : index - 1;
+  }
+
+  // Returns the index of the cell above, or -1 if there is none.
+  public int top(int index) {
+    return index < this.size ? -1 : index - this.size;
+  }
+
+  // Returns the index of the cell to the right, or -1 if there is none.
+  public int right(int index) {
+    return index % this.size == this.size - 1 ? -1 : index + 1;
+  }
+
+  // Returns the index of the cell below, or -1 if there is none.
+  public int bottom(int index) {
+    return index >= this.colors.length - this.size ? -1 : index + this.size;
+  }
+
+  // Returns true if any neighbor of the cell at the given index is unflooded.
+  public boolean hasUnfloodedNeighbor(int index) {
+    int left = this.left(index);
+    int top = this.top(index);
+    int right = this.right(index);
+    int bottom = this.bottom(index);
+    return (left >= 0 && !this.isFlooded(left))
+        || (top >= 0 && !this.isFlooded(top))
+        || (right >= 0 && !this.isFlooded(right))
+        || (bottom >= 0 && !this.isFlooded(bottom));
+  }
+
+  // Returns the number of bytes held by the color and flood arrays.
+  public long memoryBytes() {
+    return this.colors.length + (8L * this.flooded.length);
+  }
+}
+
+class ExamplesBoard {
+  Board board;
+
+  // Initializes conditions.
+  void initBoard() {
+    this.board = new Board(3, 4);
+    this.board.fill(new Random(100));
+  }
+
+  // Tests fill method for Board.
+  void testFill(Tester t) {
+    this.initBoard();
+
+    Random rand = new Random(100);
+    for (int i = 0; i < this.board.cellCount(); i++) {
+      t.checkExpect(this.board.colorAt(i), rand.nextInt(4));
+    }
+  }
+
+  // Tests index, rowOf and colOf methods for Board.
+  void testIndex(Tester t) {
+    this.initBoard();
+
+    t.checkExpect(this.board.cellCount(), 9);
+    t.checkExpect(this.board.index(0, 0), 0);
+    t.checkExpect(this.board.index(1, 2), 5);
+    t.checkExpect(this.board.rowOf(5), 1);
+    t.checkExpect(this.board.colOf(5), 2);
+  }
+
+  // Tests setColor method for Board.
+  void testSetColor(Tester t) {
+    this.initBoard();
+
+    this.board.setColor(4, 3);
+    t.checkExpect(this.board.colorAt(4), 3);
+  }
+
+  // Tests isFlooded, setFlooded and clearFlooded methods for Board.
+  void testFlooded(Tester t) {
+    Board big = new Board(10, 2);
+
+    t.checkExpect(big.isFlooded(0), false);
+    t.checkExpect(big.isFlooded(70), false);
+
+    big.setFlooded(70);
+
+    t.checkExpect(big.isFlooded(70), true);
+    t.checkExpect(big.isFlooded(6), false);
+    t.checkExpect(big.flooded.length, 2);
+
+    big.setFlooded(71);
+    big.clearFlooded(70);
+
+    t.checkExpect(big.isFlooded(70), false);
+    t.checkExpect(big.isFlooded(71), true);
+  }
+
+  // Tests left, top, right and bottom methods for Board.
+  void testNeighbors(Tester t) {
+    this.initBoard();
+
+    // top-left corner
+    t.checkExpect(this.board.left(0), -1);
+    t.checkExpect(this.board.top(0), -1);
+    t.checkExpect(this.board.right(0), 1);
+    t.checkExpect(this.board.bottom(0), 3);
+
+    // bottom-right corner
+    t.checkExpect(this.board.left(8), 7);
+    t.checkExpect(this.board.top(8), 5);
+    t.checkExpect(this.board.right(8), -1);
+    t.checkExpect(this.board.bottom(8), -1);
+
+    // center
+    t.checkExpect(this.board.left(4), 3);
+    t.checkExpect(this.board.top(4), 1);
+    t.checkExpect(this.board.right(4), 5);
+    t.checkExpect(this.board.bottom(4), 7);
+
+    // right edge does not wrap onto the next row
+    t.checkExpect(this.board.right(2), -1);
+    t.checkExpect(this.board.left(3), -1);
+  }
+
+  // Tests hasUnfloodedNeighbor method for Board.
+  void testHasUnfloodedNeighbor(Tester t) {
+    Board small = new Board(2, 2);
+
+    t.checkExpect(small.hasUnfloodedNeighbor(0), true);
+
+    small.setFlooded(1);
+    small.setFlooded(2);
+
+    t.checkExpect(small.hasUnfloodedNeighbor(0), false);
+    t.checkExpect(small.hasUnfloodedNeighbor(1), true);
+  }
+
+  // Tests memoryBytes method for Board.
+  void testMemoryBytes(Tester t) {
+    this.initBoard();
+
+    t.checkExpect(this.board.memoryBytes(), 9L + 8L);
+  }
+}
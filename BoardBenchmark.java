@@ -0,0 +1,136 @@
+package FloodIt;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Random;
+
+// The object-per-cell layout the board used before Board existed: a boxed Color,
+// pixel coordinates and four neighbor pointers. Kept only so BoardBenchmark can
+// compare against it.
+class LinkedCell {
+  int x;
+  int y;
+  Color color;
+  boolean flooded;
+  LinkedCell left;
+  LinkedCell top;
+  LinkedCell right;
+  LinkedCell bottom;
+
+  LinkedCell(int x, int y, Color color) {
+    this.x = x;
+    this.y = y;
+    this.color = color;
+  }
+}
+
+// Compares memory use and build time of the linked-cell board against Board.
+// Run with: java FloodIt.BoardBenchmark [sizes...]
+class BoardBenchmark {
+  static int NUM_COLORS = 6;
+  // The colors and cell size the game drew with when it used this layout.
+  static Color[] COLORS = {Color.BLUE, Color.RED, Color.PINK, Color.GREEN, Color.GRAY, Color.YELLOW};
+  static int CELL_SIZE = 25;
+  static int REPEATS = 3;
+
+  public static void main(String[] args) {
+    int[] sizes = {22, 500, 4000};
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+
+    System.out.println("size      layout     build ms     heap bytes   bytes/cell");
+    for (int size : sizes) {
+      BoardBenchmark.report(size, "linked", BoardBenchmark.measureLinked(size));
+      BoardBenchmark.report(size, "packed", BoardBenchmark.measurePacked(size));
+    }
+  }
+
+  // Prints one result row; a null result means the layout did not fit in the heap.
+  static void report(int size, String layout, long[] result) {
+    if (result == null) {
+      System.out.printf("%-9d %-10s %s%n", size, layout, "out of memory");
+      return;
+    }
+    long cells = (long) size * size;
+    System.out.printf("%-9d %-10s %9.2f %14d %12.1f%n",
+        size, layout, result[0] / 1e6, result[1], (double) result[1] / cells);
+  }
+
+  // Returns {best build nanos, retained heap bytes} for the linked layout.
+  static long[] measureLinked(int size) {
+    try {
+      long best = Long.MAX_VALUE;
+      long bytes = 0;
+      for (int r = 0; r < BoardBenchmark.REPEATS; r++) {
+        long before = BoardBenchmark.usedHeap();
+        long start = System.nanoTime();
+        ArrayList<ArrayList<LinkedCell>> board = BoardBenchmark.buildLinked(size, new Random(r));
+        best = Math.min(best, System.nanoTime() - start);
+        bytes = BoardBenchmark.usedHeap() - before;
+        if (board.get(size - 1).get(size - 1).color == null) {
+          throw new IllegalStateException("Board was not filled.");
+        }
+      }
+      return new long[] {best, bytes};
+    } catch (OutOfMemoryError e) {
+      return null;
+    }
+  }
+
+  // Returns {best build nanos, retained heap bytes} for the packed layout.
+  static long[] measurePacked(int size) {
+    try {
+      long best = Long.MAX_VALUE;
+      long bytes = 0;
+      for (int r = 0; r < BoardBenchmark.REPEATS; r++) {
+        long before = BoardBenchmark.usedHeap();
+        long start = System.nanoTime();
+        Board board = new Board(size, BoardBenchmark.NUM_COLORS);
+        board.fill(new Random(r));
+        best = Math.min(best, System.nanoTime() - start);
+        bytes = BoardBenchmark.usedHeap() - before;
+        if (board.colorAt(board.cellCount() - 1) < 0) {
+          throw new IllegalStateException("Board was not filled.");
+        }
+      }
+      return new long[] {best, bytes};
+    } catch (OutOfMemoryError e) {
+      return null;
+    }
+  }
+
+  // Builds and links a board the way the game used to.
+  static ArrayList<ArrayList<LinkedCell>> buildLinked(int size, Random rand) {
+    ArrayList<ArrayList<LinkedCell>> board = new ArrayList<ArrayList<LinkedCell>>();
+    for (int i = 0; i < size; i++) {
+      ArrayList<LinkedCell> row = new ArrayList<LinkedCell>();
+      for (int j = 0; j < size; j++) {
+        Color color = BoardBenchmark.COLORS[rand.nextInt(BoardBenchmark.NUM_COLORS)];
+        row.add(new LinkedCell(j * BoardBenchmark.CELL_SIZE, i * BoardBenchmark.CELL_SIZE, color));
+      }
+      board.add(row);
+    }
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        LinkedCell c = board.get(i).get(j);
+        c.left = j > 0 ? board.get(i).get(j - 1) : null;
+        c.top = i > 0 ? board.get(i - 1).get(j) : null;
+        c.right = j < size - 1 ? board.get(i).get(j + 1) : null;
+        c.bottom = i < size - 1 ? board.get(i + 1).get(j) : null;
+      }
+    }
+    return board;
+  }
+
+  // Returns the heap in use after asking for a collection.
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return rt.totalMemory() - rt.freeMemory();
+  }
+}
@@ -0,0 +1,451 @@
+package FloodIt;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import tester.Tester;
+
+// Finds boards whose shortest solution is between minMoves and maxMoves.
+// Candidate i is the board FloodGame.newGame builds from
+// BatchSimulator.gameSeed(masterSeed, i). Each is first tried against two
+// cheap bounds: FloodSolver's lower bound, and the length of a greedy game
+// as an upper one. A board whose bounds miss the range is dropped, one whose
+// bounds meet is taken as it is, and only the rest are solved exactly.
+// Candidates are checked on several threads at once, but the boards found
+// are always the first ones in candidate order.
+class BoardGenerator {
+  // Tries a generated game allows beyond the optimum.
+  static int SLACK = 3;
+  // Nodes an exact solve may search before the board is dropped.
+  static long NODE_LIMIT = 2000000;
+  // Candidates one call to generate may check before it gives up, so a range
+  // that no board of this size and color count meets fails instead of
+  // searching forever.
+  static long CANDIDATE_LIMIT = 1000000;
+  // Entries, as a power of two, of each thread's transposition table.
+  static int TABLE_BITS = 16;
+  // Indexes of the counts in a stats array.
+  static int CANDIDATES = 0;
+  // Dropped because a bound was outside the range.
+  static int BOUND_REJECTED = 1;
+  // Taken because the bounds were equal.
+  static int BOUNDS_MET = 2;
+  static int SOLVED = 3;
+  // Dropped because the solve reached the node limit.
+  static int GAVE_UP = 4;
+  // Dropped because the optimum was outside the range.
+  static int SOLVE_REJECTED = 5;
+  static int ACCEPTED = 6;
+
+  int boardSize;
+  int numColors;
+  int minMoves;
+  int maxMoves;
+  long masterSeed;
+  int threads;
+  long nodeLimit;
+  long candidateLimit;
+  // First candidate nextGame has not looked at.
+  long nextCandidate;
+  // The board nextBoard deals after the last one, being found in the
+  // background, or null before the first.
+  Future<GeneratedBoard> upcoming;
+  // Counts from the last call to generate, indexed as above.
+  long[] stats;
+  long nanos;
+  // Checks candidates for every call, with the thread count it was made
+  // with; and finds the upcoming board. Both are null until first used.
+  ExecutorService executor;
+  int executorThreads;
+  ExecutorService prefetcher;
+
+  BoardGenerator(int boardSize, int numColors, int minMoves, int maxMoves, long masterSeed) {
+    FloodGame.checkValidBoardSize(boardSize);
+    FloodGame.checkValidNumColors(numColors);
+    if (minMoves < 0 || minMoves > maxMoves) {
+      throw new IllegalArgumentException("Move range must not be empty.");
+    }
+    this.boardSize = boardSize;
+    this.numColors = numColors;
+    this.minMoves = minMoves;
+    this.maxMoves = maxMoves;
+    this.masterSeed = masterSeed;
+    this.threads = Runtime.getRuntime().availableProcessors();
+    this.nodeLimit = BoardGenerator.NODE_LIMIT;
+    this.candidateLimit = BoardGenerator.CANDIDATE_LIMIT;
+    this.stats = new long[7];
+  }
+
+  // Returns the first count boards in range at or after candidate from, in
+  // candidate order, and keeps the counts and time in stats and nanos.
+  // Throws exception if candidateLimit candidates hold fewer than count.
+  public ArrayList<GeneratedBoard> generate(long from, int count) {
+    long start = System.nanoTime();
+    long[] stats = new long[7];
+    ArrayList<GeneratedBoard> boards = this.find(from, count, stats);
+    this.stats = stats;
+    this.nanos = System.nanoTime() - start;
+    return boards;
+  }
+
+  // Returns the first count boards in range at or after candidate from, in
+  // candidate order, adding the counts to stats.
+  public ArrayList<GeneratedBoard> find(long from, int count, long[] stats) {
+    AtomicLong next = new AtomicLong(from);
+    AtomicInteger found = new AtomicInteger();
+    long end = from + this.candidateLimit;
+    ExecutorService executor = this.executor();
+    ArrayList<Future<GeneratorWorker>> workers = new ArrayList<Future<GeneratorWorker>>();
+    for (int i = 0; i < this.executorThreads; i++) {
+      workers.add(executor.submit(new GeneratorWorker(this, next, end, found, count)));
+    }
+    ArrayList<GeneratedBoard> boards = new ArrayList<GeneratedBoard>();
+    try {
+      for (Future<GeneratorWorker> worker : workers) {
+        GeneratorWorker w = worker.get();
+        boards.addAll(w.boards);
+        BatchSimulator.addTotals(stats, w.stats);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while generating boards.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A candidate failed.", e.getCause());
+    }
+    if (boards.size() < count) {
+      throw new IllegalStateException("Found " + boards.size() + " of " + count
+          + " boards in range among " + this.candidateLimit + " candidates.");
+    }
+    // Every candidate up to the last one claimed was checked, so the first
+    // count found are the same whatever the threads did.
+    boards.sort((a, b) -> Long.compare(a.candidate, b.candidate));
+    while (boards.size() > count) {
+      boards.remove(boards.size() - 1);
+    }
+    return boards;
+  }
+
+  // Returns the pool that checks candidates, replacing it if threads has
+  // changed since it was made. Its threads are daemons, so an unclosed
+  // generator never keeps the JVM running.
+  public synchronized ExecutorService executor() {
+    if (this.executor == null || this.executorThreads != this.threads) {
+      if (this.executor != null) {
+        this.executor.shutdown();
+      }
+      this.executor = Executors.newFixedThreadPool(this.threads, BoardGenerator::daemon);
+      this.executorThreads = this.threads;
+    }
+    return this.executor;
+  }
+
+  // Returns a new daemon thread that runs the given task.
+  public static Thread daemon(Runnable task) {
+    Thread thread = new Thread(task, "floodit-generate");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  // Shuts down the pools. A later call starts new ones.
+  public synchronized void close() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+    if (this.prefetcher != null) {
+      this.prefetcher.shutdownNow();
+      this.prefetcher = null;
+    }
+    this.upcoming = null;
+  }
+
+  // Returns a game on the next board in range, allowing SLACK tries beyond
+  // its optimum.
+  public FloodGame nextGame() {
+    return this.nextBoard().newGame(BoardGenerator.SLACK);
+  }
+
+  // Returns the next board in range after the last one dealt, and starts
+  // finding the one after it in the background, so that only the first call
+  // waits for a search.
+  public GeneratedBoard nextBoard() {
+    GeneratedBoard board;
+    if (this.upcoming == null) {
+      board = this.find(this.nextCandidate, 1, new long[7]).get(0);
+    } else {
+      try {
+        board = this.upcoming.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while generating boards.", e);
+      } catch (ExecutionException e) {
+        this.upcoming = null;
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException("A candidate failed.", e.getCause());
+      }
+    }
+    this.nextCandidate = board.candidate + 1;
+    long after = this.nextCandidate;
+    this.upcoming = this.prefetcher().submit(() -> this.find(after, 1, new long[7]).get(0));
+    return board;
+  }
+
+  // Returns the single thread that finds upcoming boards.
+  public synchronized ExecutorService prefetcher() {
+    if (this.prefetcher == null) {
+      this.prefetcher = Executors.newSingleThreadExecutor(BoardGenerator::daemon);
+    }
+    return this.prefetcher;
+  }
+
+  // Returns the board of the given candidate if its shortest solution is in
+  // range, or null, counting the outcome in stats. table is cleared first,
+  // so the search is the same on every thread.
+  public GeneratedBoard check(long candidate, TranspositionTable table, long[] stats) {
+    stats[BoardGenerator.CANDIDATES]++;
+    long seed = BatchSimulator.gameSeed(this.masterSeed, candidate);
+    FloodGame game = FloodGame.newGame(this.boardSize, this.numColors, seed);
+    table.clear();
+    FloodSolver solver = new FloodSolver(game, table);
+    solver.nodeLimit = this.nodeLimit;
+    int lower = solver.rootBound();
+    if (lower > this.maxMoves) {
+      stats[BoardGenerator.BOUND_REJECTED]++;
+      return null;
+    }
+
+    GreedyStrategy greedy = new GreedyStrategy();
+    while (!game.isWon()) {
+      game.applyMove(greedy.nextMove(game, null));
+    }
+    int upper = game.moveCount();
+    if (upper < this.minMoves) {
+      stats[BoardGenerator.BOUND_REJECTED]++;
+      return null;
+    }
+
+    int[] solution;
+    if (lower == upper) {
+      stats[BoardGenerator.BOUNDS_MET]++;
+      solution = game.moves.toArray();
+    } else {
+      solution = solver.solve();
+      if (solution == null) {
+        stats[BoardGenerator.GAVE_UP]++;
+        return null;
+      }
+      stats[BoardGenerator.SOLVED]++;
+      if (solution.length < this.minMoves || solution.length > this.maxMoves) {
+        stats[BoardGenerator.SOLVE_REJECTED]++;
+        return null;
+      }
+    }
+    stats[BoardGenerator.ACCEPTED]++;
+    return new GeneratedBoard(candidate, seed, this.boardSize, this.numColors, solution);
+  }
+
+  // Returns a summary of the last call to generate.
+  public String report() {
+    double seconds = this.nanos / 1e9;
+    return String.format("%dx%d, %d colors, %d-%d moves on %d threads: "
+        + "%d candidates in %.2f s, %.0f candidates/s, %.1f boards/s%n"
+        + "dropped on bounds %d, taken on bounds %d, solved %d (%d out of range), "
+        + "gave up %d, accepted %d%n",
+        this.boardSize, this.boardSize, this.numColors, this.minMoves, this.maxMoves,
+        this.threads, this.stats[BoardGenerator.CANDIDATES], seconds,
+        this.stats[BoardGenerator.CANDIDATES] / seconds,
+        this.stats[BoardGenerator.ACCEPTED] / seconds,
+        this.stats[BoardGenerator.BOUND_REJECTED], this.stats[BoardGenerator.BOUNDS_MET],
+        this.stats[BoardGenerator.SOLVED], this.stats[BoardGenerator.SOLVE_REJECTED],
+        this.stats[BoardGenerator.GAVE_UP], this.stats[BoardGenerator.ACCEPTED]);
+  }
+
+  // Generates boards in a range of optimal lengths and reports throughput.
+  // Run with: java FloodIt.BoardGenerator [size] [colors] [min] [max] [boards] [threads]
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+    int colors = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+    int min = args.length > 2 ? Integer.parseInt(args[2]) : 18;
+    int max = args.length > 3 ? Integer.parseInt(args[3]) : 19;
+    int boards = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+    BoardGenerator generator = new BoardGenerator(size, colors, min, max, 1);
+    if (args.length > 5) {
+      generator.threads = Integer.parseInt(args[5]);
+    }
+    // Warm up before timing.
+    generator.generate(1L << 40, Math.max(1, boards / 10));
+    generator.generate(0, boards);
+    System.out.print(generator.report());
+    generator.close();
+  }
+}
+
+// Checks candidates for a BoardGenerator until enough boards have been found
+// or the candidates run out, claiming them in order from a counter shared
+// with the other workers.
+class GeneratorWorker implements Callable<GeneratorWorker> {
+  BoardGenerator generator;
+  AtomicLong next;
+  // First candidate not to check.
+  long end;
+  AtomicInteger found;
+  int count;
+  TranspositionTable table;
+  ArrayList<GeneratedBoard> boards;
+  long[] stats;
+
+  GeneratorWorker(BoardGenerator generator, AtomicLong next, long end, AtomicInteger found,
+      int count) {
+    this.generator = generator;
+    this.next = next;
+    this.end = end;
+    this.found = found;
+    this.count = count;
+    this.table = new TranspositionTable(BoardGenerator.TABLE_BITS);
+    this.boards = new ArrayList<GeneratedBoard>();
+    this.stats = new long[7];
+  }
+
+  // Checks candidates until the workers between them have found enough, or
+  // every candidate before end is claimed.
+  public GeneratorWorker call() {
+    while (this.found.get() < this.count) {
+      long candidate = this.next.getAndIncrement();
+      if (candidate >= this.end) {
+        return this;
+      }
+      GeneratedBoard board = this.generator.check(candidate, this.table, this.stats);
+      if (board != null) {
+        this.boards.add(board);
+        this.found.incrementAndGet();
+      }
+    }
+    return this;
+  }
+}
+
+class ExamplesBoardGenerator {
+  // Tests the BoardGenerator constructor.
+  void testConstructor(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("Move range must not be empty."),
+        "FloodIt.BoardGenerator", 10, 4, 9, 8, 0L);
+    t.checkConstructorException(new IllegalArgumentException("Board size must be at least 2."),
+        "FloodIt.BoardGenerator", 1, 4, 1, 8, 0L);
+  }
+
+  // Tests that every board generated is solved optimally within range, by
+  // the solution it comes with.
+  void testGenerate(Tester t) {
+    BoardGenerator generator = new BoardGenerator(8, 4, 9, 10, 3);
+    ArrayList<GeneratedBoard> boards = generator.generate(0, 6);
+    int wrong = 0;
+
+    for (GeneratedBoard board : boards) {
+      FloodGame game = FloodGame.newGame(8, 4, board.seed);
+      int optimum = new FloodSolver(game).solve().length;
+      for (int move : board.solution) {
+        game.applyMove(move);
+      }
+      if (!game.isWon() || optimum != board.optimum() || optimum < 9 || optimum > 10) {
+        wrong++;
+      }
+    }
+
+    t.checkExpect(boards.size(), 6);
+    t.checkExpect(wrong, 0);
+    t.checkExpect(generator.stats[BoardGenerator.ACCEPTED] >= 6, true);
+    t.checkExpect(generator.stats[BoardGenerator.CANDIDATES]
+        > generator.stats[BoardGenerator.ACCEPTED], true);
+  }
+
+  // Tests that the boards found are the same on one thread and on several.
+  void testDeterministic(Tester t) {
+    BoardGenerator one = new BoardGenerator(10, 5, 12, 13, 8);
+    one.threads = 1;
+    BoardGenerator four = new BoardGenerator(10, 5, 12, 13, 8);
+    four.threads = 4;
+    ArrayList<GeneratedBoard> a = one.generate(0, 5);
+    ArrayList<GeneratedBoard> b = four.generate(0, 5);
+    boolean same = a.size() == b.size();
+
+    for (int i = 0; same && i < a.size(); i++) {
+      same = a.get(i).candidate == b.get(i).candidate && a.get(i).optimum() == b.get(i).optimum();
+    }
+
+    t.checkExpect(a.size(), 5);
+    t.checkExpect(same, true);
+  }
+
+  // Tests that the cheap bounds settle boards far outside the range without
+  // an exact solve.
+  void testBoundsReject(Tester t) {
+    BoardGenerator generator = new BoardGenerator(12, 6, 40, 50, 2);
+    generator.threads = 1;
+    long[] stats = new long[7];
+    TranspositionTable table = new TranspositionTable(8);
+    for (long i = 0; i < 20; i++) {
+      t.checkExpect(generator.check(i, table, stats), null);
+    }
+
+    t.checkExpect(stats[BoardGenerator.BOUND_REJECTED], 20L);
+    t.checkExpect(stats[BoardGenerator.SOLVED], 0L);
+  }
+
+  // Tests that nextGame moves through the boards in order and sets the
+  // tries from the optimum.
+  void testNextGame(Tester t) {
+    BoardGenerator generator = new BoardGenerator(8, 4, 9, 10, 3);
+    ArrayList<GeneratedBoard> boards = generator.generate(0, 3);
+    FloodGame first = generator.nextGame();
+    FloodGame second = generator.nextGame();
+
+    t.checkExpect(first.board.colors,
+        FloodGame.newGame(8, 4, boards.get(0).seed).board.colors);
+    t.checkExpect(first.remainingTries, boards.get(0).optimum() + BoardGenerator.SLACK);
+    t.checkExpect(second.board.colors,
+        FloodGame.newGame(8, 4, boards.get(1).seed).board.colors);
+    t.checkExpect(generator.nextCandidate, boards.get(1).candidate + 1);
+    t.checkExpect(generator.nextBoard().candidate, boards.get(2).candidate);
+    generator.close();
+  }
+
+  // Tests that nextBoard finds the board after the one it deals in the
+  // background, and that the calls share one pool.
+  void testPrefetch(Tester t) throws Exception {
+    BoardGenerator generator = new BoardGenerator(8, 4, 9, 10, 3);
+    generator.threads = 2;
+    ArrayList<GeneratedBoard> boards = generator.generate(0, 3);
+    ExecutorService executor = generator.executor;
+
+    t.checkExpect(generator.upcoming, null);
+    t.checkExpect(generator.nextBoard().candidate, boards.get(0).candidate);
+    t.checkExpect(generator.upcoming.get().candidate, boards.get(1).candidate);
+    t.checkExpect(generator.nextBoard().candidate, boards.get(1).candidate);
+    t.checkExpect(generator.upcoming.get().candidate, boards.get(2).candidate);
+    t.checkExpect(generator.executor == executor, true);
+
+    generator.close();
+
+    t.checkExpect(executor.isShutdown(), true);
+    t.checkExpect(generator.upcoming, null);
+  }
+
+  // Tests that a range no board meets fails once the candidates run out,
+  // both from generate and from nextBoard.
+  void testCandidateLimit(Tester t) {
+    BoardGenerator generator = new BoardGenerator(4, 3, 40, 50, 1);
+    generator.candidateLimit = 200;
+
+    t.checkException(new IllegalStateException("Found 0 of 2 boards in range among 200 candidates."),
+        generator, "generate", 0L, 2);
+    t.checkException(new IllegalStateException("Found 0 of 1 boards in range among 200 candidates."),
+        generator, "nextBoard");
+    generator.close();
+  }
+}
@@ -0,0 +1,203 @@
+package FloodIt;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// A Board split into square tiles, each caching its colors at coarser levels
+// of detail so a zoomed-out view can draw one image per block of cells instead
+// of one per cell. Level k summarizes blocks of 2^k by 2^k cells by their most
+// common color. A tile's caches are rebuilt lazily, and only after one of its
+// cells has been recolored through touch.
+class BoardTiles {
+  // Cells per tile side, and the number of levels down to one block per tile.
+  static int TILE = 64;
+  static int LEVELS = 7;
+
+  Board board;
+  int tilesPerRow;
+  int tileCount;
+  // Bumped every time a cell in the tile changes color.
+  int[] version;
+  // Indexed by tile * LEVELS + level: the version each cache was built from
+  // (-1 if never built), the block colors row by row, and the color of every
+  // cell in the tile if they all share one, or -1.
+  int[] builtVersion;
+  byte[][] blockColors;
+  byte[] uniformColor;
+  int[] counts;
+
+  BoardTiles(Board board) {
+    this.board = board;
+    this.tilesPerRow = (board.size + BoardTiles.TILE - 1) / BoardTiles.TILE;
+    this.tileCount = this.tilesPerRow * this.tilesPerRow;
+    this.version = new int[this.tileCount];
+    this.builtVersion = new int[this.tileCount * BoardTiles.LEVELS];
+    Arrays.fill(this.builtVersion, -1);
+    this.blockColors = new byte[this.tileCount * BoardTiles.LEVELS][];
+    this.uniformColor = new byte[this.tileCount * BoardTiles.LEVELS];
+    this.counts = new int[board.numColors];
+  }
+
+  // Returns the tile holding the cell at the given index.
+  public int tileOf(int index) {
+    return ((this.board.rowOf(index) / BoardTiles.TILE) * this.tilesPerRow)
+        + (this.board.colOf(index) / BoardTiles.TILE);
+  }
+
+  // Marks the tile holding the cell at the given index as changed.
+  public void touch(int index) {
+    this.version[this.tileOf(index)]++;
+  }
+
+  // Recolors a cell of the board and marks its tile as changed.
+  public void setColor(int index, int color) {
+    this.board.setColor(index, color);
+    this.touch(index);
+  }
+
+  // Returns the number of blocks along one side of a tile at the given level.
+  public static int blocksPerSide(int level) {
+    return BoardTiles.TILE >> level;
+  }
+
+  // Returns the block colors of a tile at the given level, row by row. Blocks
+  // that lie wholly off the edge of the board are -1.
+  public byte[] blockColors(int tile, int level) {
+    this.ensureBuilt(tile, level);
+    return this.blockColors[(tile * BoardTiles.LEVELS) + level];
+  }
+
+  // Returns the color shared by every cell of the tile, or -1 if it has more
+  // than one.
+  public int uniformColor(int tile, int level) {
+    this.ensureBuilt(tile, level);
+    return this.uniformColor[(tile * BoardTiles.LEVELS) + level];
+  }
+
+  // Rebuilds the cache for a tile and level if the tile changed since it was
+  // last built.
+  public void ensureBuilt(int tile, int level) {
+    int k = (tile * BoardTiles.LEVELS) + level;
+    if (this.builtVersion[k] != this.version[tile]) {
+      this.build(tile, level);
+      this.builtVersion[k] = this.version[tile];
+    }
+  }
+
+  // Summarizes every block of the tile at the given level by its most common
+  // color, lowest palette index first on ties.
+  public void build(int tile, int level) {
+    int k = (tile * BoardTiles.LEVELS) + level;
+    int side = BoardTiles.blocksPerSide(level);
+    int block = 1 << level;
+    if (this.blockColors[k] == null) {
+      this.blockColors[k] = new byte[side * side];
+    }
+    byte[] colors = this.blockColors[k];
+    int size = this.board.size;
+    int row0 = (tile / this.tilesPerRow) * BoardTiles.TILE;
+    int col0 = (tile % this.tilesPerRow) * BoardTiles.TILE;
+    int uniform = this.board.colorAt(this.board.index(row0, col0));
+
+    for (int br = 0; br < side; br++) {
+      for (int bc = 0; bc < side; bc++) {
+        int top = row0 + (br * block);
+        int left = col0 + (bc * block);
+        int bottom = Math.min(size, top + block);
+        int right = Math.min(size, left + block);
+        Arrays.fill(this.counts, 0);
+        int best = -1;
+        for (int r = top; r < bottom; r++) {
+          for (int c = left; c < right; c++) {
+            int color = this.board.colorAt(this.board.index(r, c));
+            this.counts[color]++;
+            if (color != uniform) {
+              uniform = -1;
+            }
+          }
+        }
+        for (int color = 0; color < this.counts.length; color++) {
+          if (this.counts[color] > 0 && (best == -1 || this.counts[color] > this.counts[best])) {
+            best = color;
+          }
+        }
+        colors[(br * side) + bc] = (byte) best;
+      }
+    }
+    this.uniformColor[k] = (byte) uniform;
+  }
+}
+
+class ExamplesBoardTiles {
+  // Tests tileOf and the tile grid of a board that is not a whole number of tiles.
+  void testTileOf(Tester t) {
+    Board board = new Board(100, 3);
+    BoardTiles tiles = new BoardTiles(board);
+
+    t.checkExpect(tiles.tilesPerRow, 2);
+    t.checkExpect(tiles.tileCount, 4);
+    t.checkExpect(tiles.tileOf(board.index(0, 0)), 0);
+    t.checkExpect(tiles.tileOf(board.index(0, 63)), 0);
+    t.checkExpect(tiles.tileOf(board.index(0, 64)), 1);
+    t.checkExpect(tiles.tileOf(board.index(64, 0)), 2);
+    t.checkExpect(tiles.tileOf(board.index(99, 99)), 3);
+  }
+
+  // Tests that level 0 blocks are the cells themselves, and that cells off the
+  // board come out as -1.
+  void testLevelZero(Tester t) {
+    Board board = new Board(70, 4);
+    board.fill(new Random(2));
+    BoardTiles tiles = new BoardTiles(board);
+
+    byte[] colors = tiles.blockColors(1, 0);
+    int mismatches = 0;
+    for (int r = 0; r < 64; r++) {
+      for (int c = 0; c < 6; c++) {
+        if (colors[(r * 64) + c] != board.colorAt(board.index(r, 64 + c))) {
+          mismatches++;
+        }
+      }
+    }
+
+    t.checkExpect(mismatches, 0);
+    t.checkExpect(colors[6], (byte) -1);
+    t.checkExpect(colors[(63 * 64) + 63], (byte) -1);
+  }
+
+  // Tests that a block takes its most common color, lowest index on ties.
+  void testMajority(Tester t) {
+    Board board = new Board(2, 3);
+    board.setColor(0, 2);
+    board.setColor(1, 1);
+    board.setColor(2, 2);
+    board.setColor(3, 0);
+    BoardTiles tiles = new BoardTiles(board);
+
+    t.checkExpect(tiles.blockColors(0, 1)[0], (byte) 2);
+
+    tiles.setColor(2, 1);
+
+    t.checkExpect(tiles.blockColors(0, 1)[0], (byte) 1);
+    t.checkExpect(board.colorAt(2), 1);
+  }
+
+  // Tests that caches are only rebuilt after touch, and that uniformColor
+  // reports a tile whose cells all share one color.
+  void testInvalidation(Tester t) {
+    Board board = new Board(64, 2);
+    BoardTiles tiles = new BoardTiles(board);
+
+    t.checkExpect(tiles.uniformColor(0, 6), 0);
+    t.checkExpect(tiles.blockColors(0, 6)[0], (byte) 0);
+
+    // Without touch the cache still shows the old colors.
+    board.setColor(5, 1);
+    t.checkExpect(tiles.uniformColor(0, 6), 0);
+
+    tiles.touch(5);
+    t.checkExpect(tiles.uniformColor(0, 6), -1);
+    t.checkExpect(tiles.blockColors(0, 0)[5], (byte) 1);
+    t.checkExpect(tiles.blockColors(0, 6)[0], (byte) 0);
+  }
+}
@@ -0,0 +1,998 @@
+package FloodIt;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// The rules of Flood-It with no rendering or animation: a board, the flood
+// growing from its top-left cell, and the tries used so far.
+// The board's same-colored regions are found once when the game starts;
+// after that a move only looks at the regions bordering the flood and merges
+// the matching ones in whole.
+class FloodGame {
+  // Largest palette a game may use; matches the size of FloodItWorld.COLORS.
+  static int MAX_COLORS = 8;
+  // Values of regionState.
+  static byte UNTOUCHED = 0;
+  static byte BORDER = 1;
+  static byte FLOODED = 2;
+
+  Board board;
+  int boardSize;
+  int numColors;
+  int floodColor;
+  RegionGraph regions;
+  // Whether each region is flooded, borders the flood, or neither.
+  byte[] regionState;
+  // Unflooded regions that touch the flood.
+  IntList border;
+  // The same regions by color, in border order, and the cells they hold:
+  // what playing each color would absorb.
+  IntList[] borderByColor;
+  int[] borderCells;
+  // Every flooded cell, in the order it joined the flood.
+  IntList floodedCells;
+  // Zobrist hash of the flooded cells: the XOR of their keys, updated a
+  // region at a time as the flood grows and shrinks.
+  long floodHash;
+  // Number of regions the last flood examined.
+  int floodWork;
+  int remainingTries;
+  int currentTries;
+
+  // Move log: the color of every move since the start of the game.
+  IntList moves;
+  // Undo log: for every move, its record's start in undoLog, and there the
+  // flood color, tries, flooded cell count and border size from before the
+  // move, the number of regions it absorbed, and for each of those its
+  // position in the old border and its id.
+  IntList undoStart;
+  IntList undoLog;
+  // Undone moves, as pairs of color and the tries after the move.
+  IntList redoLog;
+  // The latest snapshot taken along the current line of play, or null; its
+  // depth never exceeds the number of moves.
+  GameSnapshot head;
+
+  FloodGame(int boardSize, int numColors, Random rand) {
+    this(FloodGame.randomBoard(boardSize, numColors, rand));
+  }
+
+  FloodGame(Board board) {
+    this.board = board;
+    this.boardSize = board.size;
+    this.numColors = board.numColors;
+    this.regions = new RegionGraph(board);
+    this.seedFlood();
+    this.remainingTries = FloodGame.allowedTries(this.boardSize, this.numColors);
+    this.currentTries = 0;
+  }
+
+  // Starts a game whose board is generated from the given seed.
+  public static FloodGame newGame(int boardSize, int numColors, long seed) {
+    return new FloodGame(boardSize, numColors, new Random(seed));
+  }
+
+  // Returns a board of the given size filled with random colors.
+  public static Board randomBoard(int boardSize, int numColors, Random rand) {
+    FloodGame.checkValidBoardSize(boardSize);
+    FloodGame.checkValidNumColors(numColors);
+    Board board = new Board(boardSize, numColors);
+    board.fill(rand);
+    return board;
+  }
+
+  // Throws exception if board size is invalid.
+  public static void checkValidBoardSize(int boardSize) {
+    if (boardSize < 2) {
+      throw new IllegalArgumentException("Board size must be at least 2.");
+    }
+  }
+
+  // Throws exception if number of colors is invalid.
+  public static void checkValidNumColors(int numColors) {
+    if (numColors < 2 || numColors > FloodGame.MAX_COLORS) {
+      throw new IllegalArgumentException(
+          "Number of colors must be between 2 and " + FloodGame.MAX_COLORS + " inclusive.");
+    }
+  }
+
+  // Returns the number of tries a player gets on a board of this size.
+  public static int allowedTries(int boardSize, int numColors) {
+    return boardSize - numColors <= 0 ? numColors : boardSize + (3 * numColors);
+  }
+
+  // Starts a new game on this game's board, refilled from the given Random,
+  // reusing the board, region graph and lists instead of allocating new ones.
+  public void restart(Random rand) {
+    this.board.fill(rand);
+    this.regions.build(this.board);
+    this.seedFlood();
+    this.currentTries = 0;
+  }
+
+  // Floods the region holding the top-left cell.
+  public void seedFlood() {
+    if (this.regionState == null) {
+      // A board has at most one region per cell.
+      this.regionState = new byte[this.board.cellCount()];
+      this.border = new IntList();
+      this.floodedCells = new IntList(this.board.cellCount());
+      this.moves = new IntList();
+      this.undoStart = new IntList();
+      this.undoLog = new IntList();
+      this.redoLog = new IntList();
+      this.borderByColor = new IntList[this.numColors];
+      for (int c = 0; c < this.numColors; c++) {
+        this.borderByColor[c] = new IntList();
+      }
+      this.borderCells = new int[this.numColors];
+    } else {
+      Arrays.fill(this.regionState, 0, this.regions.regionCount, FloodGame.UNTOUCHED);
+      this.border.clear();
+      this.floodedCells.clear();
+      this.moves.clear();
+      this.undoStart.clear();
+      this.undoLog.clear();
+      this.redoLog.clear();
+      for (IntList regions : this.borderByColor) {
+        regions.clear();
+      }
+      Arrays.fill(this.borderCells, 0);
+    }
+    this.head = null;
+    this.floodColor = this.regions.regionColor[0];
+    this.floodWork = 0;
+    this.floodHash = 0;
+    this.absorbRegion(0);
+  }
+
+  // Plays the given color, spending a try. Returns the number of cells the
+  // flood absorbed, or -1 if the color is already the flood color.
+  public int applyMove(int colorIndex) {
+    if (colorIndex < 0 || colorIndex >= this.numColors) {
+      throw new IllegalArgumentException(
+          "Color index must be between 0 and " + (this.numColors - 1) + " inclusive.");
+    }
+    if (colorIndex == this.floodColor) {
+      return -1;
+    }
+    int absorbed = this.flood(colorIndex);
+    this.currentTries++;
+    return absorbed;
+  }
+
+  // Changes the flood color and absorbs every bordering region of that color,
+  // without spending a try. Returns the number of cells absorbed. Logs the
+  // move so it can be undone, and forgets any moves undone before it.
+  public int flood(int color) {
+    this.redoLog.clear();
+    return this.floodLogged(color);
+  }
+
+  // Floods with the given color, recording what undo needs to reverse it.
+  public int floodLogged(int color) {
+    int oldCount = this.floodedCells.size();
+    int bordering = this.border.size();
+    int record = this.undoLog.size();
+    this.undoStart.add(record);
+    this.undoLog.add(this.floodColor);
+    this.undoLog.add(this.currentTries);
+    this.undoLog.add(oldCount);
+    this.undoLog.add(bordering);
+    this.undoLog.add(0);
+    this.moves.add(color);
+    this.floodColor = color;
+    this.floodWork = bordering;
+    // Every bordering region of the color is absorbed, and regions are
+    // maximal, so none of the regions joining the border has it.
+    this.borderByColor[color].clear();
+    this.borderCells[color] = 0;
+
+    // Regions are maximal, so none of the regions absorbed here can have a
+    // neighbor of the same color; one pass over the border is enough.
+    int kept = 0;
+    for (int i = 0; i < bordering; i++) {
+      int r = this.border.get(i);
+      if (this.regions.regionColor[r] == color) {
+        this.undoLog.add(i);
+        this.undoLog.add(r);
+        this.absorbRegion(r);
+      } else {
+        this.border.set(kept, r);
+        kept++;
+      }
+    }
+    // Move the regions absorbRegion appended down behind the ones kept.
+    for (int i = bordering; i < this.border.size(); i++) {
+      this.border.set(kept, this.border.get(i));
+      kept++;
+    }
+    this.border.truncate(kept);
+    this.undoLog.set(record + 4, (this.undoLog.size() - record - 5) / 2);
+    return this.floodedCells.size() - oldCount;
+  }
+
+  // Takes back the last move, restoring the flood, border, hash, flood color
+  // and tries from before it. Only touches the cells and regions that move
+  // changed and the border it scanned. Returns the number of cells taken out
+  // of the flood, or -1 if there is no move to undo.
+  public int undo() {
+    return this.undo(null);
+  }
+
+  // Takes back the last move like undo(), adding the cells taken out of the
+  // flood to the given list, in the order the move absorbed them, unless
+  // it is null.
+  public int undo(IntList removedOut) {
+    if (this.moves.isEmpty()) {
+      return -1;
+    }
+    int color = this.moves.removeLast();
+    int record = this.undoStart.removeLast();
+    int oldColor = this.undoLog.get(record);
+    int oldTries = this.undoLog.get(record + 1);
+    int oldCount = this.undoLog.get(record + 2);
+    int oldBorder = this.undoLog.get(record + 3);
+    int absorbed = this.undoLog.get(record + 4);
+    this.redoLog.add(color);
+    this.redoLog.add(this.currentTries);
+
+    // Cells the move absorbed leave the flood.
+    int removed = this.floodedCells.size() - oldCount;
+    for (int i = oldCount; i < this.floodedCells.size(); i++) {
+      int c = this.floodedCells.get(i);
+      this.board.clearFlooded(c);
+      if (removedOut != null) {
+        removedOut.add(c);
+      }
+    }
+    this.floodedCells.truncate(oldCount);
+
+    // Regions the move brought onto the border were untouched before it.
+    // Each was added last to its color's list, so they come off in reverse.
+    int kept = oldBorder - absorbed;
+    for (int i = this.border.size() - 1; i >= kept; i--) {
+      int r = this.border.get(i);
+      this.regionState[r] = FloodGame.UNTOUCHED;
+      this.borderByColor[this.regions.regionColor[r]].removeLast();
+      this.borderCells[this.regions.regionColor[r]] -= this.regions.regionSize[r];
+    }
+    // Put the absorbed regions back at their old positions, filling the
+    // border from the back so the kept regions shift into place.
+    this.border.truncate(kept);
+    while (this.border.size() < oldBorder) {
+      this.border.add(-1);
+    }
+    int from = kept - 1;
+    int next = absorbed - 1;
+    for (int to = oldBorder - 1; to >= 0 && next >= 0; to--) {
+      int pos = record + 5 + (2 * next);
+      if (this.undoLog.get(pos) == to) {
+        int r = this.undoLog.get(pos + 1);
+        this.regionState[r] = FloodGame.BORDER;
+        this.floodHash ^= this.regions.regionHash[r];
+        this.border.set(to, r);
+        next--;
+      } else {
+        this.border.set(to, this.border.get(from));
+        from--;
+      }
+    }
+    // The move emptied its color's list; refill it in border order.
+    for (int i = 0; i < absorbed; i++) {
+      int r = this.undoLog.get(record + 6 + (2 * i));
+      this.borderByColor[color].add(r);
+      this.borderCells[color] += this.regions.regionSize[r];
+    }
+    this.undoLog.truncate(record);
+
+    this.floodColor = oldColor;
+    this.currentTries = oldTries;
+    this.floodWork = oldBorder;
+    if (this.head != null && this.head.depth > this.moves.size()) {
+      this.head = this.head.parent;
+    }
+    return removed;
+  }
+
+  // Plays the last undone move again. Returns its color, or -1 if there is
+  // no undone move.
+  public int redo() {
+    if (this.redoLog.isEmpty()) {
+      return -1;
+    }
+    int tries = this.redoLog.removeLast();
+    int color = this.redoLog.removeLast();
+    this.floodLogged(color);
+    this.currentTries = tries;
+    return color;
+  }
+
+  // Returns the number of moves played since the start of the game.
+  public int moveCount() {
+    return this.moves.size();
+  }
+
+  // Returns a snapshot of the game as it stands. Snapshots share the moves
+  // they have in common, so taking one costs a small object per move since
+  // the last one, however big the board.
+  public GameSnapshot snapshot() {
+    if (this.head == null) {
+      this.head = new GameSnapshot(null, this.stateAt(0, 0), this.stateAt(0, 1),
+          this.stateAt(0, 2));
+    }
+    while (this.head.depth < this.moves.size()) {
+      int d = this.head.depth + 1;
+      this.head = new GameSnapshot(this.head, this.stateAt(d, 0), this.stateAt(d, 1),
+          this.stateAt(d, 2));
+    }
+    return this.head;
+  }
+
+  // Returns the flood color (field 0), tries (1) or flooded cell count (2)
+  // the game had after the given number of moves, from the undo log.
+  public int stateAt(int depth, int field) {
+    if (depth < this.moves.size()) {
+      return this.undoLog.get(this.undoStart.get(depth) + field);
+    }
+    return field == 0 ? this.floodColor : field == 1 ? this.currentTries : this.floodedCells.size();
+  }
+
+  // Returns the game to the given snapshot of it, undoing moves back to where
+  // the two lines of play split and replaying the snapshot's moves from there.
+  // Forgets any undone moves.
+  public void restore(GameSnapshot snapshot) {
+    GameSnapshot here = this.snapshot();
+    GameSnapshot there = snapshot;
+    while (there.depth > here.depth) {
+      there = there.parent;
+    }
+    while (here.depth > there.depth) {
+      here = here.parent;
+    }
+    while (here != there) {
+      here = here.parent;
+      there = there.parent;
+    }
+    // Snapshots of different games share no starting point.
+    if (here == null) {
+      throw new IllegalArgumentException("Snapshot belongs to another game.");
+    }
+
+    while (this.moves.size() > here.depth) {
+      this.undo();
+    }
+    this.redoLog.clear();
+    GameSnapshot[] path = new GameSnapshot[snapshot.depth - here.depth];
+    for (GameSnapshot s = snapshot; s != here; s = s.parent) {
+      path[s.depth - here.depth - 1] = s;
+    }
+    for (GameSnapshot s : path) {
+      this.currentTries = s.parent.tries;
+      this.floodLogged(s.floodColor);
+    }
+    this.currentTries = snapshot.tries;
+    this.head = snapshot;
+  }
+
+  // Floods every cell of region r and adds its untouched neighbors to the border.
+  public void absorbRegion(int r) {
+    RegionGraph g = this.regions;
+    this.regionState[r] = FloodGame.FLOODED;
+    this.floodHash ^= g.regionHash[r];
+    for (int k = g.cellStart[r]; k < g.cellStart[r + 1]; k++) {
+      int c = g.cells[k];
+      this.board.setFlooded(c);
+      this.floodedCells.add(c);
+    }
+    int degree = g.degree(r);
+    for (int i = 0; i < degree; i++) {
+      int m = g.neighbor(r, i);
+      if (this.regionState[m] == FloodGame.UNTOUCHED) {
+        this.regionState[m] = FloodGame.BORDER;
+        this.border.add(m);
+        this.borderByColor[g.regionColor[m]].add(m);
+        this.borderCells[g.regionColor[m]] += g.regionSize[m];
+      }
+    }
+    this.floodWork += degree;
+  }
+
+  // Returns true if region r is part of the flood.
+  public boolean isRegionFlooded(int r) {
+    return this.regionState[r] == FloodGame.FLOODED;
+  }
+
+  // Returns true if every cell has been flooded.
+  public boolean isWon() {
+    return this.floodedCells.size() == this.board.cellCount();
+  }
+
+  // Returns true if the tries are used up and the board is not flooded.
+  public boolean isLost() {
+    return this.movesLeft() <= 0 && !this.isWon();
+  }
+
+  // Returns the number of tries the player has left.
+  public int movesLeft() {
+    return this.remainingTries - this.currentTries;
+  }
+
+  // Returns the color of the first region on the border, or -1 if the board
+  // is fully flooded. Always a move that grows the flood.
+  public int firstFrontierColor() {
+    return this.border.isEmpty() ? -1 : this.regions.regionColor[this.border.get(0)];
+  }
+
+  // Returns the number of cells playing the given color would absorb.
+  public int gain(int color) {
+    return this.borderCells[color];
+  }
+
+  // Returns the number of cells playing each color would absorb, by color.
+  public int[] gainPerColor() {
+    return Arrays.copyOf(this.borderCells, this.numColors);
+  }
+
+  // Returns the color that absorbs the most cells, the smallest color on
+  // ties, or -1 if the board is fully flooded.
+  public int hint() {
+    int best = -1;
+    int bestCells = 0;
+    for (int c = 0; c < this.numColors; c++) {
+      if (this.borderCells[c] > bestCells) {
+        best = c;
+        bestCells = this.borderCells[c];
+      }
+    }
+    return best;
+  }
+
+  // Returns a game on a copy of this board with the same moves played and
+  // the same tries, which can be played without touching this one. The copy
+  // starts from the colors the regions had before any move, since a front end
+  // may have recolored the flooded cells of this board.
+  public FloodGame copy() {
+    Board board = new Board(this.boardSize, this.numColors);
+    for (int i = 0; i < board.cellCount(); i++) {
+      board.setColor(i, this.regions.regionColor[this.regions.regionOf[i]]);
+    }
+    FloodGame copy = new FloodGame(board);
+    for (int i = 0; i < this.moves.size(); i++) {
+      copy.flood(this.moves.get(i));
+    }
+    copy.remainingTries = this.remainingTries;
+    copy.currentTries = this.currentTries;
+    return copy;
+  }
+}
+
+class ExamplesFloodGame {
+  FloodGame game;
+
+  // Initializes conditions. The board is
+  //   1 1
+  //   0 1
+  // so every cell but the bottom-left one starts flooded.
+  void initGame() {
+    this.game = new FloodGame(2, 2, new Random(100));
+  }
+
+  // Tests the FloodGame constructors.
+  void testConstructor(Tester t) {
+    this.initGame();
+
+    t.checkExpect(this.game.board.colors, new byte[] {1, 1, 0, 1});
+    t.checkExpect(this.game.floodColor, 1);
+    t.checkExpect(this.game.floodedCells.toArray(), new int[] {0, 1, 3});
+    t.checkExpect(Arrays.copyOf(this.game.regionState, 2), new byte[] {2, 1});
+    t.checkExpect(this.game.border.toArray(), new int[] {1});
+    t.checkExpect(this.game.remainingTries, 2);
+    t.checkExpect(this.game.currentTries, 0);
+    t.checkConstructorException(
+        new IllegalArgumentException("Board size must be at least 2."),
+        "FloodIt.FloodGame", 1, 2, new Random());
+    t.checkConstructorException(
+        new IllegalArgumentException("Number of colors must be between 2 and 8 inclusive."),
+        "FloodIt.FloodGame", 4, 9, new Random());
+
+    Board board = new Board(2, 3);
+    board.setColor(1, 2);
+    board.setColor(3, 2);
+    FloodGame fromBoard = new FloodGame(board);
+
+    t.checkExpect(fromBoard.floodedCells.toArray(), new int[] {0, 2});
+    t.checkExpect(fromBoard.border.toArray(), new int[] {1});
+    t.checkExpect(fromBoard.remainingTries, 3);
+  }
+
+  // Tests newGame and randomBoard methods for FloodGame.
+  void testNewGame(Tester t) {
+    FloodGame a = FloodGame.newGame(10, 4, 42);
+    FloodGame b = new FloodGame(10, 4, new Random(42));
+
+    t.checkExpect(a.board.colors, b.board.colors);
+    t.checkExpect(a.floodedCells.toArray(), b.floodedCells.toArray());
+    t.checkExpect(FloodGame.randomBoard(10, 4, new Random(42)).colors, a.board.colors);
+  }
+
+  // Tests restart method for FloodGame.
+  void testRestart(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 5, 3);
+    Board board = game.board;
+    while (!game.isWon()) {
+      game.applyMove(game.firstFrontierColor());
+    }
+    game.restart(new Random(9));
+    FloodGame fresh = FloodGame.newGame(12, 5, 9);
+
+    t.checkExpect(game.board == board, true);
+    t.checkExpect(game.board.colors, fresh.board.colors);
+    t.checkExpect(game.board.flooded, fresh.board.flooded);
+    t.checkExpect(game.floodedCells.toArray(), fresh.floodedCells.toArray());
+    t.checkExpect(game.border.toArray(), fresh.border.toArray());
+    t.checkExpect(game.floodColor, fresh.floodColor);
+    t.checkExpect(game.currentTries, 0);
+
+    game.applyMove(game.firstFrontierColor());
+    fresh.applyMove(fresh.firstFrontierColor());
+
+    t.checkExpect(game.floodedCells.toArray(), fresh.floodedCells.toArray());
+  }
+
+  // Tests allowedTries method for FloodGame.
+  void testAllowedTries(Tester t) {
+    t.checkExpect(FloodGame.allowedTries(2, 2), 2);
+    t.checkExpect(FloodGame.allowedTries(22, 4), 34);
+  }
+
+  // Tests applyMove method for FloodGame.
+  void testApplyMove(Tester t) {
+    this.initGame();
+
+    t.checkExpect(this.game.applyMove(1), -1);
+    t.checkExpect(this.game.currentTries, 0);
+    t.checkException(
+        new IllegalArgumentException("Color index must be between 0 and 1 inclusive."),
+        this.game, "applyMove", 2);
+
+    t.checkExpect(this.game.applyMove(0), 1);
+    t.checkExpect(this.game.currentTries, 1);
+    t.checkExpect(this.game.floodColor, 0);
+    t.checkExpect(this.game.isWon(), true);
+  }
+
+  // Tests absorbRegion and isRegionFlooded methods for FloodGame.
+  void testAbsorbRegion(Tester t) {
+    this.initGame();
+
+    t.checkExpect(this.game.isRegionFlooded(0), true);
+    t.checkExpect(this.game.isRegionFlooded(1), false);
+
+    this.game.absorbRegion(1);
+
+    t.checkExpect(this.game.isRegionFlooded(1), true);
+    t.checkExpect(this.game.floodedCells.toArray(), new int[] {0, 1, 3, 2});
+    t.checkExpect(this.game.board.isFlooded(2), true);
+  }
+
+  // Returns the XOR of the Zobrist keys of the game's flooded cells.
+  long hashOf(FloodGame game) {
+    long hash = 0;
+    for (int i = 0; i < game.floodedCells.size(); i++) {
+      hash ^= TranspositionTable.key(game.floodedCells.get(i));
+    }
+    return hash;
+  }
+
+  // Tests that floodHash follows the flooded cells through moves, undo and
+  // restart, and is the same however the flood was reached.
+  void testFloodHash(Tester t) {
+    FloodGame game = FloodGame.newGame(30, 6, 5);
+    int mismatches = 0;
+    java.util.ArrayList<Long> hashes = new java.util.ArrayList<Long>();
+    while (!game.isWon()) {
+      hashes.add(game.floodHash);
+      if (game.floodHash != this.hashOf(game)) {
+        mismatches++;
+      }
+      game.applyMove(game.firstFrontierColor());
+    }
+    for (int i = hashes.size() - 1; i >= 0; i--) {
+      game.undo();
+      if (game.floodHash != hashes.get(i)) {
+        mismatches++;
+      }
+    }
+
+    t.checkExpect(mismatches, 0);
+    t.checkExpect(game.floodHash, hashes.get(0));
+
+    game.applyMove(game.firstFrontierColor());
+    game.restart(new Random(9));
+    t.checkExpect(game.floodHash, this.hashOf(game));
+
+    // 0 1 1
+    // 2 3 3
+    // 2 3 3
+    byte[] colors = {0, 1, 1, 2, 3, 3, 2, 3, 3};
+    Board first = new Board(3, 4);
+    Board second = new Board(3, 4);
+    for (int i = 0; i < colors.length; i++) {
+      first.setColor(i, colors[i]);
+      second.setColor(i, colors[i]);
+    }
+    FloodGame one = new FloodGame(first);
+    one.applyMove(1);
+    one.applyMove(2);
+    FloodGame two = new FloodGame(second);
+    two.applyMove(2);
+    two.applyMove(1);
+
+    t.checkExpect(one.floodHash, two.floodHash);
+    t.checkExpect(one.floodHash, this.hashOf(one));
+    t.checkExpect(one.floodColor == two.floodColor, false);
+  }
+
+  // Floods the given cell and its neighbors of the given color the way the
+  // original cell-by-cell flood did, rescanning every flooded cell.
+  void rescanFlood(Board board, int color, IntList floodedCells) {
+    for (int i = 0; i < floodedCells.size(); i++) {
+      int c = floodedCells.get(i);
+      int[] neighbors = {board.left(c), board.top(c), board.right(c), board.bottom(c)};
+      for (int n : neighbors) {
+        if (n >= 0 && board.colorAt(n) == color && !board.isFlooded(n)) {
+          board.setFlooded(n);
+          floodedCells.add(n);
+        }
+      }
+    }
+  }
+
+  // Tests that flood absorbs the same cells as rescanning every flooded
+  // cell would, in the order callers rely on: the cells flooded before a
+  // move keep their places, and the move appends the cells it absorbs a
+  // region at a time, the regions in border order and each region's cells
+  // in the graph's order. Undo and the classic animation depend on the
+  // first; the cells within a move are no longer in the order a cell-by-cell
+  // rescan would find them, so only the sets are compared with it.
+  void testFloodMatchesRescan(Tester t) {
+    FloodGame game = FloodGame.newGame(30, 5, 7);
+    Board board = FloodGame.randomBoard(30, 5, new Random(7));
+    IntList rescan = new IntList();
+    board.setFlooded(0);
+    rescan.add(0);
+    this.rescanFlood(board, board.colorAt(0), rescan);
+    RegionGraph g = game.regions;
+
+    t.checkExpect(game.floodedCells.get(0), 0);
+    t.checkExpect(game.floodedCells.toArray(),
+        Arrays.copyOfRange(g.cells, g.cellStart[0], g.cellStart[1]));
+
+    for (int color = game.firstFrontierColor(); color != -1;
+        color = game.firstFrontierColor()) {
+      IntList expectedOrder = new IntList();
+      for (int i = 0; i < game.floodedCells.size(); i++) {
+        expectedOrder.add(game.floodedCells.get(i));
+      }
+      for (int i = 0; i < game.border.size(); i++) {
+        int r = game.border.get(i);
+        if (g.regionColor[r] == color) {
+          for (int k = g.cellStart[r]; k < g.cellStart[r + 1]; k++) {
+            expectedOrder.add(g.cells[k]);
+          }
+        }
+      }
+      game.applyMove(color);
+      this.rescanFlood(board, color, rescan);
+
+      t.checkExpect(game.floodedCells.toArray(), expectedOrder.toArray());
+
+      int[] expected = rescan.toArray();
+      int[] actual = game.floodedCells.toArray();
+      Arrays.sort(expected);
+      Arrays.sort(actual);
+      t.checkExpect(actual, expected);
+      t.checkExpect(game.board.flooded, board.flooded);
+    }
+    t.checkExpect(game.isWon(), true);
+    t.checkExpect(game.border.size(), 0);
+  }
+
+  // Tests that the work done per move is bounded by the bordering regions
+  // and the neighbors of the ones absorbed, not by the number of cells.
+  void testFloodWork(Tester t) {
+    FloodGame game = FloodGame.newGame(60, 6, 11);
+    int totalWork = 0;
+    int totalFlooded = 0;
+
+    for (int color = game.firstFrontierColor(); color != -1;
+        color = game.firstFrontierColor()) {
+      int borderBefore = game.border.size();
+      int degrees = 0;
+      for (int i = 0; i < borderBefore; i++) {
+        int r = game.border.get(i);
+        if (game.regions.regionColor[r] == color) {
+          degrees += game.regions.degree(r);
+        }
+      }
+      game.applyMove(color);
+
+      t.checkExpect(game.floodWork, borderBefore + degrees);
+      totalWork += game.floodWork;
+      totalFlooded += game.floodedCells.size();
+    }
+
+    // Rescanning every flooded cell on every move would cost totalFlooded.
+    t.checkExpect(totalWork * 10 < totalFlooded, true);
+  }
+
+  // Tests that the border always holds exactly the unflooded regions next to
+  // the flood.
+  void testBorder(Tester t) {
+    FloodGame game = FloodGame.newGame(20, 4, 5);
+    int mismatches = 0;
+
+    for (int color = game.firstFrontierColor(); color != -1;
+        color = game.firstFrontierColor()) {
+      game.applyMove(color);
+
+      boolean[] listed = new boolean[game.regions.regionCount];
+      for (int i = 0; i < game.border.size(); i++) {
+        listed[game.border.get(i)] = true;
+      }
+      for (int r = 0; r < game.regions.regionCount; r++) {
+        boolean touches = false;
+        for (int i = 0; i < game.regions.degree(r); i++) {
+          touches = touches || game.isRegionFlooded(game.regions.neighbor(r, i));
+        }
+        if (listed[r] != (touches && !game.isRegionFlooded(r))) {
+          mismatches++;
+        }
+      }
+    }
+
+    t.checkExpect(mismatches, 0);
+  }
+
+  // Tests isWon, isLost and movesLeft methods for FloodGame.
+  void testGameOver(Tester t) {
+    this.initGame();
+
+    t.checkExpect(this.game.isWon(), false);
+    t.checkExpect(this.game.isLost(), false);
+    t.checkExpect(this.game.movesLeft(), 2);
+
+    this.game.currentTries = 2;
+
+    t.checkExpect(this.game.movesLeft(), 0);
+    t.checkExpect(this.game.isLost(), true);
+
+    this.game.flood(0);
+
+    t.checkExpect(this.game.isWon(), true);
+    t.checkExpect(this.game.isLost(), false);
+  }
+
+  // Tests that undo restores exactly the state before each move, border
+  // order included, all the way back to the start.
+  void testUndo(Tester t) {
+    FloodGame game = FloodGame.newGame(40, 6, 12);
+    java.util.ArrayList<int[]> flooded = new java.util.ArrayList<int[]>();
+    java.util.ArrayList<int[]> borders = new java.util.ArrayList<int[]>();
+    java.util.ArrayList<long[]> bits = new java.util.ArrayList<long[]>();
+    IntList colors = new IntList();
+    while (!game.isWon()) {
+      flooded.add(game.floodedCells.toArray());
+      borders.add(game.border.toArray());
+      bits.add(game.board.flooded.clone());
+      colors.add(game.floodColor);
+      game.applyMove(game.firstFrontierColor());
+    }
+    int mismatches = 0;
+
+    for (int i = flooded.size() - 1; i >= 0; i--) {
+      int absorbed = game.floodedCells.size() - flooded.get(i).length;
+      if (game.undo() != absorbed) {
+        mismatches++;
+      }
+      if (!Arrays.equals(game.floodedCells.toArray(), flooded.get(i))
+          || !Arrays.equals(game.border.toArray(), borders.get(i))
+          || !Arrays.equals(game.board.flooded, bits.get(i))
+          || game.floodColor != colors.get(i)
+          || game.currentTries != i) {
+        mismatches++;
+      }
+      for (int k = 0; k < game.border.size(); k++) {
+        if (game.regionState[game.border.get(k)] != FloodGame.BORDER) {
+          mismatches++;
+        }
+      }
+    }
+
+    t.checkExpect(mismatches, 0);
+    t.checkExpect(game.undo(), -1);
+    t.checkExpect(game.undoLog.size(), 0);
+    t.checkExpect(game.moveCount(), 0);
+  }
+
+  // Tests that undo hands back the cells each move absorbed, in the order
+  // the move added them to the flood.
+  void testUndoRemovedCells(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 4, 3);
+    int start = game.floodedCells.size();
+    game.applyMove(game.firstFrontierColor());
+    int[] before = game.floodedCells.toArray();
+    game.applyMove(game.firstFrontierColor());
+    int[] after = game.floodedCells.toArray();
+    IntList removed = new IntList();
+    removed.add(-1);
+
+    t.checkExpect(game.undo(removed), after.length - before.length);
+    t.checkExpect(removed.get(0), -1);
+    t.checkExpect(removed.toArray(), this.withFirst(-1,
+        Arrays.copyOfRange(after, before.length, after.length)));
+    t.checkExpect(game.floodedCells.toArray(), before);
+
+    removed.clear();
+
+    t.checkExpect(game.undo(removed), before.length - start);
+    t.checkExpect(removed.toArray(), Arrays.copyOfRange(before, start, before.length));
+    t.checkExpect(game.undo(removed), -1);
+    t.checkExpect(removed.size(), before.length - start);
+  }
+
+  // Returns the given cells with the given value in front of them.
+  int[] withFirst(int first, int[] rest) {
+    int[] result = new int[rest.length + 1];
+    result[0] = first;
+    System.arraycopy(rest, 0, result, 1, rest.length);
+    return result;
+  }
+
+  // Tests that redo replays undone moves until a new move is played.
+  void testRedo(Tester t) {
+    FloodGame game = FloodGame.newGame(16, 4, 6);
+    for (int i = 0; i < 5; i++) {
+      game.applyMove(game.firstFrontierColor());
+    }
+    int[] played = game.moves.toArray();
+    int[] cells = game.floodedCells.toArray();
+
+    game.undo();
+    game.undo();
+    t.checkExpect(game.currentTries, 3);
+    t.checkExpect(game.redo(), played[3]);
+    t.checkExpect(game.redo(), played[4]);
+    t.checkExpect(game.redo(), -1);
+    t.checkExpect(game.floodedCells.toArray(), cells);
+    t.checkExpect(game.currentTries, 5);
+
+    game.undo();
+    game.applyMove(game.firstFrontierColor());
+    t.checkExpect(game.redo(), -1);
+  }
+
+  // Tests firstFrontierColor method for FloodGame.
+  void testFirstFrontierColor(Tester t) {
+    this.initGame();
+
+    t.checkExpect(this.game.firstFrontierColor(), 0);
+
+    this.game.applyMove(0);
+
+    t.checkExpect(this.game.firstFrontierColor(), -1);
+  }
+
+  // Returns true if the game's per-color border lists and cell counts match
+  // its border, order included.
+  boolean bordersMatch(FloodGame game) {
+    for (int c = 0; c < game.numColors; c++) {
+      IntList expected = new IntList();
+      int cells = 0;
+      for (int i = 0; i < game.border.size(); i++) {
+        int r = game.border.get(i);
+        if (game.regions.regionColor[r] == c) {
+          expected.add(r);
+          cells += game.regions.regionSize[r];
+        }
+      }
+      if (!Arrays.equals(expected.toArray(), game.borderByColor[c].toArray())
+          || game.gain(c) != cells) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Tests gain, gainPerColor and hint methods for FloodGame.
+  void testGainPerColor(Tester t) {
+    this.initGame();
+
+    t.checkExpect(this.game.gainPerColor(), new int[] {1, 0});
+    t.checkExpect(this.game.hint(), 0);
+
+    this.game.applyMove(0);
+
+    t.checkExpect(this.game.gainPerColor(), new int[] {0, 0});
+    t.checkExpect(this.game.hint(), -1);
+  }
+
+  // Tests that the per-color border lists follow the border through moves,
+  // undo, redo, restore and restart.
+  void testBorderByColor(Tester t) {
+    FloodGame game = FloodGame.newGame(30, 6, 11);
+    Random rand = new Random(4);
+    int mismatches = 0;
+    GameSnapshot early = null;
+    while (!game.isWon()) {
+      game.applyMove(new RandomStrategy().nextMove(game, rand));
+      if (game.moveCount() == 5) {
+        early = game.snapshot();
+      }
+      if (rand.nextInt(3) == 0) {
+        game.undo();
+        if (!this.bordersMatch(game)) {
+          mismatches++;
+        }
+        game.redo();
+      }
+      if (!this.bordersMatch(game)) {
+        mismatches++;
+      }
+    }
+    game.restore(early);
+    if (!this.bordersMatch(game)) {
+      mismatches++;
+    }
+    while (game.moveCount() > 0) {
+      game.undo();
+      if (!this.bordersMatch(game)) {
+        mismatches++;
+      }
+    }
+    game.restart(new Random(2));
+
+    t.checkExpect(mismatches, 0);
+    t.checkExpect(this.bordersMatch(game), true);
+  }
+
+  // Tests copy method for FloodGame.
+  void testCopy(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 4, 3);
+    game.applyMove(game.firstFrontierColor());
+    game.applyMove(game.firstFrontierColor());
+    FloodGame copy = game.copy();
+
+    t.checkExpect(copy.board.colors, game.board.colors);
+    t.checkExpect(copy.board.flooded, game.board.flooded);
+    t.checkExpect(copy.moves, game.moves);
+    t.checkExpect(copy.floodHash, game.floodHash);
+    t.checkExpect(copy.currentTries, 2);
+
+    copy.applyMove(copy.firstFrontierColor());
+
+    t.checkExpect(game.moveCount(), 2);
+    t.checkExpect(Arrays.equals(copy.board.flooded, game.board.flooded), false);
+  }
+
+  // Tests that copy rebuilds the game from the regions' colors when the
+  // flooded cells of the board were recolored, as the world does.
+  void testCopyRecolored(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 4, 3);
+    byte[] colors = game.board.colors.clone();
+    game.applyMove(game.firstFrontierColor());
+    game.applyMove(game.firstFrontierColor());
+    for (int i = 0; i < game.floodedCells.size(); i++) {
+      game.board.setColor(game.floodedCells.get(i), game.floodColor);
+    }
+    FloodGame copy = game.copy();
+
+    t.checkExpect(copy.board.colors, colors);
+    t.checkExpect(copy.regions.regionOf, game.regions.regionOf);
+    t.checkExpect(copy.floodedCells.toArray(), game.floodedCells.toArray());
+    t.checkExpect(copy.border.toArray(), game.border.toArray());
+    t.checkExpect(copy.floodHash, game.floodHash);
+    t.checkExpect(copy.floodColor, game.floodColor);
+  }
+}
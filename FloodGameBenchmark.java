@@ -0,0 +1,44 @@
+package FloodIt;
+import java.util.Random;
+
+// Measures how many moves per second FloodGame plays on a single core.
+// Run with: java FloodIt.FloodGameBenchmark [seconds per size]
+class FloodGameBenchmark {
+  static int[] SIZES = {14, 22, 100};
+  static int NUM_COLORS = 6;
+
+  public static void main(String[] args) {
+    double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3.0;
+
+    System.out.println("size   colors        games        moves      moves/s     games/hour");
+    for (int size : FloodGameBenchmark.SIZES) {
+      // Warm up before timing.
+      FloodGameBenchmark.run(size, seconds / 3);
+      long[] result = FloodGameBenchmark.run(size, seconds);
+      double elapsed = result[2] / 1e9;
+      System.out.printf("%-6d %-6d %12d %12d %12.0f %14.0f%n",
+          size, FloodGameBenchmark.NUM_COLORS, result[0], result[1],
+          result[1] / elapsed, result[0] / elapsed * 3600);
+    }
+  }
+
+  // Plays seeded games with random moves for about the given time. Returns
+  // {games, moves, nanos}.
+  static long[] run(int size, double seconds) {
+    Random moves = new Random(1);
+    long games = 0;
+    long played = 0;
+    long start = System.nanoTime();
+    long deadline = start + (long) (seconds * 1e9);
+    while (System.nanoTime() < deadline) {
+      FloodGame game = FloodGame.newGame(size, FloodGameBenchmark.NUM_COLORS, games);
+      while (!game.isWon()) {
+        if (game.applyMove(moves.nextInt(FloodGameBenchmark.NUM_COLORS)) >= 0) {
+          played++;
+        }
+      }
+      games++;
+    }
+    return new long[] {games, played, System.nanoTime() - start};
+  }
+}
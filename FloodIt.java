@@ -1,5 +1,7 @@
 package FloodIt;
 import java.awt.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
@@ -7,85 +9,95 @@ import javalib.impworld.*;
 import javalib.worldimages.*;
 import tester.Tester;
 
-// Represents a single square of the game area
+// Represents a single square of the game area, as a view onto one index of a Board.
 class Cell {
+  Board board;
+  int index;
   // In logical coordinates, with the origin at the top-left corner of the screen.
   int x;
   int y;
-  Color color;
-  boolean flooded;
-  // the four adjacent cells to this one
-  Cell left;
-  Cell top;
-  Cell right;
-  Cell bottom;
-
-  Cell(int x, int y, Color color) {
-    this.x = x;
-    this.y = y;
-    this.color = color;
-    this.flooded = false;
-    this.left = null;
-    this.top = null;
-    this.right = null;
-    this.bottom = null;
-  }
-
-  // Produces WorldImage of Cell.
-  public WorldImage draw() {
-    return new RectangleImage(
-        FloodItWorld.CELL_SIZE,
-        FloodItWorld.CELL_SIZE,
-        OutlineMode.SOLID,
-        this.color);
+
+  Cell(Board board, int index) {
+    this.board = board;
+    this.index = index;
+    this.x = Cell.centerX(board, index);
+    this.y = Cell.centerY(board, index);
   }
 
-  // Returns true if this cell's color is the same as the provided floodColor.
-  public boolean sameColor(Color floodColor) {
-    return this.color.equals(floodColor);
-  }
-
-  // Floods this cell
-  public static void flood(
-      Cell c,
-      Color floodColor,
-      ArrayList<Cell> floodedCells,
-      ArrayList<Cell> cellsToBeFlooded) {
-    if (c != null && c.sameColor(floodColor)) {
-      if (!c.flooded) {
-        floodedCells.add(c);
-        c.flooded = true;
-      }
-    }
+  // Returns the x coordinate of the center of the cell at the given index.
+  public static int centerX(Board board, int index) {
+    return (board.colOf(index) * FloodItWorld.CELL_SIZE) + (FloodItWorld.CELL_SIZE / 2);
+  }
+
+  // Returns the y coordinate of the center of the cell at the given index.
+  public static int centerY(Board board, int index) {
+    return (board.rowOf(index) * FloodItWorld.CELL_SIZE) + (FloodItWorld.CELL_SIZE / 2);
   }
 
-  // Adds new neighboring cells to list of all cells that have been flooded.
-  public void floodMatchingNeighbors(
-      Color floodColor,
-      ArrayList<Cell> floodedCells,
-      ArrayList<Cell> cellsToBeFlooded) {
-    // Checks if neighboring cell matches flood color and
-    // adds new flooded cells to list of flooded cells and
-    // adds neighboring cells to list of cells to be flooded.
-    Cell.flood(this.left, floodColor, floodedCells, cellsToBeFlooded);
-    Cell.flood(this.top, floodColor, floodedCells, cellsToBeFlooded);
-    Cell.flood(this.right, floodColor, floodedCells, cellsToBeFlooded);
-    Cell.flood(this.bottom, floodColor, floodedCells, cellsToBeFlooded);
+  // Returns the palette index of this cell's color.
+  public int color() {
+    return this.board.colorAt(this.index);
+  }
+
+  // Returns true if this cell has been flooded.
+  public boolean isFlooded() {
+    return this.board.isFlooded(this.index);
+  }
+
+  // Produces WorldImage of Cell, shared by every cell of the same color.
+  public WorldImage draw() {
+    return FloodItWorld.CELL_IMAGES.get(this.color());
+  }
+
+  // Returns true if this cell's color is the same as the provided floodColor.
+  public boolean sameColor(int floodColor) {
+    return this.board.colorAt(this.index) == floodColor;
   }
 }
 
 class FloodItWorld extends World {
   // Static constants
-  static double TICK_RATE = 0.0001;
-  static int SECONDS_MOD = (int) ((1.0 / 28.0) / FloodItWorld.TICK_RATE);
+  // javalib calls onTick once a frame.
+  static double TICK_RATE = 1.0 / 60.0;
+  static long TICK_NANOS = (long) (FloodItWorld.TICK_RATE * 1e9);
+  // Time between animation steps, each one handleFlooding call. Swing timers
+  // fire at most about once a millisecond, so this is the pace the animation
+  // ran at when onTick itself was scheduled every tenth of a millisecond.
+  static long STEP_NANOS = 1000000;
+  // Most animation steps one tick may catch up on after a late frame.
+  static int MAX_STEPS_PER_TICK =
+      (int) ((FloodItWorld.TICK_NANOS + FloodItWorld.STEP_NANOS - 1) / FloodItWorld.STEP_NANOS);
   static int CELL_SIZE = 25;
   static int BOTTOM_PADDING = 100;
+  // Largest board area, in pixels, drawn whole; bigger boards get a viewport
+  // of this size instead.
+  static int MAX_VIEW_PIXELS = 1000;
+  // Time a single tick may spend recoloring cells before the batch shrinks.
+  static long FRAME_BUDGET_NANOS = 2000000;
+  // Most steps any one flood animation may take, however many cells it recolors.
+  static int MAX_ANIMATION_TICKS = 240;
+  // Most images makeScene may add on top of the last full frame before it
+  // draws the scene from scratch again.
+  static int MAX_OVERDRAW = 1024;
   static ArrayList<Color> COLORS = new ArrayList<Color>(Arrays.asList(
       Color.BLUE, Color.RED, Color.PINK, Color.GREEN,
       Color.GRAY, Color.YELLOW, Color.MAGENTA, Color.ORANGE));
-
-  // Game board
-  ArrayList<ArrayList<Cell>> board;
+  // One cell image per palette color, so rendering never allocates them.
+  static ArrayList<WorldImage> CELL_IMAGES = FloodItWorld.makeCellImages();
+
+  // Game state
+  FloodGame engine;
+  // Timings and counts of moves, ticks, end checks and frames, or null when
+  // they are off.
+  GameStats stats;
+  // Deals boards of a known optimum, or null for plain random boards.
+  BoardGenerator generator;
+  // Records each game played, or null when replays are off. Boards are then
+  // built from a seed drawn from rand, so a replay can build them again.
+  ReplayLog replays;
+  // Solved boards to deal from, each allowing a few tries beyond its par, or
+  // null for plain random boards.
+  SolvedBoards solved;
 
   // Instance fields
   WorldScene scene;
@@ -94,17 +106,75 @@ class FloodItWorld extends World {
   int screenWidth;
   int screenHeight;
   int numColors;
-  int remainingTries;
-  int currentTries;
-  Color floodColor;
-  ArrayList<Cell> floodedCells;
-  ArrayList<Cell> cellsToBeFlooded;
-
-  // Timer variables
+  IntQueue cellsToBeFlooded;
+
+  // Huge-board mode: a window onto part of the board, drawn from its tiles.
+  // Both are null when the whole board fits on screen.
+  Viewport viewport;
+  BoardTiles tiles;
+  // Raster rendering: the board as one image whose pixels change only when a
+  // cell is recolored. Built on the first frame drawn that way.
+  boolean rasterRender;
+  RasterBoard raster;
+
+  // Flood animation: recolors cells in waves by distance from the top-left
+  // cell, sizing each tick's batch to the frame budget.
+  boolean waveAnimation;
+  long frameBudgetNanos;
+  int maxAnimationTicks;
+  int cellsPerTick;
+  int minCellsPerTick;
+  IntQueue waveSizes;
+  int waveRemaining;
+  // Cells are queued a wave at a time as the animation reaches them, so a
+  // move costs only the cells it absorbs. The walk keeps the flooded cells
+  // reached but not yet expanded, and one bit per cell that marks a cell
+  // reached when it equals wavePhase; each walk flips the phase, so the
+  // marks the last walk left need no clearing. The first waveMarked cells
+  // of floodedCells are known to be marked as reached by the last walk.
+  IntQueue waveScratch;
+  long[] waveVisited;
+  boolean wavePhase;
+  int waveMarked;
+  // Where the classic animation has got to in floodedCells.
+  int recolorCursor;
+  int recolorEnd;
+  // Cells of the flood still to be queued for recoloring.
+  int unqueued;
+  // Cells the last undo took out of the flood.
+  IntList undoneCells;
+
+  // Retained scene: makeScene keeps the last frame and draws over it only
+  // the cells recolored since, and the overlays when their text changes.
+  // sceneStale forces a full redraw; sceneRaster is the render path the
+  // scene was last drawn with.
+  IntQueue dirtyCells;
+  boolean sceneStale;
+  boolean sceneRaster;
+  int sceneOverdraw;
+  WorldImage panelImage;
+
+  // Cached overlays, rebuilt only when their text changes.
+  WorldEnd keepPlaying;
+  WorldImage scoreImage;
+  int scoreTries;
+  int scoreRemaining;
+  WorldImage timerImage;
+  int timerSeconds;
+  // Whether the panel shows the cells each color would absorb, and the
+  // images showing them, rebuilt only when the flood changes.
+  boolean showHints;
+  ArrayList<WorldImage> hintImages;
+  long hintHash;
+
+  // Timer variables, read from the monotonic clock since startNanos.
   int seconds;
   int minutes;
   int hours;
   int currentTick;
+  long startNanos;
+  // When the last animation step was due.
+  long lastStepNanos;
 
   // Initial State
   FloodItWorld(int boardSize, int numColors) {
@@ -113,6 +183,17 @@ class FloodItWorld extends World {
 
   // For random testing.
   FloodItWorld(int boardSize, int numColors, Random rand) {
+    this(boardSize, numColors, rand, null);
+  }
+
+  // Plays boards from the given generator, each allowing a few tries beyond
+  // its optimum.
+  FloodItWorld(BoardGenerator generator) {
+    this(generator.boardSize, generator.numColors, new Random(), generator);
+  }
+
+  // Plays boards from the generator, or random ones if it is null.
+  FloodItWorld(int boardSize, int numColors, Random rand, BoardGenerator generator) {
     // Check for exception
     this.checkValidBoardSize(boardSize);
     this.checkValidNumColors(numColors);
@@ -122,15 +203,42 @@ class FloodItWorld extends World {
     this.boardSize = boardSize;
     this.numColors = numColors;
     this.screenWidth = (this.boardSize * FloodItWorld.CELL_SIZE);
-    this.screenHeight = (this.boardSize * FloodItWorld.CELL_SIZE) + FloodItWorld.BOTTOM_PADDING;
+    if (this.screenWidth > FloodItWorld.MAX_VIEW_PIXELS) {
+      this.screenWidth = FloodItWorld.MAX_VIEW_PIXELS;
+      this.viewport = new Viewport(boardSize, this.screenWidth, this.screenWidth,
+          FloodItWorld.COLORS);
+    }
+    this.screenHeight = this.screenWidth + FloodItWorld.BOTTOM_PADDING;
+    this.keepPlaying = new WorldEnd(false, this.makeEndScene(""));
+    this.panelImage = new RectangleImage(this.screenWidth, FloodItWorld.BOTTOM_PADDING,
+        OutlineMode.SOLID, Color.WHITE);
+    this.dirtyCells = new IntQueue(FloodItWorld.MAX_OVERDRAW);
+    this.waveAnimation = true;
+    this.frameBudgetNanos = FloodItWorld.FRAME_BUDGET_NANOS;
+    this.maxAnimationTicks = FloodItWorld.MAX_ANIMATION_TICKS;
+    this.stats = GameStats.fromProperty();
+    this.replays = ReplayLog.fromProperty();
+    this.solved = SolvedBoards.fromProperty();
+    this.generator = generator;
     this.reset();
   }
 
+  // Creates the solid cell image for every palette color.
+  public static ArrayList<WorldImage> makeCellImages() {
+    ArrayList<WorldImage> images = new ArrayList<WorldImage>();
+    for (Color color : FloodItWorld.COLORS) {
+      images.add(new RectangleImage(
+          FloodItWorld.CELL_SIZE,
+          FloodItWorld.CELL_SIZE,
+          OutlineMode.SOLID,
+          color));
+    }
+    return images;
+  }
+
   // Throws exception if board size is invalid.
   public void checkValidBoardSize(int boardSize) {
-    if (boardSize < 2) {
-      throw new IllegalArgumentException("Board size must be at least 2.");
-    }
+    FloodGame.checkValidBoardSize(boardSize);
   }
 
   // Throws exception if number of colors is invalid.
@@ -143,15 +251,56 @@ class FloodItWorld extends World {
 
   // Resets the game;
   public void reset() {
-    this.cellsToBeFlooded = new ArrayList<Cell>();
-    this.initializeBoard();
-    this.linkCells();
-    this.remainingTries = boardSize - numColors <= 0 ? numColors : boardSize + (3 * numColors);
-    this.currentTries = 0;
+    this.cellsToBeFlooded = new IntQueue();
+    this.waveSizes = new IntQueue();
+    this.waveRemaining = 0;
+    this.cellsPerTick = 1;
+    this.minCellsPerTick = 1;
+    long seed = 0;
+    if (this.generator != null) {
+      GeneratedBoard board = this.generator.nextBoard();
+      seed = board.seed;
+      this.engine = board.newGame(BoardGenerator.SLACK);
+    } else if (this.solved != null) {
+      seed = this.solved.pickSeed(this.boardSize, this.numColors, this.rand);
+      this.engine = FloodGame.newGame(this.boardSize, this.numColors, seed);
+      int par = this.solved.par(this.boardSize, this.numColors, seed);
+      if (par >= 0) {
+        this.engine.remainingTries = par + BoardGenerator.SLACK;
+      }
+    } else if (this.replays != null) {
+      seed = this.rand.nextLong();
+      this.engine = FloodGame.newGame(this.boardSize, this.numColors, seed);
+    } else {
+      this.engine = new FloodGame(this.boardSize, this.numColors, this.rand);
+    }
+    if (this.replays != null) {
+      try {
+        this.replays.begin(seed, this.boardSize, this.numColors, this.engine.remainingTries);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot write replay log.", e);
+      }
+    }
+    this.waveVisited = new long[this.engine.board.flooded.length];
+    this.wavePhase = false;
+    this.waveMarked = 0;
+    this.waveScratch = new IntQueue();
+    this.recolorCursor = 0;
+    this.recolorEnd = 0;
+    this.unqueued = 0;
+    this.undoneCells = new IntList();
+    this.raster = null;
+    this.hintImages = null;
+    this.hintHash = 0;
+    this.sceneStale = true;
+    if (this.viewport != null) {
+      this.tiles = new BoardTiles(this.engine.board);
+    }
     this.seconds = 0;
     this.minutes = 0;
     this.hours = 0;
     this.currentTick = 0;
+    this.startNanos = System.nanoTime();
   }
 
   // Returns a random color.
@@ -160,64 +309,15 @@ class FloodItWorld extends World {
     return FloodItWorld.COLORS.get(randIdx);
   }
 
-  // Properly links the left, top, right, bottom cell of each cell in the board.
-  public void linkCells() {
-    for (int i = 0; i < this.boardSize; i++) {
-      for (int j = 0; j < this.boardSize; j++) {
-        Cell currCell = this.board.get(i).get(j);
-
-        // Set left
-        if (j > 0) {
-          Cell leftCell = this.board.get(i).get(j - 1);
-          currCell.left = leftCell;
-        }
-
-        // Set top
-        if (i > 0) {
-          Cell topCell = this.board.get(i - 1).get(j);
-          currCell.top = topCell;
-        }
-
-        // Set right
-        if (j < this.boardSize - 1) {
-          Cell rightCell = this.board.get(i).get(j + 1);
-          currCell.right = rightCell;
-        }
-
-        // Set bottom
-        if (i < this.boardSize - 1) {
-          Cell bottomCell = this.board.get(i + 1).get(j);
-          currCell.bottom = bottomCell;
-        }
-      }
-    }
-    Cell origin = this.board.get(0).get(0);
-    origin.flooded = true;
-    this.floodColor = origin.color;
-    this.floodedCells = new ArrayList<Cell>(Arrays.asList(origin));
-    this.assignFlood();
-  }
-
-  // Creates 2D arraylist of the starting game board.
-  public void initializeBoard() {
-    this.board = new ArrayList<ArrayList<Cell>>();
-
-    for (int i = 0; i < this.boardSize; i++) {
-      ArrayList<Cell> row = new ArrayList<Cell>();
-      for (int j = 0; j < this.boardSize; j++) {
-        int x = (j * FloodItWorld.CELL_SIZE) + (FloodItWorld.CELL_SIZE / 2);
-        int y = (i * FloodItWorld.CELL_SIZE) + (FloodItWorld.CELL_SIZE / 2);
-        row.add(new Cell(x, y, this.getRandomColor()));
-      }
-      this.board.add(row);
-    }
-  }
-
   // Returns true if mouseClick position is within board.
   public boolean isOnBoard(int mouseX, int mouseY) {
-    Cell topLeftCell = this.board.get(0).get(0);
-    Cell topRightCell = this.board.get(0).get(this.boardSize - 1);
-    Cell bottomLeftCell = this.board.get(this.boardSize - 1).get(0);
+    Board board = this.engine.board;
+    if (this.viewport != null) {
+      return this.viewport.cellAt(board, mouseX, mouseY) >= 0;
+    }
+    Cell topLeftCell = new Cell(board, board.index(0, 0));
+    Cell topRightCell = new Cell(board, board.index(0, this.boardSize - 1));
+    Cell bottomLeftCell = new Cell(board, board.index(this.boardSize - 1, 0));
     int topLeftX = topLeftCell.x - (FloodItWorld.CELL_SIZE / 2);
     int topLeftY = topLeftCell.y - (FloodItWorld.CELL_SIZE / 2);
     int topRightX = topRightCell.x + (FloodItWorld.CELL_SIZE / 2);
@@ -227,66 +327,335 @@ class FloodItWorld extends World {
         && (mouseY >= topLeftY && mouseY <= bottomLeftY);
   }
 
-  // Checks if player has flooded the entire board.
+  // Checks if player has flooded the entire board and the flood has finished
+  // recoloring it. The engine's flooded cells and cellsToBeFlooded already count
+  // the flooded and not-yet-recolored cells, so this needs no scan of the board.
+  public boolean hasWon() {
+    return this.engine.isWon() && this.cellsToBeFlooded.isEmpty();
+  }
+
+  // Checks if player has used up every try without flooding the board and
+  // the flood has finished recoloring. A win on the last try is not a loss.
+  public boolean hasLost() {
+    return this.engine.currentTries == this.engine.remainingTries
+        && !this.engine.isWon() && this.cellsToBeFlooded.isEmpty();
+  }
+
+  // Checks if player has flooded the entire board by scanning every cell.
   public boolean didWin() {
-    for (ArrayList<Cell> row : this.board) {
-      for (Cell c : row) {
-        if (!c.sameColor(this.floodColor)) {
-          return false;
-        }
+    for (int i = 0; i < this.engine.board.cellCount(); i++) {
+      if (this.engine.board.colorAt(i) != this.engine.floodColor) {
+        return false;
       }
     }
 
     return true;
   }
 
-  // Returns cell color on board that matches coordinates.
-  public Color getSelectedColor(int mouseX, int mouseY) {
+  // Returns palette index of the cell on board that matches coordinates.
+  public int getSelectedColor(int mouseX, int mouseY) {
+    if (this.viewport != null) {
+      return this.engine.board.colorAt(this.viewport.cellAt(this.engine.board, mouseX, mouseY));
+    }
     int row = mouseY / FloodItWorld.CELL_SIZE;
     int col = mouseX / FloodItWorld.CELL_SIZE;
-    Cell selectedCell = this.board.get(row).get(col);
-    return selectedCell.color;
+    return this.engine.board.colorAt(this.engine.board.index(row, col));
+  }
+
+  // Plays the given color through the engine, spending a try, and starts
+  // the animation that recolors the cells flooded before. Only the cells
+  // the move absorbs are looked at here; the rest are queued as the
+  // animation reaches them. Returns the number of cells absorbed, or -1 if
+  // the color is already the flood color.
+  public int assignFlood(int color) {
+    if (color == this.engine.floodColor) {
+      return -1;
+    }
+    long start = this.stats == null ? 0 : this.stats.beginMove();
+    int oldCount = this.engine.floodedCells.size();
+    this.lastStepNanos = System.nanoTime();
+    int absorbed = this.engine.applyMove(color);
+
+    // Between animations every flooded cell shows the flood color, so each
+    // cell flooded before the move needs recoloring, and none it absorbed.
+    this.unqueued = oldCount;
+    // Make room now, so the animation's ticks never grow the queue.
+    this.cellsToBeFlooded.reserve(oldCount);
+    if (this.waveAnimation) {
+      this.startWaves();
+    } else {
+      this.recolorCursor = 0;
+      this.recolorEnd = oldCount;
+    }
+    this.queueCells(1);
+    // Every step but the last recolors at least half a batch, so this keeps
+    // the whole animation within maxAnimationTicks steps.
+    this.minCellsPerTick = Math.max(1,
+        ((2 * this.recolorsLeft()) + this.maxAnimationTicks - 1) / this.maxAnimationTicks);
+    if (this.stats != null) {
+      this.stats.endMove(start, color, absorbed, this.engine.border.size(),
+          this.engine.moveCount());
+    }
+    return absorbed;
   }
 
-  // Adds cells that need to be flooded to the list.
-  public void assignFlood() {
-    for (int i = 0; i < this.floodedCells.size(); i++) {
-      Cell c = this.floodedCells.get(i);
-      // Only add cells to be flooded if cell's color does not match floodColor.
-      if (!c.sameColor(this.floodColor)) {
+  // Starts a breadth-first walk of the flood from the top-left cell. Flips
+  // the phase, which leaves unreached every cell the last walk reached, and
+  // marks unreached the cells flooded since then. The walk will reach every
+  // flooded cell before the next starts, as finishAnimation completes it.
+  public void startWaves() {
+    this.wavePhase = !this.wavePhase;
+    this.unmarkWaves(this.waveMarked);
+    this.waveMarked = this.engine.floodedCells.size();
+    this.waveScratch.clear();
+    this.visitWaveCell(0);
+  }
+
+  // Marks the flooded cells from the given position in floodedCells on as
+  // not reached by the walk under way.
+  public void unmarkWaves(int from) {
+    for (int i = from; i < this.engine.floodedCells.size(); i++) {
+      int c = this.engine.floodedCells.get(i);
+      if (this.isWaveVisited(c)) {
+        this.waveVisited[c >>> 6] ^= 1L << c;
+      }
+    }
+  }
+
+  // Returns true if the walk under way has reached the given cell.
+  public boolean isWaveVisited(int index) {
+    return ((this.waveVisited[index >>> 6] & (1L << index)) != 0) == this.wavePhase;
+  }
+
+  // Queues cells for recoloring until at least target are waiting or none
+  // are left: the next waves of the walk, or the next flooded cells in flood
+  // order for the classic animation.
+  public void queueCells(int target) {
+    if (this.waveAnimation) {
+      while (this.cellsToBeFlooded.size() < target && this.queueWave()) {
+        continue;
+      }
+    } else {
+      while (this.cellsToBeFlooded.size() < target && this.recolorCursor < this.recolorEnd) {
+        int c = this.engine.floodedCells.get(this.recolorCursor);
+        this.recolorCursor++;
+        if (this.engine.board.colorAt(c) != this.engine.floodColor) {
+          this.cellsToBeFlooded.add(c);
+          this.unqueued--;
+        }
+      }
+    }
+  }
+
+  // Takes the walk one step further from the top-left cell, queueing the
+  // cells it reaches that still need recoloring as one wave. Returns false
+  // if the walk had already reached every flooded cell.
+  public boolean queueWave() {
+    Board board = this.engine.board;
+    int waveSize = this.waveScratch.size();
+    if (waveSize == 0) {
+      return false;
+    }
+    int queued = 0;
+    for (int i = 0; i < waveSize; i++) {
+      int c = this.waveScratch.removeFirst();
+      if (board.colorAt(c) != this.engine.floodColor) {
         this.cellsToBeFlooded.add(c);
+        queued++;
       }
-      c.floodMatchingNeighbors(
-          this.floodColor,
-          this.floodedCells,
-          this.cellsToBeFlooded);
+      this.visitWaveCell(board.left(c));
+      this.visitWaveCell(board.top(c));
+      this.visitWaveCell(board.right(c));
+      this.visitWaveCell(board.bottom(c));
     }
+    if (queued > 0) {
+      this.waveSizes.add(queued);
+      this.unqueued -= queued;
+    }
+    return true;
+  }
+
+  // Adds a flooded cell to the next wave, unless it has already been reached.
+  public void visitWaveCell(int index) {
+    if (index >= 0 && this.engine.board.isFlooded(index) && !this.isWaveVisited(index)) {
+      this.waveVisited[index >>> 6] ^= 1L << index;
+      this.waveScratch.add(index);
+    }
+  }
+
+  // Returns the number of cells the animation has yet to recolor.
+  public int recolorsLeft() {
+    return this.cellsToBeFlooded.size() + Math.max(0, this.unqueued);
   }
 
   // Handles flooding event onTick.
   public void handleFlooding() {
     // Handles flooding
-    if (!this.cellsToBeFlooded.isEmpty()) {
-      Cell c = this.cellsToBeFlooded.remove(0);
-      c.color = this.floodColor;
+    if (!this.waveAnimation) {
+      if (!this.cellsToBeFlooded.isEmpty()) {
+        int c = this.cellsToBeFlooded.removeFirst();
+        this.recolor(c);
+      }
+    } else if (!this.cellsToBeFlooded.isEmpty()) {
+      long start = System.nanoTime();
+      int budget = Math.max(this.cellsPerTick, this.minCellsPerTick);
+      this.queueCells(budget);
+      int done = 0;
+      while (!this.cellsToBeFlooded.isEmpty() && done < budget) {
+        if (this.waveRemaining == 0) {
+          int next = this.waveSizes.isEmpty()
+              ? this.cellsToBeFlooded.size()
+              : this.waveSizes.peekFirst();
+          // Leave a wave that does not fit for the next tick, as long as this
+          // tick has already done at least half its batch.
+          if (done > 0 && done >= budget / 2 && done + next > budget) {
+            break;
+          }
+          if (!this.waveSizes.isEmpty()) {
+            this.waveSizes.removeFirst();
+          }
+          this.waveRemaining = next;
+        }
+        int c = this.cellsToBeFlooded.removeFirst();
+        this.recolor(c);
+        this.waveRemaining--;
+        done++;
+      }
+      this.adaptCellsPerTick(System.nanoTime() - start);
     }
+    this.queueCells(1);
   }
 
-  // Handles timer onTick.
-  public void handleTimer() {
-    // Handles timer
-    if (this.currentTick % FloodItWorld.SECONDS_MOD == 0) {
-      this.seconds++;
+  // Recolors a flooded cell with the flood color, marking its tile as changed
+  // in huge-board mode, repainting its pixel in the raster, and queueing it
+  // for the next frame of the retained scene.
+  public void recolor(int index) {
+    this.recolorTo(index, this.engine.floodColor);
+  }
+
+  // Recolors a cell with the given color, keeping the tiles, raster and
+  // retained scene in step with the board.
+  public void recolorTo(int index, int color) {
+    this.engine.board.setColor(index, color);
+    if (this.tiles != null) {
+      this.tiles.touch(index);
     }
-    if (this.seconds == 60) {
-      this.minutes++;
-      this.seconds = 0;
+    if (this.raster != null) {
+      this.raster.paint(index);
     }
-    if (this.minutes == 60) {
-      this.hours++;
-      this.minutes = 0;
+    if (!this.rasterRender && !this.sceneStale) {
+      // The viewport draws blocks, not cells, so it redraws its window
+      // instead; so does a frame that would exceed the overdraw limit.
+      if (this.viewport != null || this.dirtyCells.size() >= FloodItWorld.MAX_OVERDRAW) {
+        this.sceneStale = true;
+      } else {
+        this.dirtyCells.add(index);
+      }
     }
-    this.currentTick++;
+  }
+
+  // Recolors every cell still waiting in the flood animation at once.
+  public void finishAnimation() {
+    while (!this.cellsToBeFlooded.isEmpty()) {
+      while (!this.cellsToBeFlooded.isEmpty()) {
+        this.recolor(this.cellsToBeFlooded.removeFirst());
+      }
+      this.queueCells(1);
+    }
+    this.waveSizes.clear();
+    this.waveRemaining = 0;
+    this.unqueued = 0;
+  }
+
+  // Takes back the last move at once, after finishing its animation. Cells
+  // that leave the flood get back the color of their region, and the rest
+  // take the flood color from before the move.
+  public void undoMove() {
+    this.finishAnimation();
+    this.undoneCells.clear();
+    int removed = this.engine.undo(this.undoneCells);
+    this.waveMarked = Math.min(this.waveMarked, this.engine.floodedCells.size());
+    if (removed >= 0 && this.replays != null) {
+      this.replays.undo();
+    }
+    RegionGraph g = this.engine.regions;
+    for (int i = 0; i < removed; i++) {
+      int c = this.undoneCells.get(i);
+      this.recolorTo(c, g.regionColor[g.regionOf[c]]);
+    }
+    if (removed >= 0) {
+      this.recolorFlood();
+    }
+  }
+
+  // Plays the last undone move again at once.
+  public void redoMove() {
+    this.finishAnimation();
+    int color = this.engine.redo();
+    if (color >= 0) {
+      if (this.replays != null) {
+        this.replays.move(color);
+      }
+      this.recolorFlood();
+    }
+  }
+
+  // Recolors every flooded cell with the flood color.
+  public void recolorFlood() {
+    for (int i = 0; i < this.engine.floodedCells.size(); i++) {
+      this.recolor(this.engine.floodedCells.get(i));
+    }
+  }
+
+  // Halves the batch after a tick that overran the frame budget, and doubles
+  // it after one that used less than half of it.
+  public void adaptCellsPerTick(long elapsedNanos) {
+    if (elapsedNanos > this.frameBudgetNanos) {
+      this.cellsPerTick = Math.max(1, this.cellsPerTick / 2);
+    } else if (elapsedNanos < this.frameBudgetNanos / 2
+        && this.cellsPerTick < this.engine.board.cellCount()) {
+      this.cellsPerTick *= 2;
+    }
+  }
+
+  // Runs the animation steps that came due since the last tick.
+  public void handleAnimation() {
+    this.handleAnimation(System.nanoTime());
+  }
+
+  // Runs the animation steps that came due by the given time: at least one
+  // while cells are waiting to be recolored, and no more than a frame's worth
+  // or half a frame's time. Does nothing on an idle board.
+  public void handleAnimation(long now) {
+    if (this.cellsToBeFlooded.isEmpty()) {
+      return;
+    }
+    long start = System.nanoTime();
+    int waiting = this.recolorsLeft();
+    long due = (now - this.lastStepNanos) / FloodItWorld.STEP_NANOS;
+    int steps = (int) Math.max(1, Math.min(FloodItWorld.MAX_STEPS_PER_TICK, due));
+    for (int i = 0; i < steps && !this.cellsToBeFlooded.isEmpty()
+        && System.nanoTime() - start < FloodItWorld.TICK_NANOS / 2; i++) {
+      this.handleFlooding();
+    }
+    // A frame that came very late drops the steps it missed rather than
+    // rushing through them.
+    if (due > FloodItWorld.MAX_STEPS_PER_TICK) {
+      this.lastStepNanos = now;
+    } else {
+      this.lastStepNanos += steps * FloodItWorld.STEP_NANOS;
+    }
+    if (this.stats != null) {
+      this.stats.endTick(now, waiting - this.recolorsLeft());
+    }
+  }
+
+  // Handles timer onTick, setting it from the time since the game started.
+  public void handleTimer() {
+    long elapsed = (System.nanoTime() - this.startNanos) / 1000000000L;
+    this.seconds = (int) (elapsed % 60);
+    this.minutes = (int) ((elapsed / 60) % 60);
+    this.hours = (int) (elapsed / 3600);
   }
 
   // Makes end scene with specified text in middle of screen.
@@ -302,32 +671,136 @@ class FloodItWorld extends World {
 
   // Renders game board onto scene.
   public void renderBoard() {
-    for (ArrayList<Cell> row : this.board) {
-      for (Cell c : row) {
-        this.scene.placeImageXY(c.draw(), c.x, c.y);
-      }
+    if (this.rasterRender) {
+      this.renderRaster();
+      return;
+    }
+    if (this.viewport != null) {
+      this.viewport.render(this.scene, this.tiles);
+      return;
+    }
+    Board board = this.engine.board;
+    for (int i = 0; i < board.cellCount(); i++) {
+      this.scene.placeImageXY(
+          FloodItWorld.CELL_IMAGES.get(board.colorAt(i)),
+          Cell.centerX(board, i),
+          Cell.centerY(board, i));
+    }
+  }
+
+  // Renders game board onto scene as a single raster image.
+  public void renderRaster() {
+    if (this.raster == null) {
+      this.raster = new RasterBoard(this.engine.board, FloodItWorld.COLORS,
+          FloodItWorld.CELL_SIZE);
+    }
+    if (this.viewport != null) {
+      double cellPixels = this.viewport.cellPixels();
+      this.scene.placeImageXY(this.raster.draw(this.viewport),
+          (int) (this.viewport.visibleCols() * cellPixels / 2),
+          (int) (this.viewport.visibleRows() * cellPixels / 2));
+    } else {
+      this.scene.placeImageXY(this.raster.draw(), this.screenWidth / 2,
+          (this.screenHeight - FloodItWorld.BOTTOM_PADDING) / 2);
     }
   }
 
+  // Draws the cells recolored since the last frame over the retained scene.
+  public void renderDirtyCells() {
+    Board board = this.engine.board;
+    while (!this.dirtyCells.isEmpty()) {
+      int c = this.dirtyCells.removeFirst();
+      this.scene.placeImageXY(
+          FloodItWorld.CELL_IMAGES.get(board.colorAt(c)),
+          Cell.centerX(board, c),
+          Cell.centerY(board, c));
+      this.sceneOverdraw++;
+    }
+  }
+
+  // Clears the bottom panel of the retained scene and draws its overlays
+  // again, since their text overlaps.
+  public void renderPanel() {
+    this.scene.placeImageXY(this.panelImage, this.screenWidth / 2,
+        this.screenHeight - (FloodItWorld.BOTTOM_PADDING / 2));
+    this.renderScore();
+    this.renderTimer();
+    this.renderHints();
+    this.sceneOverdraw += 3;
+  }
+
+  // Returns true if the score shown differs from the current score.
+  public boolean scoreDirty() {
+    return this.scoreImage == null
+        || this.scoreTries != this.engine.currentTries
+        || this.scoreRemaining != this.engine.remainingTries;
+  }
+
+  // Returns true if the timer shown differs from the current time.
+  public boolean timerDirty() {
+    return this.timerImage == null || this.timerSeconds != this.elapsedSeconds();
+  }
+
+  // Returns true if hints are on and the ones shown are for another flood.
+  public boolean hintsDirty() {
+    return this.showHints && (this.hintImages == null || this.hintHash != this.engine.floodHash);
+  }
+
+  // Returns the time on the timer, in seconds.
+  public int elapsedSeconds() {
+    return (((this.hours * 60) + this.minutes) * 60) + this.seconds;
+  }
+
   // Renders score onto scene.
   public void renderScore() {
-    String scoreText = this.currentTries + "/" + this.remainingTries;
-    WorldImage scoreImage = new TextImage(scoreText, 28, Color.BLACK);
-    this.scene.placeImageXY(scoreImage, this.screenWidth / 2,
+    if (this.scoreDirty()) {
+      String scoreText = this.engine.currentTries + "/" + this.engine.remainingTries;
+      this.scoreImage = new TextImage(scoreText, 28, Color.BLACK);
+      this.scoreTries = this.engine.currentTries;
+      this.scoreRemaining = this.engine.remainingTries;
+    }
+    this.scene.placeImageXY(this.scoreImage, this.screenWidth / 2,
         this.screenHeight - (FloodItWorld.BOTTOM_PADDING / 2));
   }
 
   // Renders timer onto scene.
   public void renderTimer() {
-    String seconds = String.format("%02d", this.seconds);
-    String minutes = String.format("%02d", this.minutes);
-    String hours = String.format("%02d", this.hours);
-    String timer = hours + ":" + minutes + ":" + seconds;
-    WorldImage timerImage = new TextImage(timer, 24, Color.BLUE);
-    this.scene.placeImageXY(timerImage, this.screenWidth / 2,
+    int elapsed = this.elapsedSeconds();
+    if (this.timerDirty()) {
+      String seconds = String.format("%02d", this.seconds);
+      String minutes = String.format("%02d", this.minutes);
+      String hours = String.format("%02d", this.hours);
+      String timer = hours + ":" + minutes + ":" + seconds;
+      this.timerImage = new TextImage(timer, 24, Color.BLUE);
+      this.timerSeconds = elapsed;
+    }
+    this.scene.placeImageXY(this.timerImage, this.screenWidth / 2,
         this.screenHeight - (FloodItWorld.BOTTOM_PADDING / 4));
   }
 
+  // Renders, when hints are on, the cells each color would absorb across
+  // the top of the panel, each in its color, the largest bigger. Reads the
+  // engine's per-color counts, so costs the same however big the board.
+  public void renderHints() {
+    if (!this.showHints) {
+      return;
+    }
+    if (this.hintsDirty()) {
+      int best = this.engine.hint();
+      this.hintImages = new ArrayList<WorldImage>();
+      for (int c = 0; c < this.numColors; c++) {
+        this.hintImages.add(new TextImage("+" + this.engine.gain(c), c == best ? 22 : 16,
+            FloodItWorld.COLORS.get(c)));
+      }
+      this.hintHash = this.engine.floodHash;
+    }
+    for (int c = 0; c < this.numColors; c++) {
+      this.scene.placeImageXY(this.hintImages.get(c),
+          (this.screenWidth * ((2 * c) + 1)) / (2 * this.numColors),
+          this.screenHeight - (FloodItWorld.BOTTOM_PADDING * 17 / 20));
+    }
+  }
+
   // Handles on click.
   @Override
   public void onMouseClicked(Posn mouse) {
@@ -336,75 +809,143 @@ class FloodItWorld extends World {
     // - User clicked outside of board.
     // - User clicked on color same as floodColor.
     if (this.cellsToBeFlooded.isEmpty() && this.isOnBoard(mouse.x, mouse.y)) {
-      Color selectedColor = getSelectedColor(mouse.x, mouse.y);
-      if (!selectedColor.equals(this.floodColor)) {
-        this.floodColor = selectedColor;
-        this.assignFlood();
-        this.currentTries++;
+      int selectedColor = getSelectedColor(mouse.x, mouse.y);
+      if (this.assignFlood(selectedColor) >= 0 && this.replays != null) {
+        this.replays.move(selectedColor);
       }
     }
   }
 
-  // Handes key events.
+  // Handes key events. "u" undoes a move and "y" redoes it, "h" turns hints
+  // on and off, and "s" prints the stats when they are on. On huge boards
+  // the arrow keys scroll the viewport and "+" and "-" zoom it.
   @Override
   public void onKeyEvent(String key) {
     if (key.equals("r")) {
       this.reset();
+    } else if (key.equals("u")) {
+      this.undoMove();
+    } else if (key.equals("y")) {
+      this.redoMove();
+    } else if (key.equals("h")) {
+      this.showHints = !this.showHints;
+      this.sceneStale = true;
+    } else if (key.equals("s") && this.stats != null) {
+      System.out.print(this.stats.report());
+    } else if (this.viewport != null) {
+      if (key.equals("up")) {
+        this.viewport.step(-1, 0);
+      } else if (key.equals("down")) {
+        this.viewport.step(1, 0);
+      } else if (key.equals("left")) {
+        this.viewport.step(0, -1);
+      } else if (key.equals("right")) {
+        this.viewport.step(0, 1);
+      } else if (key.equals("+") || key.equals("=")) {
+        this.viewport.zoomBy(1);
+      } else if (key.equals("-")) {
+        this.viewport.zoomBy(-1);
+      }
+      this.sceneStale = true;
     }
   }
 
   // Handles end world.
   @Override
   public WorldEnd worldEnds() {
-    boolean end = true;
-    String message = "";
-
-    if (this.currentTries == this.remainingTries
-        && this.cellsToBeFlooded.isEmpty()) {
-      message = "You Lost!";
-    } else if (this.didWin()) {
-      message = "You Won in "
+    long start = this.stats == null ? 0 : System.nanoTime();
+    WorldEnd end = this.checkEnd();
+    if (this.stats != null) {
+      this.stats.endCheck(start);
+    }
+    return end;
+  }
+
+  // Returns the end scene if the game is won or lost, or keepPlaying.
+  public WorldEnd checkEnd() {
+    // Only build an end scene once the game is actually over. A win on the
+    // last try is a win.
+    if (this.hasWon()) {
+      this.endReplay(ReplayLog.WON);
+      return new WorldEnd(true, this.makeEndScene("You Won in "
           + String.format("%02d", this.hours) + ":"
           + String.format("%02d", this.minutes) + ":"
           + String.format("%02d", this.seconds) + " with "
-          + this.currentTries + "/"
-          + this.remainingTries + " tries!";
+          + this.engine.currentTries + "/"
+          + this.engine.remainingTries + " tries!"));
+    } else if (this.hasLost()) {
+      this.endReplay(ReplayLog.LOST);
+      return new WorldEnd(true, this.makeEndScene("You Lost!"));
     } else {
-      end = false;
+      return this.keepPlaying;
+    }
+  }
+
+  // Writes the game to the replay log, if replays are on, with the given
+  // status. Only the first call for a game writes it.
+  public void endReplay(int status) {
+    if (this.replays == null || !this.replays.open) {
+      return;
+    }
+    try {
+      this.replays.finish(status);
+      this.replays.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write replay log.", e);
     }
-    return new WorldEnd(end, this.makeEndScene(message));
   }
 
   // Handles on tick.
   @Override
   public void onTick() {
-    this.handleFlooding();
+    this.handleAnimation();
     this.handleTimer();
+    this.currentTick++;
   }
 
-  // Generates scene based on fields.
+  // Generates scene based on fields. Draws from scratch only when the scene
+  // is stale or too much has been drawn over it; otherwise draws just what
+  // changed since the last frame, so an idle frame draws nothing.
   @Override
   public WorldScene makeScene() {
-    this.scene = getEmptyScene();
-    this.renderBoard();
-    this.renderScore();
-    this.renderTimer();
+    long start = this.stats == null ? 0 : this.stats.beginFrame();
+    int dirty = this.dirtyCells.size();
+    boolean full = this.sceneStale || this.sceneRaster != this.rasterRender
+        || this.sceneOverdraw + dirty > FloodItWorld.MAX_OVERDRAW;
+    if (full) {
+      this.scene = getEmptyScene();
+      this.renderBoard();
+      this.renderScore();
+      this.renderTimer();
+      this.renderHints();
+      this.dirtyCells.clear();
+      this.sceneOverdraw = 0;
+      this.sceneStale = false;
+      this.sceneRaster = this.rasterRender;
+    } else {
+      this.renderDirtyCells();
+      if (this.scoreDirty() || this.timerDirty() || this.hintsDirty()) {
+        this.renderPanel();
+      }
+    }
+    if (this.stats != null) {
+      this.stats.endFrame(start, full ? this.visibleCells() : dirty, full);
+    }
     return this.scene;
   }
+
+  // Returns the number of board cells a full redraw covers.
+  public int visibleCells() {
+    if (this.viewport != null) {
+      return this.viewport.visibleRows() * this.viewport.visibleCols();
+    }
+    return this.engine.board.cellCount();
+  }
 }
 
 class ExamplesFloodIt {
   FloodItWorld game;
 
-  // Tests big bang function
-  void testBigBang(Tester t) {
-    this.initGame();
-    this.game.bigBang(
-        this.game.screenWidth,
-        this.game.screenHeight,
-        FloodItWorld.TICK_RATE);
-  }
-
   // Initializes conditions.
   void initGame() {
     this.game = new FloodItWorld(22, 4);
@@ -419,9 +960,17 @@ class ExamplesFloodIt {
   void testDraw(Tester t) {
     this.initGame();
 
-    Cell c1 = new Cell(0, 0, Color.BLUE);
-    Cell c2 = new Cell(1, 1, Color.RED);
-    Cell c3 = new Cell(0, 0, Color.GREEN);
+    Board board = new Board(2, 4);
+    board.setColor(0, 0);
+    board.setColor(1, 1);
+    board.setColor(3, 3);
+    Cell c1 = new Cell(board, 0);
+    Cell c2 = new Cell(board, 1);
+    Cell c3 = new Cell(board, 3);
+
+    t.checkExpect(c1.x, FloodItWorld.CELL_SIZE / 2);
+    t.checkExpect(c2.x, FloodItWorld.CELL_SIZE + (FloodItWorld.CELL_SIZE / 2));
+    t.checkExpect(c3.y, FloodItWorld.CELL_SIZE + (FloodItWorld.CELL_SIZE / 2));
 
     t.checkExpect(c1.draw(), new RectangleImage(
         FloodItWorld.CELL_SIZE,
@@ -442,42 +991,37 @@ class ExamplesFloodIt {
         Color.GREEN));
   }
 
-  // Tests sameColor method for Cell.
-  void testSameColor(Tester t) {
-    Cell c = new Cell(0, 0, Color.BLUE);
-
-    t.checkExpect(c.sameColor(Color.BLUE), true);
-    t.checkExpect(c.sameColor(Color.RED), false);
-  }
-
-  // Tests flood method for Cell.
-  void testFlood(Tester t) {
+  // Tests color and isFlooded methods for Cell.
+  void testCellView(Tester t) {
     this.initCustom();
 
-    t.checkExpect(this.game.floodedCells.size(), 3);
-    t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
+    Cell origin = new Cell(this.game.engine.board, 0);
+    Cell last = new Cell(this.game.engine.board, 2);
 
-    Cell c4 = this.game.board.get(1).get(1);
-    Cell.flood(c4, this.game.floodColor, this.game.floodedCells,
-        this.game.cellsToBeFlooded);
+    t.checkExpect(origin.color(), this.game.engine.board.colorAt(0));
+    t.checkExpect(origin.isFlooded(), true);
+    t.checkExpect(last.isFlooded(), false);
+  }
 
-    t.checkExpect(this.game.floodedCells.size(), 3);
-    t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
+  // Tests sameColor method for Cell.
+  void testSameColor(Tester t) {
+    Board board = new Board(2, 2);
+    board.setColor(0, 1);
+    Cell c = new Cell(board, 0);
+
+    t.checkExpect(c.sameColor(1), true);
+    t.checkExpect(c.sameColor(0), false);
   }
 
-  // Tests floodMatchingNeighbors method for Cell.
-  void testFloodMatchingNeighbors(Tester t) {
+  // Tests that reset starts a new engine from the world's random generator.
+  void testResetEngine(Tester t) {
     this.initCustom();
 
-    t.checkExpect(this.game.floodedCells.size(), 3);
-    t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
-
-    Cell origin = this.game.board.get(0).get(0);
-    origin.floodMatchingNeighbors(this.game.floodColor, this.game.floodedCells,
-        this.game.cellsToBeFlooded);
+    FloodGame expected = new FloodGame(2, 2, new Random(100));
 
-    t.checkExpect(this.game.floodedCells.size(), 3);
-    t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
+    t.checkExpect(this.game.engine.board.colors, expected.board.colors);
+    t.checkExpect(this.game.engine.floodedCells.toArray(), expected.floodedCells.toArray());
+    t.checkExpect(this.game.engine.floodColor, expected.floodColor);
   }
 
   // Tests checkValidBoardSize method for FloodItWorld.
@@ -513,13 +1057,13 @@ class ExamplesFloodIt {
 
     this.game.reset();
 
-    t.checkExpect(this.game.floodedCells.size(), 2);
+    t.checkExpect(this.game.engine.floodedCells.size(), 2);
     t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
-    t.checkExpect(this.game.remainingTries,
+    t.checkExpect(this.game.engine.remainingTries,
         this.game.boardSize - this.game.numColors <= 0
             ? this.game.numColors
             : this.game.boardSize + (3 * this.game.numColors));
-    t.checkExpect(this.game.currentTries, 0);
+    t.checkExpect(this.game.engine.currentTries, 0);
     t.checkExpect(this.game.seconds, 0);
     t.checkExpect(this.game.minutes, 0);
     t.checkExpect(this.game.hours, 0);
@@ -536,67 +1080,6 @@ class ExamplesFloodIt {
     t.checkExpect(game2.getRandomColor(), Color.BLUE);
   }
 
-  // Tests initializeBoard method for FloodItWorld.
-  void testInitializeBoard(Tester t) {
-    this.initCustom();
-
-    Cell origin = this.game.board.get(0).get(0);
-
-    t.checkExpect(this.game.board.size(), this.game.boardSize);
-    t.checkExpect(this.game.board.get(0).size(), this.game.boardSize);
-    t.checkExpect(origin.flooded, true);
-    t.checkExpect(this.game.floodColor, origin.color);
-  }
-
-  // Tests linkCells method for FloodItWorld.
-  void testLinkCells(Tester t) {
-    this.initGame();
-
-    Cell topLeft = this.game.board.get(0).get(0);
-    Cell topRight = this.game.board.get(0).get(this.game.boardSize - 1);
-    Cell bottomLeft = this.game.board.get(this.game.boardSize - 1).get(0);
-    Cell bottomRight = this.game.board.get(this.game.boardSize - 1)
-        .get(this.game.boardSize - 1);
-    Cell center = this.game.board.get(this.game.boardSize / 2)
-        .get(this.game.boardSize / 2);
-
-    t.checkExpect(topLeft.top, null);
-    t.checkExpect(topLeft.left, null);
-    t.checkExpect(topLeft.right, this.game.board.get(0).get(1));
-    t.checkExpect(topLeft.bottom, this.game.board.get(1).get(0));
-
-    t.checkExpect(topRight.top, null);
-    t.checkExpect(topRight.left, this.game.board.get(0)
-        .get(this.game.boardSize - 2));
-    t.checkExpect(topRight.right, null);
-    t.checkExpect(topRight.bottom, this.game.board.get(1)
-        .get(this.game.boardSize - 1));
-
-    t.checkExpect(bottomLeft.top, this.game.board.get(this.game.boardSize - 2).get(0));
-    t.checkExpect(bottomLeft.left, null);
-    t.checkExpect(bottomLeft.right, this.game.board.get(this.game.boardSize - 1).get(1));
-    t.checkExpect(bottomLeft.bottom, null);
-
-    t.checkExpect(bottomRight.top, this.game.board.get(this.game.boardSize - 2)
-        .get(this.game.boardSize - 1));
-    t.checkExpect(bottomRight.left, this.game.board.get(this.game.boardSize - 1)
-        .get(this.game.boardSize - 2));
-    t.checkExpect(bottomRight.right, null);
-    t.checkExpect(bottomRight.bottom, null);
-
-    t.checkExpect(center.top, this.game.board.get(this.game.boardSize / 2 - 1)
-        .get(this.game.boardSize / 2));
-    t.checkExpect(center.left, this.game.board.get(this.game.boardSize / 2)
-        .get(this.game.boardSize / 2 - 1));
-    t.checkExpect(center.right, this.game.board.get(this.game.boardSize / 2)
-        .get(this.game.boardSize / 2 + 1));
-    t.checkExpect(center.bottom, this.game.board.get(this.game.boardSize / 2 + 1)
-        .get(this.game.boardSize / 2));
-
-    Cell origin = this.game.board.get(0).get(0);
-    t.checkExpect(this.game.floodedCells, new ArrayList<Cell>(Arrays.asList(origin)));
-  }
-
   // Tests isOnBoard method for FloodItWorld.
   void testIsOnBoard(Tester t) {
     this.initCustom();
@@ -614,35 +1097,120 @@ class ExamplesFloodIt {
 
     t.checkExpect(this.game.didWin(), false);
 
-    for (ArrayList<Cell> row : this.game.board) {
-      for (Cell c : row) {
-        c.flooded = true;
-        c.color = this.game.floodColor;
-      }
+    for (int i = 0; i < this.game.engine.board.cellCount(); i++) {
+      this.game.engine.board.setFlooded(i);
+      this.game.engine.board.setColor(i, this.game.engine.floodColor);
     }
 
     t.checkExpect(this.game.didWin(), true);
   }
 
+  // Tests hasWon method for FloodItWorld.
+  void testHasWon(Tester t) {
+    this.initCustom();
+
+    t.checkExpect(this.game.hasWon(), false);
+
+    this.playMove(this.game, this.game.engine.board.colorAt(2));
+
+    t.checkExpect(this.game.hasWon(), true);
+
+    // Not won while the last recolor is still queued.
+    this.game.cellsToBeFlooded.add(0);
+
+    t.checkExpect(this.game.hasWon(), false);
+  }
+
+  // Tests hasLost method for FloodItWorld.
+  void testHasLost(Tester t) {
+    this.initCustom();
+
+    t.checkExpect(this.game.hasLost(), false);
+
+    this.game.engine.currentTries = this.game.engine.remainingTries;
+
+    t.checkExpect(this.game.hasLost(), true);
+
+    this.game.cellsToBeFlooded.add(0);
+
+    t.checkExpect(this.game.hasLost(), false);
+
+    // Winning with the last try is not a loss.
+    this.initCustom();
+    this.game.engine.remainingTries = 1;
+    this.playMove(this.game, this.game.engine.board.colorAt(2));
+
+    t.checkExpect(this.game.engine.currentTries, this.game.engine.remainingTries);
+    t.checkExpect(this.game.hasWon(), true);
+    t.checkExpect(this.game.hasLost(), false);
+  }
+
+  // Tests that hasWon agrees with the full-board didWin scan after every
+  // tick of thousands of randomly played games.
+  void testHasWonMatchesDidWin(Tester t) {
+    Random moves = new Random(3);
+    int disagreements = 0;
+    int wins = 0;
+
+    for (int seed = 0; seed < 2000; seed++) {
+      int size = 2 + (seed % 9);
+      int colors = 2 + (seed % 7);
+      FloodItWorld world = new FloodItWorld(size, colors, new Random(seed));
+      int px = size * FloodItWorld.CELL_SIZE;
+
+      for (int move = 0; move < 2000 && !world.hasWon(); move++) {
+        world.onMouseClicked(new Posn(moves.nextInt(px), moves.nextInt(px)));
+        if (world.hasWon() != world.didWin()) {
+          disagreements++;
+        }
+        while (!world.cellsToBeFlooded.isEmpty()) {
+          world.onTick();
+          if (world.hasWon() != world.didWin()) {
+            disagreements++;
+          }
+        }
+      }
+      if (world.hasWon()) {
+        wins++;
+      }
+    }
+
+    t.checkExpect(disagreements, 0);
+    t.checkExpect(wins, 2000);
+  }
+
   // Tests getSelectedColor method for FloodItWorld.
   void testGetSelectedColor(Tester t) {
     this.initCustom();
 
-    Cell origin = this.game.board.get(0).get(0);
-    t.checkExpect(this.game.getSelectedColor(0, 0), origin.color);
-    t.checkExpect(this.game.getSelectedColor(26, 0), origin.right.color);
+    t.checkExpect(this.game.getSelectedColor(0, 0), this.game.engine.board.colorAt(0));
+    t.checkExpect(this.game.getSelectedColor(26, 0),
+        this.game.engine.board.colorAt(this.game.engine.board.right(0)));
   }
 
   // Tests assignFlood method for FloodItWorld.
   void testAssignFlood(Tester t) {
     this.initCustom();
 
-    t.checkExpect(this.game.floodedCells.size(), 3);
+    t.checkExpect(this.game.engine.floodedCells.size(), 3);
     t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
 
-    this.game.assignFlood();
+    this.game.assignFlood(this.game.engine.floodColor);
+
+    t.checkExpect(this.game.engine.floodedCells.size(), 3);
+  }
+
+  // Plays a move the way onMouseClicked does and lets the animation finish.
+  void playMove(FloodItWorld world, int color) {
+    world.assignFlood(color);
+    while (!world.cellsToBeFlooded.isEmpty()) {
+      world.handleFlooding();
+    }
+  }
 
-    t.checkExpect(this.game.floodedCells.size(), 3);
+  // Returns the next color to play, or -1 if the board is fully flooded.
+  int nextColor(FloodItWorld world) {
+    return world.engine.firstFrontierColor();
   }
 
   // Tests handleFlooding method for FloodItWorld.
@@ -650,12 +1218,12 @@ class ExamplesFloodIt {
     this.initCustom();
 
     t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
-    t.checkExpect(this.game.floodedCells.size(), 3);
+    t.checkExpect(this.game.engine.floodedCells.size(), 3);
 
-    this.game.assignFlood();
+    this.game.assignFlood(this.game.engine.floodColor);
 
     t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
-    t.checkExpect(this.game.floodedCells.size(), 3);
+    t.checkExpect(this.game.engine.floodedCells.size(), 3);
   }
 
   // Tests handleTimer method for FloodItWorld.
@@ -666,7 +1234,7 @@ class ExamplesFloodIt {
     t.checkExpect(this.game.minutes, 0);
     t.checkExpect(this.game.hours, 0);
 
-    this.game.currentTick = FloodItWorld.SECONDS_MOD;
+    this.game.startNanos = System.nanoTime() - 1500000000L;
 
     this.game.handleTimer();
 
@@ -674,8 +1242,7 @@ class ExamplesFloodIt {
     t.checkExpect(this.game.minutes, 0);
     t.checkExpect(this.game.hours, 0);
 
-    this.game.seconds = 59;
-    this.game.currentTick = FloodItWorld.SECONDS_MOD;
+    this.game.startNanos = System.nanoTime() - 60500000000L;
 
     this.game.handleTimer();
 
@@ -683,16 +1250,55 @@ class ExamplesFloodIt {
     t.checkExpect(this.game.minutes, 1);
     t.checkExpect(this.game.hours, 0);
 
-    this.game.seconds = 59;
-    this.game.minutes = 59;
-
-    this.game.currentTick = FloodItWorld.SECONDS_MOD;
+    this.game.startNanos = System.nanoTime() - 3661500000000L;
 
     this.game.handleTimer();
 
-    t.checkExpect(this.game.seconds, 0);
-    t.checkExpect(this.game.minutes, 0);
+    t.checkExpect(this.game.seconds, 1);
+    t.checkExpect(this.game.minutes, 1);
     t.checkExpect(this.game.hours, 1);
+
+    // However many ticks run, the timer only follows the clock.
+    this.initCustom();
+    for (int i = 0; i < 100000; i++) {
+      this.game.onTick();
+    }
+
+    t.checkExpect(this.game.seconds, 0);
+    t.checkExpect(this.game.currentTick, 100000);
+  }
+
+  // Tests handleAnimation method for FloodItWorld.
+  void testHandleAnimation(Tester t) {
+    FloodItWorld world = new FloodItWorld(30, 3, new Random(4));
+    world.waveAnimation = false;
+    long lastStep = world.lastStepNanos;
+
+    // An idle tick does nothing.
+    world.handleAnimation();
+    t.checkExpect(world.lastStepNanos, lastStep);
+
+    // The classic animation recolors one cell a step.
+    for (int i = 0; i < world.engine.board.cellCount(); i++) {
+      world.cellsToBeFlooded.add(i);
+    }
+    long now = 1000000000000L;
+    world.lastStepNanos = now + FloodItWorld.STEP_NANOS;
+    world.handleAnimation(now);
+    t.checkExpect(world.cellsToBeFlooded.size(), 899);
+    t.checkExpect(world.lastStepNanos, now + (2 * FloodItWorld.STEP_NANOS));
+
+    world.lastStepNanos = now - (5 * FloodItWorld.STEP_NANOS) - (FloodItWorld.STEP_NANOS / 2);
+    world.handleAnimation(now);
+    t.checkExpect(world.cellsToBeFlooded.size(), 894);
+    t.checkExpect(world.lastStepNanos, now - (FloodItWorld.STEP_NANOS / 2));
+
+    // A very late frame catches up on at most one frame of steps, and drops
+    // the rest.
+    world.lastStepNanos = now - 1000000000L;
+    world.handleAnimation(now);
+    t.checkExpect(world.cellsToBeFlooded.size(), 894 - FloodItWorld.MAX_STEPS_PER_TICK);
+    t.checkExpect(world.lastStepNanos, now);
   }
 
   // Tests makeEndScene method for FloodItWorld.
@@ -717,10 +1323,9 @@ class ExamplesFloodIt {
     this.initCustom();
 
     WorldScene s1 = this.game.getEmptyScene();
-    for (ArrayList<Cell> row : this.game.board) {
-      for (Cell c : row) {
-        s1.placeImageXY(c.draw(), c.x, c.y);
-      }
+    for (int i = 0; i < this.game.engine.board.cellCount(); i++) {
+      Cell c = new Cell(this.game.engine.board, i);
+      s1.placeImageXY(c.draw(), c.x, c.y);
     }
 
     t.checkExpect(this.game.scene, this.game.getEmptyScene());
@@ -735,14 +1340,14 @@ class ExamplesFloodIt {
     this.initCustom();
 
     WorldScene s1 = this.game.getEmptyScene();
-    String scoreText = this.game.currentTries + "/" + this.game.remainingTries;
+    String scoreText = this.game.engine.currentTries + "/" + this.game.engine.remainingTries;
     WorldImage scoreImage = new TextImage(scoreText, 28, Color.BLACK);
     s1.placeImageXY(scoreImage, this.game.screenWidth / 2,
         this.game.screenHeight - (FloodItWorld.BOTTOM_PADDING / 2));
 
     t.checkExpect(this.game.scene, this.game.getEmptyScene());
 
-    this.game.renderBoard();
+    this.game.renderScore();
 
     t.checkExpect(this.game.scene, s1);
   }
@@ -773,15 +1378,33 @@ class ExamplesFloodIt {
 
     // If user pressed outside board, nothing should change.
     this.game.onMouseClicked(new Posn(300, 300));
-    t.checkExpect(this.game.currentTries, 0);
+    t.checkExpect(this.game.engine.currentTries, 0);
 
     // If user pressed same color cell.
     this.game.onMouseClicked(new Posn(1, 1));
-    t.checkExpect(this.game.currentTries, 0);
+    t.checkExpect(this.game.engine.currentTries, 0);
 
     // If user pressed different color cell (should flood).
     this.game.onMouseClicked(new Posn(12, 37));
-    t.checkExpect(this.game.currentTries, 1);
+    t.checkExpect(this.game.engine.currentTries, 1);
+    // The move is played by the engine, which logs it as a move.
+    t.checkExpect(this.game.engine.moves.toArray(),
+        new int[] {this.game.engine.floodColor});
+  }
+
+  // Tests that assignFlood plays the move through FloodGame.applyMove,
+  // spending one try, and that the flood color is refused there too.
+  void testAssignFloodAppliesMove(Tester t) {
+    this.initCustom();
+    int color = 1 - this.game.engine.floodColor;
+
+    t.checkExpect(this.game.assignFlood(this.game.engine.floodColor), -1);
+    t.checkExpect(this.game.engine.currentTries, 0);
+    t.checkExpect(this.game.engine.moveCount(), 0);
+    // Cells 0, 1 and 3 are flooded, so the move absorbs cell 2.
+    t.checkExpect(this.game.assignFlood(color), 1);
+    t.checkExpect(this.game.engine.currentTries, 1);
+    t.checkExpect(this.game.engine.moves.toArray(), new int[] {color});
   }
 
   // Tests onKeyEvent method for FloodItWorld.
@@ -790,44 +1413,72 @@ class ExamplesFloodIt {
 
     this.game.onMouseClicked(new Posn(12, 37));
 
-    t.checkExpect(this.game.currentTries, 1);
+    t.checkExpect(this.game.engine.currentTries, 1);
 
     this.game.onKeyEvent("r");
 
-    t.checkExpect(this.game.currentTries, 0);
-    t.checkExpect(this.game.floodedCells.size(), 2);
+    t.checkExpect(this.game.engine.currentTries, 0);
+    t.checkExpect(this.game.engine.floodedCells.size(), 2);
     t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
   }
 
+  // Tests that "u" and "y" undo and redo moves, colors included.
+  void testUndoRedoKeys(Tester t) {
+    FloodItWorld world = new FloodItWorld(16, 4, new Random(3));
+    byte[] start = world.engine.board.colors.clone();
+    this.playMove(world, this.nextColor(world));
+    this.playMove(world, this.nextColor(world));
+    byte[] after = world.engine.board.colors.clone();
+    int flooded = world.engine.floodedCells.size();
+
+    // Undo also finishes an animation still playing.
+    world.assignFlood(this.nextColor(world));
+    world.onKeyEvent("u");
+
+    t.checkExpect(world.cellsToBeFlooded.isEmpty(), true);
+    t.checkExpect(world.engine.board.colors, after);
+    t.checkExpect(world.engine.currentTries, 2);
+
+    world.onKeyEvent("u");
+    world.onKeyEvent("u");
+    world.onKeyEvent("u");
+
+    t.checkExpect(world.engine.board.colors, start);
+    t.checkExpect(world.engine.currentTries, 0);
+
+    world.onKeyEvent("y");
+    world.onKeyEvent("y");
+
+    t.checkExpect(world.engine.board.colors, after);
+    t.checkExpect(world.engine.floodedCells.size(), flooded);
+    t.checkExpect(world.engine.currentTries, 2);
+  }
+
   // Tests worldEnds method for FloodItWorld.
   void testWorldEnds(Tester t) {
     this.initCustom();
 
     WorldEnd notEnd = new WorldEnd(false, this.game.makeEndScene(""));
     WorldEnd endLost = new WorldEnd(true, this.game.makeEndScene("You Lost!"));
-    WorldEnd endWin = new WorldEnd(true, this.game.makeEndScene(
-        "You Won in "
-            + String.format("%02d", this.game.hours) + ":"
-            + String.format("%02d", this.game.minutes) + ":"
-            + String.format("%02d", this.game.seconds) + " with "
-            + this.game.currentTries + "/"
-            + this.game.remainingTries + " tries!"));
 
     // Test world not ended yet.
     t.checkExpect(this.game.worldEnds(), notEnd);
+    t.checkExpect(this.game.worldEnds() == this.game.worldEnds(), true);
 
     // Test world end on a lost.
-    this.game.currentTries = this.game.remainingTries;
+    this.game.engine.currentTries = this.game.engine.remainingTries;
     t.checkExpect(this.game.didWin(), false);
     t.checkExpect(this.game.worldEnds(), endLost);
 
-    // Test world end on a win.
-    for (ArrayList<Cell> row : this.game.board) {
-      for (Cell c : row) {
-        c.flooded = true;
-        c.color = this.game.floodColor;
-      }
-    }
+    // Test world end on a win with the last try.
+    this.initCustom();
+    this.game.engine.remainingTries = 1;
+    this.playMove(this.game, this.game.engine.board.colorAt(2));
+    WorldEnd endWin = new WorldEnd(true, this.game.makeEndScene(
+        "You Won in "
+            + String.format("%02d", this.game.hours) + ":"
+            + String.format("%02d", this.game.minutes) + ":"
+            + String.format("%02d", this.game.seconds) + " with 1/1 tries!"));
 
     t.checkExpect(this.game.didWin(), true);
     t.checkExpect(this.game.worldEnds(), endWin);
@@ -837,8 +1488,7 @@ class ExamplesFloodIt {
   void testOnTick(Tester t) {
     this.initCustom();
 
-    Cell origin = this.game.board.get(0).get(0);
-    this.game.cellsToBeFlooded.add(origin);
+    this.game.cellsToBeFlooded.add(0);
 
     t.checkExpect(this.game.currentTick, 0);
     t.checkExpect(this.game.cellsToBeFlooded.size(), 1);
@@ -851,17 +1501,599 @@ class ExamplesFloodIt {
     t.checkExpect(this.game.cellsToBeFlooded.size(), 0);
   }
 
+  // Tests that onTick and worldEnds allocate nothing once warmed up.
+  void testOnTickAllocation(Tester t) {
+    FloodItWorld world = new FloodItWorld(60, 6, new Random(5));
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+
+    // Warm up both the game and the allocation counter over a few moves.
+    for (int move = 0; move < 20; move++) {
+      this.playMove(world, this.nextColor(world));
+      for (int i = 0; i < 1000; i++) {
+        world.onTick();
+        world.worldEnds();
+      }
+    }
+    long before = threads.getThreadAllocatedBytes(threadId);
+    before = threads.getThreadAllocatedBytes(threadId);
+    long counterCost = threads.getThreadAllocatedBytes(threadId) - before;
+
+    world.assignFlood(this.nextColor(world));
+    t.checkExpect(world.cellsToBeFlooded.isEmpty(), false);
+
+    before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < 10000; i++) {
+      world.onTick();
+      world.worldEnds();
+    }
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before - counterCost;
+
+    t.checkExpect(world.cellsToBeFlooded.isEmpty(), true);
+    t.checkExpect(allocated, 0L);
+  }
+
+  // Tests queueWaves method for FloodItWorld.
+  void testQueueWaves(Tester t) {
+    this.initCustom();
+
+    // Cells 0, 1 and 3 are flooded in color 1; absorbing cell 2 with color 0
+    // recolors 0, then 1, then 3, each in its own wave. Only the first wave
+    // is queued by the move.
+    this.game.assignFlood(0);
+
+    t.checkExpect(this.game.cellsToBeFlooded.toArray(), new int[] {0});
+    t.checkExpect(this.game.recolorsLeft(), 3);
+
+    this.game.queueCells(3);
+
+    t.checkExpect(this.game.cellsToBeFlooded.toArray(), new int[] {0, 1, 3});
+    t.checkExpect(this.game.waveSizes.toArray(), new int[] {1, 1, 1});
+    t.checkExpect(this.game.queueWave(), false);
+  }
+
+  // Tests that a move on a big flood queues only a wave or so, and that the
+  // walk the animation makes still recolors every cell flooded before it,
+  // over moves played with either animation and undone.
+  void testQueueCellsLazily(Tester t) {
+    FloodItWorld world = new FloodItWorld(60, 3, new Random(4));
+    while (world.engine.floodedCells.size() < 2000) {
+      this.playMove(world, this.nextColor(world));
+    }
+    world.waveAnimation = false;
+    this.playMove(world, this.nextColor(world));
+    world.waveAnimation = true;
+    this.playMove(world, this.nextColor(world));
+    world.undoMove();
+    this.playMove(world, this.nextColor(world));
+    int flooded = world.engine.floodedCells.size();
+
+    world.assignFlood(this.nextColor(world));
+
+    t.checkExpect(world.cellsToBeFlooded.size() < 10, true);
+    t.checkExpect(world.recolorsLeft(), flooded);
+
+    world.finishAnimation();
+    int stale = 0;
+    for (int i = 0; i < world.engine.floodedCells.size(); i++) {
+      if (world.engine.board.colorAt(world.engine.floodedCells.get(i))
+          != world.engine.floodColor) {
+        stale++;
+      }
+    }
+
+    t.checkExpect(stale, 0);
+    t.checkExpect(world.recolorsLeft(), 0);
+  }
+
+  // Tests that the classic animation recolors one cell per tick in flood order.
+  void testHandleFloodingClassic(Tester t) {
+    this.initCustom();
+    this.game.waveAnimation = false;
+
+    this.game.assignFlood(0);
+
+    t.checkExpect(this.game.cellsToBeFlooded.toArray(), new int[] {0});
+    t.checkExpect(this.game.recolorsLeft(), 3);
+
+    this.game.handleFlooding();
+
+    t.checkExpect(this.game.engine.board.colorAt(0), 0);
+    t.checkExpect(this.game.engine.board.colorAt(1), 1);
+    t.checkExpect(this.game.cellsToBeFlooded.toArray(), new int[] {1});
+    t.checkExpect(this.game.recolorsLeft(), 2);
+
+    this.game.handleFlooding();
+    this.game.handleFlooding();
+
+    t.checkExpect(this.game.engine.board.colorAt(3), 0);
+    t.checkExpect(this.game.cellsToBeFlooded.isEmpty(), true);
+  }
+
+  // Tests that a large flood finishes animating within maxAnimationTicks.
+  void testHandleFloodingBounded(Tester t) {
+    FloodItWorld world = new FloodItWorld(150, 3, new Random(9));
+    while (world.engine.floodedCells.size() < 10000) {
+      this.playMove(world, this.nextColor(world));
+    }
+    // Make every tick look slow, so only the deadline sizes the batches.
+    world.frameBudgetNanos = 0;
+
+    world.assignFlood(this.nextColor(world));
+    int pending = world.recolorsLeft();
+    int ticks = 0;
+    while (!world.cellsToBeFlooded.isEmpty()) {
+      world.handleFlooding();
+      ticks++;
+    }
+
+    t.checkExpect(pending >= 10000, true);
+    t.checkExpect(ticks <= world.maxAnimationTicks + 1, true);
+    int stale = 0;
+    for (int i = 0; i < world.engine.floodedCells.size(); i++) {
+      if (world.engine.board.colorAt(world.engine.floodedCells.get(i)) != world.engine.floodColor) {
+        stale++;
+      }
+    }
+    t.checkExpect(stale, 0);
+  }
+
+  // Tests adaptCellsPerTick method for FloodItWorld.
+  void testAdaptCellsPerTick(Tester t) {
+    this.initCustom();
+    this.game.frameBudgetNanos = 1000;
+    this.game.cellsPerTick = 2;
+
+    this.game.adaptCellsPerTick(100);
+    t.checkExpect(this.game.cellsPerTick, 4);
+
+    // Never grows past the size of the board.
+    this.game.adaptCellsPerTick(100);
+    t.checkExpect(this.game.cellsPerTick, 4);
+
+    this.game.adaptCellsPerTick(5000);
+    t.checkExpect(this.game.cellsPerTick, 2);
+
+    this.game.adaptCellsPerTick(700);
+    t.checkExpect(this.game.cellsPerTick, 2);
+
+    this.game.cellsPerTick = 1;
+    this.game.adaptCellsPerTick(5000);
+    t.checkExpect(this.game.cellsPerTick, 1);
+  }
+
+  // Tests makeCellImages method for FloodItWorld.
+  void testMakeCellImages(Tester t) {
+    ArrayList<WorldImage> images = FloodItWorld.makeCellImages();
+
+    t.checkExpect(images.size(), FloodItWorld.COLORS.size());
+    t.checkExpect(images.get(1), new RectangleImage(
+        FloodItWorld.CELL_SIZE,
+        FloodItWorld.CELL_SIZE,
+        OutlineMode.SOLID,
+        Color.RED));
+    t.checkExpect(new Cell(new Board(2, 2), 0).draw() == FloodItWorld.CELL_IMAGES.get(0), true);
+  }
+
+  // Tests that score and timer images are only rebuilt when their text changes.
+  void testOverlayCaching(Tester t) {
+    this.initCustom();
+
+    this.game.makeScene();
+    WorldImage score = this.game.scoreImage;
+    WorldImage timer = this.game.timerImage;
+    this.game.makeScene();
+
+    t.checkExpect(this.game.scoreImage == score, true);
+    t.checkExpect(this.game.timerImage == timer, true);
+
+    this.game.engine.currentTries++;
+    this.game.seconds++;
+    this.game.makeScene();
+
+    t.checkExpect(this.game.scoreImage == score, false);
+    t.checkExpect(this.game.timerImage == timer, false);
+    t.checkExpect(this.game.scoreImage, new TextImage("1/" + this.game.engine.remainingTries,
+        28, Color.BLACK));
+    t.checkExpect(this.game.timerImage, new TextImage("00:00:01", 24, Color.BLUE));
+  }
+
+  // Tests that boards too big for the screen get a fixed-size viewport.
+  void testHugeBoard(Tester t) {
+    FloodItWorld world = new FloodItWorld(1000, 4, new Random(6));
+
+    t.checkExpect(world.screenWidth, FloodItWorld.MAX_VIEW_PIXELS);
+    t.checkExpect(world.screenHeight, FloodItWorld.MAX_VIEW_PIXELS + FloodItWorld.BOTTOM_PADDING);
+    t.checkExpect(world.viewport.boardSize, 1000);
+    t.checkExpect(world.tiles.board, world.engine.board);
+    t.checkExpect(new FloodItWorld(40, 4, new Random(6)).viewport, null);
+  }
+
+  // Tests that keys scroll and zoom the viewport, and clicks map through it.
+  void testHugeBoardInput(Tester t) {
+    FloodItWorld world = new FloodItWorld(1000, 4, new Random(6));
+    Board board = world.engine.board;
+
+    world.onKeyEvent("down");
+    world.onKeyEvent("right");
+    world.onKeyEvent("right");
+    int row = world.viewport.row;
+    int col = world.viewport.col;
+
+    t.checkExpect(row, world.viewport.visibleRows() / 4);
+    t.checkExpect(col, 2 * (world.viewport.visibleCols() / 4));
+    t.checkExpect(world.isOnBoard(999, 999), true);
+    t.checkExpect(world.isOnBoard(500, 1050), false);
+    t.checkExpect(world.getSelectedColor(30, 60),
+        board.colorAt(board.index(row + 2, col + 1)));
+
+    world.onKeyEvent("-");
+    t.checkExpect(world.viewport.zoom, Viewport.ZOOM_LEVELS.length - 2);
+    world.onKeyEvent("=");
+    t.checkExpect(world.viewport.zoom, Viewport.ZOOM_LEVELS.length - 1);
+  }
+
+  // Tests that the flood animation marks recolored tiles, and that a frame of
+  // a huge board places about as many images as the window holds cells.
+  void testHugeBoardScene(Tester t) {
+    FloodItWorld world = new FloodItWorld(1000, 4, new Random(6));
+    int version = world.tiles.version[0];
+
+    this.playMove(world, this.nextColor(world));
+
+    t.checkExpect(world.tiles.version[0] > version, true);
+
+    world.viewport.zoomBy(-2);
+    int placed = world.viewport.render(world.getEmptyScene(), world.tiles);
+    int perSide = (FloodItWorld.MAX_VIEW_PIXELS / Viewport.MIN_BLOCK_PIXELS) + 1;
+
+    t.checkExpect(world.makeScene(), world.scene);
+    t.checkExpect(placed <= (perSide * perSide) + 3, true);
+  }
+
+  // Tests that the raster path draws the board as one image and repaints
+  // the cells the flood animation recolors.
+  void testRenderRaster(Tester t) {
+    FloodItWorld world = new FloodItWorld(22, 4, new Random(4));
+    world.rasterRender = true;
+    world.renderBoard();
+    RasterBoard raster = world.raster;
+
+    WorldScene expected = world.getEmptyScene();
+    expected.placeImageXY(raster.draw(), 275, 275);
+    t.checkExpect(world.scene, expected);
+
+    for (int move = 0; move < 5; move++) {
+      this.playMove(world, this.nextColor(world));
+    }
+    Board board = world.engine.board;
+    int mismatches = 0;
+    for (int i = 0; i < board.cellCount(); i++) {
+      Color pixel = raster.pixels.getPixel(board.colOf(i), board.rowOf(i));
+      if (!pixel.equals(FloodItWorld.COLORS.get(board.colorAt(i)))) {
+        mismatches++;
+      }
+    }
+
+    t.checkExpect(world.raster == raster, true);
+    t.checkExpect(mismatches, 0);
+
+    world.reset();
+    t.checkExpect(world.raster, null);
+  }
+
+  // Tests that the raster path draws only the viewport of a huge board.
+  void testRenderRasterHuge(Tester t) {
+    FloodItWorld world = new FloodItWorld(1000, 4, new Random(6));
+    world.rasterRender = true;
+    world.viewport.zoomBy(-7);
+    world.renderBoard();
+
+    WorldScene expected = world.getEmptyScene();
+    expected.placeImageXY(world.raster.draw(world.viewport), 125, 125);
+    t.checkExpect(world.scene, expected);
+  }
+
+  // Tests that makeScene keeps its scene between frames, drawing nothing on
+  // an idle frame and only the recolored cells and changed overlays otherwise.
+  void testRetainedScene(Tester t) {
+    FloodItWorld world = new FloodItWorld(12, 4, new Random(2));
+    WorldScene first = world.makeScene();
+
+    t.checkExpect(world.makeScene() == first, true);
+    t.checkExpect(world.sceneOverdraw, 0);
+
+    int before = world.engine.floodedCells.size();
+    world.onMouseClicked(new Posn(12, 12 + FloodItWorld.CELL_SIZE));
+    int recolored = 0;
+    while (!world.cellsToBeFlooded.isEmpty()) {
+      recolored += world.cellsToBeFlooded.size();
+      world.handleFlooding();
+      recolored -= world.cellsToBeFlooded.size();
+    }
+
+    t.checkExpect(world.engine.currentTries, 1);
+    t.checkExpect(world.dirtyCells.size(), recolored);
+    t.checkExpect(recolored >= before, true);
+    t.checkExpect(world.makeScene() == first, true);
+    // The recolored cells, then the panel, score and timer.
+    t.checkExpect(world.sceneOverdraw, recolored + 3);
+    t.checkExpect(world.dirtyCells.isEmpty(), true);
+
+    world.makeScene();
+    t.checkExpect(world.sceneOverdraw, recolored + 3);
+  }
+
+  // Tests the cases where makeScene draws the scene from scratch.
+  void testRetainedSceneRebuild(Tester t) {
+    FloodItWorld world = new FloodItWorld(40, 3, new Random(2));
+    WorldScene first = world.makeScene();
+
+    // Too many recolored cells to draw over the old frame.
+    world.sceneOverdraw = FloodItWorld.MAX_OVERDRAW - 1;
+    world.recolor(5);
+    world.recolor(6);
+    WorldScene second = world.makeScene();
+    t.checkExpect(second == first, false);
+    t.checkExpect(world.sceneOverdraw, 0);
+
+    // Switching render paths.
+    world.rasterRender = true;
+    WorldScene third = world.makeScene();
+    t.checkExpect(third == second, false);
+    t.checkExpect(world.makeScene() == third, true);
+
+    world.onKeyEvent("r");
+    t.checkExpect(world.sceneStale, true);
+    t.checkExpect(world.makeScene() == third, false);
+
+    // Huge boards redraw their window when it moves or a cell changes.
+    FloodItWorld huge = new FloodItWorld(100, 3, new Random(2));
+    WorldScene frame = huge.makeScene();
+    huge.onKeyEvent("down");
+    t.checkExpect(huge.sceneStale, true);
+    frame = huge.makeScene();
+    huge.recolor(0);
+    t.checkExpect(huge.dirtyCells.isEmpty(), true);
+    t.checkExpect(huge.makeScene() == frame, false);
+  }
+
+  // Tests that a world with stats times its moves, ticks, end checks and
+  // frames, and that one without them has none.
+  void testStats(Tester t) {
+    FloodItWorld world = new FloodItWorld(20, 4, new Random(5));
+
+    t.checkExpect(world.stats, null);
+
+    world.stats = new GameStats();
+    world.makeScene();
+    int flooded = world.engine.floodedCells.size();
+    world.assignFlood(this.nextColor(world));
+    int absorbed = world.engine.floodedCells.size() - flooded;
+    int queued = world.cellsToBeFlooded.size();
+    world.lastStepNanos -= 1000 * FloodItWorld.STEP_NANOS;
+    while (!world.cellsToBeFlooded.isEmpty()) {
+      world.onTick();
+    }
+    world.onTick();
+    world.worldEnds();
+    world.makeScene();
+
+    t.checkExpect(world.stats.moveNanos.count, 1L);
+    t.checkExpect(world.stats.cellsAbsorbed, (long) absorbed);
+    t.checkExpect(world.stats.tickNanos.count > 0, true);
+    t.checkExpect(world.stats.cellsRecolored, (long) queued);
+    t.checkExpect(world.stats.endCheckNanos.count, 1L);
+    t.checkExpect(world.stats.frameNanos.count, 2L);
+    t.checkExpect(world.stats.fullRedraws, 1L);
+    t.checkExpect(world.stats.cellsDrawn, 400L + queued);
+    t.checkExpect(world.visibleCells(), 400);
+    t.checkExpect(new FloodItWorld(100, 4, new Random(5)).visibleCells(), 40 * 40);
+  }
+
+  // Tests that hints are drawn only when on, and rebuilt only when the
+  // flood changes.
+  void testHints(Tester t) {
+    FloodItWorld world = new FloodItWorld(20, 4, new Random(5));
+    world.makeScene();
+
+    t.checkExpect(world.hintImages, null);
+    t.checkExpect(world.hintsDirty(), false);
+
+    world.onKeyEvent("h");
+
+    t.checkExpect(world.showHints, true);
+    t.checkExpect(world.sceneStale, true);
+    t.checkExpect(world.hintsDirty(), true);
+
+    world.makeScene();
+    ArrayList<WorldImage> shown = world.hintImages;
+
+    t.checkExpect(shown.size(), 4);
+    t.checkExpect(world.hintHash, world.engine.floodHash);
+    t.checkExpect(world.hintsDirty(), false);
+
+    world.makeScene();
+
+    t.checkExpect(world.hintImages == shown, true);
+
+    world.assignFlood(world.engine.hint());
+
+    t.checkExpect(world.hintsDirty(), true);
+
+    world.makeScene();
+
+    t.checkExpect(world.hintImages == shown, false);
+    t.checkExpect(world.hintHash, world.engine.floodHash);
+
+    // A new game shows hints for its own board, even one whose flood hashes
+    // the same as the last one shown.
+    world.reset();
+
+    t.checkExpect(world.hintImages, null);
+    t.checkExpect(world.hintHash, 0L);
+    t.checkExpect(world.hintsDirty(), true);
+
+    world.makeScene();
+
+    t.checkExpect(world.hintHash, world.engine.floodHash);
+
+    world.onKeyEvent("h");
+
+    t.checkExpect(world.showHints, false);
+    t.checkExpect(world.hintsDirty(), false);
+  }
+
+  // Tests that a world with a generator deals its boards in order, and that
+  // reset deals the next one.
+  void testGenerator(Tester t) {
+    BoardGenerator generator = new BoardGenerator(8, 4, 9, 10, 3);
+    ArrayList<GeneratedBoard> boards = new BoardGenerator(8, 4, 9, 10, 3).generate(0, 2);
+    FloodItWorld world = new FloodItWorld(generator);
+
+    t.checkExpect(world.boardSize, 8);
+    t.checkExpect(world.engine.board.colors,
+        FloodGame.newGame(8, 4, boards.get(0).seed).board.colors);
+    t.checkExpect(world.engine.remainingTries, boards.get(0).optimum() + BoardGenerator.SLACK);
+
+    world.reset();
+
+    t.checkExpect(world.engine.board.colors,
+        FloodGame.newGame(8, 4, boards.get(1).seed).board.colors);
+    t.checkExpect(generator.nextCandidate, boards.get(1).candidate + 1);
+    generator.close();
+  }
+
+  // Tests that with replays on, each game is logged on a seeded board with
+  // the moves clicked, undone and redone, and written once it is won.
+  void testReplays(Tester t) {
+    FloodItWorld world = new FloodItWorld(6, 3, new Random(5));
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    world.replays = new ReplayLog(new java.io.DataOutputStream(bytes));
+    world.reset();
+    ReplayLog log = world.replays;
+
+    t.checkExpect(log.open, true);
+    t.checkExpect(world.engine.board.colors, FloodGame.newGame(6, 3, log.seed).board.colors);
+
+    Board board = world.engine.board;
+    int first = world.engine.hint();
+    for (int i = 0; i < board.cellCount(); i++) {
+      if (board.colorAt(i) == first) {
+        world.onMouseClicked(new Posn(Cell.centerX(board, i), Cell.centerY(board, i)));
+        break;
+      }
+    }
+    world.finishAnimation();
+
+    t.checkExpect(log.moveCount, 1);
+    t.checkExpect(ReplayLog.moveAt(java.nio.ByteBuffer.wrap(log.moves), 0, 1, 0), first);
+
+    world.onKeyEvent("u");
+
+    t.checkExpect(log.moveCount, 0);
+
+    world.onKeyEvent("y");
+
+    t.checkExpect(log.moveCount, 1);
+
+    while (!world.hasWon() && !world.hasLost()) {
+      int color = world.engine.hint();
+      for (int i = 0; i < board.cellCount(); i++) {
+        if (board.colorAt(i) == color && !board.isFlooded(i)) {
+          world.onMouseClicked(new Posn(Cell.centerX(board, i), Cell.centerY(board, i)));
+          break;
+        }
+      }
+      world.finishAnimation();
+    }
+    world.checkEnd();
+    world.checkEnd();
+    byte[] written = bytes.toByteArray();
+    java.nio.ByteBuffer file = java.nio.ByteBuffer.allocate(ReplayLog.FILE_HEADER_BYTES
+        + written.length);
+    file.put(ReplayLog.MAGIC).put((byte) ReplayLog.VERSION).put(written);
+    ReplayVerifier verifier = new ReplayVerifier();
+
+    t.checkExpect(log.open, false);
+    t.checkExpect(log.games, 1L);
+    t.checkExpect(verifier.verify(file), 0L);
+    t.checkExpect(verifier.totals[ReplayVerifier.WON], 1L);
+    t.checkExpect(verifier.totals[ReplayVerifier.MOVES], (long) world.engine.currentTries);
+  }
+
+  // Tests that with a store of solved boards, reset deals its boards with a
+  // few tries beyond their par, and random boards when it has none.
+  void testSolvedBoards(Tester t) throws java.io.IOException {
+    java.io.File file = java.io.File.createTempFile("solved", ".bin");
+    file.delete();
+    SolvedBoards store = SolvedBoards.open(file);
+    for (long seed = 10; seed < 13; seed++) {
+      store.put(8, 4, seed, new FloodSolver(FloodGame.newGame(8, 4, seed)).solve(), true);
+    }
+    store.commit();
+    FloodItWorld world = new FloodItWorld(8, 4, new Random(2));
+    world.solved = store;
+    world.reset();
+    long seed = -1;
+    for (long k = 10; k < 13; k++) {
+      if (Arrays.equals(world.engine.board.colors, FloodGame.newGame(8, 4, k).board.colors)) {
+        seed = k;
+      }
+    }
+
+    t.checkExpect(seed >= 10, true);
+    t.checkExpect(world.engine.remainingTries, store.par(8, 4, seed) + BoardGenerator.SLACK);
+
+    FloodItWorld other = new FloodItWorld(6, 4, new Random(2));
+    other.solved = store;
+    other.reset();
+
+    t.checkExpect(other.engine.remainingTries, FloodGame.allowedTries(6, 4));
+
+    // The store belongs to whoever opened it, so it stays open once the
+    // world ends.
+    int[] solution = store.solution(8, 4, seed);
+    for (int move : solution) {
+      this.playMove(world, move);
+    }
+
+    t.checkExpect(world.checkEnd().worldEnds, true);
+    t.checkExpect(store.out != null, true);
+    t.checkExpect(store.par(8, 4, seed), solution.length);
+    store.close();
+    file.delete();
+    store.indexFile.delete();
+  }
+
   // Tests makeScene method for FloodItWorld.
   void testMakeScene(Tester t) {
     this.initCustom();
 
     WorldScene scene = this.game.getEmptyScene();
-    for (ArrayList<Cell> row : this.game.board) {
-      for (Cell c : row) {
-        scene.placeImageXY(c.draw(), c.x, c.y);
-      }
+    for (int i = 0; i < this.game.engine.board.cellCount(); i++) {
+      Cell c = new Cell(this.game.engine.board, i);
+      scene.placeImageXY(c.draw(), c.x, c.y);
     }
+    scene.placeImageXY(new TextImage("0/" + this.game.engine.remainingTries, 28, Color.BLACK),
+        this.game.screenWidth / 2, this.game.screenHeight - (FloodItWorld.BOTTOM_PADDING / 2));
+    scene.placeImageXY(new TextImage("00:00:00", 24, Color.BLUE),
+        this.game.screenWidth / 2, this.game.screenHeight - (FloodItWorld.BOTTOM_PADDING / 4));
 
     t.checkExpect(this.game.makeScene(), scene);
   }
 }
+
+// Examples that open a window, run only by the gui-tests profile so that the
+// rest of ExamplesFloodIt runs headless with every build.
+class ExamplesFloodItWindow {
+  // Tests big bang function
+  void testBigBang(Tester t) {
+    FloodItWorld game = new FloodItWorld(22, 4);
+    game.bigBang(
+        game.screenWidth,
+        game.screenHeight,
+        FloodItWorld.TICK_RATE);
+  }
+}
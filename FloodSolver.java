@@ -0,0 +1,643 @@
+package FloodIt;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Finds a shortest sequence of moves that floods the whole board, using
+// iterative-deepening A* over sets of flooded regions.
+//
+// Lower bound: every color left outside the flood needs a move of its own,
+// and a region k steps away in the region graph needs at least k moves;
+// lowerBound combines the two.
+// Pruning: only colors that touch the flood are tried; a color whose every
+// remaining region touches the flood is played at once, since some shortest
+// solution always does so; and of two independent moves played back to back
+// only the order with the smaller color first is searched.
+// Transpositions: given a TranspositionTable, states are keyed by the Zobrist
+// hash of the flood and the color that reached them, and every search that
+// fails records the estimate it returned. A state met again, through another
+// order of moves or in a later iteration, starts from that bound instead of
+// the one lowerBound gives, and is cut off at once if it exceeds the bound.
+class FloodSolver {
+  // Returned by search when the flood covers the board.
+  static int FOUND = -1;
+  // Returned by search when nodeLimit was reached.
+  static int GAVE_UP = -2;
+
+  RegionGraph graph;
+  int numColors;
+  int words;
+  // Neighbors of each region, and the regions of each color, as region bitsets.
+  long[][] neighborMask;
+  long[][] colorMask;
+  long[] start;
+  long startHash;
+
+  // Search stack: flooded regions, unflooded regions touching the flood,
+  // and the move ordering at each depth.
+  long[][] flooded;
+  long[][] touching;
+  int[][] moveOrder;
+  int[][] moveGain;
+  int[] path;
+  int solutionLength;
+  // Zobrist hash of the flood at each depth.
+  long[] hash;
+
+  // Shared table of what earlier searches learned, or null; keys for the
+  // color that reached a state (the first for none), mixed into its hash.
+  TranspositionTable table;
+  long[] lastColorKey;
+  long tableProbes;
+  long tableHits;
+  long tableCutoffs;
+
+  // Scratch space for the lower bound.
+  long[] seen;
+  long[] layer;
+  long[] nextLayer;
+  int[] colorDistance;
+  int[] colorsAtDistance;
+
+  long nodes;
+  long nodeLimit;
+
+  FloodSolver(FloodGame game) {
+    this(game, null);
+  }
+
+  FloodSolver(FloodGame game, TranspositionTable table) {
+    this.graph = game.regions;
+    this.numColors = game.numColors;
+    this.words = (this.graph.regionCount + 63) >>> 6;
+    this.neighborMask = new long[this.graph.regionCount][this.words];
+    for (int r = 0; r < this.graph.regionCount; r++) {
+      for (int i = 0; i < this.graph.degree(r); i++) {
+        FloodSolver.set(this.neighborMask[r], this.graph.neighbor(r, i));
+      }
+    }
+    this.colorMask = new long[this.numColors][this.words];
+    for (int r = 0; r < this.graph.regionCount; r++) {
+      FloodSolver.set(this.colorMask[this.graph.regionColor[r]], r);
+    }
+    this.start = new long[this.words];
+    for (int r = 0; r < this.graph.regionCount; r++) {
+      if (game.isRegionFlooded(r)) {
+        FloodSolver.set(this.start, r);
+      }
+    }
+    this.startHash = game.floodHash;
+    this.table = table;
+    // Negative indexes give keys no cell uses.
+    this.lastColorKey = new long[this.numColors + 1];
+    for (int c = 0; c <= this.numColors; c++) {
+      this.lastColorKey[c] = TranspositionTable.key(-1 - c);
+    }
+
+    this.flooded = new long[0][];
+    this.touching = new long[0][];
+    this.moveOrder = new int[0][];
+    this.moveGain = new int[0][];
+    this.path = new int[0];
+    this.hash = new long[0];
+    this.seen = new long[this.words];
+    this.layer = new long[this.words];
+    this.nextLayer = new long[this.words];
+    this.colorDistance = new int[this.numColors];
+    this.colorsAtDistance = new int[this.graph.regionCount + 1];
+    this.nodeLimit = Long.MAX_VALUE;
+  }
+
+  // Returns a shortest sequence of colors that wins the game from its current
+  // state, or null if nodeLimit nodes were searched without finding one.
+  public int[] solve() {
+    this.nodes = 0;
+    this.tableProbes = 0;
+    this.tableHits = 0;
+    this.tableCutoffs = 0;
+    int bound = this.rootBound();
+    while (true) {
+      int result = this.search(0, bound, -1);
+      if (result == FloodSolver.FOUND) {
+        return Arrays.copyOf(this.path, this.solutionLength);
+      } else if (result == FloodSolver.GAVE_UP) {
+        return null;
+      }
+      bound = result;
+    }
+  }
+
+  // Sets up depth 0 as the game's state and returns lowerBound there, a
+  // cheap bound on the length of any solution.
+  public int rootBound() {
+    this.ensureDepth(0);
+    System.arraycopy(this.start, 0, this.flooded[0], 0, this.words);
+    this.hash[0] = this.startHash;
+    this.computeTouching(0);
+    return this.lowerBound(0);
+  }
+
+  // Searches below the state at the given depth, reached by lastColor, for a
+  // solution of at most bound moves. Returns FOUND, GAVE_UP, or the smallest
+  // estimate that exceeded the bound.
+  public int search(int depth, int bound, int lastColor) {
+    this.nodes++;
+    if (this.nodes > this.nodeLimit) {
+      return FloodSolver.GAVE_UP;
+    }
+    if (FloodSolver.isEmpty(this.touching[depth])) {
+      this.solutionLength = depth;
+      return FloodSolver.FOUND;
+    }
+    long key = 0;
+    int learned = 0;
+    if (this.table != null) {
+      key = this.hash[depth] ^ this.lastColorKey[lastColor + 1];
+      long data = this.table.probe(key);
+      this.tableProbes++;
+      if (data != -1) {
+        this.tableHits++;
+        learned = TranspositionTable.lowerBound(data);
+        if (depth + learned > bound) {
+          this.tableCutoffs++;
+          return depth + learned;
+        }
+      }
+    }
+    int estimate = depth + Math.max(learned, this.lowerBound(depth));
+    if (estimate > bound) {
+      this.record(key, depth, bound, estimate);
+      return estimate;
+    }
+    this.ensureDepth(depth + 1);
+
+    int forced = this.eliminatingColor(depth);
+    if (forced != -1) {
+      this.play(depth, forced);
+      this.path[depth] = forced;
+      // The other orders of this move were never tried, so none of them may
+      // be relied on to prune the next one.
+      int result = this.search(depth + 1, bound, -1);
+      this.record(key, depth, bound, result);
+      return result;
+    }
+
+    int moves = this.orderMoves(depth);
+    int best = Integer.MAX_VALUE;
+    for (int i = 0; i < moves; i++) {
+      int color = this.moveOrder[depth][i];
+      if (lastColor > color && this.isIndependent(depth, color)) {
+        continue;
+      }
+      this.play(depth, color);
+      this.path[depth] = color;
+      int result = this.search(depth + 1, bound, color);
+      if (result == FloodSolver.FOUND || result == FloodSolver.GAVE_UP) {
+        return result;
+      }
+      best = Math.min(best, result);
+    }
+    this.record(key, depth, bound, best);
+    return best;
+  }
+
+  // Stores in the table, if there is one, that the state with the given key
+  // at depth needs at least result - depth more moves, unless the search
+  // found a solution or gave up.
+  public void record(long key, int depth, int bound, int result) {
+    if (this.table != null && result != FloodSolver.FOUND && result != FloodSolver.GAVE_UP) {
+      this.table.store(key, result == Integer.MAX_VALUE ? result : result - depth, bound - depth);
+    }
+  }
+
+  // Returns a lower bound on the moves left at depth. A region k steps from
+  // the flood cannot be absorbed before the k-th move, so each color left
+  // needs a move of its own no earlier than its farthest region's distance;
+  // with distinct moves for distinct colors, the last of them comes no
+  // earlier than k - 1 plus the number of colors whose farthest region is at
+  // least k away, for every k.
+  public int lowerBound(int depth) {
+    int farthest = this.farthestRegion(depth);
+    Arrays.fill(this.colorsAtDistance, 0, farthest + 1, 0);
+    for (int c = 0; c < this.numColors; c++) {
+      this.colorsAtDistance[this.colorDistance[c]]++;
+    }
+    int bound = 0;
+    int colorsBeyond = 0;
+    for (int k = farthest; k >= 1; k--) {
+      colorsBeyond += this.colorsAtDistance[k];
+      bound = Math.max(bound, k - 1 + colorsBeyond);
+    }
+    return bound;
+  }
+
+  // Returns how many steps through the region graph the farthest unflooded
+  // region is from the flood at the given depth, and records in
+  // colorDistance how far the farthest region of each color is (0 if the
+  // color is gone).
+  public int farthestRegion(int depth) {
+    long[] f = this.flooded[depth];
+    long[] t = this.touching[depth];
+    Arrays.fill(this.colorDistance, 0);
+    for (int w = 0; w < this.words; w++) {
+      this.layer[w] = t[w];
+      this.seen[w] = f[w] | t[w];
+    }
+    int distance = 0;
+    while (!FloodSolver.isEmpty(this.layer)) {
+      distance++;
+      Arrays.fill(this.nextLayer, 0L);
+      for (int w = 0; w < this.words; w++) {
+        long bits = this.layer[w];
+        while (bits != 0) {
+          int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+          this.colorDistance[this.graph.regionColor[r]] = distance;
+          long[] n = this.neighborMask[r];
+          for (int v = 0; v < this.words; v++) {
+            this.nextLayer[v] |= n[v];
+          }
+        }
+      }
+      for (int w = 0; w < this.words; w++) {
+        this.layer[w] = this.nextLayer[w] & ~this.seen[w];
+        this.seen[w] |= this.layer[w];
+      }
+    }
+    return distance;
+  }
+
+  // Returns a color whose every remaining region touches the flood at the
+  // given depth, or -1 if there is none.
+  public int eliminatingColor(int depth) {
+    long[] f = this.flooded[depth];
+    long[] t = this.touching[depth];
+    for (int c = 0; c < this.numColors; c++) {
+      long[] mask = this.colorMask[c];
+      boolean touches = false;
+      boolean allTouch = true;
+      for (int w = 0; w < this.words; w++) {
+        touches = touches || (mask[w] & t[w]) != 0;
+        allTouch = allTouch && (mask[w] & ~f[w] & ~t[w]) == 0;
+      }
+      if (touches && allTouch) {
+        return c;
+      }
+    }
+    return -1;
+  }
+
+  // Fills moveOrder at the given depth with the colors that touch the flood,
+  // most cells gained first. Returns how many there are.
+  public int orderMoves(int depth) {
+    long[] t = this.touching[depth];
+    int[] order = this.moveOrder[depth];
+    int[] gain = this.moveGain[depth];
+    int moves = 0;
+    for (int c = 0; c < this.numColors; c++) {
+      int cells = 0;
+      long[] mask = this.colorMask[c];
+      for (int w = 0; w < this.words; w++) {
+        long bits = mask[w] & t[w];
+        while (bits != 0) {
+          cells += this.graph.regionSize[(w << 6) + Long.numberOfTrailingZeros(bits)];
+          bits &= bits - 1;
+        }
+      }
+      if (cells > 0) {
+        int i = moves;
+        while (i > 0 && gain[i - 1] < cells) {
+          order[i] = order[i - 1];
+          gain[i] = gain[i - 1];
+          i--;
+        }
+        order[i] = c;
+        gain[i] = cells;
+        moves++;
+      }
+    }
+    return moves;
+  }
+
+  // Returns true if every region the color would absorb at the given depth
+  // already touched the flood one move earlier, so the last move did not
+  // make this one possible.
+  public boolean isIndependent(int depth, int color) {
+    long[] before = this.touching[depth - 1];
+    long[] now = this.touching[depth];
+    long[] mask = this.colorMask[color];
+    for (int w = 0; w < this.words; w++) {
+      if ((mask[w] & now[w] & ~before[w]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Sets up depth + 1 as the state after playing color at depth.
+  public void play(int depth, int color) {
+    long[] f = this.flooded[depth];
+    long[] t = this.touching[depth];
+    long[] mask = this.colorMask[color];
+    long[] nextFlooded = this.flooded[depth + 1];
+    long[] nextTouching = this.touching[depth + 1];
+    long nextHash = this.hash[depth];
+    for (int w = 0; w < this.words; w++) {
+      nextFlooded[w] = f[w] | (t[w] & mask[w]);
+      nextTouching[w] = t[w];
+    }
+    for (int w = 0; w < this.words; w++) {
+      long bits = t[w] & mask[w];
+      while (bits != 0) {
+        int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+        long[] n = this.neighborMask[r];
+        nextHash ^= this.graph.regionHash[r];
+        bits &= bits - 1;
+        for (int v = 0; v < this.words; v++) {
+          nextTouching[v] |= n[v];
+        }
+      }
+    }
+    for (int w = 0; w < this.words; w++) {
+      nextTouching[w] &= ~nextFlooded[w];
+    }
+    this.hash[depth + 1] = nextHash;
+  }
+
+  // Computes the unflooded regions touching the flood at the given depth.
+  public void computeTouching(int depth) {
+    long[] f = this.flooded[depth];
+    long[] t = this.touching[depth];
+    Arrays.fill(t, 0L);
+    for (int w = 0; w < this.words; w++) {
+      long bits = f[w];
+      while (bits != 0) {
+        long[] n = this.neighborMask[(w << 6) + Long.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+        for (int v = 0; v < this.words; v++) {
+          t[v] |= n[v];
+        }
+      }
+    }
+    for (int w = 0; w < this.words; w++) {
+      t[w] &= ~f[w];
+    }
+  }
+
+  // Makes sure the search stack reaches the given depth.
+  public void ensureDepth(int depth) {
+    if (depth >= this.flooded.length) {
+      int size = Math.max(depth + 1, this.flooded.length * 2);
+      int old = this.flooded.length;
+      this.flooded = Arrays.copyOf(this.flooded, size);
+      this.touching = Arrays.copyOf(this.touching, size);
+      this.moveOrder = Arrays.copyOf(this.moveOrder, size);
+      this.moveGain = Arrays.copyOf(this.moveGain, size);
+      this.path = Arrays.copyOf(this.path, size);
+      this.hash = Arrays.copyOf(this.hash, size);
+      for (int d = old; d < size; d++) {
+        this.flooded[d] = new long[this.words];
+        this.touching[d] = new long[this.words];
+        this.moveOrder[d] = new int[this.numColors];
+        this.moveGain[d] = new int[this.numColors];
+      }
+    }
+  }
+
+  // Sets bit i of the given bitset.
+  public static void set(long[] bits, int i) {
+    bits[i >>> 6] |= 1L << i;
+  }
+
+  // Returns true if no bit of the given bitset is set.
+  public static boolean isEmpty(long[] bits) {
+    for (long word : bits) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
+
+class ExamplesFloodSolver {
+  // Returns the fewest moves that win the game, found by trying every
+  // sequence of colors of each length in turn.
+  int bruteForce(int size, int colors, long seed) {
+    for (int length = 0; ; length++) {
+      if (this.winsWithin(FloodGame.newGame(size, colors, seed), size, colors, seed,
+          new int[length], 0)) {
+        return length;
+      }
+    }
+  }
+
+  // Returns true if some sequence of colors filling moves from index i on
+  // wins the game, replaying the game from its seed for each sequence.
+  boolean winsWithin(FloodGame game, int size, int colors, long seed, int[] moves, int i) {
+    if (i == moves.length) {
+      FloodGame replay = FloodGame.newGame(size, colors, seed);
+      for (int move : moves) {
+        replay.applyMove(move);
+      }
+      return replay.isWon();
+    }
+    for (int c = 0; c < colors; c++) {
+      moves[i] = c;
+      if (this.winsWithin(game, size, colors, seed, moves, i + 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Returns true if playing the moves wins the game.
+  boolean wins(FloodGame game, int[] moves) {
+    for (int move : moves) {
+      game.applyMove(move);
+    }
+    return game.isWon();
+  }
+
+  // Tests that solve finds solutions exactly as short as a brute-force search.
+  void testSolveIsOptimal(Tester t) {
+    for (long seed = 0; seed < 40; seed++) {
+      int size = 3 + (int) (seed % 3);
+      int colors = 3 + (int) (seed % 2);
+      FloodGame game = FloodGame.newGame(size, colors, seed);
+      int[] moves = new FloodSolver(game).solve();
+
+      t.checkExpect(moves.length, this.bruteForce(size, colors, seed));
+      t.checkExpect(this.wins(game, moves), true);
+    }
+  }
+
+  // Tests solve on a 14x14 board with 6 colors.
+  void testSolveFullSize(Tester t) {
+    FloodGame game = FloodGame.newGame(14, 6, 1);
+    FloodSolver solver = new FloodSolver(game);
+    int[] moves = solver.solve();
+
+    t.checkExpect(this.wins(FloodGame.newGame(14, 6, 1), moves), true);
+    t.checkExpect(moves.length >= solver.lowerBound(0), true);
+  }
+
+  // Tests that a solver with a transposition table finds solutions as short
+  // as one without, on boards solved one after another with the table
+  // cleared between them.
+  void testSolveWithTable(Tester t) {
+    TranspositionTable table = new TranspositionTable(12);
+    for (long seed = 0; seed < 30; seed++) {
+      int size = 4 + (int) (seed % 7);
+      int colors = 3 + (int) (seed % 4);
+      table.clear();
+      FloodGame game = FloodGame.newGame(size, colors, seed);
+      int[] moves = new FloodSolver(game, table).solve();
+
+      t.checkExpect(moves.length, new FloodSolver(game).solve().length);
+      t.checkExpect(this.wins(game, moves), true);
+    }
+  }
+
+  // Tests that the table saves nodes on a full-size board by finding states
+  // reached more than once.
+  void testTableHits(Tester t) {
+    FloodGame game = FloodGame.newGame(14, 6, 1);
+    FloodSolver plain = new FloodSolver(game);
+    FloodSolver hashed = new FloodSolver(game, new TranspositionTable(16));
+
+    t.checkExpect(hashed.solve().length, plain.solve().length);
+    t.checkExpect(hashed.tableHits > 0, true);
+    t.checkExpect(hashed.tableCutoffs > 0, true);
+    t.checkExpect(hashed.tableProbes <= hashed.nodes, true);
+    t.checkExpect(hashed.nodes < plain.nodes, true);
+  }
+
+  // Tests that the solver's hash of each state matches the game's floodHash
+  // after the same moves.
+  void testHash(Tester t) {
+    FloodGame game = FloodGame.newGame(12, 5, 4);
+    FloodSolver solver = new FloodSolver(game);
+    solver.solve();
+    int mismatches = 0;
+
+    for (int depth = 0; depth < 6; depth++) {
+      if (solver.hash[depth] != game.floodHash) {
+        mismatches++;
+      }
+      int color = game.firstFrontierColor();
+      solver.ensureDepth(depth + 1);
+      solver.play(depth, color);
+      game.applyMove(color);
+    }
+
+    t.checkExpect(mismatches, 0);
+    t.checkExpect(solver.startHash, solver.hash[0]);
+  }
+
+  // Tests that solve continues from a game already in progress.
+  void testSolveMidGame(Tester t) {
+    FloodGame game = FloodGame.newGame(8, 4, 3);
+    game.applyMove(game.firstFrontierColor());
+    game.applyMove(game.firstFrontierColor());
+    int[] moves = new FloodSolver(game).solve();
+
+    t.checkExpect(this.wins(game, moves), true);
+  }
+
+  // Tests that solve gives up once nodeLimit is reached.
+  void testNodeLimit(Tester t) {
+    FloodSolver solver = new FloodSolver(FloodGame.newGame(14, 6, 2));
+    solver.nodeLimit = 5;
+
+    t.checkExpect(solver.solve(), null);
+  }
+
+  // Tests lowerBound, farthestRegion and eliminatingColor methods for FloodSolver.
+  void testBounds(Tester t) {
+    // 0 0 1
+    // 2 0 1
+    // 2 2 0
+    Board board = new Board(3, 3);
+    byte[] colors = {0, 0, 1, 2, 0, 1, 2, 2, 0};
+    for (int i = 0; i < colors.length; i++) {
+      board.setColor(i, colors[i]);
+    }
+    FloodSolver solver = new FloodSolver(new FloodGame(board));
+
+    t.checkExpect(solver.rootBound(), 3);
+
+    solver.solve();
+
+    // Region 3 (the bottom-right 0) is two steps away; colors 0, 1 and 2 remain.
+    t.checkExpect(solver.farthestRegion(0), 2);
+    t.checkExpect(solver.colorDistance, new int[] {2, 1, 1});
+    t.checkExpect(solver.lowerBound(0), 3);
+    t.checkExpect(solver.eliminatingColor(0), 1);
+  }
+
+  // Tests orderMoves and isIndependent methods for FloodSolver.
+  void testMoveOrdering(Tester t) {
+    FloodGame game = FloodGame.newGame(10, 4, 8);
+    FloodSolver solver = new FloodSolver(game);
+    solver.solve();
+
+    int moves = solver.orderMoves(0);
+    for (int i = 1; i < moves; i++) {
+      t.checkExpect(solver.moveGain[0][i - 1] >= solver.moveGain[0][i], true);
+    }
+
+    // A move that only absorbs regions already touching the flood is
+    // independent of the move before it.
+    int first = solver.moveOrder[0][0];
+    solver.play(0, first);
+    boolean found = false;
+    for (int c = 0; c < solver.numColors; c++) {
+      long[] absorbed = new long[solver.words];
+      for (int w = 0; w < solver.words; w++) {
+        absorbed[w] = solver.colorMask[c][w] & solver.touching[1][w];
+      }
+      if (!FloodSolver.isEmpty(absorbed)) {
+        boolean expected = true;
+        for (int w = 0; w < solver.words; w++) {
+          expected = expected && (absorbed[w] & ~solver.touching[0][w]) == 0;
+        }
+        t.checkExpect(solver.isIndependent(1, c), expected);
+        found = true;
+      }
+    }
+    t.checkExpect(found, true);
+  }
+
+  // Tests set and isEmpty methods for FloodSolver.
+  void testBitsets(Tester t) {
+    long[] bits = new long[2];
+
+    t.checkExpect(FloodSolver.isEmpty(bits), true);
+
+    FloodSolver.set(bits, 70);
+
+    t.checkExpect(bits[1], 1L << 6);
+    t.checkExpect(FloodSolver.isEmpty(bits), false);
+  }
+
+  // Checks that the solver is not fooled by a board that is already won.
+  void testSolveWonBoard(Tester t) {
+    FloodGame game = FloodGame.newGame(2, 2, 100);
+    game.applyMove(0);
+
+    t.checkExpect(new FloodSolver(game).solve(), new int[] {});
+  }
+
+  // Tests that solve agrees with brute force on random mid-sized boards.
+  void testSolveRandomBoards(Tester t) {
+    Random rand = new Random(12);
+    for (int i = 0; i < 10; i++) {
+      long seed = rand.nextLong();
+      FloodGame game = FloodGame.newGame(5, 3, seed);
+      int[] moves = new FloodSolver(game).solve();
+
+      t.checkExpect(moves.length, this.bruteForce(5, 3, seed));
+    }
+  }
+}
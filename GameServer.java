@@ -0,0 +1,324 @@
+package FloodIt;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import tester.Tester;
+
+// One game hosted by a GameServer: its seed, its board as bitboards, and the
+// colors played so far. A session may be played from any connection, one
+// move at a time.
+class GameSession {
+  long id;
+  long seed;
+  BitboardGame game;
+  IntList moves;
+
+  GameSession(long id, int boardSize, int numColors, long seed) {
+    this.id = id;
+    this.seed = seed;
+    this.game = BitboardGame.newGame(boardSize, numColors, seed);
+    this.moves = new IntList();
+  }
+
+  // Plays the given color. Returns the reply: the cells absorbed (-1 if the
+  // color was already the flood color, which spends no try), the cells
+  // flooded, the tries used and the status. Throws exception once the game
+  // is won or lost.
+  public synchronized String move(int color) {
+    if (!this.status().equals("PLAYING")) {
+      throw new IllegalArgumentException("Session " + this.id + " is over.");
+    }
+    int absorbed = this.game.applyMove(color);
+    if (absorbed >= 0) {
+      this.moves.add(color);
+    }
+    return "OK " + absorbed + " " + this.game.floodedCount + " " + this.game.currentTries
+        + " " + this.status();
+  }
+
+  // Returns WON, LOST or PLAYING.
+  public String status() {
+    if (this.game.isWon()) {
+      return "WON";
+    } else if (this.game.currentTries >= this.game.remainingTries) {
+      return "LOST";
+    }
+    return "PLAYING";
+  }
+
+  // Returns the reply to STATE: size, colors, seed, tries, cells flooded,
+  // status, then every color played.
+  public synchronized String describe() {
+    StringBuilder reply = new StringBuilder("OK");
+    reply.append(' ').append(this.game.size).append(' ').append(this.game.numColors)
+        .append(' ').append(this.seed).append(' ').append(this.game.currentTries)
+        .append(' ').append(this.game.floodedCount).append(' ').append(this.status());
+    for (int i = 0; i < this.moves.size(); i++) {
+      reply.append(' ').append(this.moves.get(i));
+    }
+    return reply.toString();
+  }
+}
+
+// Hosts any number of independent game sessions for clients on this machine,
+// over a line-based protocol on a local TCP port. Each request is one line
+// and gets one reply line, "OK ..." or "ERR <message>":
+//   NEW <size> <colors> <seed>   starts a session; replies OK <id>
+//   MOVE <id> <color>            plays a color; replies as GameSession.move,
+//                                or ERR once the game is won or lost
+//   STATE <id>                   replies as GameSession.describe
+//   END <id>                     forgets a session
+//   QUIT                         closes the connection
+// Every connection gets a thread of its own: a virtual thread when the JVM
+// has them (Java 21 and later), or a pooled platform thread otherwise.
+// Run with: java FloodIt.GameServer [port]
+class GameServer {
+  static int DEFAULT_PORT = 7777;
+  // Largest board a client may ask for.
+  static int MAX_BOARD_SIZE = 1000;
+
+  ServerSocket socket;
+  ExecutorService threads;
+  ConcurrentHashMap<Long, GameSession> sessions;
+  // Connections being served, so close can hang them up.
+  Set<Socket> clients;
+  AtomicLong nextId;
+  Thread acceptor;
+
+  // Listens on the given port of the loopback address; 0 picks a free port.
+  GameServer(int port) throws IOException {
+    this.socket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    this.threads = GameServer.threadPerTaskExecutor();
+    this.sessions = new ConcurrentHashMap<Long, GameSession>();
+    this.clients = ConcurrentHashMap.newKeySet();
+    this.nextId = new AtomicLong();
+  }
+
+  // Returns an executor that runs every task on a new virtual thread, or on
+  // a cached platform thread on JVMs without virtual threads.
+  public static ExecutorService threadPerTaskExecutor() {
+    ExecutorService virtual = BatchSimulator.newVirtualThreadExecutor();
+    return virtual != null ? virtual : Executors.newCachedThreadPool();
+  }
+
+  // Returns the port the server listens on.
+  public int port() {
+    return this.socket.getLocalPort();
+  }
+
+  // Starts accepting connections in the background.
+  public void start() {
+    this.acceptor = new Thread(this::acceptAll, "floodit-accept");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+  }
+
+  // Accepts connections until the server is closed, serving each on its own thread.
+  public void acceptAll() {
+    while (!this.socket.isClosed()) {
+      try {
+        Socket client = this.socket.accept();
+        this.threads.execute(() -> this.serve(client));
+      } catch (IOException e) {
+        // The server socket was closed.
+        return;
+      }
+    }
+  }
+
+  // Answers the requests on one connection until the client quits or hangs up.
+  public void serve(Socket client) {
+    this.clients.add(client);
+    try (Socket s = client) {
+      s.setTcpNoDelay(true);
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+      Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII);
+      String line = in.readLine();
+      while (line != null && !line.equals("QUIT")) {
+        out.write(this.handle(line));
+        out.write('\n');
+        out.flush();
+        line = in.readLine();
+      }
+    } catch (IOException e) {
+      // The client went away; its sessions stay until ended.
+    } finally {
+      this.clients.remove(client);
+    }
+  }
+
+  // Returns the reply to one request line.
+  public String handle(String line) {
+    String[] words = line.trim().split(" +");
+    try {
+      switch (words[0]) {
+        case "NEW":
+          GameServer.checkArgs(words, 4);
+          int size = Integer.parseInt(words[1]);
+          if (size > GameServer.MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException(
+                "Board size must be at most " + GameServer.MAX_BOARD_SIZE + ".");
+          }
+          long id = this.nextId.incrementAndGet();
+          this.sessions.put(id, new GameSession(id, size, Integer.parseInt(words[2]),
+              Long.parseLong(words[3])));
+          return "OK " + id;
+        case "MOVE":
+          GameServer.checkArgs(words, 3);
+          return this.session(words[1]).move(Integer.parseInt(words[2]));
+        case "STATE":
+          GameServer.checkArgs(words, 2);
+          return this.session(words[1]).describe();
+        case "END":
+          GameServer.checkArgs(words, 2);
+          this.sessions.remove(this.session(words[1]).id);
+          return "OK";
+        default:
+          return "ERR Unknown command " + words[0] + ".";
+      }
+    } catch (NumberFormatException e) {
+      return "ERR Expected a number.";
+    } catch (IllegalArgumentException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+
+  // Throws exception if a request does not have the given number of words.
+  public static void checkArgs(String[] words, int count) {
+    if (words.length != count) {
+      throw new IllegalArgumentException(words[0] + " takes " + (count - 1) + " arguments.");
+    }
+  }
+
+  // Returns the session with the given id, or throws exception if there is none.
+  public GameSession session(String id) {
+    GameSession session = this.sessions.get(Long.parseLong(id));
+    if (session == null) {
+      throw new IllegalArgumentException("No session " + id + ".");
+    }
+    return session;
+  }
+
+  // Stops accepting connections and closes the ones open.
+  public void close() throws IOException {
+    this.socket.close();
+    for (Socket client : this.clients) {
+      client.close();
+    }
+    this.threads.shutdown();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+    GameServer server = new GameServer(port);
+    System.out.println("Listening on localhost:" + server.port());
+    server.acceptAll();
+  }
+}
+
+class ExamplesGameServer {
+  // Tests the requests of the protocol, and the replies to bad ones.
+  void testHandle(Tester t) throws IOException {
+    GameServer server = new GameServer(0);
+    BitboardGame expected = BitboardGame.newGame(6, 3, 42);
+    int color = (expected.floodColor + 1) % 3;
+    int absorbed = expected.applyMove(color);
+
+    t.checkExpect(server.handle("NEW 6 3 42"), "OK 1");
+    t.checkExpect(server.handle("NEW 6 3 42"), "OK 2");
+    t.checkExpect(server.handle("MOVE 1 " + color),
+        "OK " + absorbed + " " + expected.floodedCount + " 1 PLAYING");
+    t.checkExpect(server.handle("MOVE 1 " + color), "OK -1 " + expected.floodedCount + " 1 PLAYING");
+    t.checkExpect(server.handle("STATE 1"),
+        "OK 6 3 42 1 " + expected.floodedCount + " PLAYING " + color);
+    t.checkExpect(server.handle("STATE 2"), "OK 6 3 42 0 "
+        + BitboardGame.newGame(6, 3, 42).floodedCount + " PLAYING");
+    t.checkExpect(server.handle("END 2"), "OK");
+
+    t.checkExpect(server.handle("STATE 2"), "ERR No session 2.");
+    t.checkExpect(server.handle("MOVE 1 7"), "ERR Color index must be between 0 and 2 inclusive.");
+    t.checkExpect(server.handle("MOVE 1"), "ERR MOVE takes 2 arguments.");
+    t.checkExpect(server.handle("MOVE x 1"), "ERR Expected a number.");
+    t.checkExpect(server.handle("NEW 1 3 0"), "ERR Board size must be at least 2.");
+    t.checkExpect(server.handle("NEW 5000 3 0"), "ERR Board size must be at most 1000.");
+    t.checkExpect(server.handle("JUMP"), "ERR Unknown command JUMP.");
+    t.checkExpect(server.sessions.size(), 1);
+    server.close();
+  }
+
+  // Tests that a session reaches WON or LOST and that its move history
+  // replays to the same game.
+  void testSessionEnds(Tester t) {
+    GameSession won = new GameSession(1, 5, 3, 9);
+    for (int i = 0; !won.game.isWon(); i++) {
+      won.move(i % 3);
+    }
+    BitboardGame replay = BitboardGame.newGame(5, 3, 9);
+    for (int i = 0; i < won.moves.size(); i++) {
+      replay.applyMove(won.moves.get(i));
+    }
+    GameSession lost = new GameSession(2, 20, 6, 9);
+    while (lost.game.currentTries < lost.game.remainingTries) {
+      lost.move((lost.game.floodColor + 1) % 2);
+    }
+
+    t.checkExpect(won.status(), "WON");
+    t.checkExpect(replay.isWon(), true);
+    t.checkExpect(replay.currentTries, won.moves.size());
+    t.checkExpect(lost.status(), "LOST");
+    t.checkException(new IllegalArgumentException("Session 1 is over."), won, "move", 0);
+    t.checkException(new IllegalArgumentException("Session 2 is over."), lost, "move",
+        lost.game.floodColor);
+    t.checkExpect(won.moves.size(), replay.currentTries);
+    t.checkExpect(lost.game.currentTries, lost.game.remainingTries);
+  }
+
+  // Tests that the server refuses moves once a game is over.
+  void testMoveAfterEnd(Tester t) throws IOException {
+    GameServer server = new GameServer(0);
+    server.handle("NEW 2 2 0");
+    GameSession session = server.session("1");
+    String reply = server.handle("MOVE 1 " + (1 - session.game.floodColor));
+
+    t.checkExpect(reply.endsWith(" WON") || reply.endsWith(" LOST"), true);
+    t.checkExpect(server.handle("MOVE 1 0"), "ERR Session 1 is over.");
+    t.checkExpect(server.handle("MOVE 1 1"), "ERR Session 1 is over.");
+    t.checkExpect(session.moves.size(), 1);
+    server.close();
+  }
+
+  // Tests that the executor runs tasks whether or not the JVM has virtual threads.
+  void testThreadPerTaskExecutor(Tester t) throws Exception {
+    ExecutorService threads = GameServer.threadPerTaskExecutor();
+
+    t.checkExpect(threads.submit(() -> 6 * 7).get(), 42);
+    threads.shutdown();
+  }
+
+  // Tests many sessions played at once over sockets by the load client.
+  void testLoad(Tester t) throws Exception {
+    GameServer server = new GameServer(0);
+    server.start();
+    LoadClient client = new LoadClient(60, 6, 8, 4, server.port());
+    client.run();
+    server.close();
+
+    t.checkExpect(client.won + client.lost, 60L);
+    t.checkExpect(client.latency.count, client.moves + client.refused);
+    t.checkExpect(client.moves >= 60 * 2, true);
+    t.checkExpect(client.errors, 0L);
+    t.checkExpect(server.sessions.size(), 0);
+  }
+}
@@ -0,0 +1,125 @@
+package FloodIt;
+import java.util.Random;
+import tester.Tester;
+
+// An immutable point in a FloodGame's history. A snapshot holds the flood
+// color, tries and flooded cell count at that point, and links to the
+// snapshot one move earlier; snapshots along the same line of play share
+// those links, so each costs one small object however big the board.
+// FloodGame.restore rebuilds the flood from the moves between snapshots.
+class GameSnapshot {
+  GameSnapshot parent;
+  // Number of moves from the start of the game.
+  int depth;
+  int floodColor;
+  int tries;
+  int floodedCount;
+
+  GameSnapshot(GameSnapshot parent, int floodColor, int tries, int floodedCount) {
+    this.parent = parent;
+    this.depth = parent == null ? 0 : parent.depth + 1;
+    this.floodColor = floodColor;
+    this.tries = tries;
+    this.floodedCount = floodedCount;
+  }
+
+  // Returns the colors played from the start of the game up to this point.
+  public int[] moves() {
+    int[] colors = new int[this.depth];
+    for (GameSnapshot s = this; s.parent != null; s = s.parent) {
+      colors[s.depth - 1] = s.floodColor;
+    }
+    return colors;
+  }
+}
+
+class ExamplesGameSnapshot {
+  // Plays the first frontier color until the game is won or the given
+  // number of moves have been played.
+  void play(FloodGame game, int count) {
+    for (int i = 0; i < count && !game.isWon(); i++) {
+      game.applyMove(game.firstFrontierColor());
+    }
+  }
+
+  // Tests that snapshots record the state at each point and share history.
+  void testSnapshot(Tester t) {
+    FloodGame game = FloodGame.newGame(14, 4, 3);
+    GameSnapshot start = game.snapshot();
+    this.play(game, 3);
+    GameSnapshot third = game.snapshot();
+
+    t.checkExpect(start.depth, 0);
+    t.checkExpect(start.tries, 0);
+    t.checkExpect(third.depth, 3);
+    t.checkExpect(third.tries, 3);
+    t.checkExpect(third.floodColor, game.floodColor);
+    t.checkExpect(third.floodedCount, game.floodedCells.size());
+    t.checkExpect(third.parent.parent.parent == start, true);
+    t.checkExpect(third.moves(), game.moves.toArray());
+    t.checkExpect(game.snapshot() == third, true);
+  }
+
+  // Tests that restore moves between branches of play and gives the same
+  // game as replaying the snapshot's moves from the start.
+  void testRestore(Tester t) {
+    FloodGame game = FloodGame.newGame(20, 5, 8);
+    this.play(game, 4);
+    GameSnapshot fork = game.snapshot();
+    this.play(game, 6);
+    GameSnapshot first = game.snapshot();
+
+    game.restore(fork);
+    t.checkExpect(game.moveCount(), 4);
+    int other = (game.firstFrontierColor() + 1) % 5;
+    if (other == game.floodColor) {
+      other = (other + 1) % 5;
+    }
+    game.applyMove(other);
+    this.play(game, 2);
+    GameSnapshot second = game.snapshot();
+
+    game.restore(first);
+    FloodGame replay = FloodGame.newGame(20, 5, 8);
+    for (int color : first.moves()) {
+      replay.applyMove(color);
+    }
+
+    t.checkExpect(game.floodedCells.toArray(), replay.floodedCells.toArray());
+    t.checkExpect(game.border.toArray(), replay.border.toArray());
+    t.checkExpect(game.board.flooded, replay.board.flooded);
+    t.checkExpect(game.currentTries, 10);
+    t.checkExpect(game.snapshot() == first, true);
+
+    game.restore(second);
+    t.checkExpect(game.moves.toArray(), second.moves());
+    t.checkExpect(game.floodedCells.size(), second.floodedCount);
+
+    t.checkException(new IllegalArgumentException("Snapshot belongs to another game."),
+        game, "restore", FloodGame.newGame(20, 5, 8).snapshot());
+  }
+
+  // Tests that a snapshot of a 200x200 game takes a few dozen bytes, not a
+  // copy of the board.
+  void testSnapshotMemory(Tester t) {
+    FloodGame game = FloodGame.newGame(200, 6, 2);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    game.snapshot();
+    int snapshots = 0;
+    long allocated = 0;
+
+    for (int move = 0; move < 150 && !game.isWon(); move++) {
+      game.applyMove(game.firstFrontierColor());
+      long before = threads.getThreadAllocatedBytes(threadId);
+      game.snapshot();
+      allocated += threads.getThreadAllocatedBytes(threadId) - before;
+      snapshots++;
+    }
+
+    t.checkExpect(snapshots, 150);
+    t.checkExpect(allocated / snapshots < 64, true);
+    t.checkExpect(game.board.memoryBytes() > 40000, true);
+  }
+}
@@ -0,0 +1,232 @@
+package FloodIt;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import tester.Tester;
+
+// A move of the game, from the click to the animation being queued.
+@Name("floodit.Move")
+@Label("Move")
+@Category("FloodIt")
+@Description("A color played, the cells it absorbed and the border left after it.")
+class MoveEvent extends Event {
+  @Label("Color")
+  int color;
+  @Label("Cells Absorbed")
+  int cellsAbsorbed;
+  @Label("Frontier Size")
+  @Description("Regions bordering the flood after the move.")
+  int frontierSize;
+  @Label("Move Number")
+  int moveNumber;
+}
+
+// A frame of the game: building its scene.
+@Name("floodit.Frame")
+@Label("Frame")
+@Category("FloodIt")
+@Description("A scene built by makeScene and the board cells drawn into it.")
+class FrameEvent extends Event {
+  @Label("Cells Drawn")
+  int cellsDrawn;
+  @Label("Full Redraw")
+  boolean fullRedraw;
+}
+
+// Where a FloodItWorld spends its time: a latency histogram, in nanoseconds,
+// for moves (assignFlood), animation ticks (handleAnimation), end checks
+// (worldEnds) and frames (makeScene), and counts of the work each did.
+// Moves and frames are also committed as JFR events, which a recording
+// picks up when floodit.Move or floodit.Frame is enabled.
+// A world only has stats when the floodit.stats system property is true or
+// they are set on it; without them it skips every measurement behind a null
+// check.
+class GameStats {
+  LatencyHistogram moveNanos;
+  LatencyHistogram tickNanos;
+  LatencyHistogram endCheckNanos;
+  LatencyHistogram frameNanos;
+  long cellsAbsorbed;
+  long cellsRecolored;
+  long cellsDrawn;
+  long fullRedraws;
+  // The events of the move and frame in progress.
+  MoveEvent move;
+  FrameEvent frame;
+
+  GameStats() {
+    this.moveNanos = new LatencyHistogram();
+    this.tickNanos = new LatencyHistogram();
+    this.endCheckNanos = new LatencyHistogram();
+    this.frameNanos = new LatencyHistogram();
+  }
+
+  // Returns new stats if the floodit.stats system property is true, or null.
+  public static GameStats fromProperty() {
+    return Boolean.getBoolean("floodit.stats") ? new GameStats() : null;
+  }
+
+  // Starts timing a move. Returns the time it started.
+  public long beginMove() {
+    this.move = new MoveEvent();
+    this.move.begin();
+    return System.nanoTime();
+  }
+
+  // Records a move that began at start.
+  public void endMove(long start, int color, int cellsAbsorbed, int frontierSize,
+      int moveNumber) {
+    this.moveNanos.record(System.nanoTime() - start);
+    this.cellsAbsorbed += cellsAbsorbed;
+    this.move.end();
+    if (this.move.shouldCommit()) {
+      this.move.color = color;
+      this.move.cellsAbsorbed = cellsAbsorbed;
+      this.move.frontierSize = frontierSize;
+      this.move.moveNumber = moveNumber;
+      this.move.commit();
+    }
+    this.move = null;
+  }
+
+  // Records an animation tick that began at start and recolored the given
+  // number of cells.
+  public void endTick(long start, int cellsRecolored) {
+    this.tickNanos.record(System.nanoTime() - start);
+    this.cellsRecolored += cellsRecolored;
+  }
+
+  // Records an end check that began at start.
+  public void endCheck(long start) {
+    this.endCheckNanos.record(System.nanoTime() - start);
+  }
+
+  // Starts timing a frame. Returns the time it started.
+  public long beginFrame() {
+    this.frame = new FrameEvent();
+    this.frame.begin();
+    return System.nanoTime();
+  }
+
+  // Records a frame that began at start.
+  public void endFrame(long start, int cellsDrawn, boolean fullRedraw) {
+    this.frameNanos.record(System.nanoTime() - start);
+    this.cellsDrawn += cellsDrawn;
+    if (fullRedraw) {
+      this.fullRedraws++;
+    }
+    this.frame.end();
+    if (this.frame.shouldCommit()) {
+      this.frame.cellsDrawn = cellsDrawn;
+      this.frame.fullRedraw = fullRedraw;
+      this.frame.commit();
+    }
+    this.frame = null;
+  }
+
+  // Returns one line per histogram, times in microseconds, and a line of counts.
+  public String report() {
+    return GameStats.line("move", this.moveNanos)
+        + GameStats.line("tick", this.tickNanos)
+        + GameStats.line("end check", this.endCheckNanos)
+        + GameStats.line("frame", this.frameNanos)
+        + String.format("cells absorbed %d, recolored %d, drawn %d; full redraws %d%n",
+            this.cellsAbsorbed, this.cellsRecolored, this.cellsDrawn, this.fullRedraws);
+  }
+
+  // Formats one histogram as a line of the report.
+  public static String line(String name, LatencyHistogram h) {
+    return String.format("%-10s %8d  mean %9.1f  p50 %9.1f  p99 %9.1f  max %9.1f us%n",
+        name, h.count, h.mean() / 1e3, h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3,
+        h.max / 1e3);
+  }
+
+  // Forgets everything recorded.
+  public void reset() {
+    this.moveNanos.reset();
+    this.tickNanos.reset();
+    this.endCheckNanos.reset();
+    this.frameNanos.reset();
+    this.cellsAbsorbed = 0;
+    this.cellsRecolored = 0;
+    this.cellsDrawn = 0;
+    this.fullRedraws = 0;
+  }
+}
+
+class ExamplesGameStats {
+  // Tests that stats are off unless the system property turns them on.
+  void testFromProperty(Tester t) {
+    t.checkExpect(GameStats.fromProperty(), null);
+
+    System.setProperty("floodit.stats", "true");
+    GameStats stats = GameStats.fromProperty();
+    System.clearProperty("floodit.stats");
+
+    t.checkExpect(stats == null, false);
+  }
+
+  // Tests the counters, histograms and report of GameStats.
+  void testRecord(Tester t) {
+    GameStats stats = new GameStats();
+    stats.endMove(stats.beginMove(), 2, 30, 7, 1);
+    stats.endMove(stats.beginMove(), 1, 12, 5, 2);
+    stats.endTick(System.nanoTime(), 8);
+    stats.endCheck(System.nanoTime());
+    stats.endFrame(stats.beginFrame(), 400, true);
+    stats.endFrame(stats.beginFrame(), 8, false);
+
+    t.checkExpect(stats.moveNanos.count, 2L);
+    t.checkExpect(stats.tickNanos.count, 1L);
+    t.checkExpect(stats.endCheckNanos.count, 1L);
+    t.checkExpect(stats.frameNanos.count, 2L);
+    t.checkExpect(stats.cellsAbsorbed, 42L);
+    t.checkExpect(stats.cellsRecolored, 8L);
+    t.checkExpect(stats.cellsDrawn, 408L);
+    t.checkExpect(stats.fullRedraws, 1L);
+    t.checkExpect(stats.move, null);
+    t.checkExpect(stats.report().split("\n").length, 5);
+    t.checkExpect(stats.report().startsWith("move              2  mean"), true);
+
+    stats.reset();
+
+    t.checkExpect(stats.frameNanos.count, 0L);
+    t.checkExpect(stats.cellsDrawn, 0L);
+  }
+
+  // Tests that a JFR recording receives the move and frame events.
+  void testEvents(Tester t) throws IOException {
+    File file = File.createTempFile("floodit", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("floodit.Move");
+      recording.enable("floodit.Frame");
+      recording.start();
+      GameStats stats = new GameStats();
+      stats.endMove(stats.beginMove(), 3, 25, 6, 4);
+      stats.endFrame(stats.beginFrame(), 100, false);
+      recording.stop();
+      recording.dump(file.toPath());
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+    file.delete();
+
+    t.checkExpect(events.size(), 2);
+    RecordedEvent move = events.get(0).getEventType().getName().equals("floodit.Move")
+        ? events.get(0) : events.get(1);
+    RecordedEvent frame = move == events.get(0) ? events.get(1) : events.get(0);
+    t.checkExpect(move.getInt("color"), 3);
+    t.checkExpect(move.getInt("cellsAbsorbed"), 25);
+    t.checkExpect(move.getInt("frontierSize"), 6);
+    t.checkExpect(move.getInt("moveNumber"), 4);
+    t.checkExpect(frame.getInt("cellsDrawn"), 100);
+    t.checkExpect(frame.getBoolean("fullRedraw"), false);
+  }
+}
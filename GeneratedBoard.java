@@ -0,0 +1,31 @@
+package FloodIt;
+
+// A board from a BoardGenerator: its seed, its optimal solution, and where
+// it came in the generator's sequence of candidates.
+class GeneratedBoard {
+  long candidate;
+  long seed;
+  int boardSize;
+  int numColors;
+  int[] solution;
+
+  GeneratedBoard(long candidate, long seed, int boardSize, int numColors, int[] solution) {
+    this.candidate = candidate;
+    this.seed = seed;
+    this.boardSize = boardSize;
+    this.numColors = numColors;
+    this.solution = solution;
+  }
+
+  // Returns the fewest moves that win this board.
+  public int optimum() {
+    return this.solution.length;
+  }
+
+  // Starts a game on this board that allows the optimum plus slack tries.
+  public FloodGame newGame(int slack) {
+    FloodGame game = FloodGame.newGame(this.boardSize, this.numColors, this.seed);
+    game.remainingTries = this.optimum() + slack;
+    return game;
+  }
+}
@@ -0,0 +1,10 @@
+package FloodIt;
+import java.util.Random;
+
+// Plays the color that absorbs the most cells, the smallest color on ties.
+class GreedyStrategy implements Strategy {
+  // Returns the color whose bordering regions hold the most cells.
+  public int nextMove(FloodGame game, Random rand) {
+    return game.hint();
+  }
+}
@@ -0,0 +1,136 @@
+package FloodIt;
+import java.util.Arrays;
+import tester.Tester;
+
+// A growable list of ints, used to hold cell indices without boxing them.
+class IntList {
+  int[] items;
+  int size;
+
+  IntList() {
+    this(16);
+  }
+
+  IntList(int capacity) {
+    this.items = new int[Math.max(capacity, 1)];
+    this.size = 0;
+  }
+
+  // Returns the number of items in the list.
+  public int size() {
+    return this.size;
+  }
+
+  // Returns true if the list holds no items.
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // Returns the item at the given position.
+  public int get(int i) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + this.size);
+    }
+    return this.items[i];
+  }
+
+  // Appends an item to the end of the list.
+  public void add(int value) {
+    if (this.size == this.items.length) {
+      this.items = Arrays.copyOf(this.items, this.items.length * 2);
+    }
+    this.items[this.size++] = value;
+  }
+
+  // Replaces the item at the given position.
+  public void set(int i, int value) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + this.size);
+    }
+    this.items[i] = value;
+  }
+
+  // Removes and returns the last item.
+  public int removeLast() {
+    if (this.size == 0) {
+      throw new IndexOutOfBoundsException("Index -1 out of bounds for size 0");
+    }
+    return this.items[--this.size];
+  }
+
+  // Drops every item from the given position onwards.
+  public void truncate(int newSize) {
+    this.size = Math.min(this.size, Math.max(newSize, 0));
+  }
+
+  // Removes every item, keeping the backing array.
+  public void clear() {
+    this.size = 0;
+  }
+
+  // Returns a copy of the items as an exactly-sized array.
+  public int[] toArray() {
+    return Arrays.copyOf(this.items, this.size);
+  }
+}
+
+class ExamplesIntList {
+  IntList list;
+
+  // Initializes conditions.
+  void initList() {
+    this.list = new IntList(2);
+    this.list.add(4);
+    this.list.add(7);
+    this.list.add(9);
+  }
+
+  // Tests add, get and size methods for IntList.
+  void testAdd(Tester t) {
+    this.initList();
+
+    t.checkExpect(this.list.size(), 3);
+    t.checkExpect(this.list.get(0), 4);
+    t.checkExpect(this.list.get(2), 9);
+    t.checkExpect(this.list.isEmpty(), false);
+    t.checkException(new IndexOutOfBoundsException("Index 3 out of bounds for size 3"),
+        this.list, "get", 3);
+  }
+
+  // Tests set and truncate methods for IntList.
+  void testSetAndTruncate(Tester t) {
+    this.initList();
+
+    this.list.set(1, 5);
+    t.checkExpect(this.list.toArray(), new int[] {4, 5, 9});
+
+    this.list.truncate(2);
+    t.checkExpect(this.list.toArray(), new int[] {4, 5});
+
+    this.list.truncate(10);
+    t.checkExpect(this.list.size(), 2);
+  }
+
+  // Tests removeLast method for IntList.
+  void testRemoveLast(Tester t) {
+    this.initList();
+
+    t.checkExpect(this.list.removeLast(), 9);
+    t.checkExpect(this.list.toArray(), new int[] {4, 7});
+
+    this.list.clear();
+
+    t.checkException(new IndexOutOfBoundsException("Index -1 out of bounds for size 0"),
+        this.list, "removeLast");
+  }
+
+  // Tests clear method for IntList.
+  void testClear(Tester t) {
+    this.initList();
+
+    this.list.clear();
+
+    t.checkExpect(this.list.isEmpty(), true);
+    t.checkExpect(this.list.toArray(), new int[] {});
+  }
+}
@@ -0,0 +1,176 @@
+package FloodIt;
+import tester.Tester;
+
+// A first-in first-out queue of ints backed by a ring buffer, so adding and
+// removing at either end never shifts the other items.
+class IntQueue {
+  // Capacity is always a power of two, so positions wrap with a mask.
+  int[] items;
+  int head;
+  int size;
+
+  IntQueue() {
+    this(16);
+  }
+
+  IntQueue(int capacity) {
+    this.items = new int[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+    this.head = 0;
+    this.size = 0;
+  }
+
+  // Returns the number of items in the queue.
+  public int size() {
+    return this.size;
+  }
+
+  // Returns true if the queue holds no items.
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // Returns the item at the given position, counting from the front.
+  public int get(int i) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + this.size);
+    }
+    return this.items[(this.head + i) & (this.items.length - 1)];
+  }
+
+  // Appends an item to the back of the queue.
+  public void add(int value) {
+    if (this.size == this.items.length) {
+      this.grow();
+    }
+    this.items[(this.head + this.size) & (this.items.length - 1)] = value;
+    this.size++;
+  }
+
+  // Returns the item at the front of the queue without removing it.
+  public int peekFirst() {
+    return this.get(0);
+  }
+
+  // Removes and returns the item at the front of the queue.
+  public int removeFirst() {
+    int first = this.get(0);
+    this.head = (this.head + 1) & (this.items.length - 1);
+    this.size--;
+    return first;
+  }
+
+  // Removes every item, keeping the backing array.
+  public void clear() {
+    this.head = 0;
+    this.size = 0;
+  }
+
+  // Returns a copy of the items, front first.
+  public int[] toArray() {
+    int[] result = new int[this.size];
+    for (int i = 0; i < this.size; i++) {
+      result[i] = this.get(i);
+    }
+    return result;
+  }
+
+  // Grows the backing array, if needed, to hold at least the given number
+  // of items.
+  public void reserve(int capacity) {
+    while (this.items.length < capacity) {
+      this.grow();
+    }
+  }
+
+  // Doubles the capacity, unwrapping the items to the start of the new array.
+  void grow() {
+    int[] bigger = new int[this.items.length * 2];
+    int firstPart = Math.min(this.size, this.items.length - this.head);
+    System.arraycopy(this.items, this.head, bigger, 0, firstPart);
+    System.arraycopy(this.items, 0, bigger, firstPart, this.size - firstPart);
+    this.items = bigger;
+    this.head = 0;
+  }
+}
+
+class ExamplesIntQueue {
+  IntQueue queue;
+
+  // Initializes conditions.
+  void initQueue() {
+    this.queue = new IntQueue(4);
+    this.queue.add(1);
+    this.queue.add(2);
+    this.queue.add(3);
+  }
+
+  // Tests the capacity chosen by the IntQueue constructor.
+  void testCapacity(Tester t) {
+    t.checkExpect(new IntQueue(4).items.length, 4);
+    t.checkExpect(new IntQueue(5).items.length, 8);
+    t.checkExpect(new IntQueue(0).items.length, 2);
+  }
+
+  // Tests add, get, peekFirst and removeFirst methods for IntQueue.
+  void testAddAndRemove(Tester t) {
+    this.initQueue();
+
+    t.checkExpect(this.queue.size(), 3);
+    t.checkExpect(this.queue.peekFirst(), 1);
+    t.checkExpect(this.queue.removeFirst(), 1);
+    t.checkExpect(this.queue.get(0), 2);
+    t.checkExpect(this.queue.toArray(), new int[] {2, 3});
+    t.checkException(new IndexOutOfBoundsException("Index 2 out of bounds for size 2"),
+        this.queue, "get", 2);
+  }
+
+  // Tests that the queue keeps its order when it wraps around and grows.
+  void testWrapAndGrow(Tester t) {
+    this.initQueue();
+
+    this.queue.removeFirst();
+    this.queue.removeFirst();
+    this.queue.add(4);
+    this.queue.add(5);
+
+    // The items now wrap past the end of the backing array.
+    t.checkExpect(this.queue.items.length, 4);
+    t.checkExpect(this.queue.toArray(), new int[] {3, 4, 5});
+
+    this.queue.add(6);
+    this.queue.add(7);
+
+    t.checkExpect(this.queue.items.length, 8);
+    t.checkExpect(this.queue.toArray(), new int[] {3, 4, 5, 6, 7});
+  }
+
+  // Tests that reserve grows the queue only as far as needed, keeping its items.
+  void testReserve(Tester t) {
+    this.initQueue();
+    this.queue.removeFirst();
+    this.queue.add(4);
+    this.queue.add(5);
+
+    this.queue.reserve(3);
+
+    t.checkExpect(this.queue.items.length, 4);
+
+    this.queue.reserve(9);
+
+    t.checkExpect(this.queue.items.length, 16);
+    t.checkExpect(this.queue.toArray(), new int[] {2, 3, 4, 5});
+  }
+
+  // Tests clear and isEmpty methods for IntQueue.
+  void testClear(Tester t) {
+    this.initQueue();
+
+    this.queue.clear();
+
+    t.checkExpect(this.queue.isEmpty(), true);
+    this.queue.add(9);
+    t.checkExpect(this.queue.removeFirst(), 9);
+    t.checkException(new IndexOutOfBoundsException("Index 0 out of bounds for size 0"),
+        this.queue, "removeFirst");
+  }
+}
@@ -0,0 +1,173 @@
+package FloodIt;
+import java.util.Arrays;
+import tester.Tester;
+
+// Counts of non-negative values, such as latencies in nanoseconds, in
+// log-linear buckets after HdrHistogram: values below 64 get a bucket each,
+// and every power of two above that is split into 32 buckets, so any value
+// is known to within 1/32 of itself. A fixed 1888 counters cover every long,
+// and recording a value is a few shifts and an increment.
+// Not thread-safe; each thread records into its own histogram.
+class LatencyHistogram {
+  static int SUB_BUCKETS = 32;
+  static int BUCKETS = LatencyHistogram.bucketOf(Long.MAX_VALUE) + 1;
+
+  long[] counts;
+  long count;
+  long total;
+  long max;
+
+  LatencyHistogram() {
+    this.counts = new long[LatencyHistogram.BUCKETS];
+  }
+
+  // Returns the bucket the given value is counted in.
+  public static int bucketOf(long value) {
+    if (value < 2 * LatencyHistogram.SUB_BUCKETS) {
+      return (int) Math.max(0, value);
+    }
+    // Keep the top six bits: 32 to 63 shifted left by shift.
+    int shift = 58 - Long.numberOfLeadingZeros(value);
+    return ((shift + 1) * LatencyHistogram.SUB_BUCKETS) + (int) (value >>> shift)
+        - LatencyHistogram.SUB_BUCKETS;
+  }
+
+  // Returns the smallest value counted in the given bucket.
+  public static long lowestIn(int bucket) {
+    if (bucket < 2 * LatencyHistogram.SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket / LatencyHistogram.SUB_BUCKETS) - 1;
+    return (long) (LatencyHistogram.SUB_BUCKETS + (bucket % LatencyHistogram.SUB_BUCKETS)) << shift;
+  }
+
+  // Returns the largest value counted in the given bucket.
+  public static long highestIn(int bucket) {
+    // Past the last bucket lowestIn overflows to Long.MIN_VALUE.
+    return LatencyHistogram.lowestIn(bucket + 1) - 1;
+  }
+
+  // Counts one value. Negative values count as 0.
+  public void record(long value) {
+    long v = Math.max(0, value);
+    this.counts[LatencyHistogram.bucketOf(v)]++;
+    this.count++;
+    this.total += v;
+    this.max = Math.max(this.max, v);
+  }
+
+  // Adds every value recorded in another histogram to this one.
+  public void add(LatencyHistogram other) {
+    for (int b = 0; b < this.counts.length; b++) {
+      this.counts[b] += other.counts[b];
+    }
+    this.count += other.count;
+    this.total += other.total;
+    this.max = Math.max(this.max, other.max);
+  }
+
+  // Returns the mean of the values recorded, or 0 if there are none.
+  public double mean() {
+    return this.count == 0 ? 0 : (double) this.total / this.count;
+  }
+
+  // Returns a value at least as large as the given fraction of the values
+  // recorded, and within 1/32 of the smallest such value; 0 if there are none.
+  public long percentile(double fraction) {
+    long rank = Math.max(1, (long) Math.ceil(fraction * this.count));
+    long seen = 0;
+    for (int b = 0; b < this.counts.length; b++) {
+      seen += this.counts[b];
+      if (seen >= rank) {
+        return Math.min(this.max, LatencyHistogram.highestIn(b));
+      }
+    }
+    return 0;
+  }
+
+  // Forgets every value recorded.
+  public void reset() {
+    Arrays.fill(this.counts, 0L);
+    this.count = 0;
+    this.total = 0;
+    this.max = 0;
+  }
+}
+
+class ExamplesLatencyHistogram {
+  // Tests bucketOf, lowestIn and highestIn methods for LatencyHistogram.
+  void testBuckets(Tester t) {
+    t.checkExpect(LatencyHistogram.BUCKETS, 1888);
+    t.checkExpect(LatencyHistogram.bucketOf(0), 0);
+    t.checkExpect(LatencyHistogram.bucketOf(63), 63);
+    t.checkExpect(LatencyHistogram.bucketOf(64), 64);
+    t.checkExpect(LatencyHistogram.bucketOf(65), 64);
+    t.checkExpect(LatencyHistogram.bucketOf(66), 65);
+    t.checkExpect(LatencyHistogram.bucketOf(-5), 0);
+    t.checkExpect(LatencyHistogram.lowestIn(64), 64L);
+    t.checkExpect(LatencyHistogram.highestIn(64), 65L);
+    t.checkExpect(LatencyHistogram.highestIn(LatencyHistogram.BUCKETS - 1), Long.MAX_VALUE);
+
+    // Buckets follow one another with no gaps, each within 1/32 of its values.
+    int mismatches = 0;
+    for (int b = 0; b < LatencyHistogram.BUCKETS - 1; b++) {
+      long low = LatencyHistogram.lowestIn(b);
+      long high = LatencyHistogram.highestIn(b);
+      if (LatencyHistogram.bucketOf(low) != b || LatencyHistogram.bucketOf(high) != b
+          || LatencyHistogram.lowestIn(b + 1) != high + 1 || (high - low) * 32 > low) {
+        mismatches++;
+      }
+    }
+    t.checkExpect(mismatches, 0);
+  }
+
+  // Tests record, mean and percentile methods for LatencyHistogram.
+  void testRecord(Tester t) {
+    LatencyHistogram h = new LatencyHistogram();
+
+    t.checkExpect(h.percentile(0.5), 0L);
+    t.checkExpect(h.mean(), 0.0);
+
+    for (int v = 1; v <= 1000; v++) {
+      h.record(v * 1000L);
+    }
+
+    t.checkExpect(h.count, 1000L);
+    t.checkExpect(h.max, 1000000L);
+    t.checkExpect(h.mean(), 500500.0);
+    t.checkExpect(h.percentile(1.0), 1000000L);
+    long median = h.percentile(0.5);
+    t.checkExpect(median >= 500000 && median <= 500000 + (500000 / 32), true);
+    long p99 = h.percentile(0.99);
+    t.checkExpect(p99 >= 990000 && p99 <= 990000 + (990000 / 32), true);
+  }
+
+  // Tests add method for LatencyHistogram.
+  void testAdd(Tester t) {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.record(10);
+    a.record(5000);
+    b.record(20);
+    b.record(900000);
+    a.add(b);
+
+    t.checkExpect(a.count, 4L);
+    t.checkExpect(a.max, 900000L);
+    t.checkExpect(a.mean(), 226257.5);
+    t.checkExpect(a.percentile(0.5), 20L);
+    t.checkExpect(b.count, 2L);
+  }
+
+  // Tests reset method for LatencyHistogram.
+  void testReset(Tester t) {
+    LatencyHistogram h = new LatencyHistogram();
+    h.record(70);
+    h.record(-3);
+    h.reset();
+
+    t.checkExpect(h.count, 0L);
+    t.checkExpect(h.max, 0L);
+    t.checkExpect(h.counts, new long[LatencyHistogram.BUCKETS]);
+  }
+}
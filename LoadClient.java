@@ -0,0 +1,193 @@
+package FloodIt;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Plays many games at once against a GameServer and reports moves per second
+// and move latency. The sessions are shared out over a number of
+// connections; each connection starts its sessions and then plays a move in
+// each in turn, cycling through the colors, until every one is won or lost,
+// so all of them stay open for the whole run.
+// Run with: java FloodIt.LoadClient [sessions] [connections] [size] [colors] [port]
+// With no port it starts a server in this JVM.
+class LoadClient {
+  int sessions;
+  int connections;
+  int boardSize;
+  int numColors;
+  int port;
+
+  // Results of the last run. Refused moves are ones the server played no
+  // try for, since the color was already the flood color.
+  long moves;
+  long refused;
+  long won;
+  long lost;
+  long errors;
+  long nanos;
+  LatencyHistogram latency;
+
+  LoadClient(int sessions, int connections, int boardSize, int numColors, int port) {
+    this.sessions = sessions;
+    this.connections = Math.min(connections, sessions);
+    this.boardSize = boardSize;
+    this.numColors = numColors;
+    this.port = port;
+  }
+
+  // Plays every session to the end, one thread per connection.
+  public void run() throws Exception {
+    ExecutorService threads = GameServer.threadPerTaskExecutor();
+    ArrayList<Future<LoadConnection>> results = new ArrayList<Future<LoadConnection>>();
+    long start = System.nanoTime();
+    for (int c = 0; c < this.connections; c++) {
+      // Sessions c, c + connections, c + 2 * connections and so on.
+      int count = (this.sessions - c + this.connections - 1) / this.connections;
+      LoadConnection connection = new LoadConnection(this, c, count);
+      results.add(threads.submit(() -> connection.play()));
+    }
+    this.moves = 0;
+    this.refused = 0;
+    this.won = 0;
+    this.lost = 0;
+    this.errors = 0;
+    this.latency = new LatencyHistogram();
+    for (Future<LoadConnection> result : results) {
+      LoadConnection connection = result.get();
+      this.moves += connection.moves;
+      this.refused += connection.refused;
+      this.won += connection.won;
+      this.lost += connection.lost;
+      this.errors += connection.errors;
+      this.latency.add(connection.latency);
+    }
+    this.nanos = System.nanoTime() - start;
+    threads.shutdown();
+  }
+
+  // Returns a summary of the last run.
+  public String report() {
+    return String.format("%d sessions over %d connections, %dx%d with %d colors: "
+        + "%d won, %d lost, %d errors%n"
+        + "%d moves (and %d refused) in %.2f s: %.0f moves/s%n"
+        + "move latency: mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n",
+        this.sessions, this.connections, this.boardSize, this.boardSize, this.numColors,
+        this.won, this.lost, this.errors, this.moves, this.refused, this.nanos / 1e9,
+        this.moves / (this.nanos / 1e9), this.latency.mean() / 1e3,
+        this.latency.percentile(0.5) / 1e3, this.latency.percentile(0.99) / 1e3,
+        this.latency.max / 1e3);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int size = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+    int colors = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+    GameServer server = null;
+    int port;
+    if (args.length > 4) {
+      port = Integer.parseInt(args[4]);
+    } else {
+      server = new GameServer(0);
+      server.start();
+      port = server.port();
+    }
+    LoadClient client = new LoadClient(sessions, connections, size, colors, port);
+    client.run();
+    System.out.print(client.report());
+    if (server != null) {
+      server.close();
+    }
+  }
+}
+
+// One connection of a LoadClient and the sessions it plays.
+class LoadConnection {
+  LoadClient client;
+  int first;
+  int count;
+  long moves;
+  long refused;
+  long won;
+  long lost;
+  long errors;
+  LatencyHistogram latency;
+
+  LoadConnection(LoadClient client, int first, int count) {
+    this.client = client;
+    this.first = first;
+    this.count = count;
+    this.latency = new LatencyHistogram();
+  }
+
+  // Starts this connection's sessions, seeded by their number, and plays
+  // them round-robin until all are over, then ends them.
+  public LoadConnection play() throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), this.client.port)) {
+      socket.setTcpNoDelay(true);
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+      String[] ids = new String[this.count];
+      for (int i = 0; i < this.count; i++) {
+        long seed = this.first + ((long) i * this.client.connections);
+        String reply = LoadConnection.request(in, out, "NEW " + this.client.boardSize + " "
+            + this.client.numColors + " " + seed);
+        ids[i] = reply.substring(3);
+      }
+
+      int live = this.count;
+      boolean[] over = new boolean[this.count];
+      for (int turn = 0; live > 0; turn++) {
+        for (int i = 0; i < this.count; i++) {
+          if (!over[i]) {
+            long start = System.nanoTime();
+            String reply = LoadConnection.request(in, out,
+                "MOVE " + ids[i] + " " + (turn % this.client.numColors));
+            this.latency.record(System.nanoTime() - start);
+            if (reply.startsWith("ERR")) {
+              this.errors++;
+            } else if (reply.startsWith("OK -1 ")) {
+              this.refused++;
+            } else {
+              this.moves++;
+            }
+            if (reply.endsWith("WON") || reply.endsWith("LOST") || reply.startsWith("ERR")) {
+              if (reply.endsWith("WON")) {
+                this.won++;
+              } else if (reply.endsWith("LOST")) {
+                this.lost++;
+              }
+              over[i] = true;
+              live--;
+              LoadConnection.request(in, out, "END " + ids[i]);
+            }
+          }
+        }
+      }
+      out.write("QUIT\n");
+      out.flush();
+    }
+    return this;
+  }
+
+  // Sends one request line and returns the reply line.
+  public static String request(BufferedReader in, Writer out, String line) throws IOException {
+    out.write(line);
+    out.write('\n');
+    out.flush();
+    String reply = in.readLine();
+    if (reply == null) {
+      throw new IOException("Server closed the connection.");
+    }
+    return reply;
+  }
+}
@@ -0,0 +1,668 @@
+package FloodIt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import tester.Tester;
+
+// A state in an MctsPlayer's search tree, reached from its parent by
+// playing color. Statistics are updated without locks by every thread
+// searching the tree: visits counts playouts through the state, and reward
+// sums their rewards in units of 1 / REWARD_SCALE.
+class MctsNode {
+  static long REWARD_SCALE = 1L << 20;
+  static AtomicLongFieldUpdater<MctsNode> VISITS =
+      AtomicLongFieldUpdater.newUpdater(MctsNode.class, "visits");
+  static AtomicLongFieldUpdater<MctsNode> REWARD =
+      AtomicLongFieldUpdater.newUpdater(MctsNode.class, "reward");
+  static AtomicReferenceFieldUpdater<MctsNode, MctsNode[]> CHILDREN =
+      AtomicReferenceFieldUpdater.newUpdater(MctsNode.class, MctsNode[].class, "children");
+
+  int color;
+  volatile long visits;
+  volatile long reward;
+  // One child per color, null for colors that would not grow the flood;
+  // null until the state is expanded.
+  volatile MctsNode[] children;
+
+  MctsNode(int color) {
+    this.color = color;
+  }
+
+  // Counts a playout through this state before its reward is known, so
+  // other threads are steered elsewhere meanwhile.
+  public void addVisit() {
+    MctsNode.VISITS.incrementAndGet(this);
+  }
+
+  // Adds the reward, between 0 and 1, of a playout through this state.
+  public void addReward(double value) {
+    MctsNode.REWARD.addAndGet(this, Math.round(value * MctsNode.REWARD_SCALE));
+  }
+
+  // Returns the mean reward of the playouts through this state, or 0 if
+  // there are none.
+  public double mean() {
+    long n = this.visits;
+    return n == 0 ? 0 : (double) this.reward / MctsNode.REWARD_SCALE / n;
+  }
+
+  // Sets the children, unless another thread already has. Returns the
+  // children the state ends up with.
+  public MctsNode[] expand(MctsNode[] children) {
+    if (MctsNode.CHILDREN.compareAndSet(this, null, children)) {
+      return children;
+    }
+    return this.children;
+  }
+
+  // Returns the child reached by the given color, or null if there is none.
+  public MctsNode child(int color) {
+    MctsNode[] c = this.children;
+    return c == null ? null : c[color];
+  }
+}
+
+// A computer player that chooses each move by Monte Carlo tree search over
+// the game's states. Every playout walks down the tree by UCT, expands the
+// state it stops at, and finishes the game with a quick rollout: mostly the
+// move that floods the most cells, with a bonus for eliminating a color,
+// and now and then a random one. Its reward is higher the fewer moves the
+// whole game took, scaled between the fewest moves the board could need
+// and twice the greedy solution's length, so rewards stay comparable as
+// the tree is reused from move to move.
+//
+// Playouts run on several threads over one shared tree; each thread plays
+// on its own copy of the game and undoes its playout afterwards, so
+// rollouts allocate nothing. The move chosen is the most visited one. The
+// subtree below it is kept for the next search once the move is played.
+class MctsPlayer {
+  static long TIME_LIMIT_NANOS = 100000000L;
+  static double EXPLORATION = 0.1;
+  // Chance that a rollout move is random rather than greedy.
+  static double RANDOM_MOVES = 0.25;
+
+  FloodGame game;
+  int threads;
+  long timeLimitNanos;
+  // Playouts each search may run in all, on top of the time limit.
+  long playoutLimit;
+  double exploration;
+  long seed;
+
+  // The tree, the number of moves the game had at its root, and the range
+  // of game lengths rewards are scaled over.
+  MctsNode root;
+  int rootMoves;
+  int fewestMoves;
+  int mostMoves;
+  MctsWorker[] workers;
+
+  // Results of the last search.
+  long playouts;
+  long searchNanos;
+  // Playouts of the last search that went through subtrees kept from the one before.
+  long reusedVisits;
+
+  // Pool for the search threads, kept from one search to the next.
+  ExecutorService executor;
+  int executorThreads;
+
+  MctsPlayer(FloodGame game) {
+    this.game = game;
+    this.threads = Runtime.getRuntime().availableProcessors();
+    this.timeLimitNanos = MctsPlayer.TIME_LIMIT_NANOS;
+    this.playoutLimit = Long.MAX_VALUE;
+    this.exploration = MctsPlayer.EXPLORATION;
+  }
+
+  // Searches from the game's current state and returns the color to play,
+  // or -1 if the game is over. Plays the greedy move if the search ran out
+  // of time or playouts before it expanded the root.
+  public int bestMove() {
+    if (this.game.isWon() || this.game.isLost()) {
+      return -1;
+    }
+    this.sync();
+    this.reusedVisits = this.root.visits;
+    this.search();
+    if (this.root.children == null) {
+      return this.game.hint();
+    }
+    MctsNode best = null;
+    for (MctsNode child : this.root.children) {
+      if (child != null && (best == null || child.visits > best.visits
+          || (child.visits == best.visits && child.mean() > best.mean()))) {
+        best = child;
+      }
+    }
+    return best.color;
+  }
+
+  // Plays the game until it is won or lost. Returns true if it was won.
+  public boolean playGame() {
+    while (!this.game.isWon() && !this.game.isLost()) {
+      this.game.applyMove(this.bestMove());
+    }
+    return this.game.isWon();
+  }
+
+  // Brings the tree and the workers' games to the game's current state:
+  // down one child if one move was played since the last search, or afresh
+  // if anything else happened.
+  public void sync() {
+    int moves = this.game.moveCount();
+    if (this.root != null && moves == this.rootMoves + 1) {
+      int color = this.game.moves.get(moves - 1);
+      MctsNode child = this.root.child(color);
+      this.root = child != null ? child : new MctsNode(color);
+      this.rootMoves = moves;
+      for (MctsWorker worker : this.workers) {
+        worker.game.flood(color);
+      }
+    }
+    if (this.root == null || moves != this.rootMoves || this.workers.length != this.threads
+        || this.workers[0].game.floodHash != this.game.floodHash) {
+      this.workers = new MctsWorker[this.threads];
+      for (int i = 0; i < this.threads; i++) {
+        this.workers[i] = new MctsWorker(this, new Random(this.seed + i));
+      }
+      this.root = new MctsNode(this.game.floodColor);
+      this.rootMoves = moves;
+      this.fewestMoves = moves + this.workers[0].colorsLeft();
+      this.mostMoves = moves + (2 * this.workers[0].greedyLength());
+    }
+    for (MctsWorker worker : this.workers) {
+      worker.startSearch();
+    }
+  }
+
+  // Runs playouts on every worker until the time or playout limit.
+  public void search() {
+    long start = System.nanoTime();
+    long deadline = start + this.timeLimitNanos;
+    AtomicLong claimed = new AtomicLong();
+    if (this.threads == 1) {
+      this.workers[0].run(deadline, claimed);
+    } else {
+      ExecutorService executor = this.executor();
+      ArrayList<Future<MctsWorker>> results = new ArrayList<Future<MctsWorker>>();
+      for (MctsWorker worker : this.workers) {
+        results.add(executor.submit(() -> worker.run(deadline, claimed)));
+      }
+      try {
+        for (Future<MctsWorker> result : results) {
+          result.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while searching.", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("A search thread failed.", e.getCause());
+      }
+    }
+    this.searchNanos = System.nanoTime() - start;
+    this.playouts = 0;
+    for (MctsWorker worker : this.workers) {
+      this.playouts += worker.playouts;
+    }
+  }
+
+  // Returns the pool that runs the workers, replacing it if threads has
+  // changed since it was made. Its threads are daemons, so an unclosed
+  // player never keeps the JVM running.
+  public synchronized ExecutorService executor() {
+    if (this.executor == null || this.executorThreads != this.threads) {
+      if (this.executor != null) {
+        this.executor.shutdown();
+      }
+      this.executor = Executors.newFixedThreadPool(this.threads, MctsPlayer::daemon);
+      this.executorThreads = this.threads;
+    }
+    return this.executor;
+  }
+
+  // Returns a new daemon thread that runs the given task.
+  public static Thread daemon(Runnable task) {
+    Thread thread = new Thread(task, "floodit-mcts");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  // Shuts down the pool. A later search starts a new one.
+  public synchronized void close() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+  }
+
+  // Returns the reward of a game won in the given number of moves in all.
+  public double reward(int moves) {
+    double r = (double) (this.mostMoves - moves) / (this.mostMoves - this.fewestMoves);
+    return Math.max(0, Math.min(1, r));
+  }
+
+  // Returns playouts per second in the last search.
+  public double playoutsPerSecond() {
+    return this.playouts / (this.searchNanos / 1e9);
+  }
+
+  // Plays seeded games headlessly, with no limit on tries, and reports
+  // moves next to the greedy strategy's, and playouts per second.
+  // Run with: java FloodIt.MctsPlayer [size] [colors] [games] [ms per move] [threads]
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+    int colors = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+    int games = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    long millis = args.length > 3 ? Long.parseLong(args[3]) : 100;
+    int threads = args.length > 4 ? Integer.parseInt(args[4])
+        : Runtime.getRuntime().availableProcessors();
+
+    System.out.println("seed   greedy   mcts   won      playouts   playouts/s");
+    long greedyTotal = 0;
+    long mctsTotal = 0;
+    long playoutTotal = 0;
+    long nanosTotal = 0;
+    for (long seed = 0; seed < games; seed++) {
+      FloodGame greedy = FloodGame.newGame(size, colors, seed);
+      greedy.remainingTries = Integer.MAX_VALUE;
+      while (!greedy.isWon()) {
+        greedy.applyMove(new GreedyStrategy().nextMove(greedy, null));
+      }
+      FloodGame game = FloodGame.newGame(size, colors, seed);
+      game.remainingTries = Integer.MAX_VALUE;
+      MctsPlayer player = new MctsPlayer(game);
+      player.threads = threads;
+      player.timeLimitNanos = millis * 1000000L;
+      long playouts = 0;
+      long nanos = 0;
+      while (!game.isWon() && !game.isLost()) {
+        game.applyMove(player.bestMove());
+        playouts += player.playouts;
+        nanos += player.searchNanos;
+      }
+      player.close();
+      greedyTotal += greedy.moveCount();
+      mctsTotal += game.moveCount();
+      playoutTotal += playouts;
+      nanosTotal += nanos;
+      System.out.printf("%-6d %-8d %-6d %-8s %8d %12.0f%n", seed, greedy.moveCount(),
+          game.moveCount(), game.isWon(), playouts, playouts / (nanos / 1e9));
+    }
+    System.out.printf("%dx%d, %d colors, %d ms per move, %d threads: greedy mean %.2f moves, "
+        + "MCTS mean %.2f moves, %.0f playouts/s%n", size, size, colors, millis, threads,
+        (double) greedyTotal / games, (double) mctsTotal / games,
+        playoutTotal / (nanosTotal / 1e9));
+  }
+}
+
+// One thread of an MctsPlayer's search, with its own copy of the game to
+// play out on.
+class MctsWorker {
+  MctsPlayer player;
+  FloodGame game;
+  Random rand;
+  int cellCount;
+  // Unflooded cells of each color at the root, and as the playout goes.
+  int[] rootRemaining;
+  int[] remaining;
+  // Per color scratch for rollout moves.
+  int[] growth;
+  // States the current playout went through.
+  MctsNode[] path;
+  long playouts;
+
+  MctsWorker(MctsPlayer player, Random rand) {
+    this.player = player;
+    this.game = player.game.copy();
+    this.rand = rand;
+    this.cellCount = this.game.board.cellCount();
+    this.rootRemaining = new int[this.game.numColors];
+    this.remaining = new int[this.game.numColors];
+    this.growth = new int[this.game.numColors];
+    this.path = new MctsNode[16];
+  }
+
+  // Counts the unflooded cells of each color from the game as it stands.
+  public void startSearch() {
+    RegionGraph g = this.game.regions;
+    Arrays.fill(this.rootRemaining, 0);
+    for (int r = 0; r < g.regionCount; r++) {
+      if (!this.game.isRegionFlooded(r)) {
+        this.rootRemaining[g.regionColor[r]] += g.regionSize[r];
+      }
+    }
+    this.playouts = 0;
+  }
+
+  // Returns the number of colors left outside the flood.
+  public int colorsLeft() {
+    this.startSearch();
+    int left = 0;
+    for (int cells : this.rootRemaining) {
+      if (cells > 0) {
+        left++;
+      }
+    }
+    return left;
+  }
+
+  // Returns the length of the greedy solution from here, leaving the game as it was.
+  public int greedyLength() {
+    int before = this.game.moveCount();
+    GreedyStrategy greedy = new GreedyStrategy();
+    while (!this.game.isWon()) {
+      this.game.flood(greedy.nextMove(this.game, null));
+    }
+    int length = this.game.moveCount() - before;
+    while (this.game.moveCount() > before) {
+      this.game.undo();
+    }
+    return length;
+  }
+
+  // Runs playouts until the deadline, or until the player's playout limit
+  // has been claimed between all the workers.
+  public MctsWorker run(long deadline, AtomicLong claimed) {
+    while (System.nanoTime() < deadline
+        && claimed.getAndIncrement() < this.player.playoutLimit) {
+      this.playout();
+      this.playouts++;
+    }
+    return this;
+  }
+
+  // Runs one playout from the root and backs its reward up the tree.
+  public void playout() {
+    int base = this.game.moveCount();
+    System.arraycopy(this.rootRemaining, 0, this.remaining, 0, this.remaining.length);
+    MctsNode node = this.player.root;
+    node.addVisit();
+    int depth = 0;
+    this.path[0] = node;
+
+    // Selection: down the tree while its states are expanded.
+    while (node.children != null && !this.game.isWon()) {
+      node = this.select(node);
+      node.addVisit();
+      this.play(node.color);
+      depth++;
+      if (depth == this.path.length) {
+        this.path = Arrays.copyOf(this.path, depth * 2);
+      }
+      this.path[depth] = node;
+    }
+    // Expansion, then a rollout to the end of the game.
+    if (!this.game.isWon()) {
+      node.expand(this.children());
+      while (!this.game.isWon()) {
+        this.play(this.rolloutMove());
+      }
+    }
+
+    double reward = this.player.reward(this.game.moveCount());
+    for (int d = 0; d <= depth; d++) {
+      this.path[d].addReward(reward);
+    }
+    while (this.game.moveCount() > base) {
+      this.game.undo();
+    }
+  }
+
+  // Returns the child of node with the best UCT score; a child never
+  // visited comes first.
+  public MctsNode select(MctsNode node) {
+    double logVisits = Math.log(Math.max(1, node.visits));
+    MctsNode best = null;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (MctsNode child : node.children) {
+      if (child == null) {
+        continue;
+      }
+      long n = child.visits;
+      if (n == 0) {
+        return child;
+      }
+      double score = child.mean() + (this.player.exploration * Math.sqrt(logVisits / n));
+      if (score > bestScore) {
+        best = child;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  // Returns a child for every color that grows the flood.
+  public MctsNode[] children() {
+    this.countGrowth();
+    MctsNode[] children = new MctsNode[this.game.numColors];
+    for (int c = 0; c < children.length; c++) {
+      if (this.growth[c] > 0) {
+        children[c] = new MctsNode(c);
+      }
+    }
+    return children;
+  }
+
+  // Returns the rollout's next color: usually the one that floods the most
+  // cells, counting a color it eliminates as eliminationWeight more; with
+  // chance RANDOM_MOVES, any color that grows the flood.
+  public int rolloutMove() {
+    this.countGrowth();
+    if (this.rand.nextDouble() < MctsPlayer.RANDOM_MOVES) {
+      return this.game.regions.regionColor[
+          this.game.border.get(this.rand.nextInt(this.game.border.size()))];
+    }
+    int bonus = this.cellCount / this.game.numColors;
+    int best = -1;
+    int bestScore = 0;
+    for (int c = 0; c < this.growth.length; c++) {
+      int score = this.growth[c];
+      if (score > 0 && score == this.remaining[c]) {
+        score += bonus;
+      }
+      if (score > bestScore) {
+        best = c;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  // Copies into growth the cells each color would absorb.
+  public void countGrowth() {
+    System.arraycopy(this.game.borderCells, 0, this.growth, 0, this.growth.length);
+  }
+
+  // Floods the given color, keeping remaining up to date.
+  public void play(int color) {
+    this.remaining[color] -= this.game.flood(color);
+  }
+}
+
+class ExamplesMctsPlayer {
+  // Tests MctsNode statistics and expansion.
+  void testNode(Tester t) {
+    MctsNode node = new MctsNode(2);
+
+    t.checkExpect(node.mean(), 0.0);
+    t.checkExpect(node.child(1), null);
+
+    node.addVisit();
+    node.addVisit();
+    node.addReward(0.5);
+    node.addReward(0.25);
+    MctsNode[] first = new MctsNode[] {new MctsNode(0), null};
+    MctsNode[] second = new MctsNode[] {null, new MctsNode(1)};
+
+    t.checkExpect(node.visits, 2L);
+    t.checkExpect(node.mean(), 0.375);
+    t.checkExpect(node.expand(first) == first, true);
+    t.checkExpect(node.expand(second) == first, true);
+    t.checkExpect(node.child(0).color, 0);
+    t.checkExpect(node.child(1), null);
+  }
+
+  // Tests that a search runs the playouts asked for, visits the root once
+  // for each, and picks a color that grows the flood.
+  void testBestMove(Tester t) {
+    FloodGame game = FloodGame.newGame(10, 4, 5);
+    MctsPlayer player = new MctsPlayer(game);
+    player.threads = 1;
+    player.playoutLimit = 500;
+    player.timeLimitNanos = Long.MAX_VALUE / 2;
+    int move = player.bestMove();
+    long visits = 0;
+    for (MctsNode child : player.root.children) {
+      if (child != null) {
+        visits += child.visits;
+      }
+    }
+
+    t.checkExpect(player.playouts, 500L);
+    t.checkExpect(player.root.visits, 500L);
+    // The first playout expands the root and goes through no child.
+    t.checkExpect(visits, 499L);
+    t.checkExpect(game.applyMove(move) > 0, true);
+    t.checkExpect(player.workers[0].game.moveCount(), 0);
+    t.checkExpect(player.playoutsPerSecond() > 0, true);
+  }
+
+  // Tests that the subtree below the move played is kept for the next
+  // search, and that anything else starts afresh.
+  void testReuse(Tester t) {
+    FloodGame game = FloodGame.newGame(10, 4, 5);
+    MctsPlayer player = new MctsPlayer(game);
+    player.threads = 1;
+    player.playoutLimit = 500;
+    player.timeLimitNanos = Long.MAX_VALUE / 2;
+    int move = player.bestMove();
+    MctsNode kept = player.root.child(move);
+    long keptVisits = kept.visits;
+    game.applyMove(move);
+    player.bestMove();
+
+    t.checkExpect(player.root == kept, true);
+    t.checkExpect(player.reusedVisits, keptVisits);
+    t.checkExpect(player.root.visits, keptVisits + 500);
+    t.checkExpect(player.workers[0].game.floodHash, game.floodHash);
+
+    game.undo();
+    player.bestMove();
+
+    t.checkExpect(player.reusedVisits, 0L);
+    t.checkExpect(player.rootMoves, 0);
+    t.checkExpect(player.workers[0].game.floodHash, game.floodHash);
+  }
+
+  // Tests that a search with no playouts or no time plays the greedy move,
+  // and that a later search with a budget still works from there.
+  void testZeroBudget(Tester t) {
+    FloodGame game = FloodGame.newGame(10, 4, 5);
+    MctsPlayer player = new MctsPlayer(game);
+    player.threads = 2;
+    player.playoutLimit = 0;
+
+    t.checkExpect(player.bestMove(), game.hint());
+    t.checkExpect(player.playouts, 0L);
+
+    player.playoutLimit = Long.MAX_VALUE;
+    player.timeLimitNanos = 0;
+
+    t.checkExpect(player.bestMove(), game.hint());
+    t.checkExpect(player.root.children, null);
+
+    player.playoutLimit = 100;
+    player.timeLimitNanos = Long.MAX_VALUE / 2;
+    int move = player.bestMove();
+
+    t.checkExpect(player.root.child(move) != null, true);
+    t.checkExpect(player.root.visits, 100L);
+  }
+
+  // Tests that a single-threaded search is the same every time.
+  void testDeterministic(Tester t) {
+    MctsPlayer a = new MctsPlayer(FloodGame.newGame(10, 4, 8));
+    a.threads = 1;
+    a.playoutLimit = 300;
+    a.timeLimitNanos = Long.MAX_VALUE / 2;
+    MctsPlayer b = new MctsPlayer(FloodGame.newGame(10, 4, 8));
+    b.threads = 1;
+    b.playoutLimit = 300;
+    b.timeLimitNanos = Long.MAX_VALUE / 2;
+
+    t.checkExpect(a.bestMove(), b.bestMove());
+    t.checkExpect(a.root.child(0) == null ? 0 : a.root.child(0).visits,
+        b.root.child(0) == null ? 0 : b.root.child(0).visits);
+  }
+
+  // Tests playing whole games headlessly on several threads, no worse than
+  // the greedy strategy.
+  void testPlayGame(Tester t) {
+    int wins = 0;
+    int moves = 0;
+    int greedyMoves = 0;
+    for (long seed = 0; seed < 3; seed++) {
+      FloodGame game = FloodGame.newGame(10, 4, seed);
+      MctsPlayer player = new MctsPlayer(game);
+      player.threads = 2;
+      player.playoutLimit = 200;
+      player.timeLimitNanos = Long.MAX_VALUE / 2;
+      if (player.playGame()) {
+        wins++;
+      }
+      player.close();
+      moves += game.moveCount();
+      FloodGame greedy = FloodGame.newGame(10, 4, seed);
+      while (!greedy.isWon()) {
+        greedy.applyMove(new GreedyStrategy().nextMove(greedy, null));
+      }
+      greedyMoves += greedy.moveCount();
+    }
+
+    t.checkExpect(wins, 3);
+    t.checkExpect(moves <= greedyMoves, true);
+  }
+
+  // Tests that the player keeps its pool from one search to the next until
+  // it is closed.
+  void testPool(Tester t) {
+    FloodGame game = FloodGame.newGame(10, 4, 5);
+    MctsPlayer player = new MctsPlayer(game);
+    player.threads = 2;
+    player.playoutLimit = 100;
+    player.timeLimitNanos = Long.MAX_VALUE / 2;
+    game.applyMove(player.bestMove());
+    ExecutorService executor = player.executor;
+    game.applyMove(player.bestMove());
+
+    t.checkExpect(player.executor == executor, true);
+
+    player.close();
+
+    t.checkExpect(executor.isShutdown(), true);
+    t.checkExpect(player.executor, null);
+    t.checkExpect(player.bestMove() >= 0, true);
+    t.checkExpect(player.executor != executor, true);
+
+    player.close();
+  }
+
+  // Tests reward method for MctsPlayer.
+  void testReward(Tester t) {
+    MctsPlayer player = new MctsPlayer(FloodGame.newGame(10, 4, 5));
+    player.fewestMoves = 4;
+    player.mostMoves = 24;
+
+    t.checkExpect(player.reward(4), 1.0);
+    t.checkExpect(player.reward(14), 0.5);
+    t.checkExpect(player.reward(30), 0.0);
+  }
+}
@@ -0,0 +1,10 @@
+package FloodIt;
+import java.util.Random;
+
+// Plays the color of a random region bordering the flood.
+class RandomStrategy implements Strategy {
+  // Returns the color of a random bordering region.
+  public int nextMove(FloodGame game, Random rand) {
+    return game.regions.regionColor[game.border.get(rand.nextInt(game.border.size()))];
+  }
+}
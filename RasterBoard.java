@@ -0,0 +1,126 @@
+package FloodIt;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Random;
+import javalib.worldimages.*;
+import tester.Tester;
+
+// The board kept as a raster with one pixel per cell, drawn into the scene
+// as a single scaled image instead of one image per cell. Pixels only change
+// when a cell is recolored through paint, so a frame costs the same however
+// many cells the board has.
+class RasterBoard {
+  Board board;
+  // The color of each color index, and the screen pixels per cell.
+  ArrayList<Color> colors;
+  int cellSize;
+  ComputedPixelImage pixels;
+  // The raster scaled to screen size, and the cropped view of it last drawn
+  // through a viewport. Both show later pixel changes without being rebuilt.
+  WorldImage scaled;
+  WorldImage cropped;
+  int cropRow;
+  int cropCol;
+  int cropZoom;
+
+  RasterBoard(Board board, ArrayList<Color> colors, int cellSize) {
+    this.board = board;
+    this.colors = colors;
+    this.cellSize = cellSize;
+    this.pixels = new ComputedPixelImage(board.size, board.size);
+    for (int i = 0; i < board.cellCount(); i++) {
+      this.paint(i);
+    }
+    this.scaled = new ScaleImage(this.pixels, this.cellSize);
+    this.cropZoom = -1;
+  }
+
+  // Copies the current color of the cell at the given index into the raster.
+  public void paint(int index) {
+    this.pixels.setPixel(this.board.colOf(index), this.board.rowOf(index),
+        this.colors.get(this.board.colorAt(index)));
+  }
+
+  // Returns the whole board, cellSize pixels per cell.
+  public WorldImage draw() {
+    return this.scaled;
+  }
+
+  // Returns the part of the board inside the viewport, at its zoom. The crop
+  // is rebuilt only when the viewport has moved.
+  public WorldImage draw(Viewport view) {
+    if (this.cropped == null || this.cropRow != view.row || this.cropCol != view.col
+        || this.cropZoom != view.zoom) {
+      this.cropped = new ScaleImage(
+          new CropImage(view.col, view.row, view.visibleCols(), view.visibleRows(), this.pixels),
+          view.cellPixels());
+      this.cropRow = view.row;
+      this.cropCol = view.col;
+      this.cropZoom = view.zoom;
+    }
+    return this.cropped;
+  }
+}
+
+class ExamplesRasterBoard {
+  // Returns the given number of distinct colors.
+  static ArrayList<Color> colors(int count) {
+    ArrayList<Color> colors = new ArrayList<Color>();
+    for (int i = 0; i < count; i++) {
+      colors.add(Color.getHSBColor((float) i / count, 1, 1));
+    }
+    return colors;
+  }
+
+  // Tests that the raster starts out matching the board.
+  void testInitialPixels(Tester t) {
+    Board board = new Board(30, 6);
+    board.fill(new Random(8));
+    ArrayList<Color> colors = ExamplesRasterBoard.colors(6);
+    RasterBoard raster = new RasterBoard(board, colors, 25);
+    int mismatches = 0;
+
+    for (int i = 0; i < board.cellCount(); i++) {
+      Color pixel = raster.pixels.getPixel(board.colOf(i), board.rowOf(i));
+      if (!pixel.equals(colors.get(board.colorAt(i)))) {
+        mismatches++;
+      }
+    }
+
+    t.checkExpect(mismatches, 0);
+    t.checkExpect(raster.draw(), new ScaleImage(raster.pixels, 25));
+  }
+
+  // Tests that paint copies a recolored cell into the raster.
+  void testPaint(Tester t) {
+    Board board = new Board(3, 4);
+    ArrayList<Color> colors = ExamplesRasterBoard.colors(4);
+    RasterBoard raster = new RasterBoard(board, colors, 25);
+    board.setColor(5, 3);
+
+    t.checkExpect(raster.pixels.getPixel(2, 1), colors.get(0));
+
+    raster.paint(5);
+
+    t.checkExpect(raster.pixels.getPixel(2, 1), colors.get(3));
+    t.checkExpect(raster.pixels.getPixel(1, 2), colors.get(0));
+  }
+
+  // Tests that the viewport crop is reused until the viewport moves.
+  void testDrawViewport(Tester t) {
+    Board board = new Board(100, 3);
+    ArrayList<Color> colors = ExamplesRasterBoard.colors(3);
+    RasterBoard raster = new RasterBoard(board, colors, 25);
+    Viewport view = new Viewport(100, 800, 800, colors);
+    WorldImage first = raster.draw(view);
+
+    t.checkExpect(first, new ScaleImage(new CropImage(0, 0, 32, 32, raster.pixels), 25.0));
+    t.checkExpect(raster.draw(view) == first, true);
+
+    view.pan(10, 0);
+
+    t.checkExpect(raster.draw(view) == first, false);
+    t.checkExpect(raster.draw(view),
+        new ScaleImage(new CropImage(0, 10, 32, 32, raster.pixels), 25.0));
+  }
+}
@@ -0,0 +1,226 @@
+package FloodIt;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// The board compressed into its same-colored regions: which region each cell
+// belongs to, each region's color and size, and which regions touch.
+// Regions are numbered in the order their first cell appears on the board,
+// so region 0 always holds the top-left cell.
+class RegionGraph {
+  int regionCount;
+  // Region id of every cell.
+  int[] regionOf;
+  // Per-region arrays hold room for one region per cell, so a graph can be
+  // rebuilt for another board of the same size without allocating; only the
+  // first regionCount entries are meaningful.
+  byte[] regionColor;
+  int[] regionSize;
+  // XOR of the Zobrist keys of each region's cells, so absorbing a region
+  // updates the hash of the flood in one step.
+  long[] regionHash;
+  // Cells of region r are cells[cellStart[r]] until cellStart[r + 1], in the
+  // order the region's flood fill reached them.
+  int[] cells;
+  int[] cellStart;
+  // Neighbors of region r are adjacent[adjacentStart[r]] until adjacentStart[r + 1].
+  int[] adjacentStart;
+  int[] adjacent;
+  IntList edges;
+  int[] seenBy;
+
+  RegionGraph(Board board) {
+    this.build(board);
+  }
+
+  // Labels the regions of the given board and links the ones that touch,
+  // reusing this graph's arrays if they are big enough.
+  public void build(Board board) {
+    int cells = board.cellCount();
+    if (this.regionOf == null || this.regionOf.length != cells) {
+      this.regionOf = new int[cells];
+      this.regionColor = new byte[cells];
+      this.regionSize = new int[cells];
+      this.regionHash = new long[cells];
+      this.cells = new int[cells];
+      this.cellStart = new int[cells + 1];
+      this.adjacentStart = new int[cells + 1];
+      this.seenBy = new int[cells];
+      this.edges = new IntList(cells * 2);
+    }
+    Arrays.fill(this.regionOf, -1);
+
+    // Label regions with a flood fill from each unlabeled cell.
+    int regions = 0;
+    int filled = 0;
+    for (int i = 0; i < cells; i++) {
+      if (this.regionOf[i] == -1) {
+        int color = board.colorAt(i);
+        this.cellStart[regions] = filled;
+        this.regionOf[i] = regions;
+        this.cells[filled++] = i;
+        for (int k = this.cellStart[regions]; k < filled; k++) {
+          int c = this.cells[k];
+          filled = this.label(board, board.left(c), color, regions, filled);
+          filled = this.label(board, board.top(c), color, regions, filled);
+          filled = this.label(board, board.right(c), color, regions, filled);
+          filled = this.label(board, board.bottom(c), color, regions, filled);
+        }
+        this.regionColor[regions] = (byte) color;
+        this.regionSize[regions] = filled - this.cellStart[regions];
+        long hash = 0;
+        for (int k = this.cellStart[regions]; k < filled; k++) {
+          hash ^= TranspositionTable.key(this.cells[k]);
+        }
+        this.regionHash[regions] = hash;
+        regions++;
+      }
+    }
+    this.cellStart[regions] = filled;
+    this.regionCount = regions;
+
+    // Collect each region's distinct neighbors; seenBy[m] == r marks m as
+    // already listed for r.
+    Arrays.fill(this.seenBy, 0, regions, -1);
+    this.edges.clear();
+    for (int r = 0; r < regions; r++) {
+      this.adjacentStart[r] = this.edges.size();
+      for (int k = this.cellStart[r]; k < this.cellStart[r + 1]; k++) {
+        int c = this.cells[k];
+        this.link(board.left(c), r);
+        this.link(board.top(c), r);
+        this.link(board.right(c), r);
+        this.link(board.bottom(c), r);
+      }
+    }
+    this.adjacentStart[regions] = this.edges.size();
+    // The list's backing array, which may be longer than the edges in use.
+    this.adjacent = this.edges.items;
+  }
+
+  // Adds the cell at the given index to the region being filled, if it is an
+  // unlabeled cell of that region's color. Returns the new fill count.
+  public int label(Board board, int index, int color, int region, int filled) {
+    if (index >= 0 && this.regionOf[index] == -1 && board.colorAt(index) == color) {
+      this.regionOf[index] = region;
+      this.cells[filled] = index;
+      return filled + 1;
+    }
+    return filled;
+  }
+
+  // Records the region of the cell at the given index as a neighbor of region r.
+  public void link(int index, int r) {
+    if (index >= 0) {
+      int m = this.regionOf[index];
+      if (m != r && this.seenBy[m] != r) {
+        this.seenBy[m] = r;
+        this.edges.add(m);
+      }
+    }
+  }
+
+  // Returns the number of regions adjacent to region r.
+  public int degree(int r) {
+    return this.adjacentStart[r + 1] - this.adjacentStart[r];
+  }
+
+  // Returns the i-th neighbor of region r.
+  public int neighbor(int r, int i) {
+    return this.adjacent[this.adjacentStart[r] + i];
+  }
+}
+
+class ExamplesRegionGraph {
+  // Board used by the tests:
+  //   0 0 1
+  //   2 0 1
+  //   2 2 0
+  RegionGraph graph;
+
+  // Initializes conditions.
+  void initGraph() {
+    Board board = new Board(3, 3);
+    byte[] colors = {0, 0, 1, 2, 0, 1, 2, 2, 0};
+    for (int i = 0; i < colors.length; i++) {
+      board.setColor(i, colors[i]);
+    }
+    this.graph = new RegionGraph(board);
+  }
+
+  // Tests region labeling in the RegionGraph constructor.
+  void testRegions(Tester t) {
+    this.initGraph();
+
+    t.checkExpect(this.graph.regionCount, 4);
+    t.checkExpect(this.graph.regionOf, new int[] {0, 0, 1, 2, 0, 1, 2, 2, 3});
+    t.checkExpect(Arrays.copyOf(this.graph.regionColor, 4), new byte[] {0, 1, 2, 0});
+    t.checkExpect(Arrays.copyOf(this.graph.regionSize, 4), new int[] {3, 2, 3, 1});
+    t.checkExpect(this.graph.cells, new int[] {0, 1, 4, 2, 5, 3, 6, 7, 8});
+    t.checkExpect(Arrays.copyOf(this.graph.cellStart, 5), new int[] {0, 3, 5, 8, 9});
+    t.checkExpect(this.graph.regionHash[1],
+        TranspositionTable.key(2) ^ TranspositionTable.key(5));
+    t.checkExpect(this.graph.regionHash[3], TranspositionTable.key(8));
+  }
+
+  // Tests adjacency lists in the RegionGraph constructor.
+  void testAdjacency(Tester t) {
+    this.initGraph();
+
+    t.checkExpect(this.graph.degree(0), 2);
+    t.checkExpect(this.graph.neighbor(0, 0), 2);
+    t.checkExpect(this.graph.neighbor(0, 1), 1);
+    t.checkExpect(this.graph.degree(3), 2);
+    t.checkExpect(Arrays.copyOf(this.graph.adjacent, 8), new int[] {2, 1, 0, 3, 0, 3, 2, 1});
+    t.checkExpect(Arrays.copyOf(this.graph.adjacentStart, 5), new int[] {0, 2, 4, 6, 8});
+  }
+
+  // Tests that region sizes add up and every neighbor is listed both ways.
+  void testConsistency(Tester t) {
+    Board board = new Board(40, 5);
+    board.fill(new Random(4));
+    RegionGraph g = new RegionGraph(board);
+
+    int total = 0;
+    int oneWay = 0;
+    for (int r = 0; r < g.regionCount; r++) {
+      total += g.regionSize[r];
+      for (int i = 0; i < g.degree(r); i++) {
+        int m = g.neighbor(r, i);
+        boolean back = false;
+        for (int j = 0; j < g.degree(m); j++) {
+          back = back || g.neighbor(m, j) == r;
+        }
+        if (!back || g.regionColor[m] == g.regionColor[r]) {
+          oneWay++;
+        }
+      }
+    }
+
+    t.checkExpect(total, 1600);
+    t.checkExpect(oneWay, 0);
+    t.checkExpect(g.regionOf[0], 0);
+  }
+
+  // Tests that build gives the same graph when reusing the arrays of an
+  // earlier board.
+  void testRebuild(Tester t) {
+    Board first = new Board(12, 4);
+    first.fill(new Random(1));
+    Board second = new Board(12, 4);
+    second.fill(new Random(2));
+    RegionGraph reused = new RegionGraph(first);
+    int[] regionOf = reused.regionOf;
+    reused.build(second);
+    RegionGraph fresh = new RegionGraph(second);
+
+    t.checkExpect(reused.regionOf == regionOf, true);
+    t.checkExpect(reused.regionCount, fresh.regionCount);
+    t.checkExpect(reused.regionOf, fresh.regionOf);
+    t.checkExpect(reused.cells, fresh.cells);
+    t.checkExpect(Arrays.copyOf(reused.regionHash, reused.regionCount),
+        Arrays.copyOf(fresh.regionHash, fresh.regionCount));
+    t.checkExpect(Arrays.copyOf(reused.adjacent, reused.adjacentStart[reused.regionCount]),
+        Arrays.copyOf(fresh.adjacent, fresh.adjacentStart[fresh.regionCount]));
+  }
+}
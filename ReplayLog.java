@@ -0,0 +1,307 @@
+package FloodIt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Writes played games to an append-only binary replay file. A game is fully
+// determined by its board, which FloodGame.newGame builds from a seed, size
+// and color count (as FloodItWorld(size, colors, new Random(seed)) does),
+// and by the colors played, so that is all a replay holds:
+//   file header  "FLRP", then a version byte
+//   per game     seed (8 bytes), size (2), colors (1), status (1),
+//                tries allowed (2), moves (2), then the moves packed three
+//                bits each, the first in the lowest bits of the first byte
+// Numbers are big-endian and unsigned. A 14x14 game of 20 moves takes 24
+// bytes. Each game is written whole once it ends, so a file cut short by a
+// crash loses at most the game being written.
+class ReplayLog {
+  static byte[] MAGIC = {'F', 'L', 'R', 'P'};
+  static int VERSION = 1;
+  static int FILE_HEADER_BYTES = 5;
+  static int HEADER_BYTES = 16;
+  static int BITS_PER_MOVE = 3;
+  // Largest count a two-byte field holds.
+  static int MAX_COUNT = 0xFFFF;
+  // Largest board a replay may be of, so that a corrupt size cannot make
+  // the verifier build a board of billions of cells.
+  static int MAX_BOARD_SIZE = 2048;
+  // Values of the status byte.
+  static int ABANDONED = 0;
+  static int WON = 1;
+  static int LOST = 2;
+
+  DataOutputStream out;
+  long games;
+  // The game being played: its board and tries, and its moves so far,
+  // packed as they will be written.
+  boolean open;
+  long seed;
+  int boardSize;
+  int numColors;
+  int allowedTries;
+  int moveCount;
+  byte[] moves;
+
+  ReplayLog(DataOutputStream out) {
+    this.out = out;
+    this.moves = new byte[16];
+  }
+
+  // Opens the given file for appending, writing the file header if it is new.
+  public static ReplayLog open(File file) throws IOException {
+    boolean fresh = !file.exists() || file.length() == 0;
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file, true)));
+    if (fresh) {
+      out.write(ReplayLog.MAGIC);
+      out.writeByte(ReplayLog.VERSION);
+    }
+    return new ReplayLog(out);
+  }
+
+  // Returns a log appending to the file named by the floodit.replays system
+  // property, or null if it is not set.
+  public static ReplayLog fromProperty() {
+    String path = System.getProperty("floodit.replays");
+    if (path == null) {
+      return null;
+    }
+    try {
+      return ReplayLog.open(new File(path));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open replay log " + path + ".", e);
+    }
+  }
+
+  // Starts recording a game on the board built from the given seed, size and
+  // colors. A game still open is written as abandoned if it had any moves.
+  public void begin(long seed, int boardSize, int numColors, int allowedTries) throws IOException {
+    if (boardSize > ReplayLog.MAX_BOARD_SIZE) {
+      throw new IllegalArgumentException(
+          "A replay holds boards of size at most " + ReplayLog.MAX_BOARD_SIZE + ".");
+    }
+    if (allowedTries > ReplayLog.MAX_COUNT) {
+      throw new IllegalArgumentException(
+          "A replay holds at most " + ReplayLog.MAX_COUNT + " tries.");
+    }
+    if (this.open && this.moveCount > 0) {
+      this.finish(ReplayLog.ABANDONED);
+    }
+    this.open = true;
+    this.seed = seed;
+    this.boardSize = boardSize;
+    this.numColors = numColors;
+    this.allowedTries = allowedTries;
+    this.moveCount = 0;
+    Arrays.fill(this.moves, (byte) 0);
+  }
+
+  // Records a move of the open game.
+  public void move(int color) {
+    if (!this.open) {
+      throw new IllegalStateException("No game is being recorded.");
+    }
+    if (this.moveCount == ReplayLog.MAX_COUNT) {
+      throw new IllegalStateException("A replay holds at most " + ReplayLog.MAX_COUNT + " moves.");
+    }
+    int bytes = ReplayLog.packedBytes(this.moveCount + 1);
+    if (bytes > this.moves.length) {
+      this.moves = Arrays.copyOf(this.moves, Math.max(bytes, this.moves.length * 2));
+    }
+    ReplayLog.setMove(this.moves, this.moveCount, color);
+    this.moveCount++;
+  }
+
+  // Forgets the last move of the open game, as when it is undone.
+  public void undo() {
+    if (this.open && this.moveCount > 0) {
+      this.moveCount--;
+      ReplayLog.setMove(this.moves, this.moveCount, 0);
+    }
+  }
+
+  // Writes the open game with the given status and closes it; does nothing
+  // if no game is open.
+  public void finish(int status) throws IOException {
+    if (!this.open) {
+      return;
+    }
+    this.out.writeLong(this.seed);
+    this.out.writeShort(this.boardSize);
+    this.out.writeByte(this.numColors);
+    this.out.writeByte(status);
+    this.out.writeShort(this.allowedTries);
+    this.out.writeShort(this.moveCount);
+    this.out.write(this.moves, 0, ReplayLog.packedBytes(this.moveCount));
+    this.open = false;
+    this.games++;
+  }
+
+  // Writes out everything buffered.
+  public void flush() throws IOException {
+    this.out.flush();
+  }
+
+  // Closes the file. The open game, if any, is not written.
+  public void close() throws IOException {
+    this.out.close();
+  }
+
+  // Returns the bytes that hold the given number of packed moves.
+  public static int packedBytes(int moves) {
+    return ((moves * ReplayLog.BITS_PER_MOVE) + 7) >>> 3;
+  }
+
+  // Stores the given color as move i of the packed moves.
+  public static void setMove(byte[] packed, int i, int color) {
+    int bit = i * ReplayLog.BITS_PER_MOVE;
+    int k = bit >>> 3;
+    int shift = bit & 7;
+    int bits = (packed[k] & 0xFF) | (k + 1 < packed.length ? (packed[k + 1] & 0xFF) << 8 : 0);
+    bits = (bits & ~(7 << shift)) | ((color & 7) << shift);
+    packed[k] = (byte) bits;
+    if (k + 1 < packed.length) {
+      packed[k + 1] = (byte) (bits >>> 8);
+    }
+  }
+
+  // Returns move i of the moves packed in buf from the given position on,
+  // count of them in all.
+  public static int moveAt(ByteBuffer buf, int position, int count, int i) {
+    int bit = i * ReplayLog.BITS_PER_MOVE;
+    int k = bit >>> 3;
+    int bits = buf.get(position + k) & 0xFF;
+    if (k + 1 < ReplayLog.packedBytes(count)) {
+      bits |= (buf.get(position + k + 1) & 0xFF) << 8;
+    }
+    return (bits >>> (bit & 7)) & 7;
+  }
+
+  // Writes greedy games on seeded boards to a replay file, for the verifier
+  // to check.
+  // Run with: java FloodIt.ReplayLog <file> [games] [size] [colors]
+  public static void main(String[] args) throws IOException {
+    File file = new File(args[0]);
+    long games = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+    int size = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+    int colors = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+    long start = System.nanoTime();
+    ReplayLog log = ReplayLog.open(file);
+    GreedyStrategy greedy = new GreedyStrategy();
+    FloodGame game = FloodGame.newGame(size, colors, 0);
+    for (long i = 0; i < games; i++) {
+      long seed = BatchSimulator.gameSeed(1, i);
+      game.restart(new Random(seed));
+      log.begin(seed, size, colors, game.remainingTries);
+      while (!game.isWon() && !game.isLost()) {
+        int color = greedy.nextMove(game, null);
+        game.applyMove(color);
+        log.move(color);
+      }
+      log.finish(game.isWon() ? ReplayLog.WON : ReplayLog.LOST);
+    }
+    log.close();
+    System.out.printf("%d games, %d bytes, written in %.2f s%n", games, file.length(),
+        (System.nanoTime() - start) / 1e9);
+  }
+}
+
+class ExamplesReplayLog {
+  // Tests setMove, moveAt and packedBytes methods for ReplayLog.
+  void testPacking(Tester t) {
+    byte[] packed = new byte[ReplayLog.packedBytes(11)];
+    int[] colors = {7, 0, 5, 3, 6, 1, 2, 4, 7, 7, 5};
+    for (int i = 0; i < colors.length; i++) {
+      ReplayLog.setMove(packed, i, colors[i]);
+    }
+    int[] read = new int[colors.length];
+    for (int i = 0; i < colors.length; i++) {
+      read[i] = ReplayLog.moveAt(ByteBuffer.wrap(packed), 0, colors.length, i);
+    }
+
+    t.checkExpect(ReplayLog.packedBytes(0), 0);
+    t.checkExpect(ReplayLog.packedBytes(1), 1);
+    t.checkExpect(ReplayLog.packedBytes(8), 3);
+    t.checkExpect(packed.length, 5);
+    t.checkExpect(read, colors);
+    // 7, 0 and the low two bits of 5: 111 000 01.
+    t.checkExpect(packed[0], (byte) 0x47);
+
+    ReplayLog.setMove(packed, 2, 0);
+
+    t.checkExpect(ReplayLog.moveAt(ByteBuffer.wrap(packed), 0, colors.length, 2), 0);
+    t.checkExpect(ReplayLog.moveAt(ByteBuffer.wrap(packed), 0, colors.length, 3), 3);
+  }
+
+  // Tests that games are written whole with the moves left after undo, and
+  // that an abandoned game is written only if it had moves.
+  void testWrite(Tester t) throws IOException {
+    File file = File.createTempFile("replays", ".bin");
+    file.delete();
+    ReplayLog log = ReplayLog.open(file);
+    log.begin(42, 14, 6, 32);
+    log.move(3);
+    log.move(5);
+    log.move(1);
+    log.undo();
+    log.finish(ReplayLog.WON);
+    log.begin(43, 14, 6, 32);
+    log.begin(44, 10, 4, 22);
+    log.move(2);
+    log.begin(45, 10, 4, 22);
+    log.close();
+    byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+    t.checkExpect(log.games, 2L);
+    t.checkExpect(bytes.length, 5 + 16 + 1 + 16 + 1);
+    t.checkExpect(Arrays.copyOf(bytes, 4), ReplayLog.MAGIC);
+    t.checkExpect(buf.getLong(5), 42L);
+    t.checkExpect(buf.getShort(13), (short) 14);
+    t.checkExpect(buf.get(15), (byte) 6);
+    t.checkExpect(buf.get(16), (byte) ReplayLog.WON);
+    t.checkExpect(buf.getShort(17), (short) 32);
+    t.checkExpect(buf.getShort(19), (short) 2);
+    t.checkExpect(ReplayLog.moveAt(buf, 21, 2, 0), 3);
+    t.checkExpect(ReplayLog.moveAt(buf, 21, 2, 1), 5);
+    t.checkExpect(buf.getLong(22), 44L);
+    t.checkExpect(buf.get(33), (byte) ReplayLog.ABANDONED);
+
+    // Appending to the file adds no second header.
+    ReplayLog more = ReplayLog.open(file);
+    more.begin(46, 10, 4, 22);
+    more.move(1);
+    more.finish(ReplayLog.LOST);
+    more.close();
+
+    t.checkExpect(file.length(), (long) bytes.length + 16 + 1);
+    file.delete();
+  }
+
+  // Tests the limits on what a replay holds.
+  void testLimits(Tester t) throws IOException {
+    ReplayLog log = new ReplayLog(new DataOutputStream(new java.io.ByteArrayOutputStream()));
+
+    t.checkException(new IllegalStateException("No game is being recorded."), log, "move", 1);
+    t.checkException(new IllegalArgumentException("A replay holds boards of size at most 2048."),
+        log, "begin", 1L, 3000, 4, 10);
+    t.checkException(new IllegalArgumentException("A replay holds at most 65535 tries."),
+        log, "begin", 1L, 10, 4, 70000);
+
+    log.begin(1, 10, 4, 22);
+    for (int i = 0; i < ReplayLog.MAX_COUNT; i++) {
+      log.move(i % 4);
+    }
+
+    t.checkException(new IllegalStateException("A replay holds at most 65535 moves."),
+        log, "move", 1);
+    t.checkExpect(log.moves.length >= ReplayLog.packedBytes(ReplayLog.MAX_COUNT), true);
+  }
+}
@@ -0,0 +1,394 @@
+package FloodIt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import tester.Tester;
+
+// Checks the games in replay files written by ReplayLog by playing every
+// one again: each move must be a color of the board other than the flood
+// color, played in a game not yet over. A move that grows the flood by no
+// cells is accepted, as the game spends a try on it too. The game must end
+// as its status claims, won within its tries, lost with every try spent, or
+// neither if abandoned.
+// Files are memory-mapped, indexed in one pass over the game headers, and
+// the games shared out in order between threads, each replaying on a board
+// of its own that it refills in place for each game of the same shape.
+class ReplayVerifier {
+  // Indexes of the counts in a totals array.
+  static int GAMES = 0;
+  static int WON = 1;
+  static int LOST = 2;
+  static int ABANDONED = 3;
+  static int INVALID = 4;
+  static int MOVES = 5;
+  // Invalid games a verify keeps the positions of.
+  static int MAX_REPORTED = 100;
+
+  int threads;
+  // Results of the last verify: the counts above, the file positions of the
+  // first invalid games, and whether the file ended partway through a game.
+  long[] totals;
+  IntList invalid;
+  boolean truncated;
+  long nanos;
+
+  ReplayVerifier() {
+    this.threads = Runtime.getRuntime().availableProcessors();
+    this.totals = new long[6];
+    this.invalid = new IntList();
+  }
+
+  // Checks every game in the given file. Returns the number of invalid games.
+  public long verify(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Replay file must be smaller than 2 GB.");
+      }
+      MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return this.verify(map);
+    }
+  }
+
+  // Checks every game in the given replay file contents.
+  public long verify(ByteBuffer buf) {
+    long start = System.nanoTime();
+    this.totals = new long[6];
+    this.invalid = new IntList();
+    IntList positions = this.index(buf);
+    int parts = Math.max(1, Math.min(this.threads, positions.size()));
+    ArrayList<ReplayCheck> checks = new ArrayList<ReplayCheck>();
+    for (int p = 0; p < parts; p++) {
+      int from = (int) ((long) positions.size() * p / parts);
+      int to = (int) ((long) positions.size() * (p + 1) / parts);
+      // Each check reads through a view of its own, as buffer reads are not thread-safe.
+      checks.add(new ReplayCheck(buf.duplicate(), positions, from, to));
+    }
+    if (parts == 1) {
+      checks.get(0).call();
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(parts);
+      try {
+        for (Future<ReplayCheck> result : executor.invokeAll(checks)) {
+          result.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while verifying.", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("A replay check failed.", e.getCause());
+      } finally {
+        executor.shutdown();
+      }
+    }
+    for (ReplayCheck check : checks) {
+      BatchSimulator.addTotals(this.totals, check.totals);
+      for (int i = 0; i < check.invalid.size() && this.invalid.size() < ReplayVerifier.MAX_REPORTED;
+          i++) {
+        this.invalid.add(check.invalid.get(i));
+      }
+    }
+    this.nanos = System.nanoTime() - start;
+    return this.totals[ReplayVerifier.INVALID];
+  }
+
+  // Returns the position of every whole game in buf, after checking the
+  // file header. Sets truncated if the last game is cut short.
+  public IntList index(ByteBuffer buf) {
+    if (buf.limit() < ReplayLog.FILE_HEADER_BYTES) {
+      throw new IllegalArgumentException("Not a replay file.");
+    }
+    for (int i = 0; i < ReplayLog.MAGIC.length; i++) {
+      if (buf.get(i) != ReplayLog.MAGIC[i]) {
+        throw new IllegalArgumentException("Not a replay file.");
+      }
+    }
+    if (buf.get(ReplayLog.MAGIC.length) != ReplayLog.VERSION) {
+      throw new IllegalArgumentException("Unknown replay file version.");
+    }
+    IntList positions = new IntList();
+    int pos = ReplayLog.FILE_HEADER_BYTES;
+    this.truncated = false;
+    while (pos < buf.limit()) {
+      if (pos + ReplayLog.HEADER_BYTES > buf.limit()) {
+        this.truncated = true;
+        break;
+      }
+      int next = pos + ReplayLog.HEADER_BYTES
+          + ReplayLog.packedBytes(buf.getShort(pos + 14) & 0xFFFF);
+      if (next > buf.limit()) {
+        this.truncated = true;
+        break;
+      }
+      positions.add(pos);
+      pos = next;
+    }
+    return positions;
+  }
+
+  // Returns a summary of the last verify.
+  public String report() {
+    double seconds = this.nanos / 1e9;
+    return String.format("%d games (%d won, %d lost, %d abandoned), %d moves: %d invalid%s%n"
+        + "checked in %.2f s on %d threads: %.0f games/min%n",
+        this.totals[ReplayVerifier.GAMES], this.totals[ReplayVerifier.WON],
+        this.totals[ReplayVerifier.LOST], this.totals[ReplayVerifier.ABANDONED],
+        this.totals[ReplayVerifier.MOVES], this.totals[ReplayVerifier.INVALID],
+        this.truncated ? ", last game cut short" : "", seconds, this.threads,
+        this.totals[ReplayVerifier.GAMES] / seconds * 60);
+  }
+
+  // Checks each replay file named and reports. Exits with status 1 if any
+  // game is invalid.
+  // Run with: java FloodIt.ReplayVerifier <file>...
+  public static void main(String[] args) throws IOException {
+    ReplayVerifier verifier = new ReplayVerifier();
+    long invalid = 0;
+    for (String name : args) {
+      invalid += verifier.verify(new File(name));
+      System.out.print(name + ": " + verifier.report());
+      for (int i = 0; i < verifier.invalid.size(); i++) {
+        System.out.println("  invalid game at byte " + verifier.invalid.get(i));
+      }
+    }
+    if (invalid > 0) {
+      System.exit(1);
+    }
+  }
+}
+
+// Replays one thread's share of the games in a replay file.
+class ReplayCheck implements Callable<ReplayCheck> {
+  ByteBuffer buf;
+  IntList positions;
+  int from;
+  int to;
+  long[] totals;
+  IntList invalid;
+  // The board replayed on, reused while games keep its size and colors.
+  FloodGame game;
+  Random rand;
+
+  ReplayCheck(ByteBuffer buf, IntList positions, int from, int to) {
+    this.buf = buf;
+    this.positions = positions;
+    this.from = from;
+    this.to = to;
+    this.totals = new long[6];
+    this.invalid = new IntList();
+    this.rand = new Random();
+  }
+
+  // Checks games from until to.
+  public ReplayCheck call() {
+    for (int i = this.from; i < this.to; i++) {
+      int pos = this.positions.get(i);
+      int status = this.check(pos);
+      this.totals[ReplayVerifier.GAMES]++;
+      if (status < 0) {
+        this.totals[ReplayVerifier.INVALID]++;
+        if (this.invalid.size() < ReplayVerifier.MAX_REPORTED) {
+          this.invalid.add(pos);
+        }
+      } else if (status == ReplayLog.WON) {
+        this.totals[ReplayVerifier.WON]++;
+      } else if (status == ReplayLog.LOST) {
+        this.totals[ReplayVerifier.LOST]++;
+      } else {
+        this.totals[ReplayVerifier.ABANDONED]++;
+      }
+    }
+    return this;
+  }
+
+  // Replays the game at the given position. Returns its status if the game
+  // bears it out, or -1.
+  public int check(int pos) {
+    long seed = this.buf.getLong(pos);
+    int size = this.buf.getShort(pos + 8) & 0xFFFF;
+    int colors = this.buf.get(pos + 10) & 0xFF;
+    int status = this.buf.get(pos + 11) & 0xFF;
+    int tries = this.buf.getShort(pos + 12) & 0xFFFF;
+    int count = this.buf.getShort(pos + 14) & 0xFFFF;
+    if (size < 2 || size > ReplayLog.MAX_BOARD_SIZE || colors < 2 || colors > FloodGame.MAX_COLORS
+        || status > ReplayLog.LOST) {
+      return -1;
+    }
+    this.rand.setSeed(seed);
+    if (this.game == null || this.game.boardSize != size || this.game.numColors != colors) {
+      this.game = new FloodGame(size, colors, this.rand);
+    } else {
+      this.game.restart(this.rand);
+    }
+    this.game.remainingTries = tries;
+    this.game.currentTries = 0;
+
+    int movesAt = pos + ReplayLog.HEADER_BYTES;
+    for (int i = 0; i < count; i++) {
+      if (this.game.isWon() || this.game.isLost()) {
+        return -1;
+      }
+      int color = ReplayLog.moveAt(this.buf, movesAt, count, i);
+      // A click on a color that borders nothing still spends a try.
+      if (color >= colors || this.game.applyMove(color) < 0) {
+        return -1;
+      }
+    }
+    this.totals[ReplayVerifier.MOVES] += count;
+    boolean won = this.game.isWon();
+    boolean lost = this.game.isLost();
+    if ((status == ReplayLog.WON) != won || (status == ReplayLog.LOST) != lost) {
+      return -1;
+    }
+    return status;
+  }
+}
+
+class ExamplesReplayVerifier {
+  // Writes greedy games on seeded boards, and one abandoned game, to a new
+  // replay file.
+  File writeGames(int games) throws IOException {
+    File file = File.createTempFile("replays", ".bin");
+    file.delete();
+    ReplayLog log = ReplayLog.open(file);
+    GreedyStrategy greedy = new GreedyStrategy();
+    for (long seed = 0; seed < games; seed++) {
+      FloodGame game = FloodGame.newGame(12, 5, seed);
+      log.begin(seed, 12, 5, game.remainingTries);
+      while (!game.isWon() && !game.isLost()) {
+        int color = greedy.nextMove(game, null);
+        game.applyMove(color);
+        log.move(color);
+      }
+      log.finish(game.isWon() ? ReplayLog.WON : ReplayLog.LOST);
+    }
+    FloodGame game = FloodGame.newGame(8, 4, 99);
+    log.begin(99, 8, 4, game.remainingTries);
+    log.move(game.firstFrontierColor());
+    log.finish(ReplayLog.ABANDONED);
+    log.close();
+    return file;
+  }
+
+  // Tests that honest replays all pass, on one thread and on several.
+  void testVerify(Tester t) throws IOException {
+    File file = this.writeGames(200);
+    ReplayVerifier one = new ReplayVerifier();
+    one.threads = 1;
+    ReplayVerifier four = new ReplayVerifier();
+    four.threads = 4;
+
+    t.checkExpect(one.verify(file), 0L);
+    t.checkExpect(one.totals[ReplayVerifier.GAMES], 201L);
+    t.checkExpect(one.totals[ReplayVerifier.WON] + one.totals[ReplayVerifier.LOST], 200L);
+    t.checkExpect(one.totals[ReplayVerifier.ABANDONED], 1L);
+    t.checkExpect(one.truncated, false);
+    t.checkExpect(four.verify(file), 0L);
+    t.checkExpect(four.totals, one.totals);
+    file.delete();
+  }
+
+  // Tests that tampered games are caught and where, and that a file cut
+  // short mid-game still has its whole games checked.
+  void testTampered(Tester t) throws IOException {
+    File file = this.writeGames(20);
+    byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+    file.delete();
+    ReplayVerifier verifier = new ReplayVerifier();
+    verifier.threads = 2;
+    IntList positions = verifier.index(ByteBuffer.wrap(bytes));
+
+    // Claim the first game was lost.
+    byte[] status = bytes.clone();
+    status[positions.get(0) + 11] = (byte) ReplayLog.LOST;
+    // Allow the second game one try fewer than it took.
+    byte[] tries = bytes.clone();
+    int second = positions.get(1);
+    ByteBuffer.wrap(tries).putShort(second + 12,
+        (short) (ByteBuffer.wrap(bytes).getShort(second + 14) - 1));
+    // Play a color the board does not have in the third game.
+    byte[] color = bytes.clone();
+    color[positions.get(2) + ReplayLog.HEADER_BYTES] |= 7;
+
+    t.checkExpect(verifier.verify(ByteBuffer.wrap(status)), 1L);
+    t.checkExpect(verifier.invalid.get(0), positions.get(0));
+    t.checkExpect(verifier.verify(ByteBuffer.wrap(tries)), 1L);
+    t.checkExpect(verifier.invalid.get(0), positions.get(1));
+    t.checkExpect(verifier.verify(ByteBuffer.wrap(color)), 1L);
+    t.checkExpect(verifier.invalid.get(0), positions.get(2));
+
+    byte[] cut = java.util.Arrays.copyOf(bytes, bytes.length - 2);
+
+    t.checkExpect(verifier.verify(ByteBuffer.wrap(cut)), 0L);
+    t.checkExpect(verifier.truncated, true);
+    t.checkExpect(verifier.totals[ReplayVerifier.GAMES], 20L);
+  }
+
+  // Tests that a move absorbing nothing, as a click on a color that does not
+  // border the flood is, replays as a spent try, while replaying the flood
+  // color, which the game refuses, makes the game invalid.
+  void testZeroGainMoves(Tester t) throws IOException {
+    long seed = 0;
+    int idle = -1;
+    for (; idle == -1; seed++) {
+      FloodGame game = FloodGame.newGame(12, 5, seed);
+      for (int c = 0; c < 5; c++) {
+        if (c != game.floodColor && game.borderCells[c] == 0) {
+          idle = c;
+        }
+      }
+    }
+    seed--;
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    ReplayLog log = new ReplayLog(new java.io.DataOutputStream(bytes));
+    FloodGame game = FloodGame.newGame(12, 5, seed);
+    log.begin(seed, 12, 5, game.remainingTries);
+
+    t.checkExpect(game.applyMove(idle), 0);
+
+    log.move(idle);
+    GreedyStrategy greedy = new GreedyStrategy();
+    while (!game.isWon() && !game.isLost()) {
+      int color = greedy.nextMove(game, null);
+      game.applyMove(color);
+      log.move(color);
+    }
+    log.finish(game.isWon() ? ReplayLog.WON : ReplayLog.LOST);
+    FloodGame refused = FloodGame.newGame(12, 5, seed);
+    log.begin(seed, 12, 5, refused.remainingTries);
+    log.move(refused.floodColor);
+    log.finish(ReplayLog.ABANDONED);
+    byte[] written = bytes.toByteArray();
+    ByteBuffer file = ByteBuffer.allocate(ReplayLog.FILE_HEADER_BYTES + written.length);
+    file.put(ReplayLog.MAGIC).put((byte) ReplayLog.VERSION).put(written);
+    ReplayVerifier verifier = new ReplayVerifier();
+
+    t.checkExpect(verifier.verify(file), 1L);
+    t.checkExpect(verifier.invalid.size(), 1);
+    t.checkExpect(verifier.invalid.get(0) > ReplayLog.FILE_HEADER_BYTES, true);
+    t.checkExpect(verifier.totals[ReplayVerifier.MOVES], (long) game.currentTries);
+    t.checkExpect(verifier.totals[ReplayVerifier.WON] + verifier.totals[ReplayVerifier.LOST], 1L);
+  }
+
+  // Tests that files that are not replays are refused.
+  void testNotReplay(Tester t) {
+    ReplayVerifier verifier = new ReplayVerifier();
+
+    t.checkException(new IllegalArgumentException("Not a replay file."), verifier, "index",
+        ByteBuffer.wrap(new byte[] {'F', 'L', 'O', 'O', 'D'}));
+    t.checkException(new IllegalArgumentException("Not a replay file."), verifier, "index",
+        ByteBuffer.wrap(new byte[] {'F', 'L'}));
+    t.checkException(new IllegalArgumentException("Unknown replay file version."), verifier,
+        "index", ByteBuffer.wrap(new byte[] {'F', 'L', 'R', 'P', 9}));
+  }
+}
@@ -0,0 +1,922 @@
+package FloodIt;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import tester.Tester;
+
+// A solved board waiting in SolvedBoards to be indexed: its key, what is
+// known of its solution, and where the solution starts in the data file.
+class SolvedEntry {
+  int boardSize;
+  int numColors;
+  long seed;
+  boolean optimal;
+  int length;
+  int offset;
+
+  SolvedEntry(int boardSize, int numColors, long seed, boolean optimal, int length, int offset) {
+    this.boardSize = boardSize;
+    this.numColors = numColors;
+    this.seed = seed;
+    this.optimal = optimal;
+    this.length = length;
+    this.offset = offset;
+  }
+
+  // Orders entries by key, and those of the same key best first.
+  public static int order(SolvedEntry a, SolvedEntry b) {
+    int key = SolvedIndex.compareKeys(a.boardSize, a.numColors, a.seed,
+        b.boardSize, b.numColors, b.seed);
+    if (key != 0) {
+      return key;
+    }
+    return SolvedIndex.isBetter(a.length, a.optimal, b.length, b.optimal) ? -1
+        : SolvedIndex.isBetter(b.length, b.optimal, a.length, a.optimal) ? 1 : 0;
+  }
+}
+
+// One committed state of a SolvedBoards store: its sorted index and the
+// data file it points into, both memory-mapped. Never changes once built,
+// so any number of threads can read one without locks; a commit builds a
+// new one rather than changing this.
+class SolvedIndex {
+  // Layout of an index entry, which is a data record's header followed by
+  // the record's offset in the data file.
+  static int SEED = 0;
+  static int SIZE = 8;
+  static int COLORS = 10;
+  static int FLAGS = 11;
+  static int LENGTH = 12;
+  static int OFFSET = 14;
+  static int ENTRY_BYTES = 18;
+  // Set in the flags of a solution known to be shortest.
+  static int OPTIMAL = 1;
+
+  // The entries, from position 0, and the data file.
+  ByteBuffer entries;
+  ByteBuffer data;
+  int count;
+  // Bytes of the data file the entries cover.
+  long dataBytes;
+
+  SolvedIndex(ByteBuffer entries, ByteBuffer data, int count, long dataBytes) {
+    this.entries = entries;
+    this.data = data;
+    this.count = count;
+    this.dataBytes = dataBytes;
+  }
+
+  // Compares two keys: by board size, then colors, then seed.
+  public static int compareKeys(int sizeA, int colorsA, long seedA,
+      int sizeB, int colorsB, long seedB) {
+    if (sizeA != sizeB) {
+      return Integer.compare(sizeA, sizeB);
+    }
+    if (colorsA != colorsB) {
+      return Integer.compare(colorsA, colorsB);
+    }
+    return Long.compare(seedA, seedB);
+  }
+
+  // Returns true if solution a is better than b: shorter, or as short and
+  // known to be optimal when b is not.
+  public static boolean isBetter(int lengthA, boolean optimalA, int lengthB, boolean optimalB) {
+    return lengthA < lengthB || (lengthA == lengthB && optimalA && !optimalB);
+  }
+
+  // Compares entry i's key with the given one.
+  public int compareAt(int i, int boardSize, int numColors, long seed) {
+    int at = i * SolvedIndex.ENTRY_BYTES;
+    return SolvedIndex.compareKeys(this.entries.getShort(at + SolvedIndex.SIZE) & 0xFFFF,
+        this.entries.get(at + SolvedIndex.COLORS), this.entries.getLong(at + SolvedIndex.SEED),
+        boardSize, numColors, seed);
+  }
+
+  // Returns the first entry whose key is not less than the given one, or
+  // count if there is none.
+  public int lowerBound(int boardSize, int numColors, long seed) {
+    int lo = 0;
+    int hi = this.count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this.compareAt(mid, boardSize, numColors, seed) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // Returns the entry of the given key, or -1 if there is none.
+  public int find(int boardSize, int numColors, long seed) {
+    int i = this.lowerBound(boardSize, numColors, seed);
+    return i < this.count && this.compareAt(i, boardSize, numColors, seed) == 0 ? i : -1;
+  }
+
+  // Returns the seed of entry i.
+  public long seedAt(int i) {
+    return this.entries.getLong(i * SolvedIndex.ENTRY_BYTES + SolvedIndex.SEED);
+  }
+
+  // Returns the solution length of entry i.
+  public int lengthAt(int i) {
+    return this.entries.getShort(i * SolvedIndex.ENTRY_BYTES + SolvedIndex.LENGTH) & 0xFFFF;
+  }
+
+  // Returns true if entry i's solution is known to be shortest.
+  public boolean isOptimalAt(int i) {
+    return (this.entries.get(i * SolvedIndex.ENTRY_BYTES + SolvedIndex.FLAGS)
+        & SolvedIndex.OPTIMAL) != 0;
+  }
+
+  // Returns the moves of entry i, read from the data file.
+  public int[] movesAt(int i) {
+    int length = this.lengthAt(i);
+    int offset = this.entries.getInt(i * SolvedIndex.ENTRY_BYTES + SolvedIndex.OFFSET)
+        + SolvedBoards.RECORD_HEADER_BYTES;
+    int[] moves = new int[length];
+    for (int m = 0; m < length; m++) {
+      moves[m] = ReplayLog.moveAt(this.data, offset, length, m);
+    }
+    return moves;
+  }
+}
+
+// An on-disk store of solved boards, keyed by board size, colors and the
+// seed FloodGame.newGame builds the board from, holding the shortest or
+// best-known solution of each, so a board is solved once rather than each
+// time its par is wanted.
+//
+// Solutions are appended to a data file, each record a header (seed, size,
+// colors, flags, length, as in SolvedIndex) and its moves packed three bits
+// each, as in ReplayLog. A second file, the data file's name with ".idx"
+// added, holds one 18-byte entry per board, sorted by key, so a lookup is a
+// binary search over the memory-mapped index that reads no solution unless
+// asked. Lookups read the last committed SolvedIndex through one volatile
+// field and take no locks; put and commit are for one writer at a time. A
+// commit merges the new entries into a fresh index file, renames it over the
+// old, and then publishes it, so readers never see it half-written. A data
+// file longer than its index says, as after a crash, is indexed again from
+// where the index stops when opened for writing. Only one store at a time
+// may open a file for writing; any number may open it read-only, and see
+// what was committed when they opened it.
+class SolvedBoards {
+  static byte[] MAGIC = {'F', 'L', 'S', 'B'};
+  static byte[] INDEX_MAGIC = {'F', 'L', 'S', 'I'};
+  static int VERSION = 1;
+  static int FILE_HEADER_BYTES = 5;
+  // Index file header: magic, version, data bytes covered, entry count.
+  static int INDEX_HEADER_BYTES = 17;
+  static int RECORD_HEADER_BYTES = 14;
+
+  File file;
+  File indexFile;
+  // The data file and the lock on it, or null if the store is read-only.
+  RandomAccessFile out;
+  FileLock lock;
+  long dataBytes;
+  // Entries appended since the last commit.
+  ArrayList<SolvedEntry> pending;
+  volatile SolvedIndex index;
+
+  SolvedBoards(File file, RandomAccessFile out) {
+    this.file = file;
+    this.indexFile = new File(file.getPath() + ".idx");
+    this.out = out;
+    this.pending = new ArrayList<SolvedEntry>();
+  }
+
+  // Opens the store in the given data file for writing, creating it if it
+  // is new, and indexes any solutions its index is missing. Throws exception
+  // if another store has the file open for writing.
+  public static SolvedBoards open(File file) throws IOException {
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    SolvedBoards store = new SolvedBoards(file, out);
+    try {
+      store.lock = SolvedBoards.tryLock(out.getChannel());
+      if (store.lock == null) {
+        throw new IllegalStateException(
+            "Solved boards " + file + " are open for writing elsewhere.");
+      }
+      store.load();
+    } catch (IOException | RuntimeException e) {
+      out.close();
+      throw e;
+    }
+    return store;
+  }
+
+  // Opens the store in the given data file for lookups only. Throws
+  // exception if there is no such file.
+  public static SolvedBoards openReadOnly(File file) throws IOException {
+    if (!file.isFile()) {
+      throw new FileNotFoundException(file.getPath());
+    }
+    SolvedBoards store = new SolvedBoards(file, null);
+    store.load();
+    return store;
+  }
+
+  // Returns an exclusive lock on the channel's file, or null if it is held
+  // elsewhere, in this JVM or another.
+  public static FileLock tryLock(FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      return null;
+    }
+  }
+
+  // Returns the store in the file named by the floodit.solved system
+  // property, opened read-only, or null if it is not set.
+  public static SolvedBoards fromProperty() {
+    String path = System.getProperty("floodit.solved");
+    if (path == null) {
+      return null;
+    }
+    try {
+      return SolvedBoards.openReadOnly(new File(path));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open solved boards " + path + ".", e);
+    }
+  }
+
+  // Checks the data file header, maps the index if it is sound, and, when
+  // writing, reads into pending the records it does not cover. Drops a last
+  // record cut short or garbled, so the next is appended where it began.
+  // A read-only store leaves the records past the index alone, since a
+  // writer may be appending them.
+  public void load() throws IOException {
+    if (this.out != null && this.out.length() == 0) {
+      this.out.write(SolvedBoards.MAGIC);
+      this.out.writeByte(SolvedBoards.VERSION);
+    }
+    long length = this.out != null ? this.out.length() : this.file.length();
+    SolvedBoards.checkSize(length);
+    ByteBuffer data = SolvedBoards.map(this.file, length);
+    SolvedBoards.checkHeader(data, SolvedBoards.MAGIC, "Not a solved board file.");
+    this.index = this.readIndex(data);
+    if (this.index == null) {
+      this.index = new SolvedIndex(ByteBuffer.allocate(0), data, 0, SolvedBoards.FILE_HEADER_BYTES);
+    }
+    if (this.out == null) {
+      this.dataBytes = this.index.dataBytes;
+      return;
+    }
+
+    int pos = (int) this.index.dataBytes;
+    while (pos + SolvedBoards.RECORD_HEADER_BYTES <= length) {
+      int moves = data.getShort(pos + SolvedIndex.LENGTH) & 0xFFFF;
+      int next = pos + SolvedBoards.RECORD_HEADER_BYTES + ReplayLog.packedBytes(moves);
+      if (next > length || !SolvedBoards.isSound(data, pos, moves)) {
+        break;
+      }
+      this.pending.add(new SolvedEntry(data.getShort(pos + SolvedIndex.SIZE) & 0xFFFF,
+          data.get(pos + SolvedIndex.COLORS), data.getLong(pos + SolvedIndex.SEED),
+          (data.get(pos + SolvedIndex.FLAGS) & SolvedIndex.OPTIMAL) != 0, moves, pos));
+      pos = next;
+    }
+    if (pos < length) {
+      this.out.setLength(pos);
+    }
+    this.dataBytes = pos;
+    if (!this.pending.isEmpty() || !this.indexFile.exists()) {
+      this.commit();
+    }
+  }
+
+  // Returns true if the record at pos, of the given number of moves, is of
+  // a board put could have stored: a valid size and color count, and moves
+  // all of those colors.
+  public static boolean isSound(ByteBuffer data, int pos, int moves) {
+    int size = data.getShort(pos + SolvedIndex.SIZE) & 0xFFFF;
+    int colors = data.get(pos + SolvedIndex.COLORS);
+    if (size < 2 || colors < 2 || colors > FloodGame.MAX_COLORS
+        || (data.get(pos + SolvedIndex.FLAGS) & ~SolvedIndex.OPTIMAL) != 0) {
+      return false;
+    }
+    int movesAt = pos + SolvedBoards.RECORD_HEADER_BYTES;
+    for (int m = 0; m < moves; m++) {
+      if (ReplayLog.moveAt(data, movesAt, moves, m) >= colors) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Returns the index in the index file, or null if there is none or it does
+  // not match the data file.
+  public SolvedIndex readIndex(ByteBuffer data) throws IOException {
+    if (!this.indexFile.exists() || this.indexFile.length() < SolvedBoards.INDEX_HEADER_BYTES) {
+      return null;
+    }
+    ByteBuffer map = SolvedBoards.map(this.indexFile, this.indexFile.length());
+    for (int i = 0; i < SolvedBoards.INDEX_MAGIC.length; i++) {
+      if (map.get(i) != SolvedBoards.INDEX_MAGIC[i]) {
+        return null;
+      }
+    }
+    long covered = map.getLong(SolvedBoards.FILE_HEADER_BYTES);
+    int count = map.getInt(SolvedBoards.FILE_HEADER_BYTES + 8);
+    if (covered > data.limit() && this.out == null) {
+      // A writer committed after the data file was mapped. Committed data
+      // is never cut, so mapping it again covers the index.
+      long length = this.file.length();
+      SolvedBoards.checkSize(length);
+      data = SolvedBoards.map(this.file, length);
+    }
+    if (map.get(SolvedBoards.INDEX_MAGIC.length) != SolvedBoards.VERSION
+        || covered < SolvedBoards.FILE_HEADER_BYTES || covered > data.limit() || count < 0
+        || SolvedBoards.INDEX_HEADER_BYTES + (long) count * SolvedIndex.ENTRY_BYTES
+            != map.limit()) {
+      return null;
+    }
+    map.position(SolvedBoards.INDEX_HEADER_BYTES);
+    return new SolvedIndex(map.slice(), data, count, covered);
+  }
+
+  // Checks that buf starts with the given magic and this version.
+  public static void checkHeader(ByteBuffer buf, byte[] magic, String notOurs) {
+    if (buf.limit() < SolvedBoards.FILE_HEADER_BYTES) {
+      throw new IllegalArgumentException(notOurs);
+    }
+    for (int i = 0; i < magic.length; i++) {
+      if (buf.get(i) != magic[i]) {
+        throw new IllegalArgumentException(notOurs);
+      }
+    }
+    if (buf.get(magic.length) != SolvedBoards.VERSION) {
+      throw new IllegalArgumentException("Unknown solved board file version.");
+    }
+  }
+
+  // Throws if a file of the given length is too big to map.
+  public static void checkSize(long length) {
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Solved board file must be smaller than 2 GB.");
+    }
+  }
+
+  // Maps the first length bytes of the given file read-only.
+  public static ByteBuffer map(File file, long length) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+  }
+
+  // Returns the length of the stored solution of the given board, or -1 if
+  // it is not stored.
+  public int par(int boardSize, int numColors, long seed) {
+    SolvedIndex index = this.index;
+    int i = index.find(boardSize, numColors, seed);
+    return i < 0 ? -1 : index.lengthAt(i);
+  }
+
+  // Returns the stored solution of the given board, or null if it is not
+  // stored.
+  public int[] solution(int boardSize, int numColors, long seed) {
+    SolvedIndex index = this.index;
+    int i = index.find(boardSize, numColors, seed);
+    return i < 0 ? null : index.movesAt(i);
+  }
+
+  // Returns true if the given board's stored solution is known to be shortest.
+  public boolean isOptimal(int boardSize, int numColors, long seed) {
+    SolvedIndex index = this.index;
+    int i = index.find(boardSize, numColors, seed);
+    return i >= 0 && index.isOptimalAt(i);
+  }
+
+  // Returns the number of boards of the given size and colors stored.
+  public int count(int boardSize, int numColors) {
+    SolvedIndex index = this.index;
+    return index.lowerBound(boardSize, numColors + 1, Long.MIN_VALUE)
+        - index.lowerBound(boardSize, numColors, Long.MIN_VALUE);
+  }
+
+  // Returns the seed of a stored board of the given size and colors chosen
+  // with rand, or a seed from rand if there is none.
+  public long pickSeed(int boardSize, int numColors, Random rand) {
+    SolvedIndex index = this.index;
+    int from = index.lowerBound(boardSize, numColors, Long.MIN_VALUE);
+    int to = index.lowerBound(boardSize, numColors + 1, Long.MIN_VALUE);
+    return from == to ? rand.nextLong() : index.seedAt(from + rand.nextInt(to - from));
+  }
+
+  // Appends the given solution of the given board, unless the committed one
+  // is as good. It can be looked up once committed. Returns true if it was
+  // appended.
+  public synchronized boolean put(int boardSize, int numColors, long seed, int[] moves,
+      boolean optimal) throws IOException {
+    this.checkWritable();
+    FloodGame.checkValidBoardSize(boardSize);
+    FloodGame.checkValidNumColors(numColors);
+    if (boardSize > ReplayLog.MAX_COUNT) {
+      throw new IllegalArgumentException(
+          "A solved board has size at most " + ReplayLog.MAX_COUNT + ".");
+    }
+    if (moves.length > ReplayLog.MAX_COUNT) {
+      throw new IllegalArgumentException(
+          "A solution holds at most " + ReplayLog.MAX_COUNT + " moves.");
+    }
+    SolvedIndex index = this.index;
+    int i = index.find(boardSize, numColors, seed);
+    if (i >= 0 && !SolvedIndex.isBetter(moves.length, optimal, index.lengthAt(i),
+        index.isOptimalAt(i))) {
+      return false;
+    }
+    byte[] packed = new byte[ReplayLog.packedBytes(moves.length)];
+    for (int m = 0; m < moves.length; m++) {
+      ReplayLog.setMove(packed, m, moves[m]);
+    }
+    int bytes = SolvedBoards.RECORD_HEADER_BYTES + packed.length;
+    SolvedBoards.checkSize(this.dataBytes + bytes);
+    ByteBuffer record = ByteBuffer.allocate(bytes);
+    record.putLong(seed).putShort((short) boardSize).put((byte) numColors)
+        .put((byte) (optimal ? SolvedIndex.OPTIMAL : 0)).putShort((short) moves.length)
+        .put(packed);
+    this.out.seek(this.dataBytes);
+    this.out.write(record.array());
+    this.pending.add(new SolvedEntry(boardSize, numColors, seed, optimal, moves.length,
+        (int) this.dataBytes));
+    this.dataBytes += bytes;
+    return true;
+  }
+
+  // Makes the solutions put since the last commit visible to lookups: merges
+  // them into a new index, keeping the best solution of each board, writes
+  // it beside the old one and renames it over it, then publishes it.
+  public synchronized void commit() throws IOException {
+    this.checkWritable();
+    SolvedIndex old = this.index;
+    this.pending.sort((a, b) -> SolvedEntry.order(a, b));
+    ByteBuffer entries = ByteBuffer.allocate(SolvedBoards.INDEX_HEADER_BYTES
+        + (old.count + this.pending.size()) * SolvedIndex.ENTRY_BYTES);
+    entries.put(SolvedBoards.INDEX_MAGIC).put((byte) SolvedBoards.VERSION);
+    entries.putLong(this.dataBytes).putInt(0);
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < old.count || j < this.pending.size()) {
+      SolvedEntry e = j < this.pending.size() ? this.pending.get(j) : null;
+      int cmp = e == null ? -1 : i == old.count ? 1
+          : old.compareAt(i, e.boardSize, e.numColors, e.seed);
+      if (cmp < 0 || (cmp == 0 && !SolvedIndex.isBetter(e.length, e.optimal,
+          old.lengthAt(i), old.isOptimalAt(i)))) {
+        ByteBuffer entry = old.entries.duplicate();
+        entry.position(i * SolvedIndex.ENTRY_BYTES).limit((i + 1) * SolvedIndex.ENTRY_BYTES);
+        entries.put(entry);
+      } else {
+        entries.putLong(e.seed).putShort((short) e.boardSize).put((byte) e.numColors)
+            .put((byte) (e.optimal ? SolvedIndex.OPTIMAL : 0)).putShort((short) e.length)
+            .putInt(e.offset);
+      }
+      count++;
+      if (cmp <= 0) {
+        i++;
+      }
+      if (cmp >= 0) {
+        // Pending entries of the same key after the first are worse.
+        long seed = e.seed;
+        int boardSize = e.boardSize;
+        int numColors = e.numColors;
+        while (j < this.pending.size() && SolvedIndex.compareKeys(boardSize, numColors, seed,
+            this.pending.get(j).boardSize, this.pending.get(j).numColors,
+            this.pending.get(j).seed) == 0) {
+          j++;
+        }
+      }
+    }
+    entries.putInt(SolvedBoards.FILE_HEADER_BYTES + 8, count);
+    entries.flip();
+
+    this.out.getChannel().force(false);
+    File temp = new File(this.indexFile.getPath() + ".tmp");
+    try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        FileChannel channel = raf.getChannel()) {
+      raf.setLength(0);
+      while (entries.hasRemaining()) {
+        channel.write(entries);
+      }
+      channel.force(false);
+    }
+    Files.move(temp.toPath(), this.indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    ByteBuffer data = SolvedBoards.map(this.file, this.dataBytes);
+    ByteBuffer map = SolvedBoards.map(this.indexFile, this.indexFile.length());
+    map.position(SolvedBoards.INDEX_HEADER_BYTES);
+    this.index = new SolvedIndex(map.slice(), data, count, this.dataBytes);
+    this.pending.clear();
+  }
+
+  // Throws exception if the store was opened read-only or has been closed.
+  public void checkWritable() {
+    if (this.out == null) {
+      throw new IllegalStateException("Solved boards " + this.file + " are not open for writing.");
+    }
+  }
+
+  // Commits, if writing, and closes the data file, which releases its lock.
+  // Lookups still read the last index. Closing again does nothing.
+  public synchronized void close() throws IOException {
+    if (this.out == null) {
+      return;
+    }
+    this.commit();
+    this.out.close();
+    this.out = null;
+    this.lock = null;
+  }
+
+  // Solves the boards of seeds 0 until count not already stored as optimal,
+  // exactly where FloodSolver can and near-optimally with BeamSolver where
+  // it cannot, stores them, then times par lookups against the solving.
+  // Run with: java FloodIt.SolvedBoards <file> [size] [colors] [count] [threads]
+  public static void main(String[] args) throws IOException {
+    File file = new File(args[0]);
+    int size = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+    int colors = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+    int count = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+    int threads = args.length > 4 ? Integer.parseInt(args[4])
+        : Runtime.getRuntime().availableProcessors();
+    SolvedBoards store = SolvedBoards.open(file);
+
+    long start = System.nanoTime();
+    ArrayList<SolveWorker> workers = new ArrayList<SolveWorker>();
+    for (int p = 0; p < threads; p++) {
+      workers.add(new SolveWorker(store, size, colors, (long) count * p / threads,
+          (long) count * (p + 1) / threads));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (Future<SolveWorker> result : executor.invokeAll(workers)) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while solving.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A solver failed.", e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+    int solved = 0;
+    int optimal = 0;
+    for (SolveWorker worker : workers) {
+      for (int k = 0; k < worker.solutions.size(); k++) {
+        store.put(size, colors, worker.seeds.get(k), worker.solutions.get(k),
+            worker.optimal.get(k) == 1);
+        solved++;
+        optimal += worker.optimal.get(k);
+      }
+    }
+    store.commit();
+    double solveSeconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%dx%d, %d colors: solved %d boards (%d optimal) in %.2f s, %.1f ms each"
+        + " on %d threads; %d stored%n", size, size, colors, solved, optimal, solveSeconds,
+        solved == 0 ? 0 : solveSeconds * 1000 / solved, threads, store.count(size, colors));
+
+    // Look up stored seeds and as many missing ones, after warming up.
+    int lookups = 10000000;
+    long found = 0;
+    for (int round = 0; round < 2; round++) {
+      Random rand = new Random(round);
+      found = 0;
+      start = System.nanoTime();
+      for (int k = 0; k < lookups; k++) {
+        long seed = (k & 1) == 0 ? rand.nextInt(count) : count + rand.nextInt(count);
+        found += store.par(size, colors, seed) >= 0 ? 1 : 0;
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.printf("%d par lookups (%d found) in %.2f s: %.0f ns each, %.1f million/s%n",
+        lookups, found, nanos / 1e9, (double) nanos / lookups, lookups / (nanos / 1e3));
+    store.close();
+  }
+}
+
+// Solves one thread's share of the boards SolvedBoards.main stores.
+class SolveWorker implements Callable<SolveWorker> {
+  SolvedBoards store;
+  int boardSize;
+  int numColors;
+  long from;
+  long to;
+  ArrayList<Long> seeds;
+  ArrayList<int[]> solutions;
+  IntList optimal;
+
+  SolveWorker(SolvedBoards store, int boardSize, int numColors, long from, long to) {
+    this.store = store;
+    this.boardSize = boardSize;
+    this.numColors = numColors;
+    this.from = from;
+    this.to = to;
+    this.seeds = new ArrayList<Long>();
+    this.solutions = new ArrayList<int[]>();
+    this.optimal = new IntList();
+  }
+
+  // Solves the boards of seeds from until to not already stored as optimal.
+  public SolveWorker call() {
+    TranspositionTable table = new TranspositionTable(BoardGenerator.TABLE_BITS);
+    for (long seed = this.from; seed < this.to; seed++) {
+      if (this.store.isOptimal(this.boardSize, this.numColors, seed)) {
+        continue;
+      }
+      FloodGame game = FloodGame.newGame(this.boardSize, this.numColors, seed);
+      int[] moves = null;
+      boolean optimal = false;
+      if (this.boardSize <= BeamBenchmark.EXACT_MAX_SIZE) {
+        table.clear();
+        FloodSolver solver = new FloodSolver(game, table);
+        solver.nodeLimit = BoardGenerator.NODE_LIMIT;
+        moves = solver.solve();
+        optimal = moves != null;
+      }
+      if (moves == null) {
+        BeamSolver solver = new BeamSolver(game);
+        solver.threads = 1;
+        moves = solver.solve();
+        optimal = solver.optimal;
+      }
+      this.seeds.add(seed);
+      this.solutions.add(moves);
+      this.optimal.add(optimal ? 1 : 0);
+    }
+    return this;
+  }
+}
+
+class ExamplesSolvedBoards {
+  // Returns a new, empty store in a temporary file.
+  SolvedBoards newStore() throws IOException {
+    File file = File.createTempFile("solved", ".bin");
+    file.delete();
+    return SolvedBoards.open(file);
+  }
+
+  // Deletes a store's files.
+  void delete(SolvedBoards store) throws IOException {
+    store.close();
+    store.file.delete();
+    store.indexFile.delete();
+  }
+
+  // Tests that solutions are found by key once committed, and not before.
+  void testPutAndLookUp(Tester t) throws IOException {
+    SolvedBoards store = this.newStore();
+    int[] moves = {1, 0, 2, 3, 1, 0, 7};
+
+    t.checkExpect(store.put(14, 6, 42, moves, true), true);
+    t.checkExpect(store.par(14, 6, 42), -1);
+
+    store.commit();
+
+    t.checkExpect(store.par(14, 6, 42), 7);
+    t.checkExpect(store.solution(14, 6, 42), moves);
+    t.checkExpect(store.isOptimal(14, 6, 42), true);
+    t.checkExpect(store.par(14, 6, 43), -1);
+    t.checkExpect(store.par(14, 5, 42), -1);
+    t.checkExpect(store.par(10, 6, 42), -1);
+    t.checkExpect(store.solution(14, 6, 43), null);
+    t.checkExpect(store.isOptimal(14, 6, 43), false);
+    this.delete(store);
+  }
+
+  // Tests that the index is sorted by size, colors and seed, negative seeds
+  // first, and that count and pickSeed keep to one size and colors.
+  void testOrder(Tester t) throws IOException {
+    SolvedBoards store = this.newStore();
+    long[] seeds = {5, -3, Long.MAX_VALUE, 0, Long.MIN_VALUE, 17};
+    for (long seed : seeds) {
+      store.put(10, 4, seed, new int[] {(int) (seed & 3)}, false);
+    }
+    store.put(10, 3, 9, new int[] {1, 2}, false);
+    store.put(12, 4, 9, new int[] {1, 2, 3}, false);
+    store.commit();
+    SolvedIndex index = store.index;
+    Random rand = new Random(1);
+
+    t.checkExpect(index.count, 8);
+    t.checkExpect(index.seedAt(0), 9L);
+    t.checkExpect(index.seedAt(1), Long.MIN_VALUE);
+    t.checkExpect(index.seedAt(2), -3L);
+    t.checkExpect(index.seedAt(6), Long.MAX_VALUE);
+    t.checkExpect(index.lengthAt(7), 3);
+    t.checkExpect(store.count(10, 4), 6);
+    t.checkExpect(store.count(10, 3), 1);
+    t.checkExpect(store.count(11, 4), 0);
+    t.checkExpect(store.pickSeed(10, 3, rand), 9L);
+    for (int k = 0; k < 20; k++) {
+      t.checkExpect(store.par(10, 4, store.pickSeed(10, 4, rand)), 1);
+    }
+    for (long seed : seeds) {
+      t.checkExpect(store.solution(10, 4, seed), new int[] {(int) (seed & 3)});
+    }
+    this.delete(store);
+  }
+
+  // Tests that only a better solution replaces a stored one, whether put
+  // before or after the commit.
+  void testBestKept(Tester t) throws IOException {
+    SolvedBoards store = this.newStore();
+    store.put(8, 4, 1, new int[] {1, 2, 3, 1}, false);
+    store.put(8, 4, 1, new int[] {1, 2, 3}, false);
+    store.put(8, 4, 1, new int[] {2, 1, 3, 1, 2}, false);
+    store.commit();
+
+    t.checkExpect(store.solution(8, 4, 1), new int[] {1, 2, 3});
+    t.checkExpect(store.put(8, 4, 1, new int[] {3, 2, 1}, false), false);
+    t.checkExpect(store.put(8, 4, 1, new int[] {3, 2, 1, 0}, true), false);
+    t.checkExpect(store.put(8, 4, 1, new int[] {3, 2, 1}, true), true);
+
+    store.commit();
+
+    t.checkExpect(store.solution(8, 4, 1), new int[] {3, 2, 1});
+    t.checkExpect(store.isOptimal(8, 4, 1), true);
+    t.checkExpect(store.index.count, 1);
+    this.delete(store);
+  }
+
+  // Tests that a reopened store finds what was committed, indexes what was
+  // appended but not committed, and drops a record cut short.
+  void testReopen(Tester t) throws IOException {
+    SolvedBoards store = this.newStore();
+    store.put(6, 3, 1, new int[] {1, 2}, true);
+    store.commit();
+    store.put(6, 3, 2, new int[] {2, 1, 0}, true);
+    store.out.close();
+    long length = store.file.length();
+    try (RandomAccessFile raf = new RandomAccessFile(store.file, "rw")) {
+      raf.seek(length);
+      raf.write(new byte[] {1, 2, 3});
+    }
+    SolvedBoards again = SolvedBoards.open(store.file);
+
+    t.checkExpect(again.par(6, 3, 1), 2);
+    t.checkExpect(again.solution(6, 3, 2), new int[] {2, 1, 0});
+    t.checkExpect(again.dataBytes, length);
+    t.checkExpect(store.file.length(), length);
+
+    // Without its index the store is indexed again from the data file.
+    again.out.close();
+    again.indexFile.delete();
+    SolvedBoards rebuilt = SolvedBoards.open(store.file);
+
+    t.checkExpect(rebuilt.index.count, 2);
+    t.checkExpect(rebuilt.solution(6, 3, 1), new int[] {1, 2});
+
+    // A whole record past the index that put could not have written, as a
+    // crash can leave, is dropped like one cut short.
+    rebuilt.put(6, 3, 3, new int[] {1}, true);
+    rebuilt.out.close();
+    length = store.file.length();
+    try (RandomAccessFile raf = new RandomAccessFile(store.file, "rw")) {
+      raf.seek(length);
+      raf.write(new byte[SolvedBoards.RECORD_HEADER_BYTES + 1]);
+    }
+    SolvedBoards garbled = SolvedBoards.open(store.file);
+
+    t.checkExpect(garbled.index.count, 3);
+    t.checkExpect(garbled.dataBytes, length);
+    t.checkExpect(store.file.length(), length);
+    this.delete(garbled);
+  }
+
+  // Tests that a read-only store sees what was committed when it opened,
+  // never writes, and needs an existing file, and that only one store may
+  // write a file at a time.
+  void testReadOnly(Tester t) throws IOException {
+    SolvedBoards writer = this.newStore();
+    writer.put(6, 3, 1, new int[] {1, 2}, true);
+    writer.commit();
+    writer.put(6, 3, 2, new int[] {2, 1, 0}, true);
+    long length = writer.file.length();
+    SolvedBoards reader = SolvedBoards.openReadOnly(writer.file);
+
+    t.checkExpect(reader.par(6, 3, 1), 2);
+    t.checkExpect(reader.par(6, 3, 2), -1);
+    t.checkExpect(reader.out, null);
+    t.checkExpect(writer.file.length(), length);
+    t.checkException(new IllegalStateException(
+        "Solved boards " + writer.file + " are not open for writing."),
+        reader, "put", 6, 3, 3L, new int[] {1}, true);
+    t.checkException(new IllegalStateException(
+        "Solved boards " + writer.file + " are not open for writing."), reader, "commit");
+    t.checkException(new IllegalStateException(
+        "Solved boards " + writer.file + " are open for writing elsewhere."),
+        writer, "open", writer.file);
+
+    writer.commit();
+
+    t.checkExpect(reader.par(6, 3, 2), -1);
+    t.checkExpect(SolvedBoards.openReadOnly(writer.file).par(6, 3, 2), 3);
+
+    File missing = new File(writer.file.getPath() + ".missing");
+
+    t.checkException(new FileNotFoundException(missing.getPath()),
+        reader, "openReadOnly", missing);
+    t.checkExpect(missing.exists(), false);
+    reader.close();
+    this.delete(writer);
+  }
+
+  // Tests that stored solutions solve the boards they are keyed by.
+  void testSolutionsWin(Tester t) throws IOException {
+    SolvedBoards store = this.newStore();
+    for (long seed = 0; seed < 5; seed++) {
+      store.put(8, 4, seed, new FloodSolver(FloodGame.newGame(8, 4, seed)).solve(), true);
+    }
+    store.commit();
+    for (long seed = 0; seed < 5; seed++) {
+      FloodGame game = FloodGame.newGame(8, 4, seed);
+      for (int color : store.solution(8, 4, seed)) {
+        game.applyMove(color);
+      }
+
+      t.checkExpect(game.isWon(), true);
+    }
+    this.delete(store);
+  }
+
+  // Tests that lookups from many threads while commits go on see each
+  // board either missing or whole.
+  void testConcurrentReads(Tester t) throws Exception {
+    SolvedBoards store = this.newStore();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    ArrayList<Callable<Integer>> readers = new ArrayList<Callable<Integer>>();
+    for (int r = 0; r < 4; r++) {
+      readers.add(() -> {
+        int bad = 0;
+        for (int k = 0; k < 20000; k++) {
+          long seed = k % 200;
+          int[] moves = store.solution(8, 4, seed);
+          if (moves != null
+              && (moves.length != (int) (seed % 7) + 1 || moves[0] != (int) (seed & 3))) {
+            bad++;
+          }
+        }
+        return bad;
+      });
+    }
+    ArrayList<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (Callable<Integer> reader : readers) {
+      results.add(executor.submit(reader));
+    }
+    for (long seed = 0; seed < 200; seed++) {
+      int[] moves = new int[(int) (seed % 7) + 1];
+      moves[0] = (int) (seed & 3);
+      store.put(8, 4, seed, moves, false);
+      if (seed % 20 == 19) {
+        store.commit();
+      }
+    }
+    int bad = 0;
+    for (Future<Integer> result : results) {
+      bad += result.get();
+    }
+    executor.shutdown();
+
+    t.checkExpect(bad, 0);
+    t.checkExpect(store.count(8, 4), 200);
+    this.delete(store);
+  }
+
+  // Tests the errors of put and open.
+  void testErrors(Tester t) throws IOException {
+    SolvedBoards store = this.newStore();
+    File other = File.createTempFile("other", ".bin");
+    java.nio.file.Files.write(other.toPath(), new byte[] {'F', 'L', 'R', 'P', 1});
+
+    t.checkException(new IllegalArgumentException("A solution holds at most 65535 moves."),
+        store, "put", 8, 4, 1L, new int[70000], false);
+    t.checkException(new IllegalArgumentException(
+        "Number of colors must be between 2 and 8 inclusive."),
+        store, "put", 8, 9, 1L, new int[1], false);
+    SolvedBoards wrong = new SolvedBoards(other, new RandomAccessFile(other, "rw"));
+
+    t.checkException(new IllegalArgumentException("Not a solved board file."), wrong, "load");
+
+    wrong.out.close();
+    other.delete();
+    this.delete(store);
+  }
+}
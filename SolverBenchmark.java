@@ -0,0 +1,64 @@
+package FloodIt;
+
+// Solves a fixed set of seeded boards optimally, once without and once with
+// a transposition table, and reports time, nodes searched and solution
+// length for each, and how often the table found a state it had seen.
+// Run with: java FloodIt.SolverBenchmark [size] [colors] [boards] [log2 table entries]
+class SolverBenchmark {
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+    int colors = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+    int boards = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    int log2Entries = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+    TranspositionTable table = new TranspositionTable(log2Entries);
+
+    // Warm up before timing.
+    for (long seed = 0; seed < 5; seed++) {
+      new FloodSolver(FloodGame.newGame(size, colors, seed + 1000)).solve();
+      table.clear();
+      new FloodSolver(FloodGame.newGame(size, colors, seed + 1000), table).solve();
+    }
+
+    System.out.println("seed   regions   moves        nodes         ms"
+        + "    table nodes         ms     hits  cutoffs");
+    long[] totalNanos = new long[2];
+    long[] totalNodes = new long[2];
+    double[] worstMillis = new double[2];
+    long probes = 0;
+    long hits = 0;
+    long cutoffs = 0;
+    for (long seed = 0; seed < boards; seed++) {
+      long start = System.nanoTime();
+      FloodSolver solver = new FloodSolver(FloodGame.newGame(size, colors, seed));
+      int[] moves = solver.solve();
+      long nanos = System.nanoTime() - start;
+
+      table.clear();
+      start = System.nanoTime();
+      FloodSolver hashed = new FloodSolver(FloodGame.newGame(size, colors, seed), table);
+      hashed.solve();
+      long hashedNanos = System.nanoTime() - start;
+
+      totalNanos[0] += nanos;
+      totalNanos[1] += hashedNanos;
+      totalNodes[0] += solver.nodes;
+      totalNodes[1] += hashed.nodes;
+      worstMillis[0] = Math.max(worstMillis[0], nanos / 1e6);
+      worstMillis[1] = Math.max(worstMillis[1], hashedNanos / 1e6);
+      probes += hashed.tableProbes;
+      hits += hashed.tableHits;
+      cutoffs += hashed.tableCutoffs;
+      System.out.printf("%-6d %-9d %-8d %9d %10.1f %16d %10.1f %7.1f%% %7.1f%%%n",
+          seed, solver.graph.regionCount, moves.length, solver.nodes, nanos / 1e6,
+          hashed.nodes, hashedNanos / 1e6, 100.0 * hashed.tableHits / hashed.tableProbes,
+          100.0 * hashed.tableCutoffs / hashed.tableProbes);
+    }
+    for (int i = 0; i < 2; i++) {
+      System.out.printf("%dx%d, %d colors, %s: mean %.1f ms, worst %.1f ms, %d nodes, %.0f nodes/s%n",
+          size, size, colors, i == 0 ? "no table" : "table", totalNanos[i] / 1e6 / boards,
+          worstMillis[i], totalNodes[i], totalNodes[i] / (totalNanos[i] / 1e9));
+    }
+    System.out.printf("table of %d entries: %.1f%% of probes hit, %.1f%% cut off%n",
+        table.capacity(), 100.0 * hits / probes, 100.0 * cutoffs / probes);
+  }
+}
@@ -0,0 +1,8 @@
+package FloodIt;
+import java.util.Random;
+
+// Chooses the next color to play in a game.
+interface Strategy {
+  // Returns the color to play next. rand belongs to this game alone.
+  int nextMove(FloodGame game, Random rand);
+}
@@ -0,0 +1,210 @@
+package FloodIt;
+import java.util.concurrent.atomic.AtomicLongArray;
+import tester.Tester;
+
+// A fixed-size table from 64-bit state hashes to what a search learned about
+// the state: a lower bound on the moves left from it, and how deep the search
+// that found the bound went. Searches on several threads may share one table
+// without locks. Each entry is two words, the data and the key XORed with the
+// data; a reader that sees halves of two different writes gets a key that
+// does not match, and treats the entry as missing.
+// When two states land in the same slot the one searched deeper stays.
+// A table holds the states of one board; clear it before searching another.
+class TranspositionTable {
+  // Set in every stored data word, so an empty slot never matches.
+  static long VALID = 1L << 32;
+
+  AtomicLongArray slots;
+  int mask;
+
+  TranspositionTable(int log2Entries) {
+    if (log2Entries < 1 || log2Entries > 28) {
+      throw new IllegalArgumentException("Table size must be between 2^1 and 2^28 entries.");
+    }
+    this.slots = new AtomicLongArray(2 << log2Entries);
+    this.mask = (1 << log2Entries) - 1;
+  }
+
+  // Returns the Zobrist key of the cell at the given index. The hash of a set
+  // of cells is the XOR of their keys, so it can be updated one cell, or one
+  // whole region, at a time. Keys come from the SplitMix64 finalizer, so they
+  // cost no table and are the same for every board.
+  public static long key(int index) {
+    long z = (index + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // Returns the data stored for the given hash, or -1 if there is none.
+  public long probe(long hash) {
+    int slot = ((int) hash & this.mask) << 1;
+    long data = this.slots.getOpaque(slot);
+    if ((this.slots.getOpaque(slot + 1) ^ data) == hash && (data & TranspositionTable.VALID) != 0) {
+      return data;
+    }
+    return -1;
+  }
+
+  // Records a lower bound on the moves left from the state with the given
+  // hash, found by a search the given number of moves deep. Keeps whatever
+  // the slot holds instead if it is another state searched deeper.
+  public void store(long hash, int lowerBound, int depth) {
+    int slot = ((int) hash & this.mask) << 1;
+    long old = this.slots.getOpaque(slot);
+    boolean same = (this.slots.getOpaque(slot + 1) ^ old) == hash;
+    if (!same && (old & TranspositionTable.VALID) != 0 && TranspositionTable.depth(old) > depth) {
+      return;
+    }
+    long data = TranspositionTable.VALID | ((long) Math.min(depth, 0xFFFF) << 16)
+        | Math.min(lowerBound, 0xFFFF);
+    this.slots.setOpaque(slot, data);
+    this.slots.setOpaque(slot + 1, hash ^ data);
+  }
+
+  // Returns the lower bound held in the given data.
+  public static int lowerBound(long data) {
+    return (int) data & 0xFFFF;
+  }
+
+  // Returns the search depth held in the given data.
+  public static int depth(long data) {
+    return (int) (data >>> 16) & 0xFFFF;
+  }
+
+  // Returns the number of entries the table can hold.
+  public int capacity() {
+    return this.mask + 1;
+  }
+
+  // Returns the number of slots in use.
+  public int used() {
+    int used = 0;
+    for (int slot = 0; slot < this.slots.length(); slot += 2) {
+      if ((this.slots.getOpaque(slot) & TranspositionTable.VALID) != 0) {
+        used++;
+      }
+    }
+    return used;
+  }
+
+  // Empties the table.
+  public void clear() {
+    for (int i = 0; i < this.slots.length(); i++) {
+      this.slots.setOpaque(i, 0L);
+    }
+  }
+}
+
+class ExamplesTranspositionTable {
+  // Tests the TranspositionTable constructor.
+  void testConstructor(Tester t) {
+    TranspositionTable table = new TranspositionTable(4);
+
+    t.checkExpect(table.capacity(), 16);
+    t.checkExpect(table.used(), 0);
+    t.checkConstructorException(
+        new IllegalArgumentException("Table size must be between 2^1 and 2^28 entries."),
+        "FloodIt.TranspositionTable", 0);
+  }
+
+  // Tests that keys are distinct and spread over all 64 bits.
+  void testKey(Tester t) {
+    java.util.HashSet<Long> keys = new java.util.HashSet<Long>();
+    long ones = 0;
+    for (int i = 0; i < 10000; i++) {
+      keys.add(TranspositionTable.key(i));
+      ones += Long.bitCount(TranspositionTable.key(i));
+    }
+
+    t.checkExpect(keys.size(), 10000);
+    t.checkExpect(Math.abs((ones / 10000.0) - 32) < 0.5, true);
+    t.checkExpect(TranspositionTable.key(7), TranspositionTable.key(7));
+  }
+
+  // Tests probe and store methods for TranspositionTable.
+  void testProbeStore(Tester t) {
+    TranspositionTable table = new TranspositionTable(4);
+    long hash = TranspositionTable.key(1);
+
+    t.checkExpect(table.probe(hash), -1L);
+    t.checkExpect(table.probe(0), -1L);
+
+    table.store(hash, 9, 4);
+    long data = table.probe(hash);
+
+    t.checkExpect(TranspositionTable.lowerBound(data), 9);
+    t.checkExpect(TranspositionTable.depth(data), 4);
+    t.checkExpect(table.probe(hash + 16), -1L);
+    t.checkExpect(table.used(), 1);
+
+    // The same state is always updated, even by a shallower search.
+    table.store(hash, 11, 2);
+    t.checkExpect(TranspositionTable.lowerBound(table.probe(hash)), 11);
+
+    table.clear();
+    t.checkExpect(table.probe(hash), -1L);
+    t.checkExpect(table.used(), 0);
+  }
+
+  // Tests that a state searched deeper keeps its slot.
+  void testReplaceByDepth(Tester t) {
+    TranspositionTable table = new TranspositionTable(4);
+    long deep = 5;
+    long shallow = 5 + (1L << 40);
+    table.store(deep, 3, 8);
+    table.store(shallow, 3, 2);
+
+    t.checkExpect(table.probe(shallow), -1L);
+    t.checkExpect(TranspositionTable.depth(table.probe(deep)), 8);
+
+    table.store(shallow, 3, 8);
+
+    t.checkExpect(table.probe(deep), -1L);
+    t.checkExpect(TranspositionTable.depth(table.probe(shallow)), 8);
+  }
+
+  // Tests that an entry whose two words come from different writes is
+  // treated as missing.
+  void testTornEntry(Tester t) {
+    TranspositionTable table = new TranspositionTable(4);
+    table.store(3, 7, 1);
+    long other = table.slots.get(6);
+    table.store(3 + 16, 2, 9);
+    table.slots.set(6, other);
+
+    t.checkExpect(table.probe(3), -1L);
+    t.checkExpect(table.probe(3 + 16), -1L);
+  }
+
+  // Tests that threads storing into a small shared table never let a probe
+  // see data written for another state.
+  void testConcurrentStores(Tester t) throws InterruptedException {
+    TranspositionTable table = new TranspositionTable(6);
+    int[] wrong = new int[4];
+    Thread[] threads = new Thread[4];
+    for (int n = 0; n < threads.length; n++) {
+      int id = n;
+      threads[n] = new Thread(() -> {
+        for (int i = 0; i < 200000; i++) {
+          int state = (i * 7 + id) % 1000;
+          // The lower bound and depth are a function of the state, so any
+          // hit must carry exactly these.
+          table.store(TranspositionTable.key(state), state % 97, state % 13);
+          long data = table.probe(TranspositionTable.key((state * 3) % 1000));
+          if (data != -1 && (TranspositionTable.lowerBound(data) != ((state * 3) % 1000) % 97
+              || TranspositionTable.depth(data) != ((state * 3) % 1000) % 13)) {
+            wrong[id]++;
+          }
+        }
+      });
+      threads[n].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    t.checkExpect(wrong, new int[4]);
+    t.checkExpect(table.used() > 32, true);
+  }
+}
@@ -0,0 +1,380 @@
+package FloodIt;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Random;
+import javalib.impworld.*;
+import javalib.worldimages.*;
+import tester.Tester;
+
+// A scrollable, zoomable window onto a board too big to draw whole. It draws
+// only the tiles that overlap the window, each as blocks of cells sized so
+// that no block is smaller than MIN_BLOCK_PIXELS on screen, so the number of
+// images per frame depends on the window size and not on the board size.
+class Viewport {
+  // Screen pixels per cell at each zoom level.
+  static double[] ZOOM_LEVELS = {0.25, 0.5, 1, 2, 4, 8, 16, 25};
+  // Smallest block, in pixels, worth drawing as its own image.
+  static int MIN_BLOCK_PIXELS = 16;
+
+  int boardSize;
+  int width;
+  int height;
+  // The color of each color index.
+  ArrayList<Color> colors;
+  int zoom;
+  // Top-left visible cell.
+  int row;
+  int col;
+
+  // Block and whole-tile images per palette color, for the current zoom.
+  ArrayList<WorldImage> blockImages;
+  int blockImagePixels;
+  ArrayList<WorldImage> tileImages;
+  int tileImagePixels;
+  // Background strips covering anything drawn outside the board or below the
+  // window, rebuilt only when their size changes.
+  WorldImage rightStrip;
+  int rightStripWidth;
+  WorldImage bottomStrip;
+  int bottomStripHeight;
+  WorldImage belowStrip;
+  int belowStripHeight;
+
+  Viewport(int boardSize, int width, int height, ArrayList<Color> colors) {
+    this.boardSize = boardSize;
+    this.width = width;
+    this.height = height;
+    this.colors = colors;
+    this.zoom = Viewport.ZOOM_LEVELS.length - 1;
+    this.row = 0;
+    this.col = 0;
+  }
+
+  // Returns the number of screen pixels per cell at the current zoom.
+  public double cellPixels() {
+    return Viewport.ZOOM_LEVELS[this.zoom];
+  }
+
+  // Returns the number of board rows that fit in the window.
+  public int visibleRows() {
+    return Math.min(this.boardSize, (int) Math.ceil(this.height / this.cellPixels()));
+  }
+
+  // Returns the number of board columns that fit in the window.
+  public int visibleCols() {
+    return Math.min(this.boardSize, (int) Math.ceil(this.width / this.cellPixels()));
+  }
+
+  // Returns the level of detail to draw at: the smallest block whose side is
+  // at least MIN_BLOCK_PIXELS on screen, but never more than a whole tile.
+  public int level() {
+    int level = 0;
+    while (level < BoardTiles.LEVELS - 1
+        && (1 << level) * this.cellPixels() < Viewport.MIN_BLOCK_PIXELS) {
+      level++;
+    }
+    return level;
+  }
+
+  // Moves the window by the given number of cells.
+  public void pan(int rows, int cols) {
+    this.row += rows;
+    this.col += cols;
+    this.clamp();
+  }
+
+  // Moves the window by a quarter of its size in the given directions.
+  public void step(int down, int right) {
+    this.pan(down * Math.max(1, this.visibleRows() / 4), right * Math.max(1, this.visibleCols() / 4));
+  }
+
+  // Changes the zoom by the given number of levels, keeping the cell at the
+  // center of the window in place.
+  public void zoomBy(int levels) {
+    int centerRow = this.row + (this.visibleRows() / 2);
+    int centerCol = this.col + (this.visibleCols() / 2);
+    this.zoom = Math.max(0, Math.min(Viewport.ZOOM_LEVELS.length - 1, this.zoom + levels));
+    this.row = centerRow - (this.visibleRows() / 2);
+    this.col = centerCol - (this.visibleCols() / 2);
+    this.clamp();
+  }
+
+  // Keeps the window on the board, and on a whole pixel when cells are smaller
+  // than one, so neighboring blocks always meet exactly.
+  public void clamp() {
+    int align = (int) Math.max(1, Math.round(1 / this.cellPixels()));
+    this.row = Math.max(0, Math.min(this.row, this.boardSize - this.visibleRows()));
+    this.col = Math.max(0, Math.min(this.col, this.boardSize - this.visibleCols()));
+    this.row -= this.row % align;
+    this.col -= this.col % align;
+  }
+
+  // Returns the index of the cell under the given screen position, or -1 if
+  // the position is outside the window or off the board.
+  public int cellAt(Board board, int x, int y) {
+    if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+      return -1;
+    }
+    int r = this.row + (int) (y / this.cellPixels());
+    int c = this.col + (int) (x / this.cellPixels());
+    if (r >= this.boardSize || c >= this.boardSize) {
+      return -1;
+    }
+    return board.index(r, c);
+  }
+
+  // Returns solid images of the given size, one per color.
+  public ArrayList<WorldImage> makeImages(int pixels) {
+    ArrayList<WorldImage> images = new ArrayList<WorldImage>();
+    for (Color color : this.colors) {
+      images.add(new RectangleImage(pixels, pixels, OutlineMode.SOLID, color));
+    }
+    return images;
+  }
+
+  // Draws the visible part of the board onto the scene, and returns the number
+  // of images placed.
+  public int render(WorldScene scene, BoardTiles tiles) {
+    int level = this.level();
+    int block = 1 << level;
+    int side = BoardTiles.blocksPerSide(level);
+    double cellPixels = this.cellPixels();
+    int blockPixels = (int) Math.round(block * cellPixels);
+    int tilePixels = (int) Math.round(BoardTiles.TILE * cellPixels);
+    if (this.blockImages == null || this.blockImagePixels != blockPixels) {
+      this.blockImages = this.makeImages(blockPixels);
+      this.blockImagePixels = blockPixels;
+    }
+    if (this.tileImages == null || this.tileImagePixels != tilePixels) {
+      this.tileImages = this.makeImages(tilePixels);
+      this.tileImagePixels = tilePixels;
+    }
+
+    int lastRow = this.row + this.visibleRows();
+    int lastCol = this.col + this.visibleCols();
+    int placed = 0;
+    for (int tr = this.row / BoardTiles.TILE; tr * BoardTiles.TILE < lastRow; tr++) {
+      for (int tc = this.col / BoardTiles.TILE; tc * BoardTiles.TILE < lastCol; tc++) {
+        int tile = (tr * tiles.tilesPerRow) + tc;
+        int top = tr * BoardTiles.TILE;
+        int left = tc * BoardTiles.TILE;
+        int uniform = tiles.uniformColor(tile, level);
+        if (uniform >= 0 && top + BoardTiles.TILE <= this.boardSize
+            && left + BoardTiles.TILE <= this.boardSize) {
+          // A single-colored tile is one image, however far in we are zoomed.
+          scene.placeImageXY(this.tileImages.get(uniform),
+              this.screenX(left) + (tilePixels / 2),
+              this.screenY(top) + (tilePixels / 2));
+          placed++;
+        } else {
+          byte[] colors = tiles.blockColors(tile, level);
+          int firstBr = Math.max(0, (this.row - top) / block);
+          int firstBc = Math.max(0, (this.col - left) / block);
+          for (int br = firstBr; br < side && top + (br * block) < lastRow; br++) {
+            for (int bc = firstBc; bc < side && left + (bc * block) < lastCol; bc++) {
+              int color = colors[(br * side) + bc];
+              if (color >= 0) {
+                scene.placeImageXY(this.blockImages.get(color),
+                    this.screenX(left + (bc * block)) + (blockPixels / 2),
+                    this.screenY(top + (br * block)) + (blockPixels / 2));
+                placed++;
+              }
+            }
+          }
+        }
+      }
+    }
+    return placed + this.coverEdges(scene, tilePixels);
+  }
+
+  // Covers the parts of the last blocks and tiles that hang past the edge of
+  // the board or below the window, and returns the number of images placed.
+  public int coverEdges(WorldScene scene, int overhang) {
+    int placed = 0;
+    int boardRight = this.screenX(this.boardSize);
+    int boardBottom = this.screenY(this.boardSize);
+    if (boardRight < this.width) {
+      int w = this.width - boardRight;
+      if (this.rightStrip == null || this.rightStripWidth != w) {
+        this.rightStrip = new RectangleImage(w, this.height, OutlineMode.SOLID, Color.WHITE);
+        this.rightStripWidth = w;
+      }
+      scene.placeImageXY(this.rightStrip, boardRight + (w / 2), this.height / 2);
+      placed++;
+    }
+    if (boardBottom < this.height) {
+      int h = this.height - boardBottom;
+      if (this.bottomStrip == null || this.bottomStripHeight != h) {
+        this.bottomStrip = new RectangleImage(this.width, h, OutlineMode.SOLID, Color.WHITE);
+        this.bottomStripHeight = h;
+      }
+      scene.placeImageXY(this.bottomStrip, this.width / 2, boardBottom + (h / 2));
+      placed++;
+    }
+    if (this.belowStrip == null || this.belowStripHeight != overhang) {
+      this.belowStrip = new RectangleImage(this.width, overhang, OutlineMode.SOLID, Color.WHITE);
+      this.belowStripHeight = overhang;
+    }
+    scene.placeImageXY(this.belowStrip, this.width / 2, this.height + (overhang / 2));
+    return placed + 1;
+  }
+
+  // Returns the screen x coordinate of the left edge of the given column.
+  public int screenX(int column) {
+    return (int) Math.round((column - this.col) * this.cellPixels());
+  }
+
+  // Returns the screen y coordinate of the top edge of the given row.
+  public int screenY(int boardRow) {
+    return (int) Math.round((boardRow - this.row) * this.cellPixels());
+  }
+}
+
+class ExamplesViewport {
+  Board board;
+  BoardTiles tiles;
+  Viewport view;
+  ArrayList<Color> colors;
+
+  // Returns the given number of distinct colors.
+  static ArrayList<Color> colors(int count) {
+    ArrayList<Color> colors = new ArrayList<Color>();
+    for (int i = 0; i < count; i++) {
+      colors.add(Color.getHSBColor((float) i / count, 1, 1));
+    }
+    return colors;
+  }
+
+  // Initializes conditions.
+  void initView() {
+    this.board = new Board(1000, 5);
+    this.board.fill(new Random(3));
+    this.tiles = new BoardTiles(this.board);
+    this.colors = ExamplesViewport.colors(5);
+    this.view = new Viewport(1000, 800, 800, this.colors);
+  }
+
+  // Tests the visible area and level of detail at each zoom.
+  void testZoomLevels(Tester t) {
+    this.initView();
+
+    t.checkExpect(this.view.cellPixels(), 25.0);
+    t.checkExpect(this.view.visibleRows(), 32);
+    t.checkExpect(this.view.level(), 0);
+
+    this.view.zoomBy(-4);
+    t.checkExpect(this.view.cellPixels(), 2.0);
+    t.checkExpect(this.view.visibleCols(), 400);
+    t.checkExpect(this.view.level(), 3);
+
+    this.view.zoomBy(-10);
+    t.checkExpect(this.view.cellPixels(), 0.25);
+    t.checkExpect(this.view.visibleCols(), 1000);
+    t.checkExpect(this.view.level(), 6);
+
+    this.view.zoomBy(10);
+    t.checkExpect(this.view.zoom, Viewport.ZOOM_LEVELS.length - 1);
+  }
+
+  // Tests that panning stays on the board and zooming keeps the center.
+  void testPanAndZoom(Tester t) {
+    this.initView();
+
+    this.view.pan(-5, -5);
+    t.checkExpect(this.view.row, 0);
+    t.checkExpect(this.view.col, 0);
+
+    this.view.pan(500, 2000);
+    t.checkExpect(this.view.row, 500);
+    t.checkExpect(this.view.col, 1000 - 32);
+
+    this.view.step(1, 0);
+    t.checkExpect(this.view.row, 508);
+
+    this.view.zoomBy(-1);
+    t.checkExpect(this.view.row, 508 + 16 - 25);
+    t.checkExpect(this.view.visibleRows(), 50);
+
+    // Quarter-pixel cells keep the window on whole pixels.
+    this.view.zoomBy(-10);
+    t.checkExpect(this.view.row, 0);
+    Viewport wide = new Viewport(8000, 800, 800, ExamplesViewport.colors(5));
+    wide.zoom = 0;
+    wide.pan(101, 102);
+    t.checkExpect(wide.row, 100);
+    t.checkExpect(wide.col, 100);
+  }
+
+  // Tests cellAt, which maps screen positions through the window.
+  void testCellAt(Tester t) {
+    this.initView();
+    this.view.pan(100, 200);
+
+    t.checkExpect(this.view.cellAt(this.board, 0, 0), this.board.index(100, 200));
+    t.checkExpect(this.view.cellAt(this.board, 26, 51), this.board.index(102, 201));
+    t.checkExpect(this.view.cellAt(this.board, 800, 0), -1);
+    t.checkExpect(this.view.cellAt(this.board, 0, -1), -1);
+
+    Viewport small = new Viewport(10, 800, 800, ExamplesViewport.colors(5));
+    t.checkExpect(small.cellAt(this.board, 300, 0), -1);
+  }
+
+  // Tests that render places one image per visible cell at full zoom.
+  void testRenderCells(Tester t) {
+    this.initView();
+    this.view.pan(10, 10);
+    WorldScene scene = new WorldScene(800, 900);
+
+    int placed = this.view.render(scene, this.tiles);
+
+    // 32 by 32 cells, plus the strip below the window.
+    t.checkExpect(placed, (32 * 32) + 1);
+    t.checkExpect(this.view.blockImages.get(2),
+        new RectangleImage(25, 25, OutlineMode.SOLID, this.colors.get(2)));
+  }
+
+  // Tests that the images per frame stay bounded by the window at every zoom,
+  // and do not depend on the size of the board.
+  void testRenderBounded(Tester t) {
+    this.initView();
+    Board other = new Board(300, 5);
+    other.fill(new Random(3));
+    BoardTiles otherTiles = new BoardTiles(other);
+    Viewport otherView = new Viewport(300, 800, 800, ExamplesViewport.colors(5));
+    int limit = ((800 / Viewport.MIN_BLOCK_PIXELS) + 2) * ((800 / Viewport.MIN_BLOCK_PIXELS) + 2) + 3;
+    int tooMany = 0;
+    int different = 0;
+
+    for (int zoom = 0; zoom < Viewport.ZOOM_LEVELS.length; zoom++) {
+      this.view.zoom = zoom;
+      otherView.zoom = zoom;
+      int placed = this.view.render(new WorldScene(800, 900), this.tiles);
+      if (placed > limit) {
+        tooMany++;
+      }
+      // While the smaller board still fills the window, both draw the same.
+      if (300 * Viewport.ZOOM_LEVELS[zoom] >= 800
+          && placed != otherView.render(new WorldScene(800, 900), otherTiles)) {
+        different++;
+      }
+    }
+
+    t.checkExpect(tooMany, 0);
+    t.checkExpect(different, 0);
+  }
+
+  // Tests that a uniform tile is drawn as one image, and that recoloring a
+  // cell through the tiles splits it back into blocks.
+  void testRenderUniform(Tester t) {
+    Board board = new Board(128, 2);
+    BoardTiles tiles = new BoardTiles(board);
+    Viewport view = new Viewport(128, 800, 800, ExamplesViewport.colors(5));
+    view.zoom = 3;
+
+    t.checkExpect(view.render(new WorldScene(800, 900), tiles), 4 + 3);
+
+    tiles.setColor(board.index(0, 0), 1);
+
+    t.checkExpect(view.render(new WorldScene(800, 900), tiles), 3 + (8 * 8) + 3);
+  }
+}
@@ -0,0 +1,109 @@
+package FloodIt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Benchmarks for the headless engine: building a board and its region graph
+// (what initializeBoard and linkCells used to do), playing moves, and
+// finding the cells each color would absorb.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBenchmarks {
+  @Param({"14", "22", "100"})
+  public int size;
+  @Param({"4", "6", "8"})
+  public int colors;
+
+  Random rand;
+  FloodGame game;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.rand = new Random(1);
+    this.game = new FloodGame(this.size, this.colors, this.rand);
+  }
+
+  // Fills a new board and builds its region graph, as FloodItWorld.reset does.
+  @Benchmark
+  public FloodGame newGame() {
+    return new FloodGame(this.size, this.colors, this.rand);
+  }
+
+  // Refills and relabels an existing board in place, as BatchSimulator does.
+  @Benchmark
+  public FloodGame restart() {
+    this.game.restart(this.rand);
+    return this.game;
+  }
+
+  // Plays one move that grows the flood. A new board is started, in place,
+  // whenever the last one is flooded, so a share of restart is included.
+  @Benchmark
+  public int applyMove() {
+    if (this.game.isWon()) {
+      this.game.restart(this.rand);
+    }
+    return this.game.applyMove(this.game.firstFrontierColor());
+  }
+
+  // A game played greedily until half the board is flooded.
+  @State(Scope.Thread)
+  public static class HalfPlayed {
+    @Param({"14", "22", "100"})
+    public int size;
+    @Param({"4", "6", "8"})
+    public int colors;
+
+    FloodGame game;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.game = new FloodGame(this.size, this.colors, new Random(1));
+      while (this.game.floodedCells.size() * 2 < this.game.board.cellCount()) {
+        this.game.applyMove(this.game.hint());
+      }
+    }
+  }
+
+  // The best color from the per-color counts the engine keeps.
+  @Benchmark
+  public int hint(HalfPlayed state) {
+    return state.game.hint();
+  }
+
+  // The best color found the naive way: flooding with each color in turn
+  // and undoing it.
+  @Benchmark
+  public int hintBySimulation(HalfPlayed state) {
+    FloodGame game = state.game;
+    int best = -1;
+    int bestCells = 0;
+    for (int c = 0; c < game.numColors; c++) {
+      if (c != game.floodColor) {
+        int cells = game.flood(c);
+        game.undo();
+        if (cells > bestCells) {
+          best = c;
+          bestCells = cells;
+        }
+      }
+    }
+    return best;
+  }
+}
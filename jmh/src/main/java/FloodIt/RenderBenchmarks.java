@@ -0,0 +1,107 @@
+package FloodIt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javalib.impworld.WorldScene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Frame time of the per-cell render path against the raster path, with the
+// whole board drawn at CELL_SIZE pixels per cell (no viewport).
+//
+// makeScene* measure the game's side of a frame: building the scene.
+// composite* stand in for javalib's side, drawing that scene into a window:
+// one filled rectangle per cell, against one scaled image. The window is
+// clipped to MAX_VIEW_PIXELS, as the real one would be.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmarks {
+
+  // A world halfway through a game, drawn either way.
+  @State(Scope.Thread)
+  public static class Frame {
+    @Param({"22", "100", "400"})
+    public int size;
+
+    FloodItWorld cells;
+    FloodItWorld raster;
+    BufferedImage window;
+    Graphics2D graphics;
+    BufferedImage pixels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.cells = RenderBenchmarks.wholeBoard(this.size, false);
+      this.raster = RenderBenchmarks.wholeBoard(this.size, true);
+      this.raster.makeScene();
+      int px = Math.min(this.size * FloodItWorld.CELL_SIZE, FloodItWorld.MAX_VIEW_PIXELS);
+      this.window = new BufferedImage(px, px, BufferedImage.TYPE_INT_RGB);
+      this.graphics = this.window.createGraphics();
+      Board board = this.raster.engine.board;
+      this.pixels = new BufferedImage(this.size, this.size, BufferedImage.TYPE_INT_RGB);
+      for (int i = 0; i < board.cellCount(); i++) {
+        this.pixels.setRGB(board.colOf(i), board.rowOf(i),
+            FloodItWorld.COLORS.get(board.colorAt(i)).getRGB());
+      }
+    }
+  }
+
+  // Builds a scene with one image per cell.
+  @Benchmark
+  public WorldScene makeSceneCells(Frame state) {
+    return state.cells.makeScene();
+  }
+
+  // Builds a scene with the board as one raster image.
+  @Benchmark
+  public WorldScene makeSceneRaster(Frame state) {
+    return state.raster.makeScene();
+  }
+
+  // Draws one rectangle per cell into the window.
+  @Benchmark
+  public BufferedImage compositeCells(Frame state) {
+    Board board = state.cells.engine.board;
+    int cell = FloodItWorld.CELL_SIZE;
+    for (int i = 0; i < board.cellCount(); i++) {
+      Color color = FloodItWorld.COLORS.get(board.colorAt(i));
+      state.graphics.setColor(color);
+      state.graphics.fillRect(board.colOf(i) * cell, board.rowOf(i) * cell, cell, cell);
+    }
+    return state.window;
+  }
+
+  // Draws the raster into the window, scaled to CELL_SIZE pixels per cell.
+  @Benchmark
+  public BufferedImage compositeRaster(Frame state) {
+    int px = state.size * FloodItWorld.CELL_SIZE;
+    state.graphics.drawImage(state.pixels, 0, 0, px, px, null);
+    return state.window;
+  }
+
+  // Returns a world halfway through a game that draws its whole board,
+  // through the raster or cell by cell.
+  static FloodItWorld wholeBoard(int size, boolean raster) {
+    FloodItWorld world = new FloodItWorld(size, 6, new Random(1));
+    world.viewport = null;
+    world.rasterRender = raster;
+    WorldBenchmarks.playToHalf(world);
+    return world;
+  }
+}
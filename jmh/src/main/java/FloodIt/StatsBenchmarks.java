@@ -0,0 +1,100 @@
+package FloodIt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javalib.impworld.WorldEnd;
+import javalib.impworld.WorldScene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The cost of GameStats on the instrumented paths: the same calls with stats
+// off, which must match the uninstrumented WorldBenchmarks figures, and on.
+// No JFR recording runs, so events are created but never committed.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsBenchmarks {
+
+  // A world halfway through a game, with stats on or off.
+  @State(Scope.Thread)
+  public static class Instrumented {
+    @Param({"22", "100"})
+    public int size;
+    @Param({"false", "true"})
+    public boolean stats;
+
+    FloodItWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.world = StatsBenchmarks.halfPlayed(this.size, this.stats);
+    }
+  }
+
+  // A world about to play a move, with stats on or off. Before every call
+  // the previous move's animation is finished, and the game restarted once
+  // the board is flooded.
+  @State(Scope.Thread)
+  public static class NextMove {
+    @Param({"22", "100"})
+    public int size;
+    @Param({"false", "true"})
+    public boolean stats;
+
+    FloodItWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.world = StatsBenchmarks.halfPlayed(this.size, this.stats);
+    }
+
+    @Setup(Level.Invocation)
+    public void finishAnimation() {
+      WorldBenchmarks.drain(this.world);
+      if (this.world.engine.isWon()) {
+        this.world.reset();
+      }
+    }
+  }
+
+  // Floods the engine and queues the first wave of cells to recolor.
+  @Benchmark
+  public int assignFlood(NextMove state) {
+    state.world.assignFlood(state.world.engine.firstFrontierColor());
+    return state.world.cellsToBeFlooded.size();
+  }
+
+  // Builds a frame in which nothing changed.
+  @Benchmark
+  public WorldScene makeScene(Instrumented state) {
+    return state.world.makeScene();
+  }
+
+  // Checks whether the game is over.
+  @Benchmark
+  public WorldEnd worldEnds(Instrumented state) {
+    return state.world.worldEnds();
+  }
+
+  // Returns a world halfway through a game, with stats on or off, that has
+  // drawn its first frame.
+  static FloodItWorld halfPlayed(int size, boolean stats) {
+    FloodItWorld world = new FloodItWorld(size, 6, new Random(1));
+    WorldBenchmarks.playToHalf(world);
+    world.stats = stats ? new GameStats() : null;
+    world.makeScene();
+    return world;
+  }
+}
@@ -0,0 +1,216 @@
+package FloodIt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javalib.impworld.WorldScene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Benchmarks for FloodItWorld: queueing a move's animation, draining it
+// tick by tick, checking for a win, and rendering.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldBenchmarks {
+
+  // A world halfway through a game, with no animation pending.
+  @State(Scope.Thread)
+  public static class MidGame {
+    @Param({"14", "22", "100"})
+    public int size;
+    @Param({"4", "6", "8"})
+    public int colors;
+
+    FloodItWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.world = new FloodItWorld(this.size, this.colors, new Random(1));
+      WorldBenchmarks.playToHalf(this.world);
+    }
+  }
+
+  // A board too big to draw whole, seen through its viewport at a few zoom
+  // levels: full size, 2 pixels per cell and a quarter pixel per cell.
+  @State(Scope.Thread)
+  public static class HugeBoard {
+    @Param({"200", "2000"})
+    public int size;
+    @Param({"7", "3", "0"})
+    public int zoom;
+
+    FloodItWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.world = new FloodItWorld(this.size, 6, new Random(1));
+      for (int move = 0; move < 30; move++) {
+        this.world.assignFlood(this.world.engine.firstFrontierColor());
+        WorldBenchmarks.drain(this.world);
+      }
+      this.world.viewport.zoomBy(this.zoom - this.world.viewport.zoom);
+    }
+  }
+
+  // A world whose board is fully flooded and recolored, the case where
+  // didWin has to look at every cell.
+  @State(Scope.Thread)
+  public static class Finished {
+    @Param({"14", "22", "100"})
+    public int size;
+    @Param({"4", "6", "8"})
+    public int colors;
+
+    FloodItWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.world = new FloodItWorld(this.size, this.colors, new Random(1));
+      while (!this.world.engine.isWon()) {
+        this.world.assignFlood(this.world.engine.firstFrontierColor());
+        WorldBenchmarks.drain(this.world);
+      }
+    }
+  }
+
+  // A world about to play a move. Before every call the previous move's
+  // animation is finished, and the game restarted once the board is flooded.
+  @State(Scope.Thread)
+  public static class NextMove {
+    @Param({"14", "22", "100"})
+    public int size;
+    @Param({"4", "6", "8"})
+    public int colors;
+
+    FloodItWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.world = new FloodItWorld(this.size, this.colors, new Random(1));
+    }
+
+    @Setup(Level.Invocation)
+    public void finishAnimation() {
+      WorldBenchmarks.drain(this.world);
+      if (this.world.engine.isWon()) {
+        this.world.reset();
+      }
+    }
+  }
+
+  // A world with a move queued and its whole animation still to play.
+  @State(Scope.Thread)
+  public static class QueuedMove {
+    @Param({"14", "22", "100"})
+    public int size;
+    @Param({"6"})
+    public int colors;
+
+    FloodItWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      this.world = new FloodItWorld(this.size, this.colors, new Random(1));
+    }
+
+    @Setup(Level.Invocation)
+    public void queueMove() {
+      WorldBenchmarks.drain(this.world);
+      if (this.world.engine.isWon()) {
+        this.world.reset();
+      }
+      this.world.assignFlood(this.world.engine.firstFrontierColor());
+    }
+  }
+
+  // Floods the engine and queues the first wave of cells to recolor.
+  @Benchmark
+  public int assignFlood(NextMove state) {
+    state.world.assignFlood(state.world.engine.firstFrontierColor());
+    return state.world.cellsToBeFlooded.size();
+  }
+
+  // Runs handleFlooding until every queued cell has been recolored.
+  @Benchmark
+  public int handleFloodingDrain(QueuedMove state) {
+    int ticks = 0;
+    while (!state.world.cellsToBeFlooded.isEmpty()) {
+      state.world.handleFlooding();
+      ticks++;
+    }
+    return ticks;
+  }
+
+  // Scans every cell for the flood color.
+  @Benchmark
+  public boolean didWin(Finished state) {
+    return state.world.didWin();
+  }
+
+  // Checks the flood size and the animation queue.
+  @Benchmark
+  public boolean hasWon(Finished state) {
+    return state.world.hasWon();
+  }
+
+  // Builds the scene for one frame in which nothing changed.
+  @Benchmark
+  public WorldScene makeScene(MidGame state) {
+    return state.world.makeScene();
+  }
+
+  // Builds the scene for one frame from scratch, as before the scene was
+  // retained between frames.
+  @Benchmark
+  public WorldScene makeSceneFull(MidGame state) {
+    state.world.sceneStale = true;
+    return state.world.makeScene();
+  }
+
+  // Builds the frames of one move's animation, recoloring the cells of a
+  // tick between frames.
+  @Benchmark
+  public int makeSceneAnimating(QueuedMove state) {
+    int frames = 0;
+    while (!state.world.cellsToBeFlooded.isEmpty()) {
+      state.world.handleFlooding();
+      state.world.makeScene();
+      frames++;
+    }
+    return frames;
+  }
+
+  // Builds the scene for one frame of a huge board.
+  @Benchmark
+  public WorldScene makeSceneHuge(HugeBoard state) {
+    return state.world.makeScene();
+  }
+
+  // Plays the queued animation to the end, one tick at a time.
+  static void drain(FloodItWorld world) {
+    while (!world.cellsToBeFlooded.isEmpty()) {
+      world.handleFlooding();
+    }
+  }
+
+  // Plays moves that grow the flood until it covers half the board, and
+  // finishes their animation.
+  static void playToHalf(FloodItWorld world) {
+    while (world.engine.floodedCells.size() * 2 < world.engine.board.cellCount()) {
+      world.assignFlood(world.engine.firstFrontierColor());
+      WorldBenchmarks.drain(world);
+    }
+  }
+}